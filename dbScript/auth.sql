@@ -6,8 +6,64 @@ CREATE TABLE usuarios (
     clave_hash      VARCHAR(255) NOT NULL,
     intentos_fallidos INT NOT NULL DEFAULT 0,
     bloqueado       BOOLEAN NOT NULL DEFAULT FALSE,
+    bloqueado_hasta TIMESTAMP,
     fecha_creacion  TIMESTAMP DEFAULT NOW()
 );
 
+-- Timed locks (AuthService.setLockDuration); only locked rows are indexed, so UnlockSweeper's
+-- startup load reads the few locked accounts instead of the whole table
+CREATE INDEX usuarios_bloqueado_hasta_idx ON usuarios (bloqueado_hasta) WHERE bloqueado;
+
 INSERT INTO usuarios (email, clave_hash)
-VALUES ('usuario@ejemplo.com', 'Abc!1');
\ No newline at end of file
+VALUES ('usuario@ejemplo.com', 'Abc!1');
+
+-- Token buckets shared by the nodes of a cluster (ClusterRateLimiter with JdbcRateLimitStore)
+CREATE TABLE rate_limits (
+    limiter         VARCHAR(64) NOT NULL,
+    rate_key        VARCHAR(255) NOT NULL,
+    full_at         BIGINT NOT NULL,
+    PRIMARY KEY (limiter, rate_key)
+);
+
+-- Recovery emails waiting for RecoveryOutbox's dispatcher. next_attempt_at is NULL once a row
+-- is sent (sent_at set) or abandoned (last_error set); only pending rows are indexed. No reset
+-- token is stored here: the dispatcher issues it into recovery_tokens as it sends
+CREATE TABLE recovery_outbox (
+    id              BIGSERIAL PRIMARY KEY,
+    user_id         INT NOT NULL REFERENCES usuarios (id),
+    email           VARCHAR(255) NOT NULL,
+    created_at      TIMESTAMP NOT NULL,
+    attempts        INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP,
+    sent_at         TIMESTAMP,
+    last_error      VARCHAR(255)
+);
+
+CREATE INDEX recovery_outbox_due_idx ON recovery_outbox (next_attempt_at, id) WHERE next_attempt_at IS NOT NULL;
+
+-- Password-recovery tokens (RecoveryTokenStore): only the SHA-256 of each token is stored, and
+-- it is the key that verification looks up. RecoveryTokenSweeper deletes expired rows oldest
+-- first through the expires_at index
+CREATE TABLE recovery_tokens (
+    token_hash      BYTEA PRIMARY KEY,
+    user_id         INT NOT NULL REFERENCES usuarios (id),
+    expires_at      TIMESTAMP NOT NULL
+);
+
+CREATE INDEX recovery_tokens_expires_at_idx ON recovery_tokens (expires_at);
+
+-- "Remember me" tokens (RememberMeStore): the selector is the key looked up, and only the
+-- SHA-256 of the validator is stored. rotation_salt and rotated_at, set by each rotation, let
+-- the replaced token get the same replacement again for a short grace window. A user's rows
+-- are deleted when the account is blocked, and expired rows by RememberMeStore.deleteExpired
+CREATE TABLE remember_me_tokens (
+    selector        BYTEA PRIMARY KEY,
+    validator_hash  BYTEA NOT NULL,
+    rotation_salt   BYTEA,
+    rotated_at      TIMESTAMP,
+    user_id         INT NOT NULL REFERENCES usuarios (id),
+    expires_at      TIMESTAMP NOT NULL
+);
+
+CREATE INDEX remember_me_tokens_user_id_idx ON remember_me_tokens (user_id);
+CREATE INDEX remember_me_tokens_expires_at_idx ON remember_me_tokens (expires_at);
@@ -0,0 +1,107 @@
+package com.auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Writes account-state columns of {@code usuarios} while skipping work that would not change
+ * anything: columns whose desired value equals the value already read are left out of the
+ * UPDATE, and when no column changes the UPDATE is not sent at all.
+ *
+ * <p>Callers pass the value they read earlier in the same request, so an elided write is one
+ * that would have rewritten the row with identical values. Counters report how many writes
+ * were issued and how many were avoided.</p>
+ */
+public class AccountStateWriter {
+
+    private static final Pattern COLUMN = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    private final LongAdder writesIssued = new LongAdder();
+    private final LongAdder writesElided = new LongAdder();
+    private final LongAdder columnsElided = new LongAdder();
+
+    /** Starts an update of the row with the given id. */
+    public Update update(Connection conn, int userId) {
+        return new Update(conn, userId);
+    }
+
+    /** UPDATE statements actually sent to the database. */
+    public long getWritesIssued() {
+        return writesIssued.sum();
+    }
+
+    /** UPDATE statements skipped because no column would change. */
+    public long getWritesElided() {
+        return writesElided.sum();
+    }
+
+    /** Column assignments left out because the value was unchanged. */
+    public long getColumnsElided() {
+        return columnsElided.sum();
+    }
+
+    public final class Update {
+        private final Connection conn;
+        private final int userId;
+        private final List<String> columns = new ArrayList<>(2);
+        private final List<Object> values = new ArrayList<>(2);
+
+        private Update(Connection conn, int userId) {
+            this.conn = conn;
+            this.userId = userId;
+        }
+
+        /** Sets {@code column} to {@code desired} unless it already holds {@code current}. */
+        public Update set(String column, Object current, Object desired) {
+            if (!COLUMN.matcher(column).matches()) {
+                throw new IllegalArgumentException("Invalid column name: " + column);
+            }
+            if (Objects.equals(current, desired)) {
+                columnsElided.increment();
+            } else {
+                columns.add(column);
+                values.add(desired);
+            }
+            return this;
+        }
+
+        /** Whether any column would change. */
+        public boolean isNoOp() {
+            return columns.isEmpty();
+        }
+
+        /**
+         * Sends the UPDATE for the changed columns, if any.
+         *
+         * @return {@code true} if a write was issued, {@code false} if it was elided
+         */
+        public boolean execute() throws SQLException {
+            if (columns.isEmpty()) {
+                writesElided.increment();
+                return false;
+            }
+            StringBuilder sql = new StringBuilder("UPDATE usuarios SET ");
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) sql.append(", ");
+                sql.append(columns.get(i)).append(" = ?");
+            }
+            sql.append(" WHERE id = ?");
+            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                int index = 1;
+                for (Object value : values) {
+                    ps.setObject(index++, value);
+                }
+                ps.setInt(index, userId);
+                ps.executeUpdate();
+            }
+            writesIssued.increment();
+            return true;
+        }
+    }
+}
@@ -4,6 +4,10 @@ import javax.swing.SwingUtilities;
 
 public class App {
     public static void main(String[] args) {
+        // Time password hashing now so the first login does not pay for it
+        Thread calibration = new Thread(HashCostCalibrator::startupCalibration, "hash-calibration");
+        calibration.setDaemon(true);
+        calibration.start();
         SwingUtilities.invokeLater(() -> {
             new AuthFrame().setVisible(true);
         });
@@ -0,0 +1,57 @@
+package com.auth;
+
+/**
+ * Renders {@link LoginResult} and {@link RecoveryResult} as the messages shown in the UI.
+ * Only called when a message is actually needed, e.g. by {@link AuthService#login}.
+ */
+public final class AuthMessages {
+
+    private AuthMessages() {
+    }
+
+    public static String format(LoginResult result) {
+        switch (result.outcome()) {
+            case SUCCESS:
+                return "Login exitoso 🎉";
+            case INVALID_EMAIL:
+                return "Email no válido";
+            case INVALID_PASSWORD_FORMAT:
+                return "Clave inválida: 5-10 chars, 1 mayúscula, 1 carácter especial";
+            case USER_NOT_FOUND:
+                return "Usuario no encontrado";
+            case WRONG_PASSWORD:
+                return "Clave incorrecta. Intentos: " + result.failedAttempts() + "/" + LoginResult.MAX_FAILED_ATTEMPTS;
+            case BLOCKED_NOW:
+                return "Cuenta bloqueada. Excedió los " + LoginResult.MAX_FAILED_ATTEMPTS + " intentos.";
+            case ACCOUNT_BLOCKED:
+                return "Cuenta bloqueada por intentos fallidos";
+            case DB_ERROR:
+                return "Error de BD: " + result.errorDetail();
+            case RATE_LIMITED:
+                return "Demasiados intentos. Intente de nuevo más tarde";
+            case INVALID_TOKEN:
+                return "Sesión expirada. Ingrese su clave de nuevo";
+            case BUSY:
+                return "Servicio ocupado. Intente de nuevo en unos segundos";
+            default:
+                throw new IllegalArgumentException("Unknown outcome: " + result.outcome());
+        }
+    }
+
+    public static String format(RecoveryResult result) {
+        switch (result.outcome()) {
+            case EMAIL_SENT:
+                return "Se ha enviado un email de recuperación (simulado).";
+            case INVALID_EMAIL:
+                return "Ingrese un email válido para recuperar clave";
+            case USER_NOT_FOUND:
+                return "No existe un usuario con ese email";
+            case DB_ERROR:
+                return "Error de BD: " + result.errorDetail();
+            case RATE_LIMITED:
+                return "Demasiadas solicitudes. Intente de nuevo más tarde";
+            default:
+                throw new IllegalArgumentException("Unknown outcome: " + result.outcome());
+        }
+    }
+}
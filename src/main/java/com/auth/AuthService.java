@@ -4,30 +4,671 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class AuthService {
 
-    public String login(String email, String password) {
+    /** How {@link #loginWithConnection} talks to the database. */
+    public enum LoginMode {
+        /** SELECT the row, compare in Java, then UPDATE the attempt counter (two round trips). */
+        SELECT_THEN_UPDATE,
+        /**
+         * Verify the password against the stored hash, then apply the counter/lock transition
+         * in one atomic UPDATE that returns the new row state. With a {@link UserRecordCache}
+         * the hash usually comes from memory and a login is a single statement; otherwise the
+         * hash is read first. Unknown or already blocked accounts need one more lookup.
+         */
+        SINGLE_ROUND_TRIP
+    }
+
+    private static final int MAX_INTENTOS = LoginResult.MAX_FAILED_ATTEMPTS;
+
+    // Counter/lock transition for an already verified password in one statement; the counter is
+    // computed from the stored value so concurrent attempts on one account cannot lose updates,
+    // and the clave_hash guard keeps a verdict reached against a stale hash from being applied
+    private static final String ATOMIC_LOGIN_SET =
+            "UPDATE usuarios SET "
+            + "intentos_fallidos = CASE WHEN CAST(? AS BOOLEAN) THEN 0 ELSE intentos_fallidos + 1 END, "
+            + "bloqueado = CASE WHEN CAST(? AS BOOLEAN) THEN FALSE ELSE intentos_fallidos + 1 >= ? END "
+            + "WHERE email = ? AND bloqueado = FALSE AND clave_hash = ?";
+    private static final String ATOMIC_LOGIN_POSTGRES =
+            ATOMIC_LOGIN_SET + " RETURNING id, intentos_fallidos, bloqueado";
+    // H2 has no RETURNING; a data change delta table gives the same single statement
+    private static final String ATOMIC_LOGIN_H2 =
+            "SELECT id, intentos_fallidos, bloqueado FROM FINAL TABLE (" + ATOMIC_LOGIN_SET + ")";
+
+    // Same transition with timed locks: an expired lock counts as unlocked with no failures,
+    // and a new lock records its expiry
+    private static final String INTENTOS_VIGENTES = "(CASE WHEN bloqueado THEN 0 ELSE intentos_fallidos END)";
+    private static final String TIMED_LOGIN_SET =
+            "UPDATE usuarios SET "
+            + "intentos_fallidos = CASE WHEN CAST(? AS BOOLEAN) THEN 0 ELSE " + INTENTOS_VIGENTES + " + 1 END, "
+            + "bloqueado = CASE WHEN CAST(? AS BOOLEAN) THEN FALSE ELSE " + INTENTOS_VIGENTES + " + 1 >= ? END, "
+            + "bloqueado_hasta = CASE WHEN CAST(? AS BOOLEAN) OR " + INTENTOS_VIGENTES + " + 1 < ? THEN NULL "
+            + "ELSE CAST(? AS TIMESTAMP) END "
+            + "WHERE email = ? AND (bloqueado = FALSE OR bloqueado_hasta <= CAST(? AS TIMESTAMP)) AND clave_hash = ?";
+    private static final String TIMED_LOGIN_POSTGRES =
+            TIMED_LOGIN_SET + " RETURNING id, intentos_fallidos, bloqueado";
+    private static final String TIMED_LOGIN_H2 =
+            "SELECT id, intentos_fallidos, bloqueado FROM FINAL TABLE (" + TIMED_LOGIN_SET + ")";
+
+    private LoginMode loginMode = LoginMode.SELECT_THEN_UPDATE;
+    // Skips counter writes that would not change the row read by loginWithConnection
+    private final AccountStateWriter stateWriter = new AccountStateWriter();
+    // 0 means "as many as the DB connection pool allows"
+    private int asyncConcurrency;
+    private volatile VirtualThreadExecutor asyncExecutor;
+    // Optional; when set, emails it rules out are answered without a query
+    private volatile EmailBloomFilter emailFilter;
+    // Optional; serves recovery lookups and is invalidated when login locks an account
+    private volatile UserRecordCache userCache;
+    // Created on first use of a hashed credential unless configured
+    private volatile PasswordVerifier passwordVerifier;
+    // Optional; upgrades plaintext and weak hashes after successful logins
+    private volatile RehashQueue rehashQueue;
+    // Optional; requests over either limit are refused before any database work
+    private volatile RateLimiter emailRateLimiter;
+    private volatile RateLimiter clientRateLimiter;
+    // Optional; holds attempt counters and lock flags in memory instead of reading/writing them per login
+    private volatile LockoutTable lockoutTable;
+    // Optional; when set, locks expire after this long (bloqueado_hasta) instead of lasting forever
+    private volatile Duration lockDuration;
+    private volatile UnlockSweeper unlockSweeper;
+    // Optional; batches the counter writes of concurrent logins into shared transactions
+    private volatile CounterGroupCommit groupCommit;
+    // Optional; defers counter writes and merges repeated ones, flushing locks at once
+    private volatile CounterWriteBehind counterWriteBehind;
+    // Optional; concurrent lookups of one email share a query
+    private volatile SingleFlight<String, SharedLoginRow> loginFlights;
+    private volatile SingleFlight<String, Integer> recoveryFlights;
+    // Optional; recovery emails are queued here instead of sent on the request thread
+    private volatile RecoveryOutbox recoveryOutbox;
+    // Optional; redeems the reset tokens a recovery outbox issues as it sends
+    private volatile RecoveryTokenStore recoveryTokens;
+    // Optional; signs a session token into each successful login's result
+    private volatile SessionTokens sessionTokens;
+    // Optional; opens a revocable session on each successful login, ended when the account locks
+    private volatile SessionStore sessionStore;
+    // Optional; lets a login return a token that logs the user back in without the password
+    private volatile RememberMeStore rememberMe;
+
+    public LoginMode getLoginMode() {
+        return loginMode;
+    }
+
+    // Configure before the service starts handling requests
+    public void setLoginMode(LoginMode loginMode) {
+        this.loginMode = loginMode;
+    }
+
+    /** Counters for account-state writes issued and elided. */
+    public AccountStateWriter getAccountStateWriter() {
+        return stateWriter;
+    }
+
+    public EmailBloomFilter getEmailFilter() {
+        return emailFilter;
+    }
+
+    /**
+     * Installs a filter consulted before looking an email up, or {@code null} to always query.
+     * Build it with {@link EmailBloomFilter#fromDatabase} and keep it current on inserts.
+     */
+    public void setEmailFilter(EmailBloomFilter emailFilter) {
+        this.emailFilter = emailFilter;
+    }
+
+    public UserRecordCache getUserCache() {
+        return userCache;
+    }
+
+    /**
+     * Installs a cache of account records, or {@code null} to always query. Password recovery
+     * answers from it; login keeps reading the row because the attempt counters must be
+     * current, and drops the cached entry when it locks an account.
+     */
+    public void setUserCache(UserRecordCache userCache) {
+        this.userCache = userCache;
+    }
+
+    /**
+     * Verifier for hashed credentials. Unless one was configured, it is created on first use
+     * with the cost from {@link HashCostCalibrator#startupCalibration()} for new hashes, and
+     * asks only for hashes below the calibration floor to be rehashed.
+     */
+    public PasswordVerifier getPasswordVerifier() {
+        PasswordVerifier verifier = passwordVerifier;
+        if (verifier == null) {
+            // Timed outside the monitor: it can take hundreds of milliseconds on first use
+            HashCostCalibrator.Calibration calibration = HashCostCalibrator.startupCalibration();
+            synchronized (this) {
+                verifier = passwordVerifier;
+                if (verifier == null) {
+                    verifier = new PasswordVerifier(
+                            new PasswordHasher(calibration.iterations(), calibration.floorIterations()));
+                    passwordVerifier = verifier;
+                }
+            }
+        }
+        return verifier;
+    }
+
+    // Configure before the service starts handling requests
+    public void setPasswordVerifier(PasswordVerifier passwordVerifier) {
+        this.passwordVerifier = passwordVerifier;
+    }
+
+    public RehashQueue getRehashQueue() {
+        return rehashQueue;
+    }
+
+    /**
+     * Installs a queue that rehashes a credential in the background when a login succeeds
+     * against plaintext or a hash weaker than the queue's hasher, or {@code null} to leave
+     * stored credentials alone. Typically
+     * {@code new RehashQueue(getPasswordVerifier().getHasher(), DbConnection::getConnection)};
+     * the service drops each rehashed account from its {@link UserRecordCache} itself.
+     */
+    public void setRehashQueue(RehashQueue rehashQueue) {
+        this.rehashQueue = rehashQueue;
+    }
+
+    public RateLimiter getEmailRateLimiter() {
+        return emailRateLimiter;
+    }
+
+    /**
+     * Installs a limit on login and recovery requests per email, or {@code null} for none.
+     * Refused requests return {@code RATE_LIMITED} without opening a connection. Batch logins
+     * are not limited.
+     */
+    public void setEmailRateLimiter(RateLimiter emailRateLimiter) {
+        this.emailRateLimiter = emailRateLimiter;
+    }
+
+    public RateLimiter getClientRateLimiter() {
+        return clientRateLimiter;
+    }
+
+    /**
+     * Installs a limit per client key (for example the caller's IP address), applied by the
+     * overloads that take one, or {@code null} for none.
+     */
+    public void setClientRateLimiter(RateLimiter clientRateLimiter) {
+        this.clientRateLimiter = clientRateLimiter;
+    }
+
+    public LockoutTable getLockoutTable() {
+        return lockoutTable;
+    }
+
+    /**
+     * Keeps attempt counters and lock flags in {@code lockoutTable} rather than in each
+     * login's SELECT and UPDATE, or {@code null} to use the columns directly. Login then only
+     * reads id and hash (from the {@link UserRecordCache} when one is set, so a blocked
+     * account or a wrong password is refused without a query; a password that matches the
+     * cached hash is confirmed against {@code clave_hash} by primary key before it is
+     * accepted, so a reset elsewhere takes effect at once). Build it with {@link LockoutTable#fromDatabase}
+     * and start its checkpoints; see there for the durability window. Takes precedence over
+     * the {@link LoginMode}.
+     */
+    public void setLockoutTable(LockoutTable lockoutTable) {
+        this.lockoutTable = lockoutTable;
+    }
+
+    public Duration getLockDuration() {
+        return lockDuration;
+    }
+
+    /**
+     * Makes locks expire {@code lockDuration} after they are taken, or {@code null} to keep
+     * them until cleared by hand. Login stores the expiry in {@code bloqueado_hasta} and
+     * treats a lock past it as lifted, with the attempt count starting over; the write that
+     * login makes anyway clears it, so an expired lock costs no extra statement. Locks
+     * without an expiry stay permanent. Applies to the column-based login paths; locks held
+     * by a {@link LockoutTable} do not expire.
+     */
+    public void setLockDuration(Duration lockDuration) {
+        if (lockDuration != null && (lockDuration.isNegative() || lockDuration.isZero())) {
+            throw new IllegalArgumentException("lockDuration must be positive");
+        }
+        this.lockDuration = lockDuration;
+    }
+
+    public UnlockSweeper getUnlockSweeper() {
+        return unlockSweeper;
+    }
+
+    /**
+     * Sweeper told about every timed lock this service takes, so expired locks are cleared
+     * for accounts that never log in again, or {@code null} to leave them for login.
+     */
+    public void setUnlockSweeper(UnlockSweeper unlockSweeper) {
+        this.unlockSweeper = unlockSweeper;
+    }
+
+    public CounterGroupCommit getGroupCommit() {
+        return groupCommit;
+    }
+
+    /**
+     * Sends the attempt-counter writes of {@link LoginMode#SELECT_THEN_UPDATE} logins through
+     * {@code groupCommit}, or {@code null} to write each on the login's own connection. A
+     * login still returns only after its write has committed. Writes that would not change
+     * the row are skipped either way; those sent through the group commit are counted there,
+     * not in {@link #getAccountStateWriter()}.
+     */
+    public void setGroupCommit(CounterGroupCommit groupCommit) {
+        this.groupCommit = groupCommit;
+    }
+
+    public CounterWriteBehind getCounterWriteBehind() {
+        return counterWriteBehind;
+    }
+
+    /**
+     * Buffers the attempt-counter writes of {@link LoginMode#SELECT_THEN_UPDATE} logins in
+     * {@code counterWriteBehind} and lets its background flush write them, or {@code null} to
+     * write each one as it happens. Login applies buffered state over the row it reads, and a
+     * login that locks an account returns only after the lock is written. See
+     * {@link CounterWriteBehind} for the durability window. Takes precedence over
+     * {@link #setGroupCommit}.
+     */
+    public void setCounterWriteBehind(CounterWriteBehind counterWriteBehind) {
+        this.counterWriteBehind = counterWriteBehind;
+    }
+
+    public RecoveryOutbox getRecoveryOutbox() {
+        return recoveryOutbox;
+    }
+
+    /**
+     * Queues recovery emails in {@code recoveryOutbox} on the request's connection and
+     * returns without waiting for the mail server, or {@code null} to send inline. Start the
+     * outbox's dispatcher to deliver them.
+     */
+    public void setRecoveryOutbox(RecoveryOutbox recoveryOutbox) {
+        this.recoveryOutbox = recoveryOutbox;
+    }
+
+    public RecoveryTokenStore getRecoveryTokens() {
+        return recoveryTokens;
+    }
+
+    /**
+     * The store {@link #redeemRecoveryToken} checks tokens against, or {@code null} to accept
+     * none. Tokens are issued by a {@link RecoveryOutbox} built with the same store, as it
+     * sends each recovery email; without an outbox, recovery requests issue none.
+     */
+    public void setRecoveryTokens(RecoveryTokenStore recoveryTokens) {
+        this.recoveryTokens = recoveryTokens;
+    }
+
+    /**
+     * Uses up a recovery token, for the caller to then set the account's new password.
+     *
+     * @return the account's id, or {@code null} if the token is unknown, used or expired (or
+     *         no token store is set)
+     */
+    public Integer redeemRecoveryToken(String token) throws SQLException {
         try (Connection conn = DbConnection.getConnection()) {
-            return loginWithConnection(conn, email, password);
+            return redeemRecoveryTokenWithConnection(conn, token);
+        }
+    }
+
+    // Package-private for testing with an injected Connection
+    Integer redeemRecoveryTokenWithConnection(Connection conn, String token) throws SQLException {
+        RecoveryTokenStore tokens = recoveryTokens;
+        return tokens == null ? null : tokens.consume(conn, token);
+    }
+
+    public SessionTokens getSessionTokens() {
+        return sessionTokens;
+    }
+
+    /**
+     * Issues a signed session token from {@code sessionTokens} with every successful login, in
+     * {@link LoginResult#sessionToken()}, or {@code null} to issue none. Check tokens on later
+     * requests with {@link #verifySessionToken}; that never touches the database.
+     */
+    public void setSessionTokens(SessionTokens sessionTokens) {
+        this.sessionTokens = sessionTokens;
+    }
+
+    /**
+     * The claims of a session token issued by a login.
+     *
+     * @return the claims, or {@code null} if the token is invalid or expired (or no session
+     *         tokens are set)
+     */
+    public SessionTokens.Claims verifySessionToken(String token) {
+        SessionTokens tokens = sessionTokens;
+        return tokens == null ? null : tokens.verify(token);
+    }
+
+    public SessionStore getSessionStore() {
+        return sessionStore;
+    }
+
+    /**
+     * Opens a server-side session in {@code sessionStore} for every successful login, with its
+     * id in {@link LoginResult#sessionId()}, or {@code null} to open none. A login that finds
+     * the account blocked revokes all of that account's sessions. Start the store's expiry
+     * thread to reclaim expired sessions.
+     */
+    public void setSessionStore(SessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+    }
+
+    /**
+     * The user a session opened by a login belongs to.
+     *
+     * @return the user id, or {@link LoginResult#NO_USER} if the session is unknown, expired
+     *         or revoked (or no session store is set)
+     */
+    public int lookupSession(String sessionId) {
+        SessionStore store = sessionStore;
+        return store == null ? LoginResult.NO_USER : store.lookup(sessionId);
+    }
+
+    public RememberMeStore getRememberMe() {
+        return rememberMe;
+    }
+
+    /**
+     * Enables "remember me" logins backed by {@code rememberMe}, or {@code null} to disable
+     * them. An account blocked by failed attempts loses all its tokens.
+     */
+    public void setRememberMe(RememberMeStore rememberMe) {
+        this.rememberMe = rememberMe;
+    }
+
+    /**
+     * Like {@link #authenticate(String, String, String)}, also issuing a "remember me" token
+     * in {@link LoginResult#rememberMeToken()} when the login succeeds and remember-me is set.
+     */
+    public LoginResult authenticateAndRemember(String email, String password, String clientKey) {
+        if (isRateLimited(email, clientKey)) {
+            return LoginResult.RATE_LIMITED;
+        }
+        try (Connection conn = DbConnection.getConnection()) {
+            return remember(conn, authenticateAdmitted(conn, email, password));
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return LoginResult.dbError(ex.getMessage());
+        }
+    }
+
+    // Package-private for testing with an injected Connection
+    LoginResult authenticateAndRememberWithConnection(Connection conn, String email, String password) {
+        return remember(conn, authenticateWithConnection(conn, email, password));
+    }
+
+    private LoginResult remember(Connection conn, LoginResult result) {
+        RememberMeStore store = rememberMe;
+        if (store == null || !result.isSuccess()) {
+            return result;
+        }
+        try {
+            return result.withRememberMeToken(store.issue(conn, result.userId()));
         } catch (SQLException ex) {
+            // The login itself succeeded; the user just is not remembered
             ex.printStackTrace();
-            return "Error de BD: " + ex.getMessage();
+            return result;
         }
     }
 
+    /**
+     * Logs in with a "remember me" token instead of email and password: one indexed lookup,
+     * no password hashing. On success {@link LoginResult#rememberMeToken()} holds the token
+     * that replaces {@code token}, which stops working once the store's grace window ends.
+     */
+    public LoginResult authenticateRemembered(String token) {
+        return authenticateRemembered(token, null);
+    }
+
+    /**
+     * Like {@link #authenticateRemembered(String)}, also charging the attempt to
+     * {@code clientKey} in the client rate limiter ({@code null} skips that limit).
+     */
+    public LoginResult authenticateRemembered(String token, String clientKey) {
+        if (isRateLimited(null, clientKey)) {
+            return LoginResult.RATE_LIMITED;
+        }
+        try (Connection conn = DbConnection.getConnection()) {
+            return authenticateRememberedAdmitted(conn, token);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return LoginResult.dbError(ex.getMessage());
+        }
+    }
+
+    // Package-private for testing with an injected Connection
+    LoginResult authenticateRememberedWithConnection(Connection conn, String token) {
+        return authenticateRememberedWithConnection(conn, token, null);
+    }
+
+    // Package-private for testing with an injected Connection
+    LoginResult authenticateRememberedWithConnection(Connection conn, String token, String clientKey) {
+        if (isRateLimited(null, clientKey)) {
+            return LoginResult.RATE_LIMITED;
+        }
+        return authenticateRememberedAdmitted(conn, token);
+    }
+
+    // The token names no email until it is redeemed, so only the client limit applies
+    private LoginResult authenticateRememberedAdmitted(Connection conn, String token) {
+        RememberMeStore store = rememberMe;
+        if (store == null) {
+            return LoginResult.INVALID_TOKEN;
+        }
+        try {
+            RememberMeStore.Redeemed redeemed = store.redeem(conn, token);
+            if (redeemed == null) {
+                return LoginResult.INVALID_TOKEN;
+            }
+            int id = redeemed.userId();
+            // Locks in the usuarios row are seen by redeem; in-memory ones are checked here
+            LockoutTable lockouts = lockoutTable;
+            if (lockouts != null && lockouts.isBlocked(id)) {
+                store.revokeUser(conn, id);
+                return LoginResult.accountBlocked(id, lockouts.failures(id));
+            }
+            return withSession(conn, LoginResult.success(id)).withRememberMeToken(redeemed.token());
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return LoginResult.dbError(ex.getMessage());
+        }
+    }
+
+    public boolean isLookupCoalescing() {
+        return loginFlights != null;
+    }
+
+    /**
+     * Lets concurrent requests for the same email share one lookup instead of each running
+     * its own, as happens on double submits and aggressive client retries. Covers the row
+     * read of {@link LoginMode#SELECT_THEN_UPDATE} logins and the existence check of
+     * recovery without a {@link UserRecordCache}. Logins that shared a row apply their
+     * counter changes to it one after another, so each failure still counts and a lock taken
+     * by one is seen by the rest. Emails are matched exactly, as the query does.
+     */
+    public void setLookupCoalescing(boolean enabled) {
+        this.loginFlights = enabled ? new SingleFlight<>() : null;
+        this.recoveryFlights = enabled ? new SingleFlight<>() : null;
+    }
+
+    /** Login row lookups, or {@code null} unless {@link #setLookupCoalescing} is on. */
+    public SingleFlight<String, ?> getLoginFlights() {
+        return loginFlights;
+    }
+
+    /** Recovery existence checks, or {@code null} unless {@link #setLookupCoalescing} is on. */
+    public SingleFlight<String, ?> getRecoveryFlights() {
+        return recoveryFlights;
+    }
+
+    // Configure before the first async call; 0 ties the cap to the DB pool's max size
+    public void setAsyncConcurrency(int asyncConcurrency) {
+        if (asyncConcurrency < 0) {
+            throw new IllegalArgumentException("asyncConcurrency must not be negative");
+        }
+        this.asyncConcurrency = asyncConcurrency;
+    }
+
+    /**
+     * Runs {@link #authenticate} on a virtual thread. At most the configured number of
+     * logins (by default the DB pool size) run at once; the rest wait without holding a
+     * platform thread.
+     */
+    public CompletableFuture<LoginResult> loginAsync(String email, String password) {
+        return getAsyncExecutor().submit(() -> authenticate(email, password));
+    }
+
+    /** Runs {@link #requestRecovery} on a virtual thread, like {@link #loginAsync}. */
+    public CompletableFuture<RecoveryResult> recoverPasswordAsync(String email) {
+        return getAsyncExecutor().submit(() -> requestRecovery(email));
+    }
+
+    /** Executor behind the async methods, created on first use. */
+    public VirtualThreadExecutor getAsyncExecutor() {
+        VirtualThreadExecutor executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = asyncExecutor;
+                if (executor == null) {
+                    executor = new VirtualThreadExecutor(asyncConcurrency > 0 ? asyncConcurrency : dbPoolMaxSize());
+                    asyncExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static int dbPoolMaxSize() {
+        try {
+            return DbConnection.currentConfig().poolSettings().maxSize();
+        } catch (SQLException ex) {
+            // Not configured yet; the calls themselves will report the DB error
+            return ConnectionPool.Settings.DEFAULT.maxSize();
+        }
+    }
+
+    public String login(String email, String password) {
+        return AuthMessages.format(authenticate(email, password));
+    }
+
     // Package-private for testing with an injected Connection
     String loginWithConnection(Connection conn, String email, String password) {
+        return AuthMessages.format(authenticateWithConnection(conn, email, password));
+    }
+
+    /** Typed form of {@link #login}; render the result with {@link AuthMessages} if needed. */
+    public LoginResult authenticate(String email, String password) {
+        return authenticate(email, password, null);
+    }
+
+    /**
+     * Like {@link #authenticate(String, String)}, also charging the attempt to
+     * {@code clientKey} in the client rate limiter ({@code null} skips that limit).
+     */
+    public LoginResult authenticate(String email, String password, String clientKey) {
+        if (isRateLimited(email, clientKey)) {
+            return LoginResult.RATE_LIMITED;
+        }
+        try (Connection conn = DbConnection.getConnection()) {
+            return authenticateAdmitted(conn, email, password);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return LoginResult.dbError(ex.getMessage());
+        }
+    }
+
+    // Package-private for testing with an injected Connection
+    LoginResult authenticateWithConnection(Connection conn, String email, String password) {
+        return authenticateWithConnection(conn, email, password, null);
+    }
+
+    // Package-private for testing with an injected Connection
+    LoginResult authenticateWithConnection(Connection conn, String email, String password, String clientKey) {
+        if (isRateLimited(email, clientKey)) {
+            return LoginResult.RATE_LIMITED;
+        }
+        return authenticateAdmitted(conn, email, password);
+    }
+
+    // Login once the rate limiters have let the request through
+    private LoginResult authenticateAdmitted(Connection conn, String email, String password) {
+        return withSession(conn, authenticateUnsigned(conn, email, password));
+    }
+
+    // Issues the configured session credentials on success; a blocked account loses its sessions
+    private LoginResult withSession(Connection conn, LoginResult result) {
+        SessionStore store = sessionStore;
+        if (result.isBlocked()) {
+            if (store != null) {
+                store.revokeUser(result.userId());
+            }
+            if (result.outcome() == LoginResult.Outcome.BLOCKED_NOW) {
+                revokeRememberMe(conn, result.userId());
+            }
+            return result;
+        }
+        if (!result.isSuccess()) {
+            return result;
+        }
+        SessionTokens tokens = sessionTokens;
+        if (tokens != null) {
+            result = result.withSessionToken(tokens.issue(result.userId()));
+        }
+        if (store != null) {
+            result = result.withSessionId(store.create(result.userId()));
+        }
+        return result;
+    }
+
+    private LoginResult authenticateUnsigned(Connection conn, String email, String password) {
         if (!EmailValidator.isValid(email)) {
-            return "Email no válido";
+            return LoginResult.INVALID_EMAIL;
         }
 
         if (!PasswordValidator.isValid(password)) {
-            return "Clave inválida: 5-10 chars, 1 mayúscula, 1 carácter especial";
+            return LoginResult.INVALID_PASSWORD_FORMAT;
+        }
+
+        if (isKnownAbsent(email)) {
+            return LoginResult.USER_NOT_FOUND;
+        }
+
+        LockoutTable lockouts = lockoutTable;
+        if (lockouts != null) {
+            return loginWithLockoutTable(lockouts, conn, email, password);
+        }
+
+        if (loginMode == LoginMode.SINGLE_ROUND_TRIP) {
+            return loginSingleRoundTrip(conn, email, password);
+        }
+
+        SingleFlight<String, SharedLoginRow> flights = loginFlights;
+        if (flights != null) {
+            return loginSharedLookup(flights, conn, email, password);
         }
 
         try {
-            String selectSql = "SELECT id, clave_hash, intentos_fallidos, bloqueado FROM usuarios WHERE email = ?";
+            Duration duration = lockDuration;
+            CounterWriteBehind writeBehind = counterWriteBehind;
+            // Looked up before the row is read: an entry flushed in between is already in the row
+            CounterWriteBehind.Entry pendiente = writeBehind == null ? null : writeBehind.get(email);
+            String selectSql = duration == null
+                    ? "SELECT id, clave_hash, intentos_fallidos, bloqueado FROM usuarios WHERE email = ?"
+                    : "SELECT id, clave_hash, intentos_fallidos, bloqueado, bloqueado_hasta FROM usuarios WHERE email = ?";
             PreparedStatement ps = null;
             ResultSet rs = null;
             SQLException primaryEx = null;
@@ -36,29 +677,47 @@ public class AuthService {
                 ps.setString(1, email);
                 rs = ps.executeQuery();
                 if (!rs.next()) {
-                    return "Usuario no encontrado";
+                    recordFilterMiss();
+                    return LoginResult.USER_NOT_FOUND;
                 }
 
                 int id = rs.getInt("id");
                 String claveBD = rs.getString("clave_hash");
                 int intentosFallidos = rs.getInt("intentos_fallidos");
                 boolean bloqueado = rs.getBoolean("bloqueado");
+                AccountState leido = new AccountState(intentosFallidos, bloqueado,
+                        duration == null ? null : rs.getTimestamp("bloqueado_hasta"));
+                if (pendiente != null && pendiente.userId() == id) {
+                    // Newer than the row
+                    intentosFallidos = pendiente.intentos();
+                    bloqueado = pendiente.bloqueado();
+                    leido = new AccountState(intentosFallidos, bloqueado, pendiente.bloqueadoHasta());
+                }
+                long now = System.currentTimeMillis();
 
                 if (bloqueado) {
-                    return "Cuenta bloqueada por intentos fallidos";
+                    if (!leido.lockExpired(now)) {
+                        return LoginResult.accountBlocked(id, intentosFallidos);
+                    }
+                    // Expired: the count starts over and the write below lifts the lock
+                    intentosFallidos = 0;
                 }
 
-                if (claveBD.equals(password)) {
-                    resetIntentos(conn, id);
-                    return "Login exitoso 🎉";
+                if (verifyPassword(password, claveBD)) {
+                    resetIntentos(conn, id, email, leido);
+                    scheduleRehash(id, email, password, claveBD);
+                    return LoginResult.success(id);
                 } else {
                     intentosFallidos++;
-                    boolean bloquear = intentosFallidos >= 5;
-                    actualizarIntentos(conn, id, intentosFallidos, bloquear);
+                    boolean bloquear = intentosFallidos >= MAX_INTENTOS;
+                    Timestamp hasta = bloquear && duration != null ? new Timestamp(now + duration.toMillis()) : null;
+                    actualizarIntentos(conn, id, email, leido, intentosFallidos, bloquear, hasta);
                     if (bloquear) {
-                        return "Cuenta bloqueada. Excedió los 5 intentos.";
+                        invalidateCachedUser(email);
+                        scheduleUnlock(id, hasta);
+                        return LoginResult.blockedNow(id, intentosFallidos);
                     } else {
-                        return "Clave incorrecta. Intentos: " + intentosFallidos + "/5";
+                        return LoginResult.wrongPassword(id, intentosFallidos);
                     }
                 }
             } catch (SQLException e) {
@@ -96,23 +755,408 @@ public class AuthService {
             }
         } catch (SQLException ex) {
             ex.printStackTrace();
-            return "Error de BD: " + ex.getMessage();
+            return LoginResult.dbError(ex.getMessage());
+        } catch (RejectedExecutionException ex) {
+            return LoginResult.busy(ex.getMessage());
         }
     }
 
-    public String recoverPassword(String email) {
+    // SELECT_THEN_UPDATE with the row read once for every concurrent login of the email
+    private LoginResult loginSharedLookup(SingleFlight<String, SharedLoginRow> flights, Connection conn, String email,
+                                          String password) {
+        try {
+            Duration duration = lockDuration;
+            SharedLoginRow row = flights.execute(email, () -> loadLoginRow(conn, email, duration));
+            if (row == null) {
+                recordFilterMiss();
+                return LoginResult.USER_NOT_FOUND;
+            }
+            long now = System.currentTimeMillis();
+            row.lock.lock();
+            try {
+                if (row.estado.bloqueado() && !row.estado.lockExpired(now)) {
+                    return LoginResult.accountBlocked(row.id, row.estado.intentos());
+                }
+            } finally {
+                row.lock.unlock();
+            }
+
+            // Hashing runs outside the lock; the state is checked again once it is held
+            boolean correct = verifyPassword(password, row.claveHash);
+            row.lock.lock();
+            try {
+                AccountState leido = row.estado;
+                if (leido.bloqueado() && !leido.lockExpired(now)) {
+                    // Locked by a login that shared this row
+                    return LoginResult.accountBlocked(row.id, leido.intentos());
+                }
+                int intentosFallidos = leido.bloqueado() ? 0 : leido.intentos();
+                // Lookups that started before this write must not serve later callers
+                flights.forget(email);
+                if (correct) {
+                    resetIntentos(conn, row.id, email, leido);
+                    row.estado = new AccountState(0, false, null);
+                    scheduleRehash(row.id, email, password, row.claveHash);
+                    return LoginResult.success(row.id);
+                }
+                intentosFallidos++;
+                boolean bloquear = intentosFallidos >= MAX_INTENTOS;
+                Timestamp hasta = bloquear && duration != null ? new Timestamp(now + duration.toMillis()) : null;
+                actualizarIntentos(conn, row.id, email, leido, intentosFallidos, bloquear, hasta);
+                row.estado = new AccountState(intentosFallidos, bloquear, hasta);
+                if (bloquear) {
+                    invalidateCachedUser(email);
+                    scheduleUnlock(row.id, hasta);
+                    return LoginResult.blockedNow(row.id, intentosFallidos);
+                }
+                return LoginResult.wrongPassword(row.id, intentosFallidos);
+            } finally {
+                row.lock.unlock();
+            }
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return LoginResult.dbError(ex.getMessage());
+        } catch (RejectedExecutionException ex) {
+            return LoginResult.busy(ex.getMessage());
+        }
+    }
+
+    private SharedLoginRow loadLoginRow(Connection conn, String email, Duration duration) throws SQLException {
+        CounterWriteBehind writeBehind = counterWriteBehind;
+        CounterWriteBehind.Entry pendiente = writeBehind == null ? null : writeBehind.get(email);
+        String selectSql = duration == null
+                ? "SELECT id, clave_hash, intentos_fallidos, bloqueado FROM usuarios WHERE email = ?"
+                : "SELECT id, clave_hash, intentos_fallidos, bloqueado, bloqueado_hasta FROM usuarios WHERE email = ?";
+        try (PreparedStatement ps = conn.prepareStatement(selectSql)) {
+            ps.setString(1, email);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                int id = rs.getInt("id");
+                AccountState estado = pendiente != null && pendiente.userId() == id
+                        ? new AccountState(pendiente.intentos(), pendiente.bloqueado(), pendiente.bloqueadoHasta())
+                        : new AccountState(rs.getInt("intentos_fallidos"), rs.getBoolean("bloqueado"),
+                                duration == null ? null : rs.getTimestamp("bloqueado_hasta"));
+                return new SharedLoginRow(id, rs.getString("clave_hash"), estado);
+            }
+        }
+    }
+
+    private LoginResult loginSingleRoundTrip(Connection conn, String email, String password) {
+        try {
+            Duration duration = lockDuration;
+            String sql = duration == null
+                    ? (isPostgres(conn) ? ATOMIC_LOGIN_POSTGRES : ATOMIC_LOGIN_H2)
+                    : (isPostgres(conn) ? TIMED_LOGIN_POSTGRES : TIMED_LOGIN_H2);
+            String lockColumns = duration == null ? "bloqueado" : "bloqueado, bloqueado_hasta";
+            UserRecordCache cache = userCache;
+            // A second pass covers a credential that changed between the read and the UPDATE
+            for (int pass = 0; pass < 2; pass++) {
+                String claveBD;
+                long now = System.currentTimeMillis();
+                if (cache != null) {
+                    UserRecordCache.CachedUser user = cache.get(email, () -> loadUserRecord(conn, email));
+                    if (user == null) {
+                        recordFilterMiss();
+                        return LoginResult.USER_NOT_FOUND;
+                    }
+                    claveBD = user.claveHash();
+                } else {
+                    try (PreparedStatement ps = conn.prepareStatement("SELECT id, clave_hash, intentos_fallidos, " + lockColumns + " FROM usuarios WHERE email = ?")) {
+                        ps.setString(1, email);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (!rs.next()) {
+                                recordFilterMiss();
+                                return LoginResult.USER_NOT_FOUND;
+                            }
+                            if (lockHeld(rs, duration, now)) {
+                                return LoginResult.accountBlocked(rs.getInt("id"), rs.getInt("intentos_fallidos"));
+                            }
+                            claveBD = rs.getString("clave_hash");
+                        }
+                    }
+                }
+
+                boolean ok = verifyPassword(password, claveBD);
+                Timestamp hasta = duration == null ? null : new Timestamp(now + duration.toMillis());
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setBoolean(1, ok);
+                    ps.setBoolean(2, ok);
+                    ps.setInt(3, MAX_INTENTOS);
+                    if (duration == null) {
+                        ps.setString(4, email);
+                        ps.setString(5, claveBD);
+                    } else {
+                        ps.setBoolean(4, ok);
+                        ps.setInt(5, MAX_INTENTOS);
+                        ps.setTimestamp(6, hasta);
+                        ps.setString(7, email);
+                        ps.setTimestamp(8, new Timestamp(now));
+                        ps.setString(9, claveBD);
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                            int id = rs.getInt("id");
+                            int intentosFallidos = rs.getInt("intentos_fallidos");
+                            if (ok) {
+                                scheduleRehash(id, email, password, claveBD);
+                                return LoginResult.success(id);
+                            }
+                            if (rs.getBoolean("bloqueado")) {
+                                invalidateCachedUser(email);
+                                scheduleUnlock(id, hasta);
+                                return LoginResult.blockedNow(id, intentosFallidos);
+                            }
+                            return LoginResult.wrongPassword(id, intentosFallidos);
+                        }
+                    }
+                }
+                // No row updated: the account is gone, was blocked, or its credential changed
+                try (PreparedStatement ps = conn.prepareStatement("SELECT id, intentos_fallidos, " + lockColumns + " FROM usuarios WHERE email = ?")) {
+                    ps.setString(1, email);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) {
+                            invalidateCachedUser(email);
+                            return LoginResult.USER_NOT_FOUND;
+                        }
+                        if (lockHeld(rs, duration, now)) {
+                            return LoginResult.accountBlocked(rs.getInt("id"), rs.getInt("intentos_fallidos"));
+                        }
+                    }
+                }
+                invalidateCachedUser(email);
+            }
+            return LoginResult.dbError("Credential changed during login; try again");
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return LoginResult.dbError(ex.getMessage());
+        } catch (RejectedExecutionException ex) {
+            return LoginResult.busy(ex.getMessage());
+        }
+    }
+
+    private LoginResult loginWithLockoutTable(LockoutTable lockouts, Connection conn, String email, String password) {
+        try {
+            UserRecordCache cache = userCache;
+            UserRecordCache.CachedUser user = cache != null
+                    ? cache.get(email, () -> loadUserRecord(conn, email))
+                    : loadUserRecord(conn, email);
+            if (user == null) {
+                recordFilterMiss();
+                return LoginResult.USER_NOT_FOUND;
+            }
+            int id = user.id();
+            if (lockouts.isBlocked(id)) {
+                return LoginResult.accountBlocked(id, lockouts.failures(id));
+            }
+            String claveHash = user.claveHash();
+            boolean matches = verifyPassword(password, claveHash);
+            if (matches && cache != null) {
+                // The cached hash may predate a reset made on another node or in the database;
+                // only a password about to be accepted pays for the check
+                String current = loadClaveHash(conn, id);
+                if (!Objects.equals(claveHash, current)) {
+                    cache.invalidate(email);
+                    if (current == null) {
+                        return LoginResult.USER_NOT_FOUND;
+                    }
+                    claveHash = current;
+                    matches = verifyPassword(password, current);
+                }
+            }
+            if (matches) {
+                LoginResult result = lockouts.recordSuccess(id);
+                if (result.isSuccess()) {
+                    scheduleRehash(id, email, password, claveHash);
+                }
+                return result;
+            }
+            // The cache holds no lock state, so unlike the column path there is nothing to invalidate
+            return lockouts.recordFailure(id);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return LoginResult.dbError(ex.getMessage());
+        } catch (RejectedExecutionException ex) {
+            return LoginResult.busy(ex.getMessage());
+        }
+    }
+
+    private CompletableFuture<Boolean> verifyPasswordAsync(String password, String claveBD) {
+        if (!PasswordHasher.isHashed(claveBD)) {
+            return CompletableFuture.completedFuture(claveBD.equals(password));
+        }
+        return getPasswordVerifier().verifyAsync(password, claveBD);
+    }
+
+    // Never blocks: a full queue drops the upgrade until the account's next login
+    private void scheduleRehash(int userId, String email, String password, String claveBD) {
+        RehashQueue queue = rehashQueue;
+        if (queue != null && queue.needsRehash(claveBD)) {
+            queue.submit(userId, email, password, claveBD, () -> invalidateCachedUser(email));
+        }
+    }
+
+    // Plaintext (pre-migration) values are compared inline; hashes go to the verifier pool
+    private boolean verifyPassword(String password, String claveBD) {
+        if (!PasswordHasher.isHashed(claveBD)) {
+            return claveBD.equals(password);
+        }
+        return getPasswordVerifier().verify(password, claveBD);
+    }
+
+    // The client bucket is charged first so one client spraying many accounts does not drain
+    // the victims' email buckets
+    private boolean isRateLimited(String email, String clientKey) {
+        RateLimiter byClient = clientRateLimiter;
+        if (byClient != null && clientKey != null && !byClient.tryAcquire(clientKey)) {
+            return true;
+        }
+        RateLimiter byEmail = emailRateLimiter;
+        return byEmail != null && email != null && !byEmail.tryAcquire(email);
+    }
+
+    private boolean isKnownAbsent(String email) {
+        EmailBloomFilter filter = emailFilter;
+        return filter != null && !filter.mightContain(email);
+    }
+
+    // The filter let an unknown email through to the database
+    private void recordFilterMiss() {
+        EmailBloomFilter filter = emailFilter;
+        if (filter != null) {
+            filter.recordFalsePositive();
+        }
+    }
+
+    // Reads driver metadata only; neither PostgreSQL nor H2 needs a round trip for this
+    private static boolean isPostgres(Connection conn) throws SQLException {
+        return "PostgreSQL".equals(conn.getMetaData().getDatabaseProductName());
+    }
+
+    /**
+     * Logs in many credentials at once: all referenced accounts are read with one query and
+     * the counter changes are written with one JDBC batch. Results are in input order and
+     * match what calling {@link #authenticate} for each item in turn would return.
+     */
+    public List<LoginResult> authenticateBatch(List<Credentials> batch) {
         try (Connection conn = DbConnection.getConnection()) {
-            return recoverPasswordWithConnection(conn, email);
+            return authenticateBatchWithConnection(conn, batch);
         } catch (SQLException ex) {
             ex.printStackTrace();
-            return "Error de BD: " + ex.getMessage();
+            LoginResult error = LoginResult.dbError(ex.getMessage());
+            List<LoginResult> results = new ArrayList<>(batch.size());
+            for (Credentials c : batch) {
+                if (!EmailValidator.isValid(c.email())) {
+                    results.add(LoginResult.INVALID_EMAIL);
+                } else if (!PasswordValidator.isValid(c.password())) {
+                    results.add(LoginResult.INVALID_PASSWORD_FORMAT);
+                } else {
+                    results.add(error);
+                }
+            }
+            return results;
         }
     }
 
+    // Package-private for testing with an injected Connection
+    List<LoginResult> authenticateBatchWithConnection(Connection conn, List<Credentials> batch) {
+        if (batch.size() == 1) {
+            // A lone login gains nothing from the IN list and transaction; take the normal path
+            Credentials only = batch.get(0);
+            return List.of(authenticateAdmitted(conn, only.email(), only.password()));
+        }
+        if (lockoutTable != null || counterWriteBehind != null) {
+            // Counters live (or are buffered) in memory; the batch statements would bypass them
+            List<LoginResult> results = new ArrayList<>(batch.size());
+            for (Credentials c : batch) {
+                results.add(authenticateAdmitted(conn, c.email(), c.password()));
+            }
+            return results;
+        }
+        Duration duration = lockDuration;
+        long now = System.currentTimeMillis();
+        Timestamp hasta = duration == null ? null : new Timestamp(now + duration.toMillis());
+        PasswordVerifier verifier = passwordVerifier;
+        // Until a verifier is created it will have the default queue, which is no smaller
+        int checks = BatchAuthenticator.checksInFlight(
+                verifier == null ? Integer.MAX_VALUE : verifier.getQueueCapacity());
+        List<LoginResult> results = BatchAuthenticator.authenticate(conn, batch, this::verifyPasswordAsync,
+                checks, new Timestamp(now), hasta);
+        for (int i = 0; i < results.size(); i++) {
+            LoginResult result = results.get(i);
+            if (result.isSuccess() || result.isBlocked()) {
+                results.set(i, withSession(conn, result));
+            }
+            if (result.outcome() == LoginResult.Outcome.BLOCKED_NOW) {
+                invalidateCachedUser(batch.get(i).email());
+                scheduleUnlock(result.userId(), hasta);
+            }
+        }
+        return results;
+    }
+
+    public String recoverPassword(String email) {
+        return AuthMessages.format(requestRecovery(email));
+    }
+
     // Package-private for testing with an injected Connection
     String recoverPasswordWithConnection(Connection conn, String email) {
+        return AuthMessages.format(requestRecoveryWithConnection(conn, email));
+    }
+
+    /** Typed form of {@link #recoverPassword}; render the result with {@link AuthMessages} if needed. */
+    public RecoveryResult requestRecovery(String email) {
+        return requestRecovery(email, null);
+    }
+
+    /**
+     * Like {@link #requestRecovery(String)}, also charging the request to {@code clientKey}
+     * in the client rate limiter ({@code null} skips that limit).
+     */
+    public RecoveryResult requestRecovery(String email, String clientKey) {
+        if (isRateLimited(email, clientKey)) {
+            return RecoveryResult.RATE_LIMITED;
+        }
+        try (Connection conn = DbConnection.getConnection()) {
+            return requestRecoveryAdmitted(conn, email);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return RecoveryResult.dbError(ex.getMessage());
+        }
+    }
+
+    // Package-private for testing with an injected Connection
+    RecoveryResult requestRecoveryWithConnection(Connection conn, String email) {
+        return requestRecoveryWithConnection(conn, email, null);
+    }
+
+    // Package-private for testing with an injected Connection
+    RecoveryResult requestRecoveryWithConnection(Connection conn, String email, String clientKey) {
+        if (isRateLimited(email, clientKey)) {
+            return RecoveryResult.RATE_LIMITED;
+        }
+        return requestRecoveryAdmitted(conn, email);
+    }
+
+    // Recovery once the rate limiters have let the request through
+    private RecoveryResult requestRecoveryAdmitted(Connection conn, String email) {
         if (!EmailValidator.isValid(email)) {
-            return "Ingrese un email válido para recuperar clave";
+            return RecoveryResult.INVALID_EMAIL;
+        }
+
+        if (isKnownAbsent(email)) {
+            return RecoveryResult.USER_NOT_FOUND;
+        }
+
+        UserRecordCache cache = userCache;
+        if (cache != null) {
+            return requestRecoveryCached(cache, conn, email);
+        }
+
+        SingleFlight<String, Integer> flights = recoveryFlights;
+        if (flights != null) {
+            return requestRecoveryShared(flights, conn, email);
         }
 
         try {
@@ -120,13 +1164,16 @@ public class AuthService {
             PreparedStatement ps = null;
             ResultSet rs = null;
             SQLException primaryEx = null;
+            int id;
             try {
                 ps = conn.prepareStatement(sql);
                 ps.setString(1, email);
                 rs = ps.executeQuery();
                 if (!rs.next()) {
-                    return "No existe un usuario con ese email";
+                    recordFilterMiss();
+                    return RecoveryResult.USER_NOT_FOUND;
                 }
+                id = rs.getInt("id");
             } catch (SQLException e) {
                 primaryEx = e;
                 throw e;
@@ -161,33 +1208,170 @@ public class AuthService {
                 }
             }
 
-            enviarEmailRecuperacion(email);
-            return "Se ha enviado un email de recuperación (simulado).";
+            enviarEmailRecuperacion(conn, id, email);
+            return RecoveryResult.emailSent(id);
         } catch (SQLException ex) {
             ex.printStackTrace();
-            return "Error de BD: " + ex.getMessage();
+            return RecoveryResult.dbError(ex.getMessage());
         }
     }
 
-    private void enviarEmailRecuperacion(String email) {
-        System.out.println("Simulando envío de email de recuperación a: " + email);
+    private RecoveryResult requestRecoveryCached(UserRecordCache cache, Connection conn, String email) {
+        try {
+            UserRecordCache.CachedUser user = cache.get(email, () -> loadUserRecord(conn, email));
+            if (user == null) {
+                recordFilterMiss();
+                return RecoveryResult.USER_NOT_FOUND;
+            }
+            enviarEmailRecuperacion(conn, user.id(), email);
+            return RecoveryResult.emailSent(user.id());
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return RecoveryResult.dbError(ex.getMessage());
+        }
     }
 
-    private void resetIntentos(Connection conn, int userId) throws SQLException {
-        String sql = "UPDATE usuarios SET intentos_fallidos = 0, bloqueado = FALSE WHERE id = ?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+    private RecoveryResult requestRecoveryShared(SingleFlight<String, Integer> flights, Connection conn, String email) {
+        try {
+            Integer id = flights.execute(email, () -> loadUserId(conn, email));
+            if (id == null) {
+                recordFilterMiss();
+                return RecoveryResult.USER_NOT_FOUND;
+            }
+            enviarEmailRecuperacion(conn, id, email);
+            return RecoveryResult.emailSent(id);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return RecoveryResult.dbError(ex.getMessage());
+        }
+    }
+
+    private static Integer loadUserId(Connection conn, String email) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM usuarios WHERE email = ?")) {
+            ps.setString(1, email);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt("id") : null;
+            }
+        }
+    }
+
+    private static UserRecordCache.CachedUser loadUserRecord(Connection conn, String email) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id, email, clave_hash FROM usuarios WHERE email = ?")) {
+            ps.setString(1, email);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new UserRecordCache.CachedUser(rs.getInt("id"), rs.getString("email"), rs.getString("clave_hash"));
+            }
+        }
+    }
+
+    private static String loadClaveHash(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT clave_hash FROM usuarios WHERE id = ?")) {
             ps.setInt(1, userId);
-            ps.executeUpdate();
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private void invalidateCachedUser(String email) {
+        UserRecordCache cache = userCache;
+        if (cache != null) {
+            cache.invalidate(email);
+        }
+    }
+
+    private void enviarEmailRecuperacion(Connection conn, int userId, String email) throws SQLException {
+        RecoveryOutbox outbox = recoveryOutbox;
+        if (outbox != null) {
+            // The outbox issues the reset token, if it has a token store, when it sends
+            outbox.enqueue(conn, userId, email);
+            return;
+        }
+        System.out.println("Simulando envío de email de recuperación a: " + email);
+    }
+
+    // Row state as read by login; bloqueadoHasta is only read when locks are timed
+    private record AccountState(int intentos, boolean bloqueado, Timestamp bloqueadoHasta) {
+        boolean lockExpired(long nowMillis) {
+            return bloqueado && bloqueadoHasta != null && bloqueadoHasta.getTime() <= nowMillis;
+        }
+    }
+
+    // A login row shared by the logins of one lookup; they apply their counter changes to
+    // estado in turn, as if each had read the row after the previous one wrote it
+    private static final class SharedLoginRow {
+        final int id;
+        final String claveHash;
+        // Not synchronized, so a virtual thread writing the counter does not pin its carrier
+        final ReentrantLock lock = new ReentrantLock();
+        AccountState estado;
+
+        SharedLoginRow(int id, String claveHash, AccountState estado) {
+            this.id = id;
+            this.claveHash = claveHash;
+            this.estado = estado;
+        }
+    }
+
+    // Called for accounts read as not blocked, or with an expired lock; a row with zero
+    // attempts and no lock needs no write
+    private void resetIntentos(Connection conn, int userId, String email, AccountState leido) throws SQLException {
+        actualizarIntentos(conn, userId, email, leido, 0, false, null);
+    }
+
+    private void actualizarIntentos(Connection conn, int userId, String email, AccountState leido, int intentos,
+                                    boolean bloquear, Timestamp hasta) throws SQLException {
+        AccountStateWriter.Update update = stateWriter.update(conn, userId)
+                .set("intentos_fallidos", leido.intentos(), intentos)
+                .set("bloqueado", leido.bloqueado(), bloquear);
+        boolean timed = lockDuration != null;
+        if (timed) {
+            update.set("bloqueado_hasta", leido.bloqueadoHasta(), hasta);
+        }
+        CounterWriteBehind writeBehind = counterWriteBehind;
+        CounterGroupCommit group = groupCommit;
+        if (update.isNoOp() || (writeBehind == null && group == null)) {
+            update.execute();
+        } else if (writeBehind != null) {
+            writeBehind.record(conn, email, new CounterWriteBehind.Entry(userId, intentos, bloquear, timed, hasta));
+        } else if (timed) {
+            group.write(userId, intentos, bloquear, hasta);
+        } else {
+            group.write(userId, intentos, bloquear);
+        }
+    }
+
+    // Whether the row just read is locked; with timed locks, one past its expiry is not
+    private static boolean lockHeld(ResultSet rs, Duration duration, long nowMillis) throws SQLException {
+        if (!rs.getBoolean("bloqueado")) {
+            return false;
+        }
+        if (duration == null) {
+            return true;
+        }
+        Timestamp hasta = rs.getTimestamp("bloqueado_hasta");
+        return hasta == null || hasta.getTime() > nowMillis;
+    }
+
+    private void revokeRememberMe(Connection conn, int userId) {
+        RememberMeStore store = rememberMe;
+        if (store != null) {
+            try {
+                store.revokeUser(conn, userId);
+            } catch (SQLException ex) {
+                // The block itself is recorded, and redeem refuses tokens of blocked accounts
+                ex.printStackTrace();
+            }
         }
     }
 
-    private void actualizarIntentos(Connection conn, int userId, int intentos, boolean bloquear) throws SQLException {
-        String sql = "UPDATE usuarios SET intentos_fallidos = ?, bloqueado = ? WHERE id = ?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, intentos);
-            ps.setBoolean(2, bloquear);
-            ps.setInt(3, userId);
-            ps.executeUpdate();
+    private void scheduleUnlock(int userId, Timestamp hasta) {
+        UnlockSweeper sweeper = unlockSweeper;
+        if (sweeper != null && hasta != null) {
+            sweeper.schedule(userId, hasta.getTime());
         }
     }
 }
@@ -0,0 +1,284 @@
+package com.auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
+
+/**
+ * Resolves many logins with one SELECT per {@value #MAX_IN_PARAMS} distinct emails and one
+ * JDBC batch of counter updates, instead of a SELECT (and maybe an UPDATE) per login.
+ *
+ * <p>Items are applied in order against an in-memory copy of each row, so repeated emails
+ * in one batch behave exactly as if they had been sent one after another; only each
+ * account's final state is written, and not at all if it did not change. The rows are
+ * read {@code FOR UPDATE} inside one transaction so concurrent logins cannot interleave
+ * with the batch.</p>
+ *
+ * <p>Passwords are checked before that transaction, against hashes read without locks, so
+ * no row stays locked while PBKDF2 runs; only a bounded number of checks is queued at a time,
+ * so a large batch cannot fill the verifier's bounded queue. Under the
+ * locks, a result is used only if {@code clave_hash} is still the value it was checked
+ * against; an item whose row changed in between is checked again there.</p>
+ */
+final class BatchAuthenticator {
+
+    static final int MAX_IN_PARAMS = 1000;
+    // Half the smallest default verifier queue (64 per worker), leaving room for single logins
+    static final int MAX_CHECKS_IN_FLIGHT = 32;
+
+    private static final String UPDATE_SQL = "UPDATE usuarios SET intentos_fallidos = ?, bloqueado = ? WHERE id = ?";
+    private static final String TIMED_UPDATE_SQL =
+            "UPDATE usuarios SET intentos_fallidos = ?, bloqueado = ?, bloqueado_hasta = ? WHERE id = ?";
+
+    private BatchAuthenticator() {
+    }
+
+    // Row state as read, then as modified by the items of the batch
+    private static final class Row {
+        final int id;
+        final String claveHash;
+        final int intentosLeidos;
+        final boolean bloqueadoLeido;
+        final Timestamp hastaLeido;
+        int intentos;
+        boolean bloqueado;
+        Timestamp hasta;
+
+        Row(int id, String claveHash, int intentos, boolean bloqueado, Timestamp hasta) {
+            this.id = id;
+            this.claveHash = claveHash;
+            this.intentosLeidos = intentos;
+            this.bloqueadoLeido = bloqueado;
+            this.hastaLeido = hasta;
+            this.intentos = intentos;
+            this.bloqueado = bloqueado;
+            this.hasta = hasta;
+        }
+
+        boolean changed() {
+            return intentos != intentosLeidos || bloqueado != bloqueadoLeido || !Objects.equals(hasta, hastaLeido);
+        }
+    }
+
+    /**
+     * @param verifier    checks a password against a stored {@code clave_hash}
+     * @param maxChecks   checks started and not yet awaited at any time; see
+     *                    {@link #checksInFlight}
+     * @param now         with {@code lockedUntil}, enables timed locks: a lock whose
+     *                    {@code bloqueado_hasta} is not after {@code now} counts as lifted
+     * @param lockedUntil expiry stored for locks taken by this batch, or {@code null} for
+     *                    permanent locks (and then {@code bloqueado_hasta} is not read)
+     */
+    static List<LoginResult> authenticate(Connection conn, List<Credentials> batch,
+                                          BiFunction<String, String, CompletableFuture<Boolean>> verifier,
+                                          int maxChecks, Timestamp now, Timestamp lockedUntil) {
+        LoginResult[] results = new LoginResult[batch.size()];
+        List<String> emails = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < results.length; i++) {
+            Credentials c = batch.get(i);
+            if (!EmailValidator.isValid(c.email())) {
+                results[i] = LoginResult.INVALID_EMAIL;
+            } else if (!PasswordValidator.isValid(c.password())) {
+                results[i] = LoginResult.INVALID_PASSWORD_FORMAT;
+            } else if (seen.add(c.email())) {
+                emails.add(c.email());
+            }
+        }
+        if (emails.isEmpty()) {
+            return Arrays.asList(results);
+        }
+
+        Timestamp lockNow = lockedUntil == null ? null : now;
+        try {
+            // The hashes each item was checked against, and the outcomes
+            String[] checkedHashes = new String[results.length];
+            boolean[] matches = new boolean[results.length];
+            checkAll(batch, results, fetchRows(conn, emails, lockNow, false), verifier, maxChecks, checkedHashes, matches);
+
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                Map<String, Row> rows = fetchRows(conn, emails, lockNow, true);
+                Map<Integer, Row> touched = new LinkedHashMap<>();
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i] == null) {
+                        Credentials c = batch.get(i);
+                        Row row = rows.get(c.email());
+                        boolean passwordMatches = false;
+                        if (row != null && !row.bloqueado) {
+                            // A row changed since the unlocked read (new password, rehash, unlock) is checked again
+                            passwordMatches = row.claveHash != null && row.claveHash.equals(checkedHashes[i])
+                                    ? matches[i]
+                                    : PasswordVerifier.await(verifier.apply(c.password(), row.claveHash));
+                        }
+                        results[i] = apply(row, passwordMatches, lockedUntil, touched);
+                    }
+                }
+                writeChanges(conn, touched, lockedUntil != null);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException | RejectedExecutionException ex) {
+            LoginResult error;
+            if (ex instanceof RejectedExecutionException) {
+                // Backpressure from the verifier, not a database failure
+                error = LoginResult.busy(ex.getMessage());
+            } else {
+                ex.printStackTrace();
+                error = LoginResult.dbError(ex.getMessage());
+            }
+            // The transaction was rolled back, so every item that reached the database failed
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] != LoginResult.INVALID_EMAIL && results[i] != LoginResult.INVALID_PASSWORD_FORMAT) {
+                    results[i] = error;
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /** Half of a verifier queue of {@code queueCapacity}, at most {@value #MAX_CHECKS_IN_FLIGHT}. */
+    static int checksInFlight(int queueCapacity) {
+        return Math.max(1, Math.min(MAX_CHECKS_IN_FLIGHT, queueCapacity / 2));
+    }
+
+    // Checks each pending item against its unlocked row, keeping at most maxChecks queued;
+    // accounts blocked on read stay blocked for the whole batch, so they are not hashed
+    private static void checkAll(List<Credentials> batch, LoginResult[] results, Map<String, Row> rows,
+                                 BiFunction<String, String, CompletableFuture<Boolean>> verifier,
+                                 int maxChecks, String[] checkedHashes, boolean[] matches) {
+        List<CompletableFuture<Boolean>> checks = new ArrayList<>(Collections.nCopies(results.length, null));
+        int oldest = 0;
+        int inFlight = 0;
+        for (int i = 0; i < results.length; i++) {
+            Row row = results[i] == null ? rows.get(batch.get(i).email()) : null;
+            if (row == null || row.bloqueado) {
+                continue;
+            }
+            for (; inFlight >= maxChecks; oldest++) {
+                CompletableFuture<Boolean> check = checks.get(oldest);
+                if (check != null) {
+                    matches[oldest] = PasswordVerifier.await(check);
+                    inFlight--;
+                }
+            }
+            checkedHashes[i] = row.claveHash;
+            checks.set(i, verifier.apply(batch.get(i).password(), row.claveHash));
+            inFlight++;
+        }
+        for (; oldest < results.length; oldest++) {
+            CompletableFuture<Boolean> check = checks.get(oldest);
+            if (check != null) {
+                matches[oldest] = PasswordVerifier.await(check);
+            }
+        }
+    }
+
+    // Same rules as AuthService.authenticateWithConnection, applied to the in-memory row
+    private static LoginResult apply(Row row, boolean passwordMatches, Timestamp lockedUntil, Map<Integer, Row> touched) {
+        if (row == null) {
+            return LoginResult.USER_NOT_FOUND;
+        }
+        if (row.bloqueado) {
+            return LoginResult.accountBlocked(row.id, row.intentos);
+        }
+        touched.put(row.id, row);
+        if (passwordMatches) {
+            row.intentos = 0;
+            return LoginResult.success(row.id);
+        }
+        row.intentos++;
+        if (row.intentos >= LoginResult.MAX_FAILED_ATTEMPTS) {
+            row.bloqueado = true;
+            row.hasta = lockedUntil;
+            return LoginResult.blockedNow(row.id, row.intentos);
+        }
+        return LoginResult.wrongPassword(row.id, row.intentos);
+    }
+
+    // A non-null now also reads bloqueado_hasta and lifts locks that expired by then
+    private static Map<String, Row> fetchRows(Connection conn, List<String> emails, Timestamp now, boolean forUpdate)
+            throws SQLException {
+        Map<String, Row> rows = new HashMap<>(emails.size() * 2);
+        for (int from = 0; from < emails.size(); from += MAX_IN_PARAMS) {
+            List<String> chunk = emails.subList(from, Math.min(emails.size(), from + MAX_IN_PARAMS));
+            StringBuilder sql = new StringBuilder(
+                    now == null
+                            ? "SELECT id, email, clave_hash, intentos_fallidos, bloqueado FROM usuarios WHERE email IN ("
+                            : "SELECT id, email, clave_hash, intentos_fallidos, bloqueado, bloqueado_hasta FROM usuarios WHERE email IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(forUpdate ? ") FOR UPDATE" : ")");
+            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Row row = new Row(rs.getInt("id"), rs.getString("clave_hash"), rs.getInt("intentos_fallidos"),
+                                rs.getBoolean("bloqueado"), now == null ? null : rs.getTimestamp("bloqueado_hasta"));
+                        if (row.bloqueado && row.hasta != null && !row.hasta.after(now)) {
+                            // Expired: starts over unlocked, and the batch's write for the row lifts the lock
+                            row.intentos = 0;
+                            row.bloqueado = false;
+                            row.hasta = null;
+                        }
+                        rows.put(rs.getString("email"), row);
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void writeChanges(Connection conn, Map<Integer, Row> touched, boolean timed) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            for (Row row : touched.values()) {
+                if (!row.changed()) {
+                    continue;
+                }
+                if (ps == null) {
+                    ps = conn.prepareStatement(timed ? TIMED_UPDATE_SQL : UPDATE_SQL);
+                }
+                ps.setInt(1, row.intentos);
+                ps.setBoolean(2, row.bloqueado);
+                if (timed) {
+                    ps.setTimestamp(3, row.hasta);
+                    ps.setInt(4, row.id);
+                } else {
+                    ps.setInt(3, row.id);
+                }
+                ps.addBatch();
+            }
+            if (ps != null) {
+                ps.executeBatch();
+            }
+        } finally {
+            if (ps != null) {
+                ps.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.auth;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link RateLimiter} for one node of a cluster: requests are decided against local buckets
+ * with no remote call, and every {@code syncIntervalMillis} the tokens taken here are
+ * charged to a shared {@link RateLimitStore} and the buckets are brought up to the
+ * cluster-wide state.
+ *
+ * <p>Between syncs each node only sees its own consumption, so a key attacked through
+ * {@code N} nodes can get up to about {@code (N - 1) * (capacity + refillPerSecond *
+ * syncInterval)} more tokens than the limit allows. The overshoot is charged to the shared
+ * bucket, so the key then stays refused for correspondingly longer and the long-run rate
+ * holds. Nodes' wall clocks are assumed to agree to well within the sync interval.</p>
+ */
+public class ClusterRateLimiter extends RateLimiter implements AutoCloseable {
+
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 1_000;
+
+    private final String name;
+    private final RateLimitStore store;
+    private final LongSupplier wallClock;
+    // Tokens taken on this node since the last sync
+    private final ConcurrentHashMap<String, Integer> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder syncFailures = new LongAdder();
+
+    /**
+     * @param name names this limiter in the store, e.g. {@code "login-email"}; must be the
+     *             same, with the same capacity and rate, on every node
+     */
+    public ClusterRateLimiter(String name, int capacity, double refillPerSecond, int maximumKeys,
+                              RateLimitStore store, long syncIntervalMillis) {
+        this(name, capacity, refillPerSecond, maximumKeys, store, syncIntervalMillis,
+                System::nanoTime, System::currentTimeMillis);
+    }
+
+    // Package-private so tests can drive time; a sync interval of 0 leaves syncing to the caller
+    ClusterRateLimiter(String name, int capacity, double refillPerSecond, int maximumKeys, RateLimitStore store,
+                       long syncIntervalMillis, LongSupplier nanoClock, LongSupplier wallClock) {
+        super(capacity, refillPerSecond, maximumKeys, nanoClock);
+        if (syncIntervalMillis < 0) {
+            throw new IllegalArgumentException("syncIntervalMillis must not be negative");
+        }
+        this.name = name;
+        this.store = store;
+        this.wallClock = wallClock;
+        if (syncIntervalMillis == 0) {
+            this.scheduler = null;
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rate-limit-sync-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (SQLException | RuntimeException e) {
+                // Counted by sync(); the charges are retried on the next run
+                e.printStackTrace();
+            }
+        }, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean tryAcquire(String key) {
+        if (!super.tryAcquire(key)) {
+            return false;
+        }
+        // Bounded like the buckets; consumption past the bound is simply not shared
+        if (pending.size() < getMaximumKeys() || pending.containsKey(key)) {
+            pending.merge(key, 1, Integer::sum);
+        }
+        return true;
+    }
+
+    /** Charges this node's consumption to the store and applies the cluster-wide state. */
+    public void sync() throws SQLException {
+        Map<String, Integer> drained = new HashMap<>();
+        Map<String, Long> charges = new HashMap<>();
+        long interval = intervalNanos();
+        for (String key : pending.keySet()) {
+            Integer taken = pending.remove(key);
+            if (taken != null) {
+                drained.put(key, taken);
+                charges.put(key, (taken * interval + 999_999) / 1_000_000);
+            }
+        }
+        long nowMillis = wallClock.getAsLong();
+        long nowNanos = nanoTime();
+        Map<String, Long> cluster;
+        try {
+            cluster = store.reconcile(name, charges, nowMillis, getMaximumKeys());
+        } catch (SQLException | RuntimeException e) {
+            drained.forEach((key, taken) -> pending.merge(key, taken, Integer::sum));
+            syncFailures.increment();
+            throw e;
+        }
+        cluster.forEach((key, fullAtMillis) ->
+                advanceTo(key, nowNanos + TimeUnit.MILLISECONDS.toNanos(fullAtMillis - nowMillis)));
+        syncs.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSyncs() {
+        return syncs.sum();
+    }
+
+    public long getSyncFailures() {
+        return syncFailures.sum();
+    }
+
+    /** Stops periodic syncing; tokens taken since the last sync are not shared. */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
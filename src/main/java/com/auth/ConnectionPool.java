@@ -0,0 +1,331 @@
+package com.auth;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bounded JDBC connection pool used by {@link DbConnection}.
+ *
+ * <p>Connections handed out by {@link #borrow()} are proxies: calling {@code close()} on them
+ * returns the physical connection to the pool instead of closing it. Idle connections are
+ * validated on borrow, evicted after {@code idleTimeoutMillis} (never below {@code minSize})
+ * and retired once they exceed {@code maxLifetimeMillis}. Each physical connection keeps a
+ * {@link StatementCache} so {@code prepareStatement(sql)} reuses statements across borrows.
+ * The physical connection is never handed out: {@code unwrap(Connection.class)} and
+ * {@code getConnection()} on statements and metadata return the proxy, so closing what they
+ * return gives the connection back rather than closing it under the pool.</p>
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    /** Opens a new physical connection. */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * Pool sizing and timing settings. A value of {@code 0} for the idle timeout or the max
+     * lifetime disables that check. Connections returned to the pool less than
+     * {@code validationIntervalMillis} ago are handed out without a validation round trip.
+     * {@code statementCacheSize} bounds the prepared statements cached per connection
+     * ({@code 0} disables the cache).
+     */
+    public record Settings(int minSize, int maxSize, long borrowTimeoutMillis, long idleTimeoutMillis,
+                           long maxLifetimeMillis, long validationIntervalMillis, int statementCacheSize) {
+
+        public static final Settings DEFAULT = new Settings(0, 10, 30_000, 600_000, 1_800_000, 500, 16);
+
+        public Settings {
+            if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+                throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+            }
+            if (borrowTimeoutMillis < 0 || idleTimeoutMillis < 0 || maxLifetimeMillis < 0 || validationIntervalMillis < 0) {
+                throw new IllegalArgumentException("Pool timeouts must not be negative");
+            }
+            if (statementCacheSize < 0) {
+                throw new IllegalArgumentException("Statement cache size must not be negative");
+            }
+        }
+    }
+
+    // Seconds passed to Connection.isValid when validating an idle connection on borrow
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final ConnectionFactory factory;
+    private final Settings settings;
+    // LIFO so the most recently used (warmest) connection is handed out first
+    private final LinkedBlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger total = new AtomicInteger();
+    private final StatementCache.Stats statementStats = new StatementCache.Stats();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(ConnectionFactory factory, Settings settings) {
+        this.factory = factory;
+        this.settings = settings;
+        this.permits = new Semaphore(settings.maxSize(), true);
+        long period = housekeepingPeriodMillis(settings);
+        if (period > 0) {
+            this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "db-pool-housekeeper");
+                t.setDaemon(true);
+                return t;
+            });
+            this.housekeeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            this.housekeeper = null;
+        }
+    }
+
+    private static long housekeepingPeriodMillis(Settings s) {
+        long shortest = 0;
+        if (s.idleTimeoutMillis() > 0) shortest = s.idleTimeoutMillis();
+        if (s.maxLifetimeMillis() > 0 && (shortest == 0 || s.maxLifetimeMillis() < shortest)) {
+            shortest = s.maxLifetimeMillis();
+        }
+        if (shortest == 0) return 0;
+        return Math.max(1_000, Math.min(30_000, shortest / 2));
+    }
+
+    /**
+     * Borrows a connection, waiting up to the configured borrow timeout when the pool is
+     * exhausted. Closing the returned connection gives it back to the pool.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(settings.borrowTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        }
+        if (!acquired) {
+            throw new SQLException("Timed out after " + settings.borrowTimeoutMillis()
+                    + " ms waiting for a pooled connection (max " + settings.maxSize() + ")");
+        }
+        try {
+            PooledEntry entry;
+            while ((entry = idle.pollFirst()) != null) {
+                if (isUsable(entry)) {
+                    return entry.lease();
+                }
+                discard(entry);
+            }
+            Connection physical = factory.open();
+            total.incrementAndGet();
+            return new PooledEntry(physical).lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private boolean isUsable(PooledEntry entry) {
+        long now = System.currentTimeMillis();
+        if (isExpired(entry, now)) {
+            return false;
+        }
+        if (now - entry.lastReturnedAt < settings.validationIntervalMillis()) {
+            return true;
+        }
+        try {
+            return entry.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(PooledEntry entry, long now) {
+        return settings.maxLifetimeMillis() > 0 && now - entry.createdAt >= settings.maxLifetimeMillis();
+    }
+
+    private void giveBack(PooledEntry entry) {
+        try {
+            boolean reusable = !closed && !isExpired(entry, System.currentTimeMillis()) && resetState(entry.physical);
+            if (reusable) {
+                entry.lastReturnedAt = System.currentTimeMillis();
+                idle.offerFirst(entry);
+            } else {
+                discard(entry);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Undo per-borrower state so the next borrower sees a fresh connection
+    private static boolean resetState(Connection physical) {
+        try {
+            if (physical.isClosed()) {
+                return false;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            physical.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledEntry entry) {
+        total.decrementAndGet();
+        if (entry.statements != null) {
+            entry.statements.close();
+        }
+        try {
+            entry.physical.close();
+        } catch (SQLException e) {
+            // Nothing useful to do; the connection is being thrown away anyway
+        }
+    }
+
+    // Package-private so tests can trigger eviction deterministically
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledEntry> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            PooledEntry entry = it.next();
+            boolean idleTooLong = settings.idleTimeoutMillis() > 0
+                    && now - entry.lastReturnedAt >= settings.idleTimeoutMillis()
+                    && total.get() > settings.minSize();
+            if ((idleTooLong || isExpired(entry, now)) && idle.remove(entry)) {
+                discard(entry);
+            }
+        }
+    }
+
+    /** Number of physical connections currently open (idle or in use). */
+    public int getTotalConnections() {
+        return total.get();
+    }
+
+    /** Number of physical connections sitting idle in the pool. */
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    /** Number of connections currently borrowed. */
+    public int getActiveConnections() {
+        return settings.maxSize() - permits.availablePermits();
+    }
+
+    /** Statement cache hit/miss/eviction counters across all connections of this pool. */
+    public StatementCache.Stats getStatementCacheStats() {
+        return statementStats;
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Closes all idle connections and stops handing out new ones. Connections still borrowed
+     * are closed when their borrower returns them.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+        }
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            discard(entry);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private final class PooledEntry {
+        final Connection physical;
+        final StatementCache statements;
+        final long createdAt = System.currentTimeMillis();
+        volatile long lastReturnedAt = createdAt;
+
+        PooledEntry(Connection physical) {
+            this.physical = physical;
+            this.statements = settings.statementCacheSize() > 0
+                    ? new StatementCache(physical, settings.statementCacheSize(), statementStats)
+                    : null;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] {Connection.class},
+                    new LeaseHandler(this));
+        }
+    }
+
+    // Routes every call to the physical connection except close(), which returns it to the pool,
+    // prepareStatement(sql), which goes through the connection's statement cache, and whatever
+    // would expose the physical connection itself
+    private final class LeaseHandler implements InvocationHandler {
+        // Cleared exactly once on close(); no monitor is held across the JDBC calls in giveBack,
+        // so returning a connection never pins a virtual thread
+        private final AtomicReference<PooledEntry> entry;
+
+        LeaseHandler(PooledEntry entry) {
+            this.entry = new AtomicReference<>(entry);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    PooledEntry returning = entry.getAndSet(null);
+                    if (returning != null) {
+                        giveBack(returning);
+                    }
+                    return null;
+                case "isClosed":
+                    PooledEntry leased = entry.get();
+                    return leased == null || leased.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection@" + Integer.toHexString(System.identityHashCode(proxy));
+                default:
+                    break;
+            }
+            PooledEntry current = entry.get();
+            if (current == null) {
+                throw new SQLException("Connection is closed");
+            }
+            if (current.statements != null && StatementCache.isPrepareBySql(method, args)) {
+                return current.statements.prepare((String) args[0], (Connection) proxy);
+            }
+            if (StatementCache.isUnwrapToProxy(proxy, method, args)) {
+                return proxy;
+            }
+            try {
+                return StatementCache.ownedBy(method, method.invoke(current.physical, args), (Connection) proxy);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
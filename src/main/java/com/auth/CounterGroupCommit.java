@@ -0,0 +1,317 @@
+package com.auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit for attempt-counter writes: transitions from concurrent logins are collected
+ * for up to {@code windowMicros} after the first one arrives (or until {@code maxBatchSize}
+ * are waiting), written as one multi-row UPDATE in one transaction, and only then returned to
+ * their callers. Each caller still returns after its write is durable, but the database
+ * commits (and on PostgreSQL fsyncs) once per batch instead of once per login.
+ *
+ * <p>With a window of 0 there is no deliberate wait: whatever queued up while the previous
+ * batch was committing goes out together. A longer window makes bigger batches at the cost
+ * of that much extra latency per login. If several transitions for one account land in one
+ * batch, the last to arrive is written, as with separate UPDATEs in that order. If the
+ * transaction fails, every caller in the batch gets the error.</p>
+ *
+ * <p>Callers wait while holding their own connections, so the writer must not borrow from
+ * the same pool: with more logins waiting than the pool has connections it could never get
+ * one. It opens one connection from {@code connections} and keeps it for every batch,
+ * opening a new one only after a failure; pass a factory outside the request pool, such as
+ * {@link DbConnection#openDedicated}.</p>
+ */
+public class CounterGroupCommit implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    private final ConnectionPool.ConnectionFactory connections;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    // Only touched by the writer thread; null until the first batch and after a failure
+    private Connection conn;
+    // batchSizes[n] counts transactions that carried n transitions
+    private final LongAdder[] batchSizes;
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+    private final LatencyHistogram commitTimes = new LatencyHistogram();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder batchFailures = new LongAdder();
+
+    private static final class Pending {
+        final int userId;
+        final int intentos;
+        final boolean bloqueado;
+        // Whether bloqueado_hasta is written too; see AuthService.setLockDuration
+        final boolean timed;
+        final Timestamp bloqueadoHasta;
+        final long enqueuedNanos = System.nanoTime();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(int userId, int intentos, boolean bloqueado, boolean timed, Timestamp bloqueadoHasta) {
+            this.userId = userId;
+            this.intentos = intentos;
+            this.bloqueado = bloqueado;
+            this.timed = timed;
+            this.bloqueadoHasta = bloqueadoHasta;
+        }
+    }
+
+    /** Typically {@code new CounterGroupCommit(DbConnection::openDedicated, 0, DEFAULT_MAX_BATCH_SIZE)}. */
+    public CounterGroupCommit(ConnectionPool.ConnectionFactory connections, long windowMicros, int maxBatchSize) {
+        if (windowMicros < 0) {
+            throw new IllegalArgumentException("windowMicros must not be negative");
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.connections = connections;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = maxBatchSize;
+        this.batchSizes = new LongAdder[maxBatchSize + 1];
+        for (int i = 0; i < batchSizes.length; i++) {
+            batchSizes[i] = new LongAdder();
+        }
+        this.writer = new Thread(this::run, "counter-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /** Sets {@code intentos_fallidos} and {@code bloqueado}; returns once committed. */
+    public void write(int userId, int intentos, boolean bloqueado) throws SQLException {
+        submit(new Pending(userId, intentos, bloqueado, false, null));
+    }
+
+    /** Also sets {@code bloqueado_hasta} ({@code null} for none); returns once committed. */
+    public void write(int userId, int intentos, boolean bloqueado, Timestamp bloqueadoHasta) throws SQLException {
+        submit(new Pending(userId, intentos, bloqueado, true, bloqueadoHasta));
+    }
+
+    private void submit(Pending p) throws SQLException {
+        if (closed) {
+            throw new SQLException("Group commit is closed");
+        }
+        queue.add(p);
+        // close() may have drained the queue already; otherwise the writer or close() completes p
+        if (closed && queue.remove(p)) {
+            throw new SQLException("Group commit is closed");
+        }
+        try {
+            p.done.get();
+        } catch (ExecutionException e) {
+            throw new SQLException(e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for group commit", e);
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = first.enqueuedNanos + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    Pending next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Only close() interrupts, and the loop drains what is left first
+                Thread.currentThread().interrupt();
+                fail(batch, new SQLException("Group commit is closed", e));
+                discardConnection();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+        discardConnection();
+    }
+
+    private void flush(List<Pending> batch) {
+        long start = System.nanoTime();
+        // Last transition per account, in id order so concurrent batches lock rows in the same order
+        Map<Integer, Pending> plain = new TreeMap<>();
+        Map<Integer, Pending> timed = new TreeMap<>();
+        for (Pending p : batch) {
+            (p.timed ? timed : plain).put(p.userId, p);
+        }
+        try {
+            if (conn == null) {
+                conn = connections.open();
+                conn.setAutoCommit(false);
+            }
+            try {
+                update(conn, plain, false);
+                update(conn, timed, true);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            batchFailures.increment();
+            // The connection may be what failed; the next batch opens a fresh one
+            discardConnection();
+            fail(batch, e);
+            return;
+        }
+        long end = System.nanoTime();
+        commitTimes.recordNanos(end - start);
+        batchSizes[batch.size()].increment();
+        rowsWritten.add(plain.size() + timed.size());
+        for (Pending p : batch) {
+            waitTimes.recordNanos(end - p.enqueuedNanos);
+            p.done.complete(null);
+        }
+    }
+
+    private void discardConnection() {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+                // Already broken; nothing more to release
+            }
+            conn = null;
+        }
+    }
+
+    private static void fail(List<Pending> batch, Exception e) {
+        for (Pending p : batch) {
+            p.done.completeExceptionally(e);
+        }
+    }
+
+    private static void update(Connection conn, Map<Integer, Pending> rows, boolean timed) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < rows.size(); i++) {
+            values.append(i == 0 ? "(" : ", (").append("CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS BOOLEAN)");
+            values.append(timed ? ", CAST(? AS TIMESTAMP))" : ")");
+        }
+        String columns = timed ? "v(id, intentos, bloqueado, hasta)" : "v(id, intentos, bloqueado)";
+        String set = "intentos_fallidos = v.intentos, bloqueado = v.bloqueado"
+                + (timed ? ", bloqueado_hasta = v.hasta" : "");
+        // PostgreSQL before 15 has no MERGE; H2 has no UPDATE ... FROM
+        String sql = isPostgres(conn)
+                ? "UPDATE usuarios AS u SET " + set + " FROM (VALUES " + values + ") AS " + columns + " WHERE u.id = v.id"
+                : "MERGE INTO usuarios u USING (VALUES " + values + ") AS " + columns
+                  + " ON u.id = v.id WHEN MATCHED THEN UPDATE SET " + set;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (Pending p : rows.values()) {
+                ps.setInt(index++, p.userId);
+                ps.setInt(index++, p.intentos);
+                ps.setBoolean(index++, p.bloqueado);
+                if (timed) {
+                    ps.setTimestamp(index++, p.bloqueadoHasta);
+                }
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    private static boolean isPostgres(Connection conn) throws SQLException {
+        return "PostgreSQL".equals(conn.getMetaData().getDatabaseProductName());
+    }
+
+    public long getWindowMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(windowNanos);
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /** Transitions waiting for the writer. */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /** Committed transactions by number of transitions carried; index 0 is unused. */
+    public long[] getBatchSizeCounts() {
+        long[] counts = new long[batchSizes.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = batchSizes[i].sum();
+        }
+        return counts;
+    }
+
+    /** Mean transitions per committed transaction. */
+    public double getMeanBatchSize() {
+        long batches = 0;
+        long transitions = 0;
+        for (int i = 1; i < batchSizes.length; i++) {
+            long n = batchSizes[i].sum();
+            batches += n;
+            transitions += n * i;
+        }
+        return batches == 0 ? 0 : (double) transitions / batches;
+    }
+
+    /** Time from a caller handing over its transition to the commit that carried it. */
+    public LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    /** Time to write and commit one batch. */
+    public LatencyHistogram getCommitTimes() {
+        return commitTimes;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    public long getBatchFailures() {
+        return batchFailures.sum();
+    }
+
+    /** Writes what is queued, then stops the writer; later writes fail. */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            writer.interrupt();
+        }
+        for (Pending p; (p = queue.poll()) != null; ) {
+            p.done.completeExceptionally(new SQLException("Group commit is closed"));
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for attempt counters: login records each account's new state here
+ * instead of updating {@code usuarios}, repeated changes to one account collapse into its
+ * latest state, and a background thread writes the buffer in one JDBC batch and transaction
+ * every {@code flushIntervalMillis}.
+ *
+ * <p>Unlike {@link LockoutTable}, the database stays the source of truth for reads; only
+ * writes not yet flushed are held, and login lays them over the row it reads. Locks are
+ * never deferred: the login that takes one writes that row on its own connection before it
+ * returns, and borrows nothing more. The background flush keeps one connection of its own
+ * from {@code connections}, opening another only after a failure, so pass a factory outside
+ * the request pool such as {@link DbConnection#openDedicated}. Durability window:
+ * counter changes made less than one flush interval before a crash are lost, so an attacker
+ * can regain up to that many failures, never a lock. This process should be the only one
+ * changing the counters of the accounts it logs in.</p>
+ */
+public class CounterWriteBehind implements AutoCloseable {
+
+    private static final String UPDATE_SQL =
+            "UPDATE usuarios SET intentos_fallidos = ?, bloqueado = ? WHERE id = ?";
+    private static final String TIMED_UPDATE_SQL =
+            "UPDATE usuarios SET intentos_fallidos = ?, bloqueado = ?, bloqueado_hasta = ? WHERE id = ?";
+
+    /**
+     * Latest unflushed state of one account. {@code timed} entries also write
+     * {@code bloqueado_hasta}; see {@link AuthService#setLockDuration}.
+     */
+    record Entry(int userId, int intentos, boolean bloqueado, boolean timed, Timestamp bloqueadoHasta) {
+    }
+
+    private final ConnectionPool.ConnectionFactory connections;
+    // Keyed by email so login can look an account up before reading its row
+    private final ConcurrentHashMap<String, Entry> pending = new ConcurrentHashMap<>();
+    // Held while writing; also orders a lock's write after any flush that read an older entry
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Guarded by flushLock; null until the first flush and after a failure
+    private Connection conn;
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder lockWrites = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    /**
+     * @param flushIntervalMillis the durability window; 0 leaves flushing to the caller and to
+     *                            lock transitions
+     */
+    public CounterWriteBehind(ConnectionPool.ConnectionFactory connections, long flushIntervalMillis) {
+        if (flushIntervalMillis < 0) {
+            throw new IllegalArgumentException("flushIntervalMillis must not be negative");
+        }
+        this.connections = connections;
+        if (flushIntervalMillis == 0) {
+            this.scheduler = null;
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "counter-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /** The unflushed state of {@code email}'s account, or {@code null} if the row is current. */
+    Entry get(String email) {
+        return pending.get(email);
+    }
+
+    /**
+     * Records an account's new state, replacing any unflushed one. A lock is written on
+     * {@code login}, the caller's connection, before this returns; if that fails it stays
+     * pending for the next flush.
+     */
+    void record(Connection login, String email, Entry entry) throws SQLException {
+        recorded.increment();
+        if (pending.put(email, entry) != null) {
+            coalesced.increment();
+        }
+        if (!entry.bloqueado()) {
+            return;
+        }
+        lockWrites.increment();
+        flushLock.lock();
+        try {
+            // Only this row: the rest of the buffer is the background flush's
+            executeBatch(login, List.of(entry), entry.timed());
+            pending.remove(email, entry);
+            rowsWritten.increment();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes every unflushed entry. Entries changed again while the batch was being written
+     * stay for the next flush.
+     *
+     * @return rows written
+     */
+    public int flush() throws SQLException {
+        flushLock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return 0;
+            }
+            List<Map.Entry<String, Entry>> batch = new ArrayList<>(pending.entrySet().size());
+            for (Map.Entry<String, Entry> e : pending.entrySet()) {
+                batch.add(Map.entry(e.getKey(), e.getValue()));
+            }
+            // Id order, so concurrent writers lock rows in the same order
+            batch.sort(Comparator.comparingInt(e -> e.getValue().userId()));
+            try {
+                if (conn == null) {
+                    conn = connections.open();
+                }
+                write(conn, batch);
+            } catch (SQLException | RuntimeException e) {
+                flushFailures.increment();
+                // The connection may be what failed; the next flush opens a fresh one
+                discardConnection();
+                throw e;
+            }
+            // Only after the commit, so a login that finds no entry reads a row that has it
+            for (Map.Entry<String, Entry> e : batch) {
+                pending.remove(e.getKey(), e.getValue());
+            }
+            flushes.increment();
+            rowsWritten.add(batch.size());
+            return batch.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void discardConnection() {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+                // Already broken; nothing more to release
+            }
+            conn = null;
+        }
+    }
+
+    private static void write(Connection conn, List<Map.Entry<String, Entry>> batch) throws SQLException {
+        List<Entry> plain = new ArrayList<>();
+        List<Entry> timed = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : batch) {
+            (e.getValue().timed() ? timed : plain).add(e.getValue());
+        }
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            executeBatch(conn, plain, false);
+            executeBatch(conn, timed, true);
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Prepared only when needed, so tables without bloqueado_hasta work while locks are untimed
+    private static void executeBatch(Connection conn, List<Entry> entries, boolean timed) throws SQLException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(timed ? TIMED_UPDATE_SQL : UPDATE_SQL)) {
+            for (Entry entry : entries) {
+                ps.setInt(1, entry.intentos());
+                ps.setBoolean(2, entry.bloqueado());
+                if (timed) {
+                    ps.setTimestamp(3, entry.bloqueadoHasta());
+                    ps.setInt(4, entry.userId());
+                } else {
+                    ps.setInt(3, entry.userId());
+                }
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException | RuntimeException e) {
+            // Counted by flush(); the entries stay pending and are retried next time
+            e.printStackTrace();
+        }
+    }
+
+    /** Accounts with changes not yet written. */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /** States recorded, flushed or not. */
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+    /** States that replaced an unflushed one and so never needed their own write. */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /** Locks written at once on the login's connection rather than buffered. */
+    public long getLockWrites() {
+        return lockWrites.sum();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    public long getFlushFailures() {
+        return flushFailures.sum();
+    }
+
+    /** Stops background flushing, if any, writes what is pending and closes the flush connection. */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushQuietly();
+        flushLock.lock();
+        try {
+            discardConnection();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.auth;
+
+/** An email/password pair submitted for login, e.g. in {@link AuthService#authenticateBatch}. */
+public record Credentials(String email, String password) {
+}
@@ -0,0 +1,16 @@
+package com.auth;
+
+/**
+ * Immutable snapshot of the database configuration resolved by {@link DbConnection}.
+ * A new snapshot is only built at startup or on an explicit {@link DbConnection#reload()}.
+ */
+public record DbConfig(String url, String user, String password, String driverClass,
+                       ConnectionPool.Settings poolSettings) {
+
+    // Never print the password (the record default would)
+    @Override
+    public String toString() {
+        return "DbConfig[url=" + url + ", user=" + user + ", driverClass=" + driverClass
+                + ", poolSettings=" + poolSettings + "]";
+    }
+}
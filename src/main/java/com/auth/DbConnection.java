@@ -1,30 +1,236 @@
 package com.auth;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 
 public class DbConnection {
 
+    // Configuration and the pool built from it, swapped together on reload
+    private record Snapshot(DbConfig config, ConnectionPool pool) {
+    }
+
+    private static volatile Snapshot current;
+    private static Thread configWatcher;
+
     public static Connection getConnection() throws SQLException {
+        // Settings are resolved once (see reload()); this path only borrows from the pool
+        Snapshot s = current;
+        if (s == null) {
+            s = initialize();
+        }
+        while (true) {
+            try {
+                // Connections are pooled: close() on the returned connection hands it back to the pool
+                return s.pool().borrow();
+            } catch (SQLException e) {
+                // A concurrent reload may have drained this pool; retry on the new one
+                Snapshot latest = current;
+                if (!s.pool().isClosed() || latest == null || latest == s) {
+                    throw e;
+                }
+                s = latest;
+            }
+        }
+    }
+
+    private static synchronized Snapshot initialize() throws SQLException {
+        Snapshot s = current;
+        if (s == null) {
+            reload();
+            s = current;
+            startConfigWatcherIfRequested();
+        }
+        return s;
+    }
+
+    /**
+     * Re-resolves the configuration (system properties, environment, then the optional
+     * DB_CONFIG_FILE properties file), registers the driver and atomically swaps in a new pool.
+     * The old pool is drained: idle connections close now, borrowed ones when returned.
+     * If the new configuration is invalid the current one stays in place.
+     */
+    public static synchronized DbConfig reload() throws SQLException {
+        DbConfig config = resolveConfig();
+        ConnectionPool pool = new ConnectionPool(
+                () -> openUnpooled(config.url(), config.user(), config.password()), config.poolSettings());
+        Snapshot old = current;
+        current = new Snapshot(config, pool);
+        if (old != null) {
+            old.pool().close();
+        }
+        return config;
+    }
+
+    /** The configuration currently in use, resolving it first if needed. */
+    public static DbConfig currentConfig() throws SQLException {
+        Snapshot s = current;
+        return s != null ? s.config() : initialize().config();
+    }
+
+    // Full resolution and driver registration; only called from reload()
+    static DbConfig resolveConfig() throws SQLException {
         // Read DB settings from environment variables (required for security)
         // Use System properties as override mechanism (useful for tests)
-        String dbUrl = getEnvOrRequired("DB_URL");
-        String dbUser = getEnvOrRequired("DB_USER");
-        String dbPassword = getEnvOrRequired("DB_PASSWORD");
-        String driverClass = getEnvOrDefault("DB_DRIVER", "org.postgresql.Driver");
-        
+        Properties file = loadConfigFile();
+        String dbUrl = getEnvOrRequired("DB_URL", file);
+        String dbUser = getEnvOrRequired("DB_USER", file);
+        String dbPassword = getEnvOrRequired("DB_PASSWORD", file);
+        String driverClass = getEnvOrDefault("DB_DRIVER", fileValueOr(file, "DB_DRIVER", "org.postgresql.Driver"));
+
         try {
             Class.forName(driverClass);
         } catch (ClassNotFoundException e) {
             throw new SQLException(driverClass + " JDBC driver not found on classpath. Make sure the driver jar is available.", e);
         }
 
+        ConnectionPool.Settings poolSettings;
+        try {
+            poolSettings = readPoolSettings(file);
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Invalid connection pool configuration: " + e.getMessage(), e);
+        }
+        return new DbConfig(dbUrl, dbUser, dbPassword, driverClass, poolSettings);
+    }
+
+    /**
+     * Opens a physical connection with the current configuration that neither comes from nor
+     * counts against the pool, for background writers that must not wait on the logins they
+     * serve. The caller closes it.
+     */
+    public static Connection openDedicated() throws SQLException {
+        DbConfig config = currentConfig();
+        return openUnpooled(config.url(), config.user(), config.password());
+    }
+
+    // Opens a physical connection bypassing the pool
+    static Connection openUnpooled(String dbUrl, String dbUser, String dbPassword) throws SQLException {
         return DriverManager.getConnection(dbUrl, dbUser, dbPassword);
     }
 
-    // Get required environment variable, throw exception if not set
-    private static String getEnvOrRequired(String name) throws SQLException {
+    // Optional properties file named by DB_CONFIG_FILE; same keys as the environment variables
+    private static Properties loadConfigFile() throws SQLException {
+        Properties props = new Properties();
+        String path = getEnvOrDefault("DB_CONFIG_FILE", null);
+        if (path == null) {
+            return props;
+        }
+        try (InputStream in = Files.newInputStream(Paths.get(path))) {
+            props.load(in);
+        } catch (IOException e) {
+            throw new SQLException("Could not read database configuration file " + path, e);
+        }
+        return props;
+    }
+
+    private static String fileValueOr(Properties file, String name, String fallback) {
+        String value = file.getProperty(name);
+        return value == null || value.trim().isEmpty() ? fallback : value;
+    }
+
+    // Pool settings, overridable like the connection settings (DB_POOL_* env vars or system properties)
+    static ConnectionPool.Settings readPoolSettings(Properties file) {
+        ConnectionPool.Settings d = ConnectionPool.Settings.DEFAULT;
+        return new ConnectionPool.Settings(
+                (int) getLongOrDefault("DB_POOL_MIN_SIZE", d.minSize(), file),
+                (int) getLongOrDefault("DB_POOL_MAX_SIZE", d.maxSize(), file),
+                getLongOrDefault("DB_POOL_BORROW_TIMEOUT_MS", d.borrowTimeoutMillis(), file),
+                getLongOrDefault("DB_POOL_IDLE_TIMEOUT_MS", d.idleTimeoutMillis(), file),
+                getLongOrDefault("DB_POOL_MAX_LIFETIME_MS", d.maxLifetimeMillis(), file),
+                getLongOrDefault("DB_POOL_VALIDATION_INTERVAL_MS", d.validationIntervalMillis(), file),
+                (int) getLongOrDefault("DB_POOL_STATEMENT_CACHE_SIZE", d.statementCacheSize(), file));
+    }
+
+    private static long getLongOrDefault(String name, long fallback, Properties file) {
+        String value = getEnvOrDefault(name, fileValueOr(file, name, null));
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number but was '" + value + "'", e);
+        }
+    }
+
+    // With DB_CONFIG_WATCH=true, edits to DB_CONFIG_FILE trigger reload() on a daemon thread
+    private static void startConfigWatcherIfRequested() {
+        String path = getEnvOrDefault("DB_CONFIG_FILE", null);
+        if (path == null || configWatcher != null
+                || !Boolean.parseBoolean(getEnvOrDefault("DB_CONFIG_WATCH", "false"))) {
+            return;
+        }
+        Path file = Paths.get(path).toAbsolutePath();
+        Path dir = file.getParent();
+        WatchService watcher;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        configWatcher = new Thread(() -> watchConfigFile(watcher, file), "db-config-watcher");
+        configWatcher.setDaemon(true);
+        configWatcher.start();
+    }
+
+    private static void watchConfigFile(WatchService watcher, Path file) {
+        try (watcher) {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    try {
+                        reload();
+                    } catch (SQLException ex) {
+                        // Keep running on the previous configuration
+                        ex.printStackTrace();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException | IOException e) {
+            // Watcher closed; stop watching
+        }
+    }
+
+    // Closes the current pool (if any); the next getConnection() resolves the configuration again
+    static synchronized void shutdownPool() {
+        Snapshot s = current;
+        current = null;
+        if (s != null) {
+            s.pool().close();
+        }
+    }
+
+    // Package-private so tests and benchmarks can inspect pool state
+    static ConnectionPool currentPool() {
+        Snapshot s = current;
+        return s != null ? s.pool() : null;
+    }
+
+    // Get required setting: system property, then environment variable, then config file
+    private static String getEnvOrRequired(String name, Properties file) throws SQLException {
         String sys = System.getProperty(name);
         if (sys != null) {
             // System property is set (even if empty), use it - important for tests
@@ -32,6 +238,10 @@ public class DbConnection {
         }
         String value = System.getenv(name);
         if (value == null || value.trim().isEmpty()) {
+            // As with system properties, an explicit (even empty) file entry counts as set
+            value = file.getProperty(name);
+        }
+        if (value == null) {
             throw new SQLException("Required environment variable " + name + " is not set. Please configure database settings.");
         }
         return value;
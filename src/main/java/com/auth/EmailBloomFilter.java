@@ -0,0 +1,192 @@
+package com.auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter over the emails in {@code usuarios}, used by {@link AuthService} to answer
+ * "no such user" without a database query.
+ *
+ * <p>{@link #mightContain} never returns {@code false} for an email that was added, so a
+ * negative answer is final; a positive answer still has to be confirmed by the SELECT.
+ * The filter only knows what it was built from and what was {@link #add added} since, so
+ * any code path that inserts users must add the new email (or the filter must be rebuilt)
+ * or those users will be reported as unknown.</p>
+ *
+ * <p>Safe for concurrent use: bits are set with CAS and only ever go from 0 to 1.</p>
+ */
+public class EmailBloomFilter {
+
+    // Rows read per round trip while streaming the email column
+    private static final int FETCH_SIZE = 10_000;
+    // Extra capacity over the current row count so inserts do not degrade the filter right away
+    private static final int GROWTH_FACTOR = 2;
+    private static final long MIN_EXPECTED = 1_024;
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashFunctions;
+    private final LongAdder bitsSet = new LongAdder();
+    private final LongAdder insertions = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * Creates a filter sized for {@code expectedEmails} entries at the given false-positive
+     * rate.
+     */
+    public EmailBloomFilter(long expectedEmails, double falsePositiveRate) {
+        if (expectedEmails < 1) {
+            throw new IllegalArgumentException("expectedEmails must be at least 1");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        double ln2 = Math.log(2);
+        long bits = (long) Math.ceil(-expectedEmails * Math.log(falsePositiveRate) / (ln2 * ln2));
+        long wordCount = Math.max(1, (bits + 63) / 64);
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Filter too large for " + expectedEmails + " emails");
+        }
+        this.words = new AtomicLongArray((int) wordCount);
+        this.bitSize = wordCount * 64;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / expectedEmails * ln2));
+    }
+
+    /**
+     * Builds a filter from the email column, sized from the current row count with room to
+     * grow. Rows are streamed, so memory use is the filter itself regardless of table size.
+     */
+    public static EmailBloomFilter fromDatabase(Connection conn, double falsePositiveRate) throws SQLException {
+        long rows;
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM usuarios")) {
+            rs.next();
+            rows = rs.getLong(1);
+        }
+        EmailBloomFilter filter = new EmailBloomFilter(Math.max(MIN_EXPECTED, rows * GROWTH_FACTOR), falsePositiveRate);
+
+        // PostgreSQL only honours the fetch size inside a transaction
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement("SELECT email FROM usuarios")) {
+            ps.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    filter.add(rs.getString(1));
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return filter;
+    }
+
+    /** Records an email as present. Call this whenever a user is inserted. */
+    public void add(String email) {
+        long h1 = hash(email);
+        long h2 = mix(h1 + 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitSize);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word;
+            do {
+                word = words.get(index);
+                if ((word & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(index, word, word | mask));
+            if ((word & mask) == 0) {
+                bitsSet.increment();
+            }
+        }
+        insertions.increment();
+    }
+
+    /** {@code false} means the email is definitely not in {@code usuarios}. */
+    public boolean mightContain(String email) {
+        long h1 = hash(email);
+        long h2 = mix(h1 + 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitSize);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                rejected.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Called when the database found no row for an email the filter let through
+    void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    // FNV-1a over the UTF-16 code units, finalized with a 64-bit mixer
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    /** False-positive rate implied by the current fill: (bits set / bit size)^k. */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow((double) bitsSet.sum() / bitSize, hashFunctions);
+    }
+
+    /**
+     * Share of lookups for unknown emails that the filter let through, as confirmed by the
+     * database; {@code 0} until an unknown email has been looked up.
+     */
+    public double getObservedFalsePositiveRate() {
+        long fp = falsePositives.sum();
+        long negatives = fp + rejected.sum();
+        return negatives == 0 ? 0 : (double) fp / negatives;
+    }
+
+    /** Size of the bit array in bytes. */
+    public long getMemoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    public long getBitSize() {
+        return bitSize;
+    }
+
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    /** Emails added, counting repeats. */
+    public long getInsertions() {
+        return insertions.sum();
+    }
+
+    /** Lookups answered "definitely absent", each one a query not sent. */
+    public long getRejectedLookups() {
+        return rejected.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+}
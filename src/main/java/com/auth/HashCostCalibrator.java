@@ -0,0 +1,159 @@
+package com.auth;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Picks the PBKDF2 iteration count for this machine: the highest cost whose measured p99
+ * verify time stays within a latency target, but never below a security floor.
+ *
+ * <p>A short probe at a cheap cost gives the time per iteration; the estimate derived from
+ * it is then timed directly and scaled down until its p99 fits the target. The result is
+ * recorded in every hash produced with it (see {@link PasswordHasher}), so machines that
+ * calibrate differently can still verify each other's hashes.</p>
+ *
+ * <p>{@link #startupCalibration()} runs once per JVM with the target and floor taken from
+ * {@code AUTH_HASH_TARGET_MS} (default {@value #DEFAULT_TARGET_MS}) and
+ * {@code AUTH_HASH_MIN_ITERATIONS} (default {@value #DEFAULT_FLOOR_ITERATIONS}), read from
+ * system properties or environment variables like the DB settings. A value that is not a
+ * whole number in range is reported on {@code System.err} and replaced by its default.</p>
+ */
+public final class HashCostCalibrator {
+
+    /** Outcome of a calibration run. */
+    public record Calibration(int iterations, long targetMillis, double measuredP99Millis, int floorIterations) {
+
+        /** True when even the floor cost misses the target on this machine. */
+        public boolean limitedByFloor() {
+            return iterations == floorIterations && measuredP99Millis > targetMillis;
+        }
+    }
+
+    public static final long DEFAULT_TARGET_MS = 50;
+    public static final int DEFAULT_FLOOR_ITERATIONS = 100_000;
+    static final int MAX_ITERATIONS = 10_000_000;
+
+    private static final int PROBE_ITERATIONS = 20_000;
+    private static final int PROBE_RUNS = 5;
+    private static final int SAMPLES = 10;
+    private static final int MAX_ROUNDS = 3;
+    // Aim below the target so load and GC pauses do not push p99 over it
+    private static final double HEADROOM = 0.8;
+
+    // Run by its first caller; later callers park in get(), which unmounts a virtual thread
+    // instead of pinning its carrier the way a monitor would
+    private static final FutureTask<Calibration> STARTUP = new FutureTask<>(() -> calibrate(
+            setting("AUTH_HASH_TARGET_MS", DEFAULT_TARGET_MS, 1, Integer.MAX_VALUE),
+            (int) setting("AUTH_HASH_MIN_ITERATIONS", DEFAULT_FLOOR_ITERATIONS, PasswordHasher.MIN_ITERATIONS, MAX_ITERATIONS)));
+
+    private HashCostCalibrator() {
+    }
+
+    /**
+     * Calibrates once per JVM from {@code AUTH_HASH_TARGET_MS} and
+     * {@code AUTH_HASH_MIN_ITERATIONS}; later calls return the same result, waiting for it
+     * if another thread is still timing.
+     */
+    public static Calibration startupCalibration() {
+        // A no-op unless this is the first call
+        STARTUP.run();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return STARTUP.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException re) {
+                        throw re;
+                    }
+                    throw new IllegalStateException("hash calibration failed", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static long setting(String name, long fallback, long min, long max) {
+        return parseSetting(name, DbConnection.getEnvOrDefaultUsingValue(name, null, System.getenv(name)), fallback, min, max);
+    }
+
+    // A malformed or out-of-range value falls back to the default with a warning: failing
+    // here would fail every later login that checks a hash, for the life of the JVM
+    static long parseSetting(String name, String value, long fallback, long min, long max) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        System.err.println("Ignoring " + name + "=" + value + ": expected a whole number from " + min
+                + " to " + max + "; using " + fallback);
+        return fallback;
+    }
+
+    /** Times real PBKDF2 hashes on this machine. */
+    public static Calibration calibrate(long targetMillis, int floorIterations) {
+        byte[] salt = new byte[PasswordHasher.SALT_BYTES];
+        new SecureRandom().nextBytes(salt);
+        return calibrate(targetMillis, floorIterations, iterations -> {
+            long start = System.nanoTime();
+            PasswordHasher.derive("calibration", salt, (int) iterations);
+            return System.nanoTime() - start;
+        });
+    }
+
+    // timer returns the nanoseconds one hash at the given cost took; injectable for tests
+    static Calibration calibrate(long targetMillis, int floorIterations, LongUnaryOperator timer) {
+        if (targetMillis < 1) {
+            throw new IllegalArgumentException("targetMillis must be at least 1");
+        }
+        if (floorIterations < PasswordHasher.MIN_ITERATIONS || floorIterations > MAX_ITERATIONS) {
+            throw new IllegalArgumentException("floorIterations must be between "
+                    + PasswordHasher.MIN_ITERATIONS + " and " + MAX_ITERATIONS);
+        }
+        long targetNanos = targetMillis * 1_000_000;
+
+        long[] probe = new long[PROBE_RUNS];
+        for (int i = 0; i < PROBE_RUNS; i++) {
+            probe[i] = timer.applyAsLong(PROBE_ITERATIONS);
+        }
+        Arrays.sort(probe);
+        double nanosPerIteration = Math.max(1e-3, (double) probe[PROBE_RUNS / 2] / PROBE_ITERATIONS);
+        long iterations = clamp((long) (targetNanos * HEADROOM / nanosPerIteration), floorIterations);
+
+        long p99 = p99(timer, iterations);
+        for (int round = 1; round < MAX_ROUNDS && p99 > targetNanos && iterations > floorIterations; round++) {
+            iterations = clamp((long) (iterations * HEADROOM * targetNanos / p99), floorIterations);
+            p99 = p99(timer, iterations);
+        }
+        int rounded = (int) Math.max(floorIterations, iterations / 1_000 * 1_000);
+        return new Calibration(rounded, targetMillis, p99 / 1e6, floorIterations);
+    }
+
+    private static long clamp(long iterations, int floorIterations) {
+        return Math.max(floorIterations, Math.min(MAX_ITERATIONS, iterations));
+    }
+
+    // With SAMPLES below 100 the p99 is the slowest sample
+    private static long p99(LongUnaryOperator timer, long iterations) {
+        long[] samples = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = timer.applyAsLong(iterations);
+        }
+        Arrays.sort(samples);
+        return samples[(int) Math.ceil(0.99 * SAMPLES) - 1];
+    }
+}
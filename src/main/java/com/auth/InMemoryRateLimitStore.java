@@ -0,0 +1,42 @@
+package com.auth;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link RateLimitStore} held in this JVM, for tests and single-process simulations of a
+ * cluster.
+ */
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+    private final Map<String, Map<String, Long>> limiters = new HashMap<>();
+    private long reconciles;
+
+    @Override
+    public synchronized Map<String, Long> reconcile(String limiter, Map<String, Long> charges, long nowMillis,
+                                                    int maxKeys) {
+        reconciles++;
+        Map<String, Long> fullAt = limiters.computeIfAbsent(limiter, k -> new HashMap<>());
+        charges.forEach((key, charge) -> fullAt.merge(key, nowMillis + charge,
+                (current, fresh) -> Math.max(current, nowMillis) + charge));
+        Iterator<Long> it = fullAt.values().iterator();
+        while (it.hasNext()) {
+            if (it.next() <= nowMillis) {
+                it.remove();
+            }
+        }
+        Map<String, Long> result = new LinkedHashMap<>();
+        fullAt.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(maxKeys)
+                .forEach(e -> result.put(e.getKey(), e.getValue()));
+        return result;
+    }
+
+    /** Calls to {@link #reconcile} so far, i.e. remote calls a real store would have served. */
+    public synchronized long getReconciles() {
+        return reconciles;
+    }
+}
@@ -0,0 +1,102 @@
+package com.auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link RateLimitStore} in the {@code rate_limits} table of the application database (see
+ * {@code dbScript/auth.sql}). One reconcile is a single transaction: a batched upsert of the
+ * node's charges, removal of rows whose buckets have refilled, and a read of the rest.
+ */
+public class JdbcRateLimitStore implements RateLimitStore {
+
+    private static final String UPSERT_POSTGRES =
+            "INSERT INTO rate_limits (limiter, rate_key, full_at) VALUES (?, ?, ?) "
+            + "ON CONFLICT (limiter, rate_key) DO UPDATE SET full_at = GREATEST(rate_limits.full_at, ?) + ?";
+    private static final String UPSERT_MERGE =
+            "MERGE INTO rate_limits t USING (VALUES (CAST(? AS VARCHAR(64)), CAST(? AS VARCHAR(255)), "
+            + "CAST(? AS BIGINT), CAST(? AS BIGINT))) AS s(limiter, rate_key, now_ms, charge) "
+            + "ON t.limiter = s.limiter AND t.rate_key = s.rate_key "
+            + "WHEN MATCHED THEN UPDATE SET full_at = GREATEST(t.full_at, s.now_ms) + s.charge "
+            + "WHEN NOT MATCHED THEN INSERT (limiter, rate_key, full_at) VALUES (s.limiter, s.rate_key, s.now_ms + s.charge)";
+    private static final String DELETE_REFILLED = "DELETE FROM rate_limits WHERE limiter = ? AND full_at <= ?";
+    private static final String SELECT_ACTIVE =
+            "SELECT rate_key, full_at FROM rate_limits WHERE limiter = ? AND full_at > ? "
+            + "ORDER BY full_at DESC FETCH FIRST ? ROWS ONLY";
+
+    private final ConnectionPool.ConnectionFactory connections;
+
+    /** Typically {@code new JdbcRateLimitStore(DbConnection::getConnection)}. */
+    public JdbcRateLimitStore(ConnectionPool.ConnectionFactory connections) {
+        this.connections = connections;
+    }
+
+    @Override
+    public Map<String, Long> reconcile(String limiter, Map<String, Long> charges, long nowMillis, int maxKeys)
+            throws SQLException {
+        try (Connection conn = connections.open()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                if (!charges.isEmpty()) {
+                    // Key order, so concurrent reconciles lock rows in the same order
+                    charge(conn, limiter, new TreeMap<>(charges), nowMillis);
+                }
+                try (PreparedStatement ps = conn.prepareStatement(DELETE_REFILLED)) {
+                    ps.setString(1, limiter);
+                    ps.setLong(2, nowMillis);
+                    ps.executeUpdate();
+                }
+                Map<String, Long> active = new LinkedHashMap<>();
+                try (PreparedStatement ps = conn.prepareStatement(SELECT_ACTIVE)) {
+                    ps.setString(1, limiter);
+                    ps.setLong(2, nowMillis);
+                    ps.setInt(3, maxKeys);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            active.put(rs.getString("rate_key"), rs.getLong("full_at"));
+                        }
+                    }
+                }
+                conn.commit();
+                return active;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private static void charge(Connection conn, String limiter, Map<String, Long> charges, long nowMillis)
+            throws SQLException {
+        boolean postgres = isPostgres(conn);
+        try (PreparedStatement ps = conn.prepareStatement(postgres ? UPSERT_POSTGRES : UPSERT_MERGE)) {
+            for (Map.Entry<String, Long> e : charges.entrySet()) {
+                ps.setString(1, limiter);
+                ps.setString(2, e.getKey());
+                if (postgres) {
+                    ps.setLong(3, nowMillis + e.getValue());
+                    ps.setLong(4, nowMillis);
+                    ps.setLong(5, e.getValue());
+                } else {
+                    ps.setLong(3, nowMillis);
+                    ps.setLong(4, e.getValue());
+                }
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    // Reads driver metadata only, as in AuthService
+    private static boolean isPostgres(Connection conn) throws SQLException {
+        return "PostgreSQL".equals(conn.getMetaData().getDatabaseProductName());
+    }
+}
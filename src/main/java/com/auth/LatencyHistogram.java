@@ -0,0 +1,94 @@
+package com.auth;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with four log-linear buckets per power of two, so any
+ * reported percentile is within 25% of the true value. Records microseconds from 1 us up
+ * to about 35 minutes; larger values land in the last bucket.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int MAX_EXPONENT = 31;
+
+    private final LongAdder[] buckets = new LongAdder[(MAX_EXPONENT + 1) * SUB_BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+        buckets[indexOf(micros)].increment();
+        count.increment();
+        totalMicros.add(micros);
+    }
+
+    private static int indexOf(long micros) {
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return (MAX_EXPONENT + 1) * SUB_BUCKETS - 1;
+        }
+        // Values below 4 us have fewer distinct values than sub-buckets
+        int sub = exponent < 2 ? (int) (micros - (1L << exponent))
+                : (int) ((micros >>> (exponent - 2)) & (SUB_BUCKETS - 1));
+        return exponent * SUB_BUCKETS + sub;
+    }
+
+    // Largest value that maps to bucket i
+    private static long upperBoundMicros(int index) {
+        int exponent = index / SUB_BUCKETS;
+        int sub = index % SUB_BUCKETS;
+        if (exponent < 2) {
+            return (1L << exponent) + sub;
+        }
+        long step = 1L << (exponent - 2);
+        return (1L << exponent) + (sub + 1) * step - 1;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) totalMicros.sum() / n;
+    }
+
+    /** Upper bound, in microseconds, of the bucket holding the {@code quantile} value. */
+    public long percentileMicros(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1");
+        }
+        long[] snapshot = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            snapshot[i] = buckets[i].sum();
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBoundMicros(i);
+            }
+        }
+        return upperBoundMicros(snapshot.length - 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fus p50=%dus p99=%dus max<=%dus",
+                getCount(), getMeanMicros(), percentileMicros(0.5), percentileMicros(0.99), percentileMicros(1.0));
+    }
+}
@@ -0,0 +1,406 @@
+package com.auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Failed-attempt counters and lock flags held in memory, keyed by user id, so that login can
+ * decide "blocked" and count a failure without touching {@code usuarios}. Changed entries are
+ * written back in batched checkpoints.
+ *
+ * <p>Durability window: a change is durable once the checkpoint after it commits, i.e. within
+ * one checkpoint interval. If the process dies before that, the affected accounts come back
+ * with their last checkpointed counters: an attacker can regain at most the failures counted
+ * in that window, and a lock set in it is lost. {@link #close()} writes a final checkpoint.
+ * This process must be the only writer of the two columns while the table is in use.</p>
+ *
+ * <p>Only accounts with failures or a lock are held, in 64 stripes of open-addressed
+ * {@code int} arrays with one lock each, so contention is per stripe and there is no boxing
+ * on the login path.</p>
+ */
+public class LockoutTable implements AutoCloseable {
+
+    private static final int MAX_INTENTOS = LoginResult.MAX_FAILED_ATTEMPTS;
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final byte BLOCKED = 1;
+    private static final byte DIRTY = 2;
+    private static final String LOAD_SQL =
+            "SELECT id, intentos_fallidos, bloqueado FROM usuarios WHERE intentos_fallidos > 0 OR bloqueado = TRUE";
+    private static final String CHECKPOINT_SQL =
+            "UPDATE usuarios SET intentos_fallidos = ?, bloqueado = ? WHERE id = ?";
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    // Checkpoints run one at a time so a failed one can put its entries back
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    private final LongAdder checkpoints = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder checkpointFailures = new LongAdder();
+    private volatile ScheduledExecutorService scheduler;
+    private volatile ConnectionPool.ConnectionFactory connections;
+
+    public LockoutTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /** Loads every account that has failures or is blocked. */
+    public static LockoutTable fromDatabase(Connection conn) throws SQLException {
+        LockoutTable table = new LockoutTable();
+        try (PreparedStatement ps = conn.prepareStatement(LOAD_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int id = rs.getInt("id");
+                Stripe s = table.stripe(id);
+                synchronized (s) {
+                    s.put(id, rs.getInt("intentos_fallidos"), rs.getBoolean("bloqueado") ? BLOCKED : 0);
+                }
+            }
+        }
+        return table;
+    }
+
+    private static int mix(int id) {
+        int h = id;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private Stripe stripe(int userId) {
+        if (userId <= 0) {
+            throw new IllegalArgumentException("userId must be positive: " + userId);
+        }
+        return stripes[mix(userId) & (STRIPES - 1)];
+    }
+
+    public boolean isBlocked(int userId) {
+        Stripe s = stripe(userId);
+        synchronized (s) {
+            int slot = s.find(userId);
+            return slot >= 0 && (s.flags[slot] & BLOCKED) != 0;
+        }
+    }
+
+    public int failures(int userId) {
+        Stripe s = stripe(userId);
+        synchronized (s) {
+            int slot = s.find(userId);
+            return slot >= 0 ? s.failures[slot] : 0;
+        }
+    }
+
+    /**
+     * Counts a wrong password: returns {@code WRONG_PASSWORD}, or {@code BLOCKED_NOW} on the
+     * failure that reaches the limit, or {@code ACCOUNT_BLOCKED} without counting if another
+     * attempt locked the account first.
+     */
+    LoginResult recordFailure(int userId) {
+        Stripe s = stripe(userId);
+        synchronized (s) {
+            int slot = s.find(userId);
+            if (slot < 0) {
+                slot = s.put(userId, 0, (byte) 0);
+            }
+            if ((s.flags[slot] & BLOCKED) != 0) {
+                return LoginResult.accountBlocked(userId, s.failures[slot]);
+            }
+            int failures = ++s.failures[slot];
+            boolean block = failures >= MAX_INTENTOS;
+            s.flags[slot] = (byte) (DIRTY | (block ? BLOCKED : 0));
+            return block ? LoginResult.blockedNow(userId, failures) : LoginResult.wrongPassword(userId, failures);
+        }
+    }
+
+    /**
+     * Clears the failures after a correct password: returns {@code SUCCESS}, or
+     * {@code ACCOUNT_BLOCKED} if a concurrent attempt locked the account first.
+     */
+    LoginResult recordSuccess(int userId) {
+        Stripe s = stripe(userId);
+        synchronized (s) {
+            int slot = s.find(userId);
+            if (slot < 0) {
+                return LoginResult.success(userId);
+            }
+            if ((s.flags[slot] & BLOCKED) != 0) {
+                return LoginResult.accountBlocked(userId, s.failures[slot]);
+            }
+            if (s.failures[slot] != 0) {
+                s.failures[slot] = 0;
+                s.flags[slot] = DIRTY;
+            }
+            return LoginResult.success(userId);
+        }
+    }
+
+    /** Unlocks an account and clears its failures, e.g. after an administrator's review. */
+    public void unblock(int userId) {
+        Stripe s = stripe(userId);
+        synchronized (s) {
+            int slot = s.find(userId);
+            if (slot >= 0 && (s.failures[slot] != 0 || (s.flags[slot] & BLOCKED) != 0)) {
+                s.failures[slot] = 0;
+                s.flags[slot] = DIRTY;
+            }
+        }
+    }
+
+    /**
+     * Writes every changed entry to {@code usuarios} in one batch and transaction. Entries
+     * back at zero failures and unlocked are dropped once written.
+     *
+     * @return rows written
+     */
+    public int checkpoint(Connection conn) throws SQLException {
+        checkpointLock.lock();
+        try {
+            int[] ids = new int[64];
+            int[] failures = new int[64];
+            boolean[] blocked = new boolean[64];
+            int n = 0;
+            for (Stripe s : stripes) {
+                synchronized (s) {
+                    // Clean entries at their defaults were written by an earlier checkpoint
+                    s.removeIf(slot -> s.flags[slot] == 0 && s.failures[slot] == 0);
+                    for (int slot = 0; slot < s.ids.length; slot++) {
+                        if (s.ids[slot] == 0 || (s.flags[slot] & DIRTY) == 0) {
+                            continue;
+                        }
+                        if (n == ids.length) {
+                            ids = Arrays.copyOf(ids, n * 2);
+                            failures = Arrays.copyOf(failures, n * 2);
+                            blocked = Arrays.copyOf(blocked, n * 2);
+                        }
+                        ids[n] = s.ids[slot];
+                        failures[n] = s.failures[slot];
+                        blocked[n] = (s.flags[slot] & BLOCKED) != 0;
+                        s.flags[slot] &= ~DIRTY;
+                        n++;
+                    }
+                }
+            }
+            if (n == 0) {
+                return 0;
+            }
+            try {
+                write(conn, ids, failures, blocked, n);
+            } catch (SQLException | RuntimeException e) {
+                checkpointFailures.increment();
+                for (int i = 0; i < n; i++) {
+                    markDirty(ids[i]);
+                }
+                throw e;
+            }
+            checkpoints.increment();
+            rowsWritten.add(n);
+            return n;
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private static void write(Connection conn, int[] ids, int[] failures, boolean[] blocked, int n)
+            throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement(CHECKPOINT_SQL)) {
+            for (int i = 0; i < n; i++) {
+                ps.setInt(1, failures[i]);
+                ps.setBoolean(2, blocked[i]);
+                ps.setInt(3, ids[i]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Entries are only dropped by checkpoints, which are serialized, so a collected entry is still there
+    private void markDirty(int userId) {
+        Stripe s = stripe(userId);
+        synchronized (s) {
+            int slot = s.find(userId);
+            if (slot >= 0) {
+                s.flags[slot] |= DIRTY;
+            }
+        }
+    }
+
+    /**
+     * Checkpoints every {@code intervalMillis} on a background thread, which bounds the
+     * durability window; {@link #close()} stops it after a final checkpoint.
+     */
+    public synchronized void startCheckpoints(ConnectionPool.ConnectionFactory connections, long intervalMillis) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("intervalMillis must be at least 1");
+        }
+        if (scheduler != null) {
+            throw new IllegalStateException("Checkpoints already started");
+        }
+        this.connections = connections;
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lockout-checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleWithFixedDelay(this::checkpointQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        scheduler = s;
+    }
+
+    private void checkpointQuietly() {
+        try (Connection conn = connections.open()) {
+            checkpoint(conn);
+        } catch (SQLException | RuntimeException e) {
+            // Entries stay dirty and are retried by the next checkpoint
+            e.printStackTrace();
+        }
+    }
+
+    /** Accounts held in memory. */
+    public int size() {
+        int total = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                total += s.size;
+            }
+        }
+        return total;
+    }
+
+    /** Entries changed since the last checkpoint. */
+    public int getDirtyCount() {
+        int total = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                for (int slot = 0; slot < s.ids.length; slot++) {
+                    if (s.ids[slot] != 0 && (s.flags[slot] & DIRTY) != 0) {
+                        total++;
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    public long getCheckpoints() {
+        return checkpoints.sum();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    public long getCheckpointFailures() {
+        return checkpointFailures.sum();
+    }
+
+    /** Stops background checkpoints, if started, and writes a final one. */
+    @Override
+    public synchronized void close() {
+        ScheduledExecutorService s = scheduler;
+        if (s == null) {
+            return;
+        }
+        s.shutdown();
+        try {
+            s.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpointQuietly();
+        scheduler = null;
+    }
+
+    // Open-addressed table with linear probing; id 0 marks a free slot. Guarded by its monitor.
+    private static final class Stripe {
+        int[] ids = new int[8];
+        int[] failures = new int[8];
+        byte[] flags = new byte[8];
+        int size;
+
+        private int home(int id, int mask) {
+            return (mix(id) >>> STRIPE_BITS) & mask;
+        }
+
+        int find(int id) {
+            int mask = ids.length - 1;
+            for (int slot = home(id, mask); ids[slot] != 0; slot = (slot + 1) & mask) {
+                if (ids[slot] == id) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        int put(int id, int failureCount, byte flagBits) {
+            if ((size + 1) * 2 > ids.length) {
+                resize(ids.length * 2);
+            }
+            int mask = ids.length - 1;
+            int slot = home(id, mask);
+            while (ids[slot] != 0 && ids[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (ids[slot] == 0) {
+                size++;
+            }
+            ids[slot] = id;
+            failures[slot] = failureCount;
+            flags[slot] = flagBits;
+            return slot;
+        }
+
+        private void resize(int capacity) {
+            int[] oldIds = ids;
+            int[] oldFailures = failures;
+            byte[] oldFlags = flags;
+            ids = new int[capacity];
+            failures = new int[capacity];
+            flags = new byte[capacity];
+            size = 0;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != 0) {
+                    put(oldIds[i], oldFailures[i], oldFlags[i]);
+                }
+            }
+        }
+
+        void removeIf(IntPredicate matches) {
+            boolean removed = false;
+            for (int slot = 0; slot < ids.length; slot++) {
+                if (ids[slot] != 0 && matches.test(slot)) {
+                    ids[slot] = 0;
+                    size--;
+                    removed = true;
+                }
+            }
+            if (removed) {
+                // Rebuilding keeps probe chains intact without tombstones, and shrinks the
+                // arrays once an attack's entries have been written back and dropped
+                int capacity = 8;
+                while (capacity < size * 4) {
+                    capacity <<= 1;
+                }
+                resize(Math.min(ids.length, capacity));
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.auth;
+
+/**
+ * Outcome of a login attempt, returned by {@link AuthService#authenticate}.
+ *
+ * <p>Results without per-user data are shared constants, so the common rejection paths
+ * allocate nothing. Use {@link AuthMessages#format(LoginResult)} to get the text shown to
+ * the user. {@link #sessionToken()} is set on successful logins when the service has
+ * {@link AuthService#setSessionTokens session tokens} configured, and
+ * {@link #sessionId()} when it has a {@link AuthService#setSessionStore session store}.
+ * {@link #rememberMeToken()} is the token to keep after a login that asked to be remembered.</p>
+ */
+public record LoginResult(Outcome outcome, int userId, int failedAttempts, String errorDetail, String sessionToken,
+                          String sessionId, String rememberMeToken) {
+
+    /** Failed attempts after which an account is blocked. */
+    public static final int MAX_FAILED_ATTEMPTS = 5;
+
+    /** {@link #userId()} when no account was identified. */
+    public static final int NO_USER = -1;
+
+    public enum Outcome {
+        SUCCESS,
+        INVALID_EMAIL,
+        INVALID_PASSWORD_FORMAT,
+        USER_NOT_FOUND,
+        /** The password was wrong and the attempt counter went up. */
+        WRONG_PASSWORD,
+        /** The password was wrong and this attempt blocked the account. */
+        BLOCKED_NOW,
+        /** The account was already blocked; the password was not checked. */
+        ACCOUNT_BLOCKED,
+        DB_ERROR,
+        /** Too many recent attempts for this email or client; nothing was checked. */
+        RATE_LIMITED,
+        /** A "remember me" token was unknown, expired or already used. */
+        INVALID_TOKEN,
+        /** The password could not be checked now (verification queue full or shut down); nothing changed. */
+        BUSY
+    }
+
+    static final LoginResult INVALID_EMAIL = new LoginResult(Outcome.INVALID_EMAIL, NO_USER, 0, null, null, null, null);
+    static final LoginResult INVALID_PASSWORD_FORMAT = new LoginResult(Outcome.INVALID_PASSWORD_FORMAT, NO_USER, 0, null, null, null, null);
+    static final LoginResult USER_NOT_FOUND = new LoginResult(Outcome.USER_NOT_FOUND, NO_USER, 0, null, null, null, null);
+    static final LoginResult RATE_LIMITED = new LoginResult(Outcome.RATE_LIMITED, NO_USER, 0, null, null, null, null);
+    static final LoginResult INVALID_TOKEN = new LoginResult(Outcome.INVALID_TOKEN, NO_USER, 0, null, null, null, null);
+
+    static LoginResult success(int userId) {
+        return new LoginResult(Outcome.SUCCESS, userId, 0, null, null, null, null);
+    }
+
+    static LoginResult wrongPassword(int userId, int failedAttempts) {
+        return new LoginResult(Outcome.WRONG_PASSWORD, userId, failedAttempts, null, null, null, null);
+    }
+
+    static LoginResult blockedNow(int userId, int failedAttempts) {
+        return new LoginResult(Outcome.BLOCKED_NOW, userId, failedAttempts, null, null, null, null);
+    }
+
+    static LoginResult accountBlocked(int userId, int failedAttempts) {
+        return new LoginResult(Outcome.ACCOUNT_BLOCKED, userId, failedAttempts, null, null, null, null);
+    }
+
+    static LoginResult dbError(String detail) {
+        return new LoginResult(Outcome.DB_ERROR, NO_USER, 0, detail, null, null, null);
+    }
+
+    static LoginResult busy(String detail) {
+        return new LoginResult(Outcome.BUSY, NO_USER, 0, detail, null, null, null);
+    }
+
+    // This result carrying a freshly issued session token
+    LoginResult withSessionToken(String token) {
+        return new LoginResult(outcome, userId, failedAttempts, errorDetail, token, sessionId, rememberMeToken);
+    }
+
+    // This result carrying a newly opened server-side session
+    LoginResult withSessionId(String id) {
+        return new LoginResult(outcome, userId, failedAttempts, errorDetail, sessionToken, id, rememberMeToken);
+    }
+
+    // This result carrying the "remember me" token to keep
+    LoginResult withRememberMeToken(String token) {
+        return new LoginResult(outcome, userId, failedAttempts, errorDetail, sessionToken, sessionId, token);
+    }
+
+    public boolean isSuccess() {
+        return outcome == Outcome.SUCCESS;
+    }
+
+    /** True when the account is blocked, whether by this attempt or before it. */
+    public boolean isBlocked() {
+        return outcome == Outcome.BLOCKED_NOW || outcome == Outcome.ACCOUNT_BLOCKED;
+    }
+
+    /** Wrong passwords left before the account is blocked. */
+    public int attemptsRemaining() {
+        return Math.max(0, MAX_FAILED_ATTEMPTS - failedAttempts);
+    }
+}
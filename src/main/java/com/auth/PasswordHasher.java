@@ -0,0 +1,144 @@
+package com.auth;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashes in a self-describing format:
+ *
+ * <pre>$pbkdf2-sha256$v=1$i=&lt;iterations&gt;$&lt;salt&gt;$&lt;hash&gt;</pre>
+ *
+ * <p>Salt and hash are unpadded Base64. Because the iteration count travels with each hash,
+ * the cost can be raised without invalidating stored credentials. Values in {@code clave_hash}
+ * that do not start with {@value #PREFIX} are legacy plaintext and are compared directly
+ * until they are rehashed.</p>
+ */
+public class PasswordHasher {
+
+    public static final String PREFIX = "$pbkdf2-sha256$";
+    static final int VERSION = 1;
+    static final int SALT_BYTES = 16;
+    static final int HASH_BYTES = 32;
+
+    /** OWASP's current recommendation for PBKDF2-HMAC-SHA256. */
+    public static final int DEFAULT_ITERATIONS = 600_000;
+    /** Below this, a hash is treated as too weak to configure. */
+    public static final int MIN_ITERATIONS = 10_000;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    private final int iterations;
+    private final int rehashBelow;
+    private final SecureRandom random = new SecureRandom();
+
+    public PasswordHasher() {
+        this(DEFAULT_ITERATIONS);
+    }
+
+    public PasswordHasher(int iterations) {
+        this(iterations, iterations);
+    }
+
+    /**
+     * A hasher that writes hashes at {@code iterations} but only asks for hashes below
+     * {@code rehashBelow} to be replaced, as when the cost is calibrated per machine: nodes
+     * that time slightly differently then leave each other's hashes alone.
+     */
+    public PasswordHasher(int iterations, int rehashBelow) {
+        if (iterations < MIN_ITERATIONS) {
+            throw new IllegalArgumentException("iterations must be at least " + MIN_ITERATIONS);
+        }
+        if (rehashBelow < MIN_ITERATIONS || rehashBelow > iterations) {
+            throw new IllegalArgumentException("rehashBelow must be between " + MIN_ITERATIONS + " and iterations");
+        }
+        this.iterations = iterations;
+        this.rehashBelow = rehashBelow;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /** Hashes {@code password} with a fresh salt at this hasher's cost. */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] dk = derive(password, salt, iterations);
+        return PREFIX + "v=" + VERSION + "$i=" + iterations + "$" + ENCODER.encodeToString(salt) + "$" + ENCODER.encodeToString(dk);
+    }
+
+    /**
+     * Checks {@code password} against a stored value. Legacy plaintext is compared as-is;
+     * a malformed hash never matches.
+     */
+    public static boolean verify(String password, String stored) {
+        if (!isHashed(stored)) {
+            return stored.equals(password);
+        }
+        Parsed p = parse(stored);
+        if (p == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(p.hash, derive(password, p.salt, p.iterations));
+    }
+
+    /** Whether {@code stored} is in this class's format rather than legacy plaintext. */
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /** Iteration count recorded in {@code stored}, or {@code 0} for plaintext or a malformed hash. */
+    public static int iterationsOf(String stored) {
+        Parsed p = isHashed(stored) ? parse(stored) : null;
+        return p == null ? 0 : p.iterations;
+    }
+
+    /** Cost below which {@link #needsRehash} asks for a stored hash to be replaced. */
+    public int getRehashBelow() {
+        return rehashBelow;
+    }
+
+    /** Whether {@code stored} is plaintext or was hashed below {@link #getRehashBelow()}. */
+    public boolean needsRehash(String stored) {
+        return iterationsOf(stored) < rehashBelow;
+    }
+
+    private record Parsed(int iterations, byte[] salt, byte[] hash) {
+    }
+
+    private static Parsed parse(String stored) {
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 4 || !parts[0].equals("v=" + VERSION) || !parts[1].startsWith("i=")) {
+            return null;
+        }
+        try {
+            int iterations = Integer.parseInt(parts[1].substring(2));
+            byte[] salt = DECODER.decode(parts[2]);
+            byte[] hash = DECODER.decode(parts[3]);
+            if (iterations < 1 || salt.length == 0 || hash.length == 0) {
+                return null;
+            }
+            return new Parsed(iterations, salt, hash);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BYTES * 8);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            // PBKDF2WithHmacSHA256 is mandatory on every Java SE platform
+            throw new IllegalStateException(ALGORITHM + " unavailable", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.auth;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Standalone tool that replaces plaintext {@code clave_hash} values with PBKDF2 hashes
+ * ({@link PasswordHasher}) without locking {@code usuarios} for long.
+ *
+ * <p>Rows are read in pages by keyset on {@code id}, hashed in parallel on a worker pool and
+ * written back with one JDBC batch per page, each page in its own short transaction. Hashing
+ * of a page overlaps with writing the previous one. After every commit the last migrated id
+ * is written to a checkpoint file, so an interrupted run resumes where it stopped. Rows that
+ * are already hashed are skipped, and a row whose value changed since it was read (for
+ * example by a login-triggered rehash) is left alone.</p>
+ *
+ * <p>Connects with the same DB_* settings as the application. Usage:</p>
+ * <pre>
+ * java com.auth.PasswordMigration [--page-size N] [--threads N] [--iterations N]
+ *                                 [--checkpoint FILE] [--generate ROWS]
+ * </pre>
+ * <p>{@code --generate} first inserts ROWS plaintext test users, creating the table if
+ * needed; use it against a scratch database such as
+ * {@code DB_URL=jdbc:h2:file:./target/migration-demo} to measure throughput.</p>
+ */
+public class PasswordMigration {
+
+    /** Totals of one run. */
+    public record Report(long scanned, long migrated, long alreadyHashed, long changedConcurrently,
+                         long lastId, long elapsedMillis) {
+
+        public double rowsPerSecond() {
+            return elapsedMillis == 0 ? 0 : migrated * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("scanned=%d migrated=%d alreadyHashed=%d changedConcurrently=%d lastId=%d elapsed=%dms rate=%.0f rows/s",
+                    scanned, migrated, alreadyHashed, changedConcurrently, lastId, elapsedMillis, rowsPerSecond());
+        }
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 1_000;
+
+    private static final String PAGE_SQL =
+            "SELECT id, clave_hash FROM usuarios WHERE id > ? ORDER BY id FETCH FIRST ? ROWS ONLY";
+    private static final String UPDATE_SQL = "UPDATE usuarios SET clave_hash = ? WHERE id = ? AND clave_hash = ?";
+    private static final long PROGRESS_INTERVAL_MS = 5_000;
+
+    private record Row(int id, String plaintext, CompletableFuture<String> hash) {
+    }
+
+    private record Page(long lastId, int scanned, int alreadyHashed, List<Row> rows) {
+    }
+
+    private final ConnectionPool.ConnectionFactory connections;
+    private final PasswordHasher hasher;
+    private final int pageSize;
+    private final int threads;
+    private final Path checkpoint;
+
+    private long scanned;
+    private long migrated;
+    private long alreadyHashed;
+    private long changedConcurrently;
+    private long committedId;
+
+    /**
+     * @param checkpoint file holding the last migrated id, or {@code null} to always start
+     *                   from the beginning
+     */
+    public PasswordMigration(ConnectionPool.ConnectionFactory connections, PasswordHasher hasher,
+                             int pageSize, int threads, Path checkpoint) {
+        if (pageSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("pageSize and threads must be at least 1");
+        }
+        this.connections = connections;
+        this.hasher = hasher;
+        this.pageSize = pageSize;
+        this.threads = threads;
+        this.checkpoint = checkpoint;
+    }
+
+    public Report run() throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        long lastProgress = start;
+        long lastId = readCheckpoint();
+        committedId = lastId;
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "migration-hash");
+            t.setDaemon(true);
+            return t;
+        });
+        try (Connection conn = connections.open()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                Page previous = null;
+                while (true) {
+                    Page page = readPage(conn, lastId, workers);
+                    conn.commit();
+                    if (previous != null) {
+                        writePage(conn, previous);
+                    }
+                    if (page == null) {
+                        break;
+                    }
+                    lastId = page.lastId();
+                    previous = page;
+                    long now = System.currentTimeMillis();
+                    if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                        lastProgress = now;
+                        System.out.println("Progress: " + report(now - start));
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return report(System.currentTimeMillis() - start);
+    }
+
+    private Report report(long elapsed) {
+        return new Report(scanned, migrated, alreadyHashed, changedConcurrently, committedId, elapsed);
+    }
+
+    // Reads the next page and starts hashing its plaintext rows; null when no rows remain
+    private Page readPage(Connection conn, long afterId, ExecutorService workers) throws SQLException {
+        List<Row> rows = new ArrayList<>(pageSize);
+        long lastId = afterId;
+        int read = 0;
+        int hashed = 0;
+        try (PreparedStatement ps = conn.prepareStatement(PAGE_SQL)) {
+            ps.setLong(1, afterId);
+            ps.setInt(2, pageSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    read++;
+                    int id = rs.getInt("id");
+                    String clave = rs.getString("clave_hash");
+                    lastId = id;
+                    if (clave == null || PasswordHasher.isHashed(clave)) {
+                        hashed++;
+                        continue;
+                    }
+                    rows.add(new Row(id, clave, CompletableFuture.supplyAsync(() -> hasher.hash(clave), workers)));
+                }
+            }
+        }
+        return read == 0 ? null : new Page(lastId, read, hashed, rows);
+    }
+
+    private void writePage(Connection conn, Page page) throws SQLException, IOException {
+        int written = 0;
+        if (!page.rows().isEmpty()) {
+            try (PreparedStatement ps = conn.prepareStatement(UPDATE_SQL)) {
+                for (Row row : page.rows()) {
+                    ps.setString(1, row.hash().join());
+                    ps.setInt(2, row.id());
+                    ps.setString(3, row.plaintext());
+                    ps.addBatch();
+                }
+                for (int count : ps.executeBatch()) {
+                    // SUCCESS_NO_INFO (-2) means the driver did not report counts; assume applied
+                    if (count != 0) {
+                        written++;
+                    }
+                }
+            }
+        }
+        conn.commit();
+        writeCheckpoint(page.lastId());
+        committedId = page.lastId();
+        scanned += page.scanned();
+        alreadyHashed += page.alreadyHashed();
+        migrated += written;
+        changedConcurrently += page.rows().size() - written;
+    }
+
+    private long readCheckpoint() throws IOException {
+        if (checkpoint == null || !Files.exists(checkpoint)) {
+            return 0;
+        }
+        String text = Files.readString(checkpoint, StandardCharsets.UTF_8).trim();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid checkpoint in " + checkpoint + ": '" + text + "'", e);
+        }
+    }
+
+    // Written to a temp file and moved into place so a crash never leaves a torn checkpoint
+    private void writeCheckpoint(long lastId) throws IOException {
+        if (checkpoint == null) {
+            return;
+        }
+        Path tmp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Files.writeString(tmp, Long.toString(lastId), StandardCharsets.UTF_8);
+        try {
+            Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Inserts {@code rows} plaintext users with JDBC batches, creating the table if needed. */
+    static void generate(Connection conn, long rows) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS usuarios ("
+                    + "id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                    + "email VARCHAR(255) UNIQUE NOT NULL, "
+                    + "clave_hash VARCHAR(255) NOT NULL, "
+                    + "intentos_fallidos INT NOT NULL DEFAULT 0, "
+                    + "bloqueado BOOLEAN NOT NULL DEFAULT FALSE)");
+        }
+        long existing;
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM usuarios")) {
+            rs.next();
+            existing = rs.getLong(1);
+        }
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO usuarios (email, clave_hash) VALUES (?, ?)")) {
+            for (long i = 1; i <= rows; i++) {
+                long n = existing + i;
+                ps.setString(1, "migracion" + n + "@ejemplo.com");
+                ps.setString(2, "Clave!" + (n % 10_000));
+                ps.addBatch();
+                if (i % 10_000 == 0 || i == rows) {
+                    ps.executeBatch();
+                    conn.commit();
+                }
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    public static void main(String[] args) {
+        int pageSize = DEFAULT_PAGE_SIZE;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Integer iterations = null;
+        Path checkpoint = Paths.get("password-migration.checkpoint");
+        long generate = 0;
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--page-size" -> pageSize = Integer.parseInt(required(args[i], value));
+                case "--threads" -> threads = Integer.parseInt(required(args[i], value));
+                case "--iterations" -> iterations = Integer.parseInt(required(args[i], value));
+                case "--checkpoint" -> checkpoint = Paths.get(required(args[i], value));
+                case "--generate" -> generate = Long.parseLong(required(args[i], value));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            i++;
+        }
+
+        try {
+            DbConfig config = DbConnection.currentConfig();
+            ConnectionPool.ConnectionFactory factory =
+                    () -> DbConnection.openUnpooled(config.url(), config.user(), config.password());
+            if (generate > 0) {
+                long t = System.currentTimeMillis();
+                try (Connection conn = factory.open()) {
+                    generate(conn, generate);
+                }
+                System.out.println("Generated " + generate + " users in " + (System.currentTimeMillis() - t) + " ms");
+            }
+            PasswordHasher hasher = new PasswordHasher(
+                    iterations != null ? iterations : HashCostCalibrator.startupCalibration().iterations());
+            System.out.println("Migrating with " + hasher.getIterations() + " iterations, " + threads
+                    + " threads, pages of " + pageSize + ", checkpoint " + checkpoint);
+            Report report = new PasswordMigration(factory, hasher, pageSize, threads, checkpoint).run();
+            System.out.println("Done: " + report);
+        } catch (SQLException | IOException | RuntimeException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static String required(String option, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,173 @@
+package com.auth;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs PBKDF2 verification on a dedicated pool of one thread per core with a bounded queue,
+ * so CPU-heavy hashing never runs on, or starves, the threads doing JDBC I/O.
+ *
+ * <p>When the queue is full new verifications are rejected with
+ * {@link RejectedExecutionException} instead of queueing without limit; the caller turns that
+ * into a {@link LoginResult.Outcome#BUSY} result for that login. Legacy plaintext values are cheap to compare and are checked
+ * on the caller's thread.</p>
+ *
+ * <p>Queue depth and two histograms are exposed for capacity planning: time spent hashing
+ * ({@link #getVerifyTimes}) and time spent waiting for a worker ({@link #getQueueWaitTimes}).</p>
+ */
+public class PasswordVerifier implements AutoCloseable {
+
+    // Queue slots per worker thread in the default configuration
+    private static final int DEFAULT_QUEUE_PER_THREAD = 64;
+
+    private final PasswordHasher hasher;
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final LatencyHistogram verifyTimes = new LatencyHistogram();
+    private final LatencyHistogram queueWaitTimes = new LatencyHistogram();
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+    private final LongAdder rejected = new LongAdder();
+
+    /** One worker per available core, {@value #DEFAULT_QUEUE_PER_THREAD} queued verifications per worker. */
+    public PasswordVerifier(PasswordHasher hasher) {
+        this(hasher, Runtime.getRuntime().availableProcessors(),
+                Runtime.getRuntime().availableProcessors() * DEFAULT_QUEUE_PER_THREAD);
+    }
+
+    public PasswordVerifier(PasswordHasher hasher, int threads, int queueCapacity) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        this.hasher = hasher;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "auth-verify-" + seq.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Verifies on the worker pool. Plaintext values complete immediately.
+     *
+     * @throws RejectedExecutionException if the queue is full or the verifier is closed
+     */
+    public CompletableFuture<Boolean> verifyAsync(String password, String stored) {
+        if (!PasswordHasher.isHashed(stored)) {
+            return CompletableFuture.completedFuture(PasswordHasher.verify(password, stored));
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        long enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                queueWaitTimes.recordNanos(start - enqueuedAt);
+                boolean matches;
+                try {
+                    matches = PasswordHasher.verify(password, stored);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                    return;
+                } finally {
+                    // Recorded before completion so callers see their own sample
+                    verifyTimes.recordNanos(System.nanoTime() - start);
+                }
+                result.complete(matches);
+            });
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Password verifier is closed", e);
+            }
+            rejected.increment();
+            throw new RejectedExecutionException("Password verification queue is full ("
+                    + queueCapacity + " pending)", e);
+        }
+        maxQueueDepth.accumulate(executor.getQueue().size());
+        return result;
+    }
+
+    /**
+     * Verifies on the worker pool and waits for the answer.
+     *
+     * @throws RejectedExecutionException if the queue is full, the verifier is closed or the
+     *         caller is interrupted while waiting
+     */
+    public boolean verify(String password, String stored) {
+        return await(verifyAsync(password, stored));
+    }
+
+    // Waits for a verifyAsync result, mapping interruption to a rejection
+    static boolean await(CompletableFuture<Boolean> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new RejectedExecutionException("Interrupted while waiting for password verification", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    public PasswordHasher getHasher() {
+        return hasher;
+    }
+
+    public int getThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /** Verifications waiting for a worker right now. */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /** Highest queue depth seen right after a submission. */
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /** Verifications currently hashing. */
+    public int getActiveVerifications() {
+        return executor.getActiveCount();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /** Time spent hashing, per verification. */
+    public LatencyHistogram getVerifyTimes() {
+        return verifyTimes;
+    }
+
+    /** Time between submission and a worker picking the verification up. */
+    public LatencyHistogram getQueueWaitTimes() {
+        return queueWaitTimes;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,84 @@
+package com.auth;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Reports virtual threads that block while pinned to their carrier thread (for example
+ * while a JDBC driver holds a {@code synchronized} monitor during socket I/O).
+ *
+ * <p>Listens to the JFR {@code jdk.VirtualThreadPinned} event in-process. Each distinct
+ * pinning site (the first application or driver frame of the stack) is printed once to
+ * {@code System.err}; {@link #getPinningSites()} keeps the counts per site. Events reach
+ * the monitor when JFR flushes, about once a second.</p>
+ */
+public class PinningMonitor implements AutoCloseable {
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+
+    private final RecordingStream stream;
+    private final LongAdder pinnedEvents = new LongAdder();
+    private final Map<String, LongAdder> sites = new ConcurrentHashMap<>();
+
+    /** Starts listening; pinning shorter than {@code threshold} is ignored. */
+    public PinningMonitor(Duration threshold) {
+        stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(EVENT, this::record);
+        stream.startAsync();
+    }
+
+    private void record(RecordedEvent event) {
+        pinnedEvents.increment();
+        String site = pinningSite(event);
+        LongAdder count = sites.get(site);
+        if (count == null) {
+            LongAdder created = new LongAdder();
+            count = sites.putIfAbsent(site, created);
+            if (count == null) {
+                count = created;
+                System.err.println("Virtual thread pinned for " + event.getDuration().toMillis()
+                        + " ms at " + site + " (thread " + event.getThread().getJavaName() + ")");
+            }
+        }
+        count.increment();
+    }
+
+    // First frame outside the JDK, i.e. the code that blocked while holding a monitor
+    private static String pinningSite(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "<unknown>";
+        }
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+                return type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+            }
+        }
+        return "<jdk>";
+    }
+
+    /** Total pinning events seen. */
+    public long getPinnedEvents() {
+        return pinnedEvents.sum();
+    }
+
+    /** Pinning events per site, sorted by site. */
+    public Map<String, Long> getPinningSites() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        sites.forEach((site, count) -> snapshot.put(site, count.sum()));
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+        stream.close();
+    }
+}
@@ -0,0 +1,26 @@
+package com.auth;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Shared token-bucket state for {@link ClusterRateLimiter} nodes. Like the local buckets,
+ * each key is stored as the time at which its bucket will be full again, here in epoch
+ * milliseconds so nodes can compare it.
+ */
+public interface RateLimitStore {
+
+    /**
+     * Charges tokens taken on one node and returns the cluster-wide state.
+     *
+     * @param limiter   name of the limiter, so several can share one store
+     * @param charges   per key, the refill time the node's consumption since its last sync
+     *                  added, in milliseconds
+     * @param nowMillis the node's wall clock
+     * @param maxKeys   the most keys to return
+     * @return refill time of every key of {@code limiter} that is not full at
+     *         {@code nowMillis}, furthest from full first, at most {@code maxKeys} of them
+     */
+    Map<String, Long> reconcile(String limiter, Map<String, Long> charges, long nowMillis, int maxKeys)
+            throws SQLException;
+}
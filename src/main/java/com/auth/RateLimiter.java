@@ -0,0 +1,176 @@
+package com.auth;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets per key (an email or a client identifier) that hold up to {@code capacity}
+ * tokens and refill at {@code refillPerSecond}; each request takes one token or is refused.
+ *
+ * <p>A bucket is a single {@link AtomicLong} holding the time at which it will be full again
+ * (the GCRA form of a token bucket), so taking a token is one compare-and-set and contended
+ * keys never block. A bucket whose refill time has passed is full and carries no state, so
+ * it may be dropped at any time.</p>
+ *
+ * <p>Memory is bounded: once {@code maximumKeys} keys are tracked, full buckets
+ * are swept out and, if that is not enough, arbitrary buckets are dropped until 90% of the
+ * bound is left. A dropped key starts again with a full bucket, so an attacker cycling more
+ * keys than the bound gains a little budget; the database lockout still applies to them.</p>
+ */
+public class RateLimiter {
+
+    public static final int DEFAULT_MAXIMUM_KEYS = 100_000;
+
+    private final int capacity;
+    private final double refillPerSecond;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int maximumKeys;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public RateLimiter(int capacity, double refillPerSecond) {
+        this(capacity, refillPerSecond, DEFAULT_MAXIMUM_KEYS);
+    }
+
+    public RateLimiter(int capacity, double refillPerSecond, int maximumKeys) {
+        this(capacity, refillPerSecond, maximumKeys, System::nanoTime);
+    }
+
+    // Package-private so tests can drive time
+    RateLimiter(int capacity, double refillPerSecond, int maximumKeys, LongSupplier nanoClock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        if (!(refillPerSecond > 0)) {
+            throw new IllegalArgumentException("refillPerSecond must be positive");
+        }
+        if (maximumKeys < 1) {
+            throw new IllegalArgumentException("maximumKeys must be at least 1");
+        }
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / refillPerSecond));
+        this.burstNanos = intervalNanos * capacity;
+        this.maximumKeys = maximumKeys;
+        this.nanoClock = nanoClock;
+    }
+
+    /** Takes a token from {@code key}'s bucket; {@code false} if it is empty. */
+    public boolean tryAcquire(String key) {
+        long now = nanoClock.getAsLong();
+        AtomicLong bucket = bucket(key, now);
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + intervalNanos;
+            if (next - now > burstNanos) {
+                rejected.increment();
+                return false;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                allowed.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Moves {@code key}'s refill time forward to at least {@code fullAtNanos} (on this
+     * limiter's clock), e.g. to apply tokens other nodes took; never gives tokens back.
+     */
+    void advanceTo(String key, long fullAtNanos) {
+        AtomicLong bucket = bucket(key, nanoClock.getAsLong());
+        bucket.accumulateAndGet(fullAtNanos, (current, target) -> target - current > 0 ? target : current);
+    }
+
+    long nanoTime() {
+        return nanoClock.getAsLong();
+    }
+
+    /** Nanoseconds to refill one token. */
+    long intervalNanos() {
+        return intervalNanos;
+    }
+
+    private AtomicLong bucket(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            // Sweep before inserting so the new, still full bucket is not swept out with the rest
+            if (buckets.size() >= maximumKeys) {
+                sweep(now);
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        return bucket;
+    }
+
+    // One thread sweeps at a time; the others carry on and may overshoot the bound briefly.
+    // A request racing with the removal of its bucket spends its token on the dropped one.
+    private void sweep(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+            int target = Math.max(1, maximumKeys - maximumKeys / 10);
+            Iterator<AtomicLong> it = buckets.values().iterator();
+            while (buckets.size() > target && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions.increment();
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /** Tokens {@code key} could take right now. */
+    public int availableTokens(String key) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            return capacity;
+        }
+        // Tokens taken on other nodes can push the refill time past a full burst
+        long owed = Math.min(burstNanos, Math.max(0, bucket.get() - nanoClock.getAsLong()));
+        return (int) ((burstNanos - owed) / intervalNanos);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public double getRefillPerSecond() {
+        return refillPerSecond;
+    }
+
+    public int getMaximumKeys() {
+        return maximumKeys;
+    }
+
+    /** Keys currently tracked. */
+    public int size() {
+        return buckets.size();
+    }
+
+    public long getAllowed() {
+        return allowed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /** Buckets that still had tokens taken and were dropped to respect the key bound. */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
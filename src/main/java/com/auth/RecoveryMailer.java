@@ -0,0 +1,25 @@
+package com.auth;
+
+import java.io.IOException;
+
+/**
+ * Delivers recovery emails for {@link RecoveryOutbox}. A session is one connection to the
+ * mail server, reused for a whole batch.
+ */
+public interface RecoveryMailer {
+
+    /** An open connection; messages sent on it are delivered once {@link #send} returns. */
+    interface Session extends AutoCloseable {
+        /**
+         * Sends the recovery email to {@code to}, with {@code token} for the reset link if it
+         * is not {@code null}. A failure for one message leaves the session usable for the
+         * next unless the connection itself broke; after that, every send fails at once.
+         */
+        void send(String to, String token) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    Session open() throws IOException;
+}
@@ -0,0 +1,424 @@
+package com.auth;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Transactional outbox for recovery emails. A recovery request only inserts a row into
+ * {@code recovery_outbox} on its own connection; a background dispatcher claims due rows in
+ * batches, sends each batch over one {@link RecoveryMailer.Session}, and marks the rows sent
+ * or schedules a retry with exponential backoff. Rows that fail {@code maxAttempts} times
+ * are abandoned, with the last error kept in the row.
+ *
+ * <p>With a {@link RecoveryTokenStore}, the dispatcher issues each email's reset token just
+ * before sending the batch, so the raw token exists only in memory and in the email; the
+ * row holds nothing but the account. Tokens of emails that fail or are handed back unsent
+ * are deleted along with recording the outcome, and the next attempt issues a new one.</p>
+ *
+ * <p>Delivery is at least once: a claimed row is leased for {@value #LEASE_MS} ms, so
+ * dispatchers on other nodes skip it, and if this process dies between sending and
+ * recording, the row is sent again when the lease runs out. So that a slow mail server
+ * cannot make the lease lapse while the batch is still sending, the dispatcher stops with
+ * {@value #LEASE_MARGIN_MS} ms of it left and hands the unsent rows back, due at once and
+ * without counting an attempt.</p>
+ */
+public class RecoveryOutbox implements AutoCloseable {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_MAX_ATTEMPTS = 8;
+    static final long LEASE_MS = 5 * 60_000;
+    // Room for one more message at SmtpMailer's default timeout: five replies of 10 s each
+    static final long LEASE_MARGIN_MS = 60_000;
+    static final long BASE_BACKOFF_MS = 1_000;
+    static final long MAX_BACKOFF_MS = 15 * 60_000;
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO recovery_outbox (user_id, email, created_at, next_attempt_at) VALUES (?, ?, ?, ?)";
+    // Pending rows have a next attempt; served by the partial index in dbScript/auth.sql
+    private static final String CLAIM_SQL =
+            "SELECT id, user_id, email, created_at, attempts FROM recovery_outbox WHERE next_attempt_at <= ? "
+            + "ORDER BY next_attempt_at, id LIMIT ? FOR UPDATE";
+    private static final String LEASE_SQL = "UPDATE recovery_outbox SET next_attempt_at = ? WHERE id = ?";
+    private static final String SENT_SQL =
+            "UPDATE recovery_outbox SET attempts = ?, sent_at = ?, next_attempt_at = NULL WHERE id = ?";
+    private static final String RETRY_SQL =
+            "UPDATE recovery_outbox SET attempts = ?, next_attempt_at = ?, last_error = ? WHERE id = ?";
+    private static final String OLDEST_SQL =
+            "SELECT MIN(created_at) FROM recovery_outbox WHERE next_attempt_at IS NOT NULL";
+
+    private record Claimed(long id, int userId, String email, long createdAt, int attempts) {
+    }
+
+    private final ConnectionPool.ConnectionFactory connections;
+    private final RecoveryMailer mailer;
+    // Optional; issues each email's reset token just before it is sent
+    private final RecoveryTokenStore tokens;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final LongSupplier clock;
+    private final LatencyHistogram lag = new LatencyHistogram();
+    private final LatencyHistogram dispatchTimes = new LatencyHistogram();
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failedAttempts = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder dispatchFailures = new LongAdder();
+    private volatile ScheduledExecutorService scheduler;
+
+    /** Sends emails without a reset token. */
+    public RecoveryOutbox(ConnectionPool.ConnectionFactory connections, RecoveryMailer mailer) {
+        this(connections, mailer, null);
+    }
+
+    /** Sends each email with a reset token from {@code tokens}, or none if it is {@code null}. */
+    public RecoveryOutbox(ConnectionPool.ConnectionFactory connections, RecoveryMailer mailer, RecoveryTokenStore tokens) {
+        this(connections, mailer, tokens, DEFAULT_BATCH_SIZE, DEFAULT_MAX_ATTEMPTS, System::currentTimeMillis);
+    }
+
+    // Package-private so tests can drive the wall clock
+    RecoveryOutbox(ConnectionPool.ConnectionFactory connections, RecoveryMailer mailer, RecoveryTokenStore tokens,
+                   int batchSize, int maxAttempts, LongSupplier clock) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.connections = connections;
+        this.mailer = mailer;
+        this.tokens = tokens;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.clock = clock;
+    }
+
+    /**
+     * Queues a recovery email on {@code conn}, so it commits or rolls back with whatever else
+     * the caller writes there. Due at once.
+     */
+    public void enqueue(Connection conn, int userId, String email) throws SQLException {
+        Timestamp now = new Timestamp(clock.getAsLong());
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            ps.setInt(1, userId);
+            ps.setString(2, email);
+            ps.setTimestamp(3, now);
+            ps.setTimestamp(4, now);
+            ps.executeUpdate();
+        }
+        enqueued.increment();
+    }
+
+    /**
+     * Claims up to one batch of due emails, sends them and records the outcome.
+     *
+     * @return emails claimed; fewer than the batch size means none are left due
+     */
+    public int dispatch() throws SQLException {
+        long start = System.nanoTime();
+        long now = clock.getAsLong();
+        List<Claimed> batch;
+        try {
+            try (Connection conn = connections.open()) {
+                batch = claim(conn, now);
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            String[] issued = issue(batch);
+            String[] errors = new String[batch.size()];
+            int attempted = send(batch, issued, errors, now + LEASE_MS - LEASE_MARGIN_MS);
+            // A fresh connection: none is held while the mail server is slow
+            try (Connection conn = connections.open()) {
+                record(conn, batch, issued, errors, attempted, clock.getAsLong());
+            }
+        } catch (SQLException | RuntimeException e) {
+            // Claimed rows are retried once their lease runs out
+            dispatchFailures.increment();
+            throw e;
+        }
+        dispatchTimes.recordNanos(System.nanoTime() - start);
+        return batch.size();
+    }
+
+    private List<Claimed> claim(Connection conn, long now) throws SQLException {
+        List<Claimed> batch = new ArrayList<>();
+        // Concurrent dispatchers take disjoint rows instead of queueing on each other's locks
+        String sql = isPostgres(conn) ? CLAIM_SQL + " SKIP LOCKED" : CLAIM_SQL;
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setTimestamp(1, new Timestamp(now));
+                ps.setInt(2, batchSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        batch.add(new Claimed(rs.getLong("id"), rs.getInt("user_id"), rs.getString("email"),
+                                rs.getTimestamp("created_at").getTime(), rs.getInt("attempts")));
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                try (PreparedStatement ps = conn.prepareStatement(LEASE_SQL)) {
+                    for (Claimed c : batch) {
+                        ps.setTimestamp(1, new Timestamp(now + LEASE_MS));
+                        ps.setLong(2, c.id());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return batch;
+    }
+
+    // Each email's reset token, committed before any is sent; all null without a token store
+    private String[] issue(List<Claimed> batch) throws SQLException {
+        String[] issued = new String[batch.size()];
+        if (tokens == null) {
+            return issued;
+        }
+        try (Connection conn = connections.open()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                for (int i = 0; i < issued.length; i++) {
+                    issued[i] = tokens.issue(conn, batch.get(i).userId());
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+        return issued;
+    }
+
+    // Fills in each email's error, or null where it was sent; returns how many were tried,
+    // stopping once the clock passes stopAt
+    private int send(List<Claimed> batch, String[] issued, String[] errors, long stopAt) {
+        RecoveryMailer.Session session;
+        try {
+            session = mailer.open();
+        } catch (IOException | RuntimeException e) {
+            Arrays.fill(errors, describe(e));
+            return batch.size();
+        }
+        int attempted = 0;
+        for (int i = 0; i < batch.size() && clock.getAsLong() < stopAt; i++, attempted++) {
+            try {
+                session.send(batch.get(i).email(), issued[i]);
+            } catch (IOException | RuntimeException e) {
+                errors[i] = describe(e);
+            }
+        }
+        try {
+            session.close();
+        } catch (IOException | RuntimeException e) {
+            // Every message already had its reply; a failed QUIT loses nothing
+            e.printStackTrace();
+        }
+        return attempted;
+    }
+
+    // Rows from attempted on were never tried; they are handed back as they were
+    private void record(Connection conn, List<Claimed> batch, String[] issued, String[] errors, int attempted,
+                        long now) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        int sentNow = 0;
+        int abandonedNow = 0;
+        try (PreparedStatement sentPs = conn.prepareStatement(SENT_SQL);
+             PreparedStatement retryPs = conn.prepareStatement(RETRY_SQL);
+             PreparedStatement releasePs = conn.prepareStatement(LEASE_SQL)) {
+            List<String> undelivered = new ArrayList<>();
+            for (int i = attempted; i < batch.size(); i++) {
+                if (issued[i] != null) {
+                    undelivered.add(issued[i]);
+                }
+                releasePs.setTimestamp(1, new Timestamp(now));
+                releasePs.setLong(2, batch.get(i).id());
+                releasePs.addBatch();
+            }
+            for (int i = 0; i < attempted; i++) {
+                Claimed c = batch.get(i);
+                int attempts = c.attempts() + 1;
+                if (errors[i] == null) {
+                    sentPs.setInt(1, attempts);
+                    sentPs.setTimestamp(2, new Timestamp(now));
+                    sentPs.setLong(3, c.id());
+                    sentPs.addBatch();
+                    sentNow++;
+                } else {
+                    boolean giveUp = attempts >= maxAttempts;
+                    retryPs.setInt(1, attempts);
+                    retryPs.setTimestamp(2, giveUp ? null : new Timestamp(now + backoffMillis(attempts)));
+                    retryPs.setString(3, errors[i]);
+                    retryPs.setLong(4, c.id());
+                    retryPs.addBatch();
+                    if (issued[i] != null) {
+                        undelivered.add(issued[i]);
+                    }
+                    if (giveUp) {
+                        abandonedNow++;
+                    }
+                }
+            }
+            if (sentNow > 0) {
+                sentPs.executeBatch();
+            }
+            if (sentNow < attempted) {
+                retryPs.executeBatch();
+            }
+            if (attempted < batch.size()) {
+                releasePs.executeBatch();
+            }
+            if (tokens != null) {
+                tokens.discard(conn, undelivered);
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        for (int i = 0; i < attempted; i++) {
+            if (errors[i] == null) {
+                lag.recordNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(0, now - batch.get(i).createdAt())));
+            }
+        }
+        sent.add(sentNow);
+        failedAttempts.add(attempted - sentNow);
+        abandoned.add(abandonedNow);
+        released.add(batch.size() - attempted);
+    }
+
+    // 1 s after the first failure, doubling up to 15 min
+    static long backoffMillis(int attempts) {
+        int shift = Math.min(attempts - 1, 20);
+        return Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << shift);
+    }
+
+    private static String describe(Exception e) {
+        String message = e.getClass().getSimpleName() + ": " + e.getMessage();
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+
+    private static boolean isPostgres(Connection conn) throws SQLException {
+        return "PostgreSQL".equals(conn.getMetaData().getDatabaseProductName());
+    }
+
+    /**
+     * Dispatches every {@code intervalMillis} on a background thread until {@link #close()},
+     * each run draining whatever is due one batch at a time.
+     */
+    public synchronized void start(long intervalMillis) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("intervalMillis must be at least 1");
+        }
+        if (scheduler != null) {
+            throw new IllegalStateException("Outbox already started");
+        }
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "recovery-outbox");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleWithFixedDelay(() -> {
+            try {
+                int claimed;
+                do {
+                    claimed = dispatch();
+                } while (claimed == batchSize && !Thread.currentThread().isInterrupted());
+            } catch (SQLException | RuntimeException e) {
+                // Counted by dispatch(); the claimed rows are retried after their lease
+                e.printStackTrace();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        scheduler = s;
+    }
+
+    /** Age of the oldest email not yet sent or abandoned, or 0 when there is none. */
+    public long oldestPendingAgeMillis(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(OLDEST_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            Timestamp oldest = rs.next() ? rs.getTimestamp(1) : null;
+            return oldest == null ? 0 : Math.max(0, clock.getAsLong() - oldest.getTime());
+        }
+    }
+
+    /** Time from enqueue to delivery of each sent email. */
+    public LatencyHistogram getLag() {
+        return lag;
+    }
+
+    /** Duration of each dispatch that claimed something, send and bookkeeping included. */
+    public LatencyHistogram getDispatchTimes() {
+        return dispatchTimes;
+    }
+
+    public long getEnqueued() {
+        return enqueued.sum();
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    /** Sends that failed, retried or not. */
+    public long getFailedAttempts() {
+        return failedAttempts.sum();
+    }
+
+    /** Emails given up on after {@code maxAttempts} failures. */
+    public long getAbandoned() {
+        return abandoned.sum();
+    }
+
+    /** Claimed emails handed back unsent because the batch ran close to the end of its lease. */
+    public long getReleased() {
+        return released.sum();
+    }
+
+    /** Dispatches that failed on the database. */
+    public long getDispatchFailures() {
+        return dispatchFailures.sum();
+    }
+
+    /** Stops background dispatch after the batch in progress; queued emails stay in the table. */
+    @Override
+    public synchronized void close() {
+        ScheduledExecutorService s = scheduler;
+        if (s != null) {
+            s.shutdown();
+            try {
+                s.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+    }
+}
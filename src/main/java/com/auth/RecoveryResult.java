@@ -0,0 +1,33 @@
+package com.auth;
+
+/**
+ * Outcome of a password recovery request, returned by {@link AuthService#requestRecovery}.
+ * Use {@link AuthMessages#format(RecoveryResult)} to get the text shown to the user.
+ */
+public record RecoveryResult(Outcome outcome, int userId, String errorDetail) {
+
+    public enum Outcome {
+        EMAIL_SENT,
+        INVALID_EMAIL,
+        USER_NOT_FOUND,
+        DB_ERROR,
+        /** Too many recent requests for this email or client; nothing was looked up. */
+        RATE_LIMITED
+    }
+
+    static final RecoveryResult INVALID_EMAIL = new RecoveryResult(Outcome.INVALID_EMAIL, LoginResult.NO_USER, null);
+    static final RecoveryResult USER_NOT_FOUND = new RecoveryResult(Outcome.USER_NOT_FOUND, LoginResult.NO_USER, null);
+    static final RecoveryResult RATE_LIMITED = new RecoveryResult(Outcome.RATE_LIMITED, LoginResult.NO_USER, null);
+
+    static RecoveryResult emailSent(int userId) {
+        return new RecoveryResult(Outcome.EMAIL_SENT, userId, null);
+    }
+
+    static RecoveryResult dbError(String detail) {
+        return new RecoveryResult(Outcome.DB_ERROR, LoginResult.NO_USER, detail);
+    }
+
+    public boolean isEmailSent() {
+        return outcome == Outcome.EMAIL_SENT;
+    }
+}
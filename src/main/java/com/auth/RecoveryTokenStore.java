@@ -0,0 +1,148 @@
+package com.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Password-recovery tokens in {@code recovery_tokens}. A token is 256 random bits handed to
+ * the user once; the table keeps only its SHA-256, so a leaked table cannot be replayed. The
+ * hash is the primary key: verifying is one index probe regardless of how many tokens are
+ * outstanding. A random token needs no salt or slow hash, as there is nothing to guess.
+ *
+ * <p>{@link #consume} deletes the row it validates, so a token works once even when two
+ * requests race to use it. Expired rows are never accepted and are removed by
+ * {@link RecoveryTokenSweeper}.</p>
+ */
+public class RecoveryTokenStore {
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(30);
+    static final int TOKEN_BYTES = 32;
+    // Tokens are 43 characters; anything much longer is not worth hashing
+    private static final int MAX_TOKEN_LENGTH = 128;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO recovery_tokens (token_hash, user_id, expires_at) VALUES (?, ?, ?)";
+    private static final String DISCARD_SQL = "DELETE FROM recovery_tokens WHERE token_hash = ?";
+    private static final String PEEK_SQL =
+            "SELECT user_id FROM recovery_tokens WHERE token_hash = ? AND expires_at > ?";
+    private static final String CONSUME_POSTGRES_SQL =
+            "DELETE FROM recovery_tokens WHERE token_hash = ? AND expires_at > ? RETURNING user_id";
+    // H2 has no DELETE ... RETURNING; OLD TABLE yields the deleted row the same way
+    private static final String CONSUME_H2_SQL =
+            "SELECT user_id FROM OLD TABLE (DELETE FROM recovery_tokens WHERE token_hash = ? AND expires_at > ?)";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final Duration ttl;
+    private final LongSupplier clock;
+    private final SecureRandom random = new SecureRandom();
+
+    public RecoveryTokenStore() {
+        this(DEFAULT_TTL);
+    }
+
+    public RecoveryTokenStore(Duration ttl) {
+        this(ttl, System::currentTimeMillis);
+    }
+
+    // Package-private so tests can drive the wall clock
+    RecoveryTokenStore(Duration ttl, LongSupplier clock) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Issues a token for {@code userId} on {@code conn}, valid for the TTL.
+     *
+     * @return the token to send to the user; it is not stored anywhere
+     */
+    public String issue(Connection conn, int userId) throws SQLException {
+        byte[] raw = new byte[TOKEN_BYTES];
+        random.nextBytes(raw);
+        String token = ENCODER.encodeToString(raw);
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            ps.setBytes(1, hash(token));
+            ps.setInt(2, userId);
+            ps.setTimestamp(3, new Timestamp(clock.getAsLong() + ttl.toMillis()));
+            ps.executeUpdate();
+        }
+        return token;
+    }
+
+    // Deletes tokens that were issued but never reached their user
+    void discard(Connection conn, List<String> tokens) throws SQLException {
+        if (tokens.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(DISCARD_SQL)) {
+            for (String token : tokens) {
+                ps.setBytes(1, hash(token));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * The account {@code token} was issued for, if it is valid, without using it up; for
+     * showing the reset form before the new password is submitted.
+     *
+     * @return the user id, or {@code null} for an unknown, used or expired token
+     */
+    public Integer peek(Connection conn, String token) throws SQLException {
+        return lookup(conn, PEEK_SQL, token);
+    }
+
+    /**
+     * Validates and uses up {@code token}. Of concurrent calls with one token, at most one
+     * gets the user id.
+     *
+     * @return the user id, or {@code null} for an unknown, used or expired token
+     */
+    public Integer consume(Connection conn, String token) throws SQLException {
+        return lookup(conn, isPostgres(conn) ? CONSUME_POSTGRES_SQL : CONSUME_H2_SQL, token);
+    }
+
+    private Integer lookup(Connection conn, String sql, String token) throws SQLException {
+        if (token == null || token.isEmpty() || token.length() > MAX_TOKEN_LENGTH) {
+            return null;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setBytes(1, hash(token));
+            ps.setTimestamp(2, new Timestamp(clock.getAsLong()));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt("user_id") : null;
+            }
+        }
+    }
+
+    static byte[] hash(String token) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+
+    private static boolean isPostgres(Connection conn) throws SQLException {
+        return "PostgreSQL".equals(conn.getMetaData().getDatabaseProductName());
+    }
+}
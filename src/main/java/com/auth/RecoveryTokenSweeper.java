@@ -0,0 +1,142 @@
+package com.auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Deletes expired rows from {@code recovery_tokens}. Each batch deletes at most
+ * {@code batchSize} rows in its own short transaction, found through the index on
+ * {@code expires_at} oldest first, so no sweep holds locks on many rows at once or reads
+ * tokens that are still valid. A sweep stops after {@code maxBatches}; whatever is left is
+ * picked up by the next one.
+ */
+public class RecoveryTokenSweeper implements AutoCloseable {
+
+    public static final int DEFAULT_BATCH_SIZE = 1_000;
+    public static final int DEFAULT_MAX_BATCHES = 100;
+
+    private static final String DELETE_SQL =
+            "DELETE FROM recovery_tokens WHERE token_hash IN "
+            + "(SELECT token_hash FROM recovery_tokens WHERE expires_at <= ? ORDER BY expires_at LIMIT ?)";
+
+    private final ConnectionPool.ConnectionFactory connections;
+    private final int batchSize;
+    private final int maxBatches;
+    private final LongSupplier clock;
+    private final LatencyHistogram batchTimes = new LatencyHistogram();
+    private final LongAdder sweeps = new LongAdder();
+    private final LongAdder rowsDeleted = new LongAdder();
+    private final LongAdder sweepFailures = new LongAdder();
+    private volatile ScheduledExecutorService scheduler;
+
+    public RecoveryTokenSweeper(ConnectionPool.ConnectionFactory connections) {
+        this(connections, DEFAULT_BATCH_SIZE, DEFAULT_MAX_BATCHES, System::currentTimeMillis);
+    }
+
+    // Package-private so tests can drive the wall clock
+    RecoveryTokenSweeper(ConnectionPool.ConnectionFactory connections, int batchSize, int maxBatches,
+                         LongSupplier clock) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        if (maxBatches < 1) {
+            throw new IllegalArgumentException("maxBatches must be at least 1");
+        }
+        this.connections = connections;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+        this.clock = clock;
+    }
+
+    /**
+     * Deletes tokens that expired by now, up to {@code maxBatches} batches.
+     *
+     * @return rows deleted
+     */
+    public int sweep() throws SQLException {
+        Timestamp now = new Timestamp(clock.getAsLong());
+        int deleted = 0;
+        try (Connection conn = connections.open()) {
+            // Every batch is its own transaction
+            conn.setAutoCommit(true);
+            try (PreparedStatement ps = conn.prepareStatement(DELETE_SQL)) {
+                for (int batch = 0; batch < maxBatches; batch++) {
+                    long start = System.nanoTime();
+                    ps.setTimestamp(1, now);
+                    ps.setInt(2, batchSize);
+                    int n = ps.executeUpdate();
+                    batchTimes.recordNanos(System.nanoTime() - start);
+                    deleted += n;
+                    if (n < batchSize) {
+                        break;
+                    }
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            sweepFailures.increment();
+            rowsDeleted.add(deleted);
+            throw e;
+        }
+        sweeps.increment();
+        rowsDeleted.add(deleted);
+        return deleted;
+    }
+
+    /** Sweeps every {@code intervalMillis} on a background thread until {@link #close()}. */
+    public synchronized void start(long intervalMillis) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("intervalMillis must be at least 1");
+        }
+        if (scheduler != null) {
+            throw new IllegalStateException("Sweeper already started");
+        }
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "recovery-token-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (SQLException | RuntimeException e) {
+                // Counted by sweep(); expired tokens are never accepted, so they can wait
+                e.printStackTrace();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        scheduler = s;
+    }
+
+    /** Duration of each DELETE batch. */
+    public LatencyHistogram getBatchTimes() {
+        return batchTimes;
+    }
+
+    public long getSweeps() {
+        return sweeps.sum();
+    }
+
+    public long getRowsDeleted() {
+        return rowsDeleted.sum();
+    }
+
+    public long getSweepFailures() {
+        return sweepFailures.sum();
+    }
+
+    /** Stops background sweeps. */
+    @Override
+    public synchronized void close() {
+        ScheduledExecutorService s = scheduler;
+        if (s != null) {
+            s.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
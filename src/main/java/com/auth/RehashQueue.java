@@ -0,0 +1,177 @@
+package com.auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Upgrades stored credentials in the background after a successful login: plaintext values
+ * and hashes weaker than the configured {@link PasswordHasher} are rehashed on a single
+ * low-priority thread, so the login that noticed them is not slowed down.
+ *
+ * <p>The queue is bounded and holds at most one pending upgrade per account; when it is full
+ * the upgrade is dropped and will be offered again on the account's next login. The write
+ * only applies if {@code clave_hash} still holds the value that was verified, so a password
+ * changed in the meantime is never overwritten.</p>
+ */
+public class RehashQueue implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private static final String UPDATE_SQL = "UPDATE usuarios SET clave_hash = ? WHERE id = ? AND clave_hash = ?";
+
+    private record Task(int userId, String email, String password, String currentHash, Runnable onRehashed) {
+    }
+
+    private final PasswordHasher hasher;
+    private final ConnectionPool.ConnectionFactory connections;
+    private final Consumer<String> onRehashed;
+    private final BlockingQueue<Task> queue;
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+    private final Thread worker;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rehashed = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean closed;
+
+    public RehashQueue(PasswordHasher hasher, ConnectionPool.ConnectionFactory connections) {
+        this(hasher, connections, DEFAULT_CAPACITY, email -> { });
+    }
+
+    /**
+     * @param onRehashed called with the account's email after its hash was replaced, e.g.
+     *                   {@code UserRecordCache::invalidate} for a cache the submitting
+     *                   {@link AuthService} does not own
+     */
+    public RehashQueue(PasswordHasher hasher, ConnectionPool.ConnectionFactory connections, int capacity,
+                       Consumer<String> onRehashed) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.hasher = hasher;
+        this.connections = connections;
+        this.onRehashed = onRehashed;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.worker = new Thread(this::run, "auth-rehash");
+        this.worker.setDaemon(true);
+        this.worker.setPriority(Thread.MIN_PRIORITY);
+        this.worker.start();
+    }
+
+    public PasswordHasher getHasher() {
+        return hasher;
+    }
+
+    /** Whether {@code storedHash} is weaker than what this queue would write. */
+    public boolean needsRehash(String storedHash) {
+        return hasher.needsRehash(storedHash);
+    }
+
+    /**
+     * Queues an upgrade of {@code currentHash}, which {@code password} was just verified
+     * against. Returns {@code false} if the account is already queued or the queue is full.
+     */
+    public boolean submit(int userId, String email, String password, String currentHash) {
+        return submit(userId, email, password, currentHash, null);
+    }
+
+    /**
+     * Like {@link #submit(int, String, String, String)}, also running {@code onRehashed}
+     * (unless {@code null}) once this upgrade is written.
+     */
+    public boolean submit(int userId, String email, String password, String currentHash, Runnable onRehashed) {
+        if (closed || !pending.add(userId)) {
+            return false;
+        }
+        if (!queue.offer(new Task(userId, email, password, currentHash, onRehashed))) {
+            pending.remove(userId);
+            dropped.increment();
+            return false;
+        }
+        submitted.increment();
+        return true;
+    }
+
+    private void run() {
+        while (!closed) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                rehash(task);
+            } catch (SQLException | RuntimeException e) {
+                failed.increment();
+                e.printStackTrace();
+            } finally {
+                pending.remove(task.userId());
+            }
+        }
+    }
+
+    private void rehash(Task task) throws SQLException {
+        String upgraded = hasher.hash(task.password());
+        try (Connection conn = connections.open();
+             PreparedStatement ps = conn.prepareStatement(UPDATE_SQL)) {
+            ps.setString(1, upgraded);
+            ps.setInt(2, task.userId());
+            ps.setString(3, task.currentHash());
+            if (ps.executeUpdate() == 0) {
+                // Password changed (or account removed) since the login verified it
+                stale.increment();
+                return;
+            }
+        }
+        rehashed.increment();
+        onRehashed.accept(task.email());
+        if (task.onRehashed() != null) {
+            task.onRehashed().run();
+        }
+    }
+
+    /** Upgrades queued or in progress. */
+    public int getPending() {
+        return pending.size();
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /** Upgrades not queued because the queue was full. */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getRehashed() {
+        return rehashed.sum();
+    }
+
+    /** Upgrades skipped because the stored value had changed. */
+    public long getStale() {
+        return stale.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /** Stops the worker; queued upgrades are discarded and offered again on later logins. */
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        queue.clear();
+        pending.clear();
+    }
+}
@@ -0,0 +1,279 @@
+package com.auth;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * "Remember me" tokens in {@code remember_me_tokens}, so a returning user can log in without
+ * the password. A token is a random selector, stored as is and used as the primary key, and
+ * a random validator, of which only the SHA-256 is stored. Checking one is a single
+ * primary-key lookup, joined to the account to see whether it is blocked, and a
+ * constant-time comparison of the hashes; a leaked table holds no usable validator.
+ *
+ * <p>Each successful {@link #redeem} replaces the validator and extends the expiry, and the
+ * caller must keep the new token. The new validator is the SHA-256 of a random salt, kept in
+ * the row, and the old validator, so for a short grace window after a rotation the old token
+ * yields the same replacement again: a double submit, a client retry or the loser of two
+ * racing requests ends up with the token the winner got rather than being logged out. The
+ * rotation itself is a compare-and-set on the old hash. A known selector presented with any
+ * other validator means an old copy of the token is in use, as after a theft: the row is
+ * deleted, logging out both holders.</p>
+ */
+public class RememberMeStore {
+
+    public static final Duration DEFAULT_TTL = Duration.ofDays(30);
+    public static final Duration DEFAULT_GRACE = Duration.ofSeconds(30);
+    static final int SELECTOR_BYTES = 12;
+    static final int VALIDATOR_BYTES = 32;
+    // Base64url without padding: 16 characters of selector, then 43 of validator
+    static final int SELECTOR_LENGTH = 16;
+    static final int TOKEN_LENGTH = SELECTOR_LENGTH + 43;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO remember_me_tokens (selector, validator_hash, user_id, expires_at) VALUES (?, ?, ?, ?)";
+    // The account's primary key rides along, so a lock is seen in the same round trip
+    private static final String LOOKUP_SQL =
+            "SELECT r.validator_hash, r.rotation_salt, r.rotated_at, r.user_id, r.expires_at, u.bloqueado "
+            + "FROM remember_me_tokens r "
+            + "JOIN usuarios u ON u.id = r.user_id WHERE r.selector = ?";
+    private static final String ROTATE_SQL =
+            "UPDATE remember_me_tokens SET validator_hash = ?, rotation_salt = ?, rotated_at = ?, expires_at = ? "
+            + "WHERE selector = ? AND validator_hash = ?";
+    private static final String DELETE_SQL = "DELETE FROM remember_me_tokens WHERE selector = ?";
+    private static final String REVOKE_USER_SQL = "DELETE FROM remember_me_tokens WHERE user_id = ?";
+    private static final String DELETE_EXPIRED_SQL =
+            "DELETE FROM remember_me_tokens WHERE selector IN "
+            + "(SELECT selector FROM remember_me_tokens WHERE expires_at <= ? ORDER BY expires_at LIMIT ?)";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    /** A redeemed token: the account, and the token that replaces the one presented. */
+    public record Redeemed(int userId, String token) {
+    }
+
+    private final Duration ttl;
+    private final Duration grace;
+    private final LongSupplier clock;
+    private final SecureRandom random = new SecureRandom();
+    private final LongAdder mismatches = new LongAdder();
+    private final LongAdder replays = new LongAdder();
+
+    public RememberMeStore() {
+        this(DEFAULT_TTL);
+    }
+
+    public RememberMeStore(Duration ttl) {
+        this(ttl, DEFAULT_GRACE);
+    }
+
+    /**
+     * @param grace how long after a rotation the replaced token still yields the same
+     *              replacement; zero treats any reuse as theft
+     */
+    public RememberMeStore(Duration ttl, Duration grace) {
+        this(ttl, grace, System::currentTimeMillis);
+    }
+
+    // Package-private so tests can drive the wall clock
+    RememberMeStore(Duration ttl, Duration grace, LongSupplier clock) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        if (grace.isNegative() || grace.compareTo(ttl) >= 0) {
+            throw new IllegalArgumentException("grace must be at least zero and shorter than ttl");
+        }
+        this.ttl = ttl;
+        this.grace = grace;
+        this.clock = clock;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public Duration getGrace() {
+        return grace;
+    }
+
+    /**
+     * Issues a token for {@code userId} on {@code conn}, valid for the TTL.
+     *
+     * @return the token to keep on the user's device
+     */
+    public String issue(Connection conn, int userId) throws SQLException {
+        byte[] selector = randomBytes(SELECTOR_BYTES);
+        byte[] validator = randomBytes(VALIDATOR_BYTES);
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            ps.setBytes(1, selector);
+            ps.setBytes(2, hash(validator));
+            ps.setInt(3, userId);
+            ps.setTimestamp(4, new Timestamp(clock.getAsLong() + ttl.toMillis()));
+            ps.executeUpdate();
+        }
+        return ENCODER.encodeToString(selector) + ENCODER.encodeToString(validator);
+    }
+
+    /**
+     * Checks {@code token} and replaces it. Within the grace window after a rotation, the
+     * replaced token is answered with the same replacement again.
+     *
+     * @return the account and the replacement token, or {@code null} for an unknown, expired
+     *         or mismatched token, or one of a blocked account
+     */
+    public Redeemed redeem(Connection conn, String token) throws SQLException {
+        if (token == null || token.length() != TOKEN_LENGTH) {
+            return null;
+        }
+        byte[] selector;
+        byte[] validator;
+        try {
+            selector = DECODER.decode(token.substring(0, SELECTOR_LENGTH));
+            validator = DECODER.decode(token.substring(SELECTOR_LENGTH));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        // A second pass sees the rotation of a request that raced this one
+        for (int pass = 0; pass < 2; pass++) {
+            byte[] storedHash;
+            byte[] salt;
+            Timestamp rotatedAt;
+            int userId;
+            long expiresAt;
+            boolean blocked;
+            try (PreparedStatement ps = conn.prepareStatement(LOOKUP_SQL)) {
+                ps.setBytes(1, selector);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    storedHash = rs.getBytes("validator_hash");
+                    salt = rs.getBytes("rotation_salt");
+                    rotatedAt = rs.getTimestamp("rotated_at");
+                    userId = rs.getInt("user_id");
+                    expiresAt = rs.getTimestamp("expires_at").getTime();
+                    blocked = rs.getBoolean("bloqueado");
+                }
+            }
+            long now = clock.getAsLong();
+            // MessageDigest.isEqual takes the same time wherever the hashes differ
+            boolean matches = MessageDigest.isEqual(storedHash, hash(validator));
+            byte[] replacement = null;
+            if (!matches && salt != null && rotatedAt != null && now - rotatedAt.getTime() < grace.toMillis()) {
+                byte[] candidate = next(validator, salt);
+                if (MessageDigest.isEqual(storedHash, hash(candidate))) {
+                    replacement = candidate;
+                }
+            }
+            if ((!matches && replacement == null) || expiresAt <= now) {
+                if (!matches && replacement == null) {
+                    mismatches.increment();
+                }
+                delete(conn, selector);
+                return null;
+            }
+            if (blocked) {
+                // Left in place: a timed lock may lapse before the token does
+                return null;
+            }
+            String prefix = token.substring(0, SELECTOR_LENGTH);
+            if (replacement != null) {
+                replays.increment();
+                return new Redeemed(userId, prefix + ENCODER.encodeToString(replacement));
+            }
+            byte[] nextSalt = randomBytes(VALIDATOR_BYTES);
+            byte[] next = next(validator, nextSalt);
+            try (PreparedStatement ps = conn.prepareStatement(ROTATE_SQL)) {
+                ps.setBytes(1, hash(next));
+                ps.setBytes(2, nextSalt);
+                ps.setTimestamp(3, new Timestamp(now));
+                ps.setTimestamp(4, new Timestamp(now + ttl.toMillis()));
+                ps.setBytes(5, selector);
+                ps.setBytes(6, storedHash);
+                if (ps.executeUpdate() == 1) {
+                    return new Redeemed(userId, prefix + ENCODER.encodeToString(next));
+                }
+            }
+            // Another request rotated or deleted it since the lookup
+        }
+        return null;
+    }
+
+    /**
+     * Deletes every token of {@code userId}, as when the account is blocked.
+     *
+     * @return tokens deleted
+     */
+    public int revokeUser(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(REVOKE_USER_SQL)) {
+            ps.setInt(1, userId);
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Deletes up to {@code limit} expired tokens, oldest first; they are never accepted, so
+     * this only reclaims space.
+     *
+     * @return tokens deleted
+     */
+    public int deleteExpired(Connection conn, int limit) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(DELETE_EXPIRED_SQL)) {
+            ps.setTimestamp(1, new Timestamp(clock.getAsLong()));
+            ps.setInt(2, limit);
+            return ps.executeUpdate();
+        }
+    }
+
+    /** Known selectors presented with a wrong validator. */
+    public long getMismatches() {
+        return mismatches.sum();
+    }
+
+    /** Replaced tokens presented again within the grace window and answered with their replacement. */
+    public long getGraceReplays() {
+        return replays.sum();
+    }
+
+    private void delete(Connection conn, byte[] selector) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(DELETE_SQL)) {
+            ps.setBytes(1, selector);
+            ps.executeUpdate();
+        }
+    }
+
+    private byte[] randomBytes(int n) {
+        byte[] bytes = new byte[n];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    // The validator that replaces this one; without the salt it cannot be predicted
+    private static byte[] next(byte[] validator, byte[] salt) {
+        MessageDigest md = sha256();
+        md.update(salt);
+        return md.digest(validator);
+    }
+
+    static byte[] hash(byte[] validator) {
+        return sha256().digest(validator);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+}
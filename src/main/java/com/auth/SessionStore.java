@@ -0,0 +1,536 @@
+package com.auth;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Server-side sessions: opaque 128-bit ids, sent as 32 hex characters, mapped to a user id
+ * and an expiry. Unlike {@link SessionTokens} a session can be revoked, one at a time with
+ * {@link #revoke} or every session of a user at once with {@link #revokeUser}.
+ *
+ * <p>Sessions live in {@value #SHARDS} shards chosen by user id; the shard is also written
+ * into the top bits of the id, so a lookup goes straight to it. Each shard keeps sessions in
+ * parallel primitive arrays (a slab of reusable slots) with an open-addressing index from
+ * id to slot, and its own lock. Every user with sessions in a shard has a generation
+ * number that each session records when created; {@link #revokeUser} bumps it, which
+ * invalidates all of that user's sessions in O(1). Their slots are freed when they expire.</p>
+ *
+ * <p>Expiry is checked on every lookup. Slots are reclaimed by {@link #expire}, which takes
+ * due sessions from a {@link TimingWheel} per shard and never scans the live ones. A slot
+ * has at most one wheel entry: one freed and reused before its entry fires keeps that entry,
+ * which schedules the slot again for the new expiry when it fires, so login/logout churn
+ * cannot grow the wheel past the number of slots. At most {@code maxSessions} are held;
+ * {@link #create} returns {@code null} beyond that. {@link #footprintBytes} reports the
+ * memory the arrays take.</p>
+ */
+public class SessionStore implements AutoCloseable {
+
+    public static final Duration DEFAULT_TTL = Duration.ofHours(12);
+    public static final int DEFAULT_MAX_SESSIONS = 1_000_000;
+    public static final long DEFAULT_TICK_MS = 1_000;
+    static final int SHARDS = 64;
+    static final int ID_LENGTH = 32;
+
+    private static final int SHARD_SHIFT = 58;
+    // A freed slot never looks expired, so a stale wheel entry for it is ignored
+    private static final long FREE = Long.MAX_VALUE;
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final long ttlMillis;
+    private final int maxSessions;
+    private final LongSupplier clock;
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicInteger size = new AtomicInteger();
+    private final LatencyHistogram sweepTimes = new LatencyHistogram();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder revoked = new LongAdder();
+    private volatile ScheduledExecutorService scheduler;
+
+    public SessionStore() {
+        this(DEFAULT_TTL, DEFAULT_MAX_SESSIONS);
+    }
+
+    public SessionStore(Duration ttl, int maxSessions) {
+        this(ttl, maxSessions, DEFAULT_TICK_MS, System::currentTimeMillis);
+    }
+
+    // Package-private so tests can drive the wall clock
+    SessionStore(Duration ttl, int maxSessions, long tickMillis, LongSupplier clock) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("maxSessions must be at least 1");
+        }
+        this.ttlMillis = ttl.toMillis();
+        this.maxSessions = maxSessions;
+        this.clock = clock;
+        long now = clock.getAsLong();
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(tickMillis, now);
+        }
+    }
+
+    /**
+     * Opens a session for {@code userId}, valid for the TTL from now.
+     *
+     * @return the session id, or {@code null} if {@code maxSessions} are already held
+     */
+    public String create(int userId) {
+        if (size.incrementAndGet() > maxSessions) {
+            size.decrementAndGet();
+            rejected.increment();
+            return null;
+        }
+        int shard = shardOf(userId);
+        long hi = (random.nextLong() & ~(-1L << SHARD_SHIFT)) | ((long) shard << SHARD_SHIFT);
+        long lo = random.nextLong();
+        Shard s = shards[shard];
+        synchronized (s) {
+            // 128 random bits do not collide in practice; the check keeps the index consistent if they do
+            while (s.find(hi, lo) >= 0) {
+                lo = random.nextLong();
+            }
+            s.add(hi, lo, userId, clock.getAsLong() + ttlMillis);
+        }
+        created.increment();
+        return toId(hi, lo);
+    }
+
+    /**
+     * The user a session belongs to.
+     *
+     * @return the user id, or {@link LoginResult#NO_USER} for an unknown, expired or revoked session
+     */
+    public int lookup(String sessionId) {
+        if (!isId(sessionId)) {
+            return LoginResult.NO_USER;
+        }
+        long hi = parseHex(sessionId, 0);
+        long lo = parseHex(sessionId, 16);
+        Shard s = shards[(int) (hi >>> SHARD_SHIFT)];
+        long now = clock.getAsLong();
+        synchronized (s) {
+            int slot = s.find(hi, lo);
+            if (slot < 0 || s.expiresAt[slot] <= now) {
+                return LoginResult.NO_USER;
+            }
+            int userId = s.userIds[slot];
+            return s.generations[slot] == s.generation(userId) ? userId : LoginResult.NO_USER;
+        }
+    }
+
+    /**
+     * Ends one session, as on logout.
+     *
+     * @return whether it was held
+     */
+    public boolean revoke(String sessionId) {
+        if (!isId(sessionId)) {
+            return false;
+        }
+        long hi = parseHex(sessionId, 0);
+        long lo = parseHex(sessionId, 16);
+        Shard s = shards[(int) (hi >>> SHARD_SHIFT)];
+        synchronized (s) {
+            int slot = s.find(hi, lo);
+            if (slot < 0) {
+                return false;
+            }
+            s.free(slot);
+        }
+        size.decrementAndGet();
+        revoked.increment();
+        return true;
+    }
+
+    /** Invalidates every session of {@code userId} in O(1); their slots are reclaimed as they expire. */
+    public void revokeUser(int userId) {
+        Shard s = shards[shardOf(userId)];
+        synchronized (s) {
+            s.bumpGeneration(userId);
+        }
+    }
+
+    /**
+     * Frees the slots of sessions that have expired, shard by shard.
+     *
+     * @return sessions removed
+     */
+    public int expire() {
+        long start = System.nanoTime();
+        long now = clock.getAsLong();
+        int removed = 0;
+        for (Shard s : shards) {
+            synchronized (s) {
+                for (int slot : s.wheel.advance(now)) {
+                    s.scheduled[slot] = false;
+                    if (s.expiresAt[slot] <= now) {
+                        s.free(slot);
+                        removed++;
+                    } else if (s.expiresAt[slot] != FREE) {
+                        // Freed and reused since this entry was scheduled; follow the new session
+                        s.schedule(slot);
+                    }
+                }
+            }
+        }
+        size.addAndGet(-removed);
+        expired.add(removed);
+        sweepTimes.recordNanos(System.nanoTime() - start);
+        return removed;
+    }
+
+    /** Expires sessions every {@code intervalMillis} on a background thread until {@link #close()}. */
+    public synchronized void start(long intervalMillis) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("intervalMillis must be at least 1");
+        }
+        if (scheduler != null) {
+            throw new IllegalStateException("Session expiry already started");
+        }
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleWithFixedDelay(() -> {
+            try {
+                expire();
+            } catch (RuntimeException e) {
+                // Lookups check expiry themselves; the next run reclaims the slots
+                e.printStackTrace();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        scheduler = s;
+    }
+
+    /** Sessions held, including revoked ones not yet expired. */
+    public int size() {
+        return size.get();
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Bytes held by the session arrays, indexes and expiry wheel entries; about 60 per
+     * session once the arrays have grown to fit.
+     */
+    public long footprintBytes() {
+        long bytes = 0;
+        for (Shard s : shards) {
+            synchronized (s) {
+                bytes += s.footprintBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /** Duration of each {@link #expire} run. */
+    public LatencyHistogram getSweepTimes() {
+        return sweepTimes;
+    }
+
+    public long getCreated() {
+        return created.sum();
+    }
+
+    /** Sessions not created because the store was full. */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    /** Sessions ended with {@link #revoke}. */
+    public long getRevoked() {
+        return revoked.sum();
+    }
+
+    /** Stops background expiry. */
+    @Override
+    public synchronized void close() {
+        ScheduledExecutorService s = scheduler;
+        if (s != null) {
+            s.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private static int shardOf(int userId) {
+        return (userId * 0x9E3779B9) >>> (Integer.SIZE - 6);
+    }
+
+    private static String toId(long hi, long lo) {
+        char[] id = new char[ID_LENGTH];
+        for (int i = 0; i < 16; i++) {
+            id[i] = Character.forDigit((int) (hi >>> (60 - 4 * i)) & 0xf, 16);
+            id[16 + i] = Character.forDigit((int) (lo >>> (60 - 4 * i)) & 0xf, 16);
+        }
+        return new String(id);
+    }
+
+    private static boolean isId(String id) {
+        if (id == null || id.length() != ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < ID_LENGTH; i++) {
+            char c = id.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Sixteen lowercase hex digits from offset, already checked by isId
+    private static long parseHex(String id, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 16; i++) {
+            char c = id.charAt(i);
+            value = value << 4 | (c <= '9' ? c - '0' : c - 'a' + 10);
+        }
+        return value;
+    }
+
+    // One lock's worth of sessions. Not thread-safe; guarded by its own monitor.
+    private static final class Shard {
+        // Session slab: slot i is a session while expiresAt[i] != FREE
+        long[] idHi = new long[16];
+        long[] idLo = new long[16];
+        long[] expiresAt = new long[16];
+        int[] userIds = new int[16];
+        int[] generations = new int[16];
+        // Whether the slot has an entry in the wheel, live or left over from an earlier session
+        boolean[] scheduled = new boolean[16];
+        // Free slots chain through userIds; -1 ends the chain
+        int freeHead = -1;
+        int slots;
+        int sessions;
+        // Linear-probing index from session id to slot + 1; 0 is empty
+        int[] index = new int[32];
+        // Users with sessions here: session count and generation, keyed by user id
+        int[] userKeys = new int[16];
+        int[] userCounts = new int[16];
+        int[] userGenerations = new int[16];
+        int users;
+        final TimingWheel wheel;
+
+        Shard(long tickMillis, long nowMillis) {
+            wheel = new TimingWheel(tickMillis, nowMillis);
+        }
+
+        int find(long hi, long lo) {
+            int mask = index.length - 1;
+            for (int i = (int) lo & mask; ; i = (i + 1) & mask) {
+                int e = index[i];
+                if (e == 0) {
+                    return -1;
+                }
+                if (idLo[e - 1] == lo && idHi[e - 1] == hi) {
+                    return e - 1;
+                }
+            }
+        }
+
+        void add(long hi, long lo, int userId, long expires) {
+            int slot;
+            if (freeHead >= 0) {
+                slot = freeHead;
+                freeHead = userIds[slot];
+            } else {
+                if (slots == idHi.length) {
+                    growSlab();
+                }
+                slot = slots++;
+            }
+            idHi[slot] = hi;
+            idLo[slot] = lo;
+            expiresAt[slot] = expires;
+            userIds[slot] = userId;
+            generations[slot] = addUser(userId);
+            if (++sessions * 2 > index.length) {
+                rehash(index.length * 2);
+            }
+            int mask = index.length - 1;
+            int i = (int) lo & mask;
+            while (index[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            index[i] = slot + 1;
+            if (!scheduled[slot]) {
+                schedule(slot);
+            }
+        }
+
+        void schedule(int slot) {
+            wheel.schedule(slot, expiresAt[slot]);
+            scheduled[slot] = true;
+        }
+
+        void free(int slot) {
+            int mask = index.length - 1;
+            int i = (int) idLo[slot] & mask;
+            while (index[i] != slot + 1) {
+                i = (i + 1) & mask;
+            }
+            removeIndexEntry(i);
+            sessions--;
+            removeUser(userIds[slot]);
+            expiresAt[slot] = FREE;
+            userIds[slot] = freeHead;
+            freeHead = slot;
+        }
+
+        // Backward-shift deletion keeps probe chains intact without tombstones
+        private void removeIndexEntry(int gap) {
+            int mask = index.length - 1;
+            for (int i = (gap + 1) & mask; index[i] != 0; i = (i + 1) & mask) {
+                int home = (int) idLo[index[i] - 1] & mask;
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    index[gap] = index[i];
+                    gap = i;
+                }
+            }
+            index[gap] = 0;
+        }
+
+        private void rehash(int capacity) {
+            int[] old = index;
+            index = new int[capacity];
+            int mask = capacity - 1;
+            for (int e : old) {
+                if (e != 0) {
+                    int i = (int) idLo[e - 1] & mask;
+                    while (index[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    index[i] = e;
+                }
+            }
+        }
+
+        private void growSlab() {
+            int capacity = idHi.length * 2;
+            idHi = Arrays.copyOf(idHi, capacity);
+            idLo = Arrays.copyOf(idLo, capacity);
+            expiresAt = Arrays.copyOf(expiresAt, capacity);
+            userIds = Arrays.copyOf(userIds, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+            scheduled = Arrays.copyOf(scheduled, capacity);
+        }
+
+        // Current generation of a user with sessions here
+        int generation(int userId) {
+            int i = findUser(userId);
+            return i < 0 ? 0 : userGenerations[i];
+        }
+
+        void bumpGeneration(int userId) {
+            int i = findUser(userId);
+            if (i >= 0) {
+                userGenerations[i]++;
+            }
+        }
+
+        private int findUser(int userId) {
+            int mask = userKeys.length - 1;
+            for (int i = hashUser(userId) & mask; userCounts[i] != 0; i = (i + 1) & mask) {
+                if (userKeys[i] == userId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Counts one more session for the user; returns the generation it belongs to
+        private int addUser(int userId) {
+            int i = findUser(userId);
+            if (i >= 0) {
+                userCounts[i]++;
+                return userGenerations[i];
+            }
+            if (++users * 2 > userKeys.length) {
+                rehashUsers(userKeys.length * 2);
+            }
+            int mask = userKeys.length - 1;
+            i = hashUser(userId) & mask;
+            while (userCounts[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            userKeys[i] = userId;
+            userCounts[i] = 1;
+            userGenerations[i] = 0;
+            return 0;
+        }
+
+        // The entry, and with it the generation, goes once the user's last session is freed
+        private void removeUser(int userId) {
+            int gap = findUser(userId);
+            if (--userCounts[gap] > 0) {
+                return;
+            }
+            users--;
+            int mask = userKeys.length - 1;
+            for (int i = (gap + 1) & mask; userCounts[i] != 0; i = (i + 1) & mask) {
+                int home = hashUser(userKeys[i]) & mask;
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    userKeys[gap] = userKeys[i];
+                    userCounts[gap] = userCounts[i];
+                    userGenerations[gap] = userGenerations[i];
+                    gap = i;
+                }
+            }
+            userCounts[gap] = 0;
+        }
+
+        private void rehashUsers(int capacity) {
+            int[] keys = userKeys;
+            int[] counts = userCounts;
+            int[] gens = userGenerations;
+            userKeys = new int[capacity];
+            userCounts = new int[capacity];
+            userGenerations = new int[capacity];
+            int mask = capacity - 1;
+            for (int j = 0; j < keys.length; j++) {
+                if (counts[j] != 0) {
+                    int i = hashUser(keys[j]) & mask;
+                    while (userCounts[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    userKeys[i] = keys[j];
+                    userCounts[i] = counts[j];
+                    userGenerations[i] = gens[j];
+                }
+            }
+        }
+
+        // Users in a shard share their top hash bits; spread the rest
+        private static int hashUser(int userId) {
+            int h = userId * 0x85EBCA6B;
+            return h ^ (h >>> 15);
+        }
+
+        long footprintBytes() {
+            // Slab: three longs, two ints and a flag per slot; wheel: an int id and a long deadline
+            // per entry, at most one per slot
+            return (long) idHi.length * (3 * 8 + 2 * 4 + 1)
+                    + (long) index.length * 4
+                    + (long) userKeys.length * 3 * 4
+                    + (long) wheel.size() * (4 + 8);
+        }
+    }
+}
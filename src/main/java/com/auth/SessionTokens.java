@@ -0,0 +1,319 @@
+package com.auth;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Stateless session tokens for logged-in users: HMAC-SHA256 signed, verified with no
+ * database access. A token is 30 bytes, 40 characters of base64url:
+ *
+ * <pre>
+ * version (1) | key id (1) | user id (4) | issued at (4) | expires at (4) | tag (16)
+ * </pre>
+ *
+ * <p>Times are unsigned epoch seconds; the tag is the HMAC of the first 14 bytes, truncated
+ * to 128 bits. Several keys can be active at once, each under a one-byte id: tokens are
+ * signed with the signing key and verified with whichever key their id names, so a new key
+ * can be added, made the signing key once every node has it, and the old one removed after
+ * its tokens have expired.</p>
+ *
+ * <p>{@link #verify} allocates only the {@link Claims} it returns, and nothing for a
+ * rejected token: the HMAC is computed with the precomputed key pads over buffers borrowed
+ * from a small pool. The pool is shared rather than per thread because logins run on
+ * one-shot virtual threads, which would each build their own. A token stays valid until it
+ * expires, even if the account is blocked meanwhile.</p>
+ */
+public class SessionTokens {
+
+    public static final Duration DEFAULT_TTL = Duration.ofHours(12);
+    /** Shortest secret accepted: the HMAC-SHA256 output size. */
+    public static final int MIN_SECRET_BYTES = 32;
+
+    static final int VERSION = 1;
+    static final int PAYLOAD_BYTES = 14;
+    static final int TAG_BYTES = 16;
+    static final int TOKEN_BYTES = PAYLOAD_BYTES + TAG_BYTES;
+    static final int TOKEN_LENGTH = 40;
+
+    private static final int BLOCK_BYTES = 64;
+    private static final int DIGEST_BYTES = 32;
+    // A power of two, so a thread id masks to a slot; enough for every core to hold one
+    private static final int SCRATCH_SLOTS =
+            Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors() * 2 - 1)) * 2;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    /**
+     * A verified token.
+     *
+     * @param issuedAt  epoch second the token was issued
+     * @param expiresAt epoch second from which the token is rejected
+     * @param keyId     id of the key that signed it
+     */
+    public record Claims(int userId, long issuedAt, long expiresAt, int keyId) {
+    }
+
+    // HMAC key pads, read-only once built and shared by all threads
+    private static final class Key {
+        final byte[] innerPad = new byte[BLOCK_BYTES];
+        final byte[] outerPad = new byte[BLOCK_BYTES];
+
+        Key(byte[] secret) {
+            byte[] k = secret.length > BLOCK_BYTES ? sha256().digest(secret) : secret;
+            for (int i = 0; i < BLOCK_BYTES; i++) {
+                byte b = i < k.length ? k[i] : 0;
+                innerPad[i] = (byte) (b ^ 0x36);
+                outerPad[i] = (byte) (b ^ 0x5c);
+            }
+        }
+    }
+
+    // The active keys, indexed by key id, and which one signs; replaced whole, never modified,
+    // so a reader sees a signing id and its key together
+    private record KeySet(Key[] keys, int signingKeyId) {
+    }
+
+    // Digest and buffers for one HMAC at a time, so verifying allocates nothing of its own
+    private static final class Scratch {
+        final MessageDigest sha256 = sha256();
+        final byte[] token = new byte[TOKEN_BYTES];
+        final byte[] inner = new byte[DIGEST_BYTES];
+        final byte[] tag = new byte[DIGEST_BYTES];
+    }
+
+    // Empty slots are null; a caller takes a Scratch out and puts it back when done
+    private final AtomicReferenceArray<Scratch> scratch = new AtomicReferenceArray<>(SCRATCH_SLOTS);
+    private final long ttlSeconds;
+    private final LongSupplier clock;
+    private volatile KeySet keySet;
+
+    public SessionTokens(int keyId, byte[] secret) {
+        this(keyId, secret, DEFAULT_TTL);
+    }
+
+    public SessionTokens(int keyId, byte[] secret, Duration ttl) {
+        this(keyId, secret, ttl, System::currentTimeMillis);
+    }
+
+    // Package-private so tests can drive the wall clock
+    SessionTokens(int keyId, byte[] secret, Duration ttl, LongSupplier clock) {
+        if (ttl.getSeconds() < 1) {
+            throw new IllegalArgumentException("ttl must be at least one second");
+        }
+        this.ttlSeconds = ttl.getSeconds();
+        this.clock = clock;
+        this.keySet = new KeySet(withKey(new Key[256], keyId, secret), keyId);
+    }
+
+    public Duration getTtl() {
+        return Duration.ofSeconds(ttlSeconds);
+    }
+
+    public int getSigningKeyId() {
+        return keySet.signingKeyId();
+    }
+
+    /** Accepts tokens signed under {@code keyId}; replaces any key already under that id. */
+    public synchronized void addKey(int keyId, byte[] secret) {
+        KeySet current = keySet;
+        keySet = new KeySet(withKey(current.keys(), keyId, secret), current.signingKeyId());
+    }
+
+    /** Signs new tokens with {@code keyId}, which must have been added. */
+    public synchronized void setSigningKey(int keyId) {
+        checkKeyId(keyId);
+        KeySet current = keySet;
+        if (current.keys()[keyId] == null) {
+            throw new IllegalArgumentException("No key with id " + keyId);
+        }
+        keySet = new KeySet(current.keys(), keyId);
+    }
+
+    /** Stops accepting tokens signed under {@code keyId}; the signing key cannot be removed. */
+    public synchronized void removeKey(int keyId) {
+        checkKeyId(keyId);
+        KeySet current = keySet;
+        if (keyId == current.signingKeyId()) {
+            throw new IllegalStateException("Key " + keyId + " is the signing key");
+        }
+        Key[] next = current.keys().clone();
+        next[keyId] = null;
+        keySet = new KeySet(next, current.signingKeyId());
+    }
+
+    private static Key[] withKey(Key[] keys, int keyId, byte[] secret) {
+        checkKeyId(keyId);
+        if (secret.length < MIN_SECRET_BYTES) {
+            throw new IllegalArgumentException("secret must be at least " + MIN_SECRET_BYTES + " bytes");
+        }
+        Key[] next = keys.clone();
+        next[keyId] = new Key(secret);
+        return next;
+    }
+
+    /** Issues a token for {@code userId}, valid for the TTL from now. */
+    public String issue(int userId) {
+        // One read, so the signing id always names a key in the same set
+        KeySet current = keySet;
+        int keyId = current.signingKeyId();
+        long now = clock.getAsLong() / 1000;
+        byte[] token = new byte[TOKEN_BYTES];
+        token[0] = VERSION;
+        token[1] = (byte) keyId;
+        putInt(token, 2, userId);
+        putInt(token, 6, (int) now);
+        putInt(token, 10, (int) (now + ttlSeconds));
+        Scratch s = borrow();
+        try {
+            sign(s, current.keys()[keyId], token);
+            System.arraycopy(s.tag, 0, token, PAYLOAD_BYTES, TAG_BYTES);
+        } finally {
+            release(s);
+        }
+        return ENCODER.encodeToString(token);
+    }
+
+    /**
+     * Checks {@code token}'s signature and expiry.
+     *
+     * @return its claims, or {@code null} if it is malformed, forged, signed under an unknown
+     *         key or expired
+     */
+    public Claims verify(String token) {
+        if (token == null || token.length() != TOKEN_LENGTH) {
+            return null;
+        }
+        Scratch s = borrow();
+        try {
+            return verify(s, token);
+        } finally {
+            release(s);
+        }
+    }
+
+    private Claims verify(Scratch s, String token) {
+        byte[] raw = s.token;
+        if (!decode(token, raw) || raw[0] != VERSION) {
+            return null;
+        }
+        int keyId = raw[1] & 0xff;
+        Key key = keySet.keys()[keyId];
+        if (key == null) {
+            return null;
+        }
+        sign(s, key, raw);
+        // Constant time, so the comparison does not reveal how much of a forged tag matched
+        int diff = 0;
+        for (int i = 0; i < TAG_BYTES; i++) {
+            diff |= s.tag[i] ^ raw[PAYLOAD_BYTES + i];
+        }
+        if (diff != 0) {
+            return null;
+        }
+        long expiresAt = getInt(raw, 10) & 0xffffffffL;
+        if (clock.getAsLong() / 1000 >= expiresAt) {
+            return null;
+        }
+        return new Claims(getInt(raw, 2), getInt(raw, 6) & 0xffffffffL, expiresAt, keyId);
+    }
+
+    // Starts at the caller's own slot, so a thread that keeps signing tends to reuse one
+    private Scratch borrow() {
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i < SCRATCH_SLOTS; i++) {
+            Scratch s = scratch.getAndSet((start + i) & (SCRATCH_SLOTS - 1), null);
+            if (s != null) {
+                return s;
+            }
+        }
+        // Not filled yet, or more callers at once than slots
+        return new Scratch();
+    }
+
+    private void release(Scratch s) {
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i < SCRATCH_SLOTS; i++) {
+            if (scratch.compareAndSet((start + i) & (SCRATCH_SLOTS - 1), null, s)) {
+                return;
+            }
+        }
+        // Every slot is full: let this one go
+    }
+
+    // HMAC-SHA256 of the payload into s.tag: H(outer pad || H(inner pad || payload))
+    private static void sign(Scratch s, Key key, byte[] token) {
+        MessageDigest md = s.sha256;
+        try {
+            md.update(key.innerPad, 0, BLOCK_BYTES);
+            md.update(token, 0, PAYLOAD_BYTES);
+            md.digest(s.inner, 0, DIGEST_BYTES);
+            md.update(key.outerPad, 0, BLOCK_BYTES);
+            md.update(s.inner, 0, DIGEST_BYTES);
+            md.digest(s.tag, 0, DIGEST_BYTES);
+        } catch (DigestException e) {
+            throw new IllegalStateException("SHA-256 output buffer too small", e);
+        }
+    }
+
+    // Base64url without padding; 40 characters decode to exactly 30 bytes
+    private static boolean decode(String token, byte[] out) {
+        for (int i = 0, o = 0; i < TOKEN_LENGTH; i += 4, o += 3) {
+            int a = sextet(token.charAt(i));
+            int b = sextet(token.charAt(i + 1));
+            int c = sextet(token.charAt(i + 2));
+            int d = sextet(token.charAt(i + 3));
+            if ((a | b | c | d) < 0) {
+                return false;
+            }
+            int bits = a << 18 | b << 12 | c << 6 | d;
+            out[o] = (byte) (bits >> 16);
+            out[o + 1] = (byte) (bits >> 8);
+            out[o + 2] = (byte) bits;
+        }
+        return true;
+    }
+
+    private static int sextet(char c) {
+        return c < 128 ? DECODE[c] : -1;
+    }
+
+    private static void putInt(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >>> 24);
+        b[offset + 1] = (byte) (value >>> 16);
+        b[offset + 2] = (byte) (value >>> 8);
+        b[offset + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] b, int offset) {
+        return (b[offset] & 0xff) << 24 | (b[offset + 1] & 0xff) << 16
+                | (b[offset + 2] & 0xff) << 8 | (b[offset + 3] & 0xff);
+    }
+
+    private static void checkKeyId(int keyId) {
+        if (keyId < 0 || keyId > 255) {
+            throw new IllegalArgumentException("keyId must be 0-255");
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.auth;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collapses concurrent identical lookups: the first caller for a key runs the query, and
+ * callers that arrive while it is in flight wait for its result instead of running their
+ * own. Nothing is kept once the query returns, so this is not a cache; the next caller
+ * after that queries again.
+ *
+ * <p>A waiter gets a result read at most one query's duration before it arrived. Code that
+ * changes what a key reads should call {@link #forget} first, so callers arriving after the
+ * change start a fresh query. A failed query fails every waiter with the same message.</p>
+ */
+public class SingleFlight<K, V> {
+
+    /** The shared query; may return {@code null}. */
+    @FunctionalInterface
+    public interface Call<V> {
+        V call() throws SQLException;
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    /** Runs {@code call} for {@code key}, or waits for the run already in flight. */
+    public V execute(K key, Call<V> call) throws SQLException {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> flight = inFlight.putIfAbsent(key, mine);
+        if (flight != null) {
+            shared.increment();
+            return await(flight);
+        }
+        executions.increment();
+        V value;
+        try {
+            value = call.call();
+        } catch (Throwable e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+        // Removed before completing, so a caller that misses this result queries afresh
+        inFlight.remove(key, mine);
+        mine.complete(value);
+        return value;
+    }
+
+    private static <V> V await(CompletableFuture<V> flight) throws SQLException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a shared lookup", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sql) {
+                // A fresh exception per waiter, so suppressed close errors stay with their caller
+                throw new SQLException(sql.getMessage(), sql.getSQLState(), sql.getErrorCode(), sql);
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Detaches the lookup in flight for {@code key}, if any: its waiters still get its result,
+     * later callers run a new query.
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /** Queries actually run. */
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    /** Callers served by another caller's query. */
+    public long getShared() {
+        return shared.sum();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
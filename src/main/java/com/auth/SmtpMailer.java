@@ -0,0 +1,189 @@
+package com.auth;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal SMTP client for recovery emails: plain SMTP (no TLS or AUTH, as to a local relay),
+ * one connection per {@link RecoveryMailer.Session}, with {@code RSET} between messages so a
+ * rejected recipient does not end the session. Any other failure, such as a timeout, leaves
+ * the connection out of step with the server (a late reply would be read as the answer to
+ * the next command), so the session is closed and every later send fails at once.
+ */
+public class SmtpMailer implements RecoveryMailer {
+
+    public static final int DEFAULT_TIMEOUT_MS = 10_000;
+
+    private static final String SUBJECT = "=?UTF-8?Q?Recuperaci=C3=B3n_de_contrase=C3=B1a?=";
+    private static final String BODY =
+            "Recibimos una solicitud para recuperar la contraseña de tu cuenta.\r\n"
+            + "Si no fuiste tú, ignora este mensaje.\r\n";
+
+    /** The server answered a command with an unexpected reply. */
+    public static class ReplyException extends IOException {
+        private final int code;
+
+        ReplyException(String command, String reply) {
+            super(command + ": " + reply);
+            this.code = replyCode(reply);
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final String from;
+    private final int timeoutMillis;
+
+    public SmtpMailer(String host, int port, String from) {
+        this(host, port, from, DEFAULT_TIMEOUT_MS);
+    }
+
+    public SmtpMailer(String host, int port, String from, int timeoutMillis) {
+        this.host = host;
+        this.port = port;
+        this.from = requireSingleLine(from);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public Session open() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            SmtpSession session = new SmtpSession(socket);
+            session.expect("connect", 220);
+            session.command("HELO " + socket.getLocalAddress().getHostName(), 250);
+            return session;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private final class SmtpSession implements Session {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final OutputStream out;
+        // The failure that ended the session, or null while it is usable
+        private IOException broken;
+
+        SmtpSession(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = socket.getOutputStream();
+        }
+
+        @Override
+        public void send(String to, String token) throws IOException {
+            requireSingleLine(to);
+            if (broken != null) {
+                throw new IOException("Session ended by an earlier failure: " + broken.getMessage(), broken);
+            }
+            try {
+                command("MAIL FROM:<" + from + ">", 250);
+                command("RCPT TO:<" + to + ">", 250, 251);
+                command("DATA", 354);
+                write("From: <" + from + ">\r\n"
+                        + "To: <" + to + ">\r\n"
+                        + "Subject: " + SUBJECT + "\r\n"
+                        + "MIME-Version: 1.0\r\n"
+                        + "Content-Type: text/plain; charset=UTF-8\r\n"
+                        + "Content-Transfer-Encoding: 8bit\r\n"
+                        + "\r\n"
+                        + dotStuff(token == null ? BODY : BODY + "Código de recuperación: " + token + "\r\n")
+                        + ".\r\n");
+                expect("DATA", 250);
+            } catch (ReplyException e) {
+                // Clear the half-built transaction so the next message starts clean
+                try {
+                    command("RSET", 250);
+                } catch (IOException rset) {
+                    abandon(rset);
+                }
+                throw e;
+            } catch (IOException e) {
+                abandon(e);
+                throw e;
+            }
+        }
+
+        private void abandon(IOException cause) {
+            broken = cause;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already failing; the socket is unusable either way
+            }
+        }
+
+        void command(String line, int... expected) throws IOException {
+            write(line + "\r\n");
+            expect(line, expected);
+        }
+
+        void expect(String command, int... expected) throws IOException {
+            String line;
+            // Multi-line replies continue with "250-" and end with "250 "
+            do {
+                line = in.readLine();
+                if (line == null) {
+                    throw new IOException(command + ": connection closed by server");
+                }
+            } while (line.length() > 3 && line.charAt(3) == '-');
+            int code = replyCode(line);
+            for (int e : expected) {
+                if (code == e) {
+                    return;
+                }
+            }
+            throw new ReplyException(command, line);
+        }
+
+        private void write(String text) throws IOException {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (broken != null) {
+                return;
+            }
+            try {
+                command("QUIT", 221);
+            } finally {
+                socket.close();
+            }
+        }
+    }
+
+    private static int replyCode(String reply) {
+        try {
+            return Integer.parseInt(reply.substring(0, Math.min(3, reply.length())));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // A line starting with '.' would otherwise end the message early
+    private static String dotStuff(String body) {
+        return (body.startsWith(".") ? "." : "") + body.replace("\r\n.", "\r\n..");
+    }
+
+    private static String requireSingleLine(String address) {
+        if (address.indexOf('\r') >= 0 || address.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Address must not contain line breaks");
+        }
+        return address;
+    }
+}
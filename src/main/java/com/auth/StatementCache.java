@@ -0,0 +1,292 @@
+package com.auth;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of {@link PreparedStatement}s for one physical connection, keyed by SQL text.
+ *
+ * <p>Statements handed out by {@link #prepare(String)} are proxies: {@code close()} clears
+ * their parameters and any unexecuted batch and puts them back in the cache instead of
+ * closing them, so the driver
+ * parses each SQL string once per connection (and PostgreSQL can switch to a server-side
+ * prepared statement). A statement is checked out of the cache while in use, so two open
+ * statements for the same SQL never share state. A statement whose settings were changed
+ * (row limit, fetch size, timeout and the like) is closed rather than cached, so the next
+ * borrower gets the driver defaults. {@code getConnection()} on a cached statement returns
+ * the connection it was prepared through, never the physical one behind a proxy.</p>
+ */
+public class StatementCache implements AutoCloseable {
+
+    /** Hit/miss/eviction counters; may be shared by the caches of all connections in a pool. */
+    public static final class Stats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        public long getEvictions() {
+            return evictions.sum();
+        }
+    }
+
+    // Statement settings that would otherwise carry over to the next borrower
+    private static final Set<String> SETTINGS = Set.of("setMaxRows", "setLargeMaxRows", "setFetchSize",
+            "setFetchDirection", "setQueryTimeout", "setMaxFieldSize", "setEscapeProcessing", "setCursorName",
+            "setPoolable", "closeOnCompletion");
+
+    private final Connection physical;
+    private final int maxSize;
+    private final Stats stats;
+    private final Map<String, PreparedStatement> idle;
+    private boolean closed;
+
+    public StatementCache(Connection physical, int maxSize) {
+        this(physical, maxSize, new Stats());
+    }
+
+    public StatementCache(Connection physical, int maxSize, Stats stats) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Statement cache size must be at least 1");
+        }
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.stats = stats;
+        this.idle = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.maxSize) {
+                    stats.evictions.increment();
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Wraps a connection so that {@code prepareStatement(String)} goes through a new cache.
+     * Closing the returned connection closes the cached statements and the connection.
+     */
+    public static Connection wrap(Connection conn, int maxSize) {
+        StatementCache cache = new StatementCache(conn, maxSize);
+        return (Connection) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    if (isPrepareBySql(method, args)) {
+                        return cache.prepare((String) args[0], (Connection) proxy);
+                    }
+                    if (isUnwrapToProxy(proxy, method, args)) {
+                        return proxy;
+                    }
+                    if ("close".equals(method.getName())) {
+                        cache.close();
+                    }
+                    try {
+                        return ownedBy(method, method.invoke(conn, args), (Connection) proxy);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    // unwrap(Connection.class) and the like answer with the proxy itself; only a vendor
+    // class the proxy does not implement reaches the physical connection
+    static boolean isUnwrapToProxy(Object proxy, Method method, Object[] args) {
+        return "unwrap".equals(method.getName()) && args != null && args.length == 1
+                && ((Class<?>) args[0]).isInstance(proxy);
+    }
+
+    /**
+     * Wraps a statement or metadata object that {@code method} returned from a physical
+     * connection so that its {@code getConnection()} returns {@code owner}, the proxy the
+     * caller holds; anything else is returned as is. Closing what {@code getConnection()}
+     * hands back then goes through the proxy, as closing the caller's own reference would.
+     */
+    static Object ownedBy(Method method, Object result, Connection owner) {
+        if (!(result instanceof Statement) && !(result instanceof DatabaseMetaData)) {
+            return result;
+        }
+        return Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[] {method.getReturnType()},
+                (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "getConnection":
+                            return owner;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            break;
+                    }
+                    try {
+                        return m.invoke(result, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    // True for Connection.prepareStatement(String), the only overload that is cached
+    static boolean isPrepareBySql(Method method, Object[] args) {
+        return "prepareStatement".equals(method.getName()) && args != null && args.length == 1;
+    }
+
+    /** Returns a cached statement for {@code sql}, preparing one on a miss. */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, physical);
+    }
+
+    /**
+     * Like {@link #prepare(String)}, for a statement whose {@code getConnection()} returns
+     * {@code owner}, the proxy it was prepared through.
+     */
+    public PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+        PreparedStatement ps;
+        synchronized (this) {
+            if (closed) {
+                throw new SQLException("Statement cache is closed");
+            }
+            ps = idle.remove(sql);
+        }
+        if (ps != null) {
+            stats.hits.increment();
+        } else {
+            stats.misses.increment();
+            ps = physical.prepareStatement(sql);
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[] {PreparedStatement.class},
+                new CachedStatementHandler(sql, ps, owner));
+    }
+
+    private void giveBack(String sql, PreparedStatement ps, boolean settingsChanged) throws SQLException {
+        if (settingsChanged) {
+            ps.close();
+            return;
+        }
+        try {
+            ResultSet open = ps.getResultSet();
+            if (open != null) {
+                open.close();
+            }
+            ps.clearParameters();
+            // Rows added but never executed, e.g. when an earlier batch in the same transaction failed
+            ps.clearBatch();
+            ps.clearWarnings();
+        } catch (SQLException e) {
+            closeQuietly(ps);
+            throw e;
+        }
+        synchronized (this) {
+            if (!closed && !idle.containsKey(sql)) {
+                idle.put(sql, ps);
+                return;
+            }
+        }
+        ps.close();
+    }
+
+    /** Number of idle statements currently cached. */
+    public synchronized int size() {
+        return idle.size();
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    /** Closes every cached statement. Statements still checked out close when returned. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            for (PreparedStatement ps : idle.values()) {
+                closeQuietly(ps);
+            }
+            idle.clear();
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            // Statement is being discarded; nothing else to do
+        }
+    }
+
+    private final class CachedStatementHandler implements InvocationHandler {
+        private final String sql;
+        private final Connection owner;
+        private PreparedStatement target;
+        private boolean settingsChanged;
+
+        CachedStatementHandler(String sql, PreparedStatement target, Connection owner) {
+            this.sql = sql;
+            this.target = target;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (target != null) {
+                        PreparedStatement returning = target;
+                        target = null;
+                        giveBack(sql, returning, settingsChanged);
+                    }
+                    return null;
+                case "isClosed":
+                    return target == null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + sql + "]";
+                default:
+                    break;
+            }
+            if (target == null) {
+                throw new SQLException("Statement is closed");
+            }
+            if (SETTINGS.contains(method.getName())) {
+                settingsChanged = true;
+            }
+            if ("getConnection".equals(method.getName())) {
+                return owner;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
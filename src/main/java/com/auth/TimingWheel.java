@@ -0,0 +1,140 @@
+package com.auth;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel of {@code int} ids with millisecond deadlines. Scheduling is
+ * O(1) and advancing costs one slot per elapsed tick plus the entries that fall due or move
+ * down a level, independent of how many entries are waiting further out.
+ *
+ * <p>Level {@code l} has 64 slots of {@code 64^l} ticks each. An entry sits in the lowest
+ * level whose span still separates it from the current tick, and is moved one level down
+ * each time the wheel reaches its slot, until it fires. Deadlines are rounded to the tick,
+ * so an entry fires up to one tick late, never early. An id can be scheduled more than
+ * once; each entry fires on its own. Not thread-safe.</p>
+ */
+final class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    // Enough levels for any non-negative long tick
+    private static final int LEVELS = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+
+    private final long tickMillis;
+    private final Bucket[][] levels = new Bucket[LEVELS][];
+    // Every tick before this one has fired
+    private long currentTick;
+    private int size;
+
+    // Entries of one slot; deadlines are kept to place them again when they move down a level
+    private static final class Bucket {
+        int[] ids = new int[4];
+        long[] deadlines = new long[4];
+        int size;
+
+        void add(int id, long deadline) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                deadlines = Arrays.copyOf(deadlines, size * 2);
+            }
+            ids[size] = id;
+            deadlines[size] = deadline;
+            size++;
+        }
+    }
+
+    TimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tickMillis must be at least 1");
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = Math.max(0, startMillis) / tickMillis;
+    }
+
+    /** Schedules {@code id} to fire once {@code deadlineMillis} has passed; past deadlines fire on the next advance. */
+    void schedule(int id, long deadlineMillis) {
+        place(id, deadlineMillis);
+        size++;
+    }
+
+    private void place(int id, long deadlineMillis) {
+        long tick = Math.max(currentTick, Math.max(0, deadlineMillis) / tickMillis);
+        int level = 0;
+        // Lowest level whose slots are narrower than the distance still to go
+        while (level < LEVELS - 1 && (tick >>> (SLOT_BITS * (level + 1))) != (currentTick >>> (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        Bucket[] slots = levels[level];
+        if (slots == null) {
+            slots = new Bucket[SLOTS];
+            levels[level] = slots;
+        }
+        int index = (int) (tick >>> (SLOT_BITS * level)) & MASK;
+        Bucket bucket = slots[index];
+        if (bucket == null) {
+            bucket = new Bucket();
+            slots[index] = bucket;
+        }
+        bucket.add(id, deadlineMillis);
+    }
+
+    /**
+     * Fires every entry whose tick ended at or before {@code nowMillis}.
+     *
+     * @return the ids fired, in no particular order
+     */
+    int[] advance(long nowMillis) {
+        long target = Math.max(0, nowMillis) / tickMillis;
+        int[] fired = new int[0];
+        int n = 0;
+        while (currentTick < target) {
+            if (size == 0) {
+                // Nothing can fire; skip the empty ticks
+                currentTick = target;
+                break;
+            }
+            // Move down every level whose slot starts at this tick, highest first, then fire level 0
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    Bucket bucket = take(level, (int) (currentTick >>> (SLOT_BITS * level)) & MASK);
+                    if (bucket != null) {
+                        for (int i = 0; i < bucket.size; i++) {
+                            place(bucket.ids[i], bucket.deadlines[i]);
+                        }
+                    }
+                }
+            }
+            Bucket due = take(0, (int) currentTick & MASK);
+            if (due != null) {
+                if (n + due.size > fired.length) {
+                    fired = Arrays.copyOf(fired, Math.max(n + due.size, fired.length * 2));
+                }
+                System.arraycopy(due.ids, 0, fired, n, due.size);
+                n += due.size;
+                size -= due.size;
+            }
+            currentTick++;
+        }
+        return n == fired.length ? fired : Arrays.copyOf(fired, n);
+    }
+
+    private Bucket take(int level, int index) {
+        Bucket[] slots = levels[level];
+        if (slots == null) {
+            return null;
+        }
+        Bucket bucket = slots[index];
+        slots[index] = null;
+        return bucket;
+    }
+
+    /** Entries scheduled and not yet fired. */
+    int size() {
+        return size;
+    }
+
+    long getTickMillis() {
+        return tickMillis;
+    }
+}
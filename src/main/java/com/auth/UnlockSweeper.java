@@ -0,0 +1,198 @@
+package com.auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Clears expired timed locks ({@code bloqueado_hasta}) from {@code usuarios}. Unlock times
+ * are kept in a {@link TimingWheel}, so a sweep touches only the accounts that fell due and
+ * never scans the table; the rows are written in JDBC batches of {@value #BATCH_SIZE}, one
+ * transaction each.
+ *
+ * <p>Login already treats an expired lock as unlocked, so the sweep is housekeeping: it keeps
+ * the blocked-account count honest and clears stale counters for accounts nobody logs into.
+ * Locks are scheduled by {@link AuthService} as it takes them, and those taken by other
+ * processes or before a restart are picked up with {@link #loadPending}. Each UPDATE is
+ * guarded by {@code bloqueado_hasta <= now}, so an entry for a lock that was since lifted and
+ * taken again with a later expiry is a no-op.</p>
+ */
+public class UnlockSweeper implements AutoCloseable {
+
+    public static final long DEFAULT_TICK_MS = 1_000;
+    static final int BATCH_SIZE = 1_000;
+
+    // Served by the partial index on bloqueado_hasta (see dbScript/auth.sql)
+    private static final String LOAD_SQL =
+            "SELECT id, bloqueado_hasta FROM usuarios WHERE bloqueado = TRUE AND bloqueado_hasta IS NOT NULL";
+    private static final String UNLOCK_SQL =
+            "UPDATE usuarios SET bloqueado = FALSE, intentos_fallidos = 0, bloqueado_hasta = NULL "
+            + "WHERE id = ? AND bloqueado = TRUE AND bloqueado_hasta <= ?";
+
+    private final ConnectionPool.ConnectionFactory connections;
+    private final LongSupplier clock;
+    private final TimingWheel wheel;
+    private final LongAdder sweeps = new LongAdder();
+    private final LongAdder rowsUnlocked = new LongAdder();
+    private final LongAdder sweepFailures = new LongAdder();
+    private volatile ScheduledExecutorService scheduler;
+
+    public UnlockSweeper(ConnectionPool.ConnectionFactory connections) {
+        this(connections, DEFAULT_TICK_MS, System::currentTimeMillis);
+    }
+
+    // Package-private so tests can drive the wall clock
+    UnlockSweeper(ConnectionPool.ConnectionFactory connections, long tickMillis, LongSupplier clock) {
+        this.connections = connections;
+        this.clock = clock;
+        this.wheel = new TimingWheel(tickMillis, clock.getAsLong());
+    }
+
+    /** Schedules an unlock for {@code userId} once {@code unlockAtMillis} has passed. */
+    public void schedule(int userId, long unlockAtMillis) {
+        synchronized (wheel) {
+            wheel.schedule(userId, unlockAtMillis);
+        }
+    }
+
+    /**
+     * Schedules every timed lock currently in {@code usuarios}; call once at startup. Locks
+     * without an expiry are left alone.
+     *
+     * @return locks scheduled
+     */
+    public int loadPending(Connection conn) throws SQLException {
+        int loaded = 0;
+        try (PreparedStatement ps = conn.prepareStatement(LOAD_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                schedule(rs.getInt("id"), rs.getTimestamp("bloqueado_hasta").getTime());
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Unlocks every account whose lock expired by now.
+     *
+     * @return rows unlocked
+     */
+    public int sweep() throws SQLException {
+        long now = clock.getAsLong();
+        int[] due;
+        synchronized (wheel) {
+            due = wheel.advance(now);
+        }
+        if (due.length == 0) {
+            return 0;
+        }
+        int unlocked;
+        try (Connection conn = connections.open()) {
+            unlocked = unlock(conn, due, now);
+        } catch (SQLException | RuntimeException e) {
+            sweepFailures.increment();
+            // Retried by the next sweep
+            synchronized (wheel) {
+                for (int id : due) {
+                    wheel.schedule(id, now);
+                }
+            }
+            throw e;
+        }
+        sweeps.increment();
+        rowsUnlocked.add(unlocked);
+        return unlocked;
+    }
+
+    private static int unlock(Connection conn, int[] ids, long now) throws SQLException {
+        Timestamp cutoff = new Timestamp(now);
+        int unlocked = 0;
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement(UNLOCK_SQL)) {
+            for (int from = 0; from < ids.length; from += BATCH_SIZE) {
+                int to = Math.min(ids.length, from + BATCH_SIZE);
+                for (int i = from; i < to; i++) {
+                    ps.setInt(1, ids[i]);
+                    ps.setTimestamp(2, cutoff);
+                    ps.addBatch();
+                }
+                for (int count : ps.executeBatch()) {
+                    // SUCCESS_NO_INFO counts as one row; the guard makes that at most one
+                    unlocked += count == PreparedStatement.SUCCESS_NO_INFO ? 1 : count;
+                }
+                conn.commit();
+            }
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return unlocked;
+    }
+
+    /**
+     * Sweeps every {@code intervalMillis} on a background thread until {@link #close()}.
+     * An interval of about one tick keeps unlocks within two ticks of their expiry.
+     */
+    public synchronized void start(long intervalMillis) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("intervalMillis must be at least 1");
+        }
+        if (scheduler != null) {
+            throw new IllegalStateException("Sweeper already started");
+        }
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "unlock-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (SQLException | RuntimeException e) {
+                // Counted by sweep(); the due unlocks are retried on the next run
+                e.printStackTrace();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        scheduler = s;
+    }
+
+    /** Unlocks scheduled and not yet swept. */
+    public int getPending() {
+        synchronized (wheel) {
+            return wheel.size();
+        }
+    }
+
+    public long getSweeps() {
+        return sweeps.sum();
+    }
+
+    public long getRowsUnlocked() {
+        return rowsUnlocked.sum();
+    }
+
+    public long getSweepFailures() {
+        return sweepFailures.sum();
+    }
+
+    /** Stops background sweeps; pending unlocks are picked up by {@link #loadPending} on restart. */
+    @Override
+    public synchronized void close() {
+        ScheduledExecutorService s = scheduler;
+        if (s != null) {
+            s.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.auth;
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded read-through cache of the slowly changing part of a {@code usuarios} row (id,
+ * email, credential hash), keyed by email.
+ *
+ * <p>Eviction follows W-TinyLFU: new entries land in a small LRU window; when it overflows,
+ * the window's oldest entry only enters the main segmented LRU if a frequency sketch says it
+ * is accessed more often than the entry it would displace. A burst of one-off emails
+ * therefore cannot flush hot accounts out of the cache. Entries expire {@code ttlMillis}
+ * after they were loaded.</p>
+ *
+ * <p>Consistency contract: attempt counters and the lock flag are never cached; login
+ * always reads them from the database. A cached entry may lag the table by up to the TTL
+ * when another process changes it, so code in this process that changes a password or
+ * locks an account must call {@link #invalidate}. A load that started before an
+ * invalidation is not stored, so invalidation cannot be undone by an in-flight read.</p>
+ *
+ * <p>Lookups of present entries never block: recency and frequency are updated only if the
+ * policy lock is free, as in Caffeine's lossy read buffers.</p>
+ */
+public class UserRecordCache {
+
+    /** The cached columns of one account. */
+    public record CachedUser(int id, String email, String claveHash) {
+    }
+
+    /** Reads an account from the database; returns {@code null} if there is none. */
+    @FunctionalInterface
+    public interface Loader {
+        CachedUser load() throws SQLException;
+    }
+
+    /** Hit/miss/eviction counters. */
+    public static final class Stats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder expirations = new LongAdder();
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        /** Entries dropped by the size bound (including rejected admissions). */
+        public long getEvictions() {
+            return evictions.sum();
+        }
+
+        public long getExpirations() {
+            return expirations.sum();
+        }
+
+        public double getHitRate() {
+            long h = hits.sum();
+            long total = h + misses.sum();
+            return total == 0 ? 0 : (double) h / total;
+        }
+    }
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final int maximumSize;
+    private final int windowMax;
+    private final int protectedMax;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<String, Node> data = new ConcurrentHashMap<>();
+    private final FrequencySketch sketch;
+    private final Stats stats = new Stats();
+    // Bumped by every invalidation; loads that straddle one are not stored
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // Guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque[] queues = {new Deque(), new Deque(), new Deque()};
+
+    public UserRecordCache(int maximumSize, long ttlMillis) {
+        this(maximumSize, ttlMillis, System::nanoTime);
+    }
+
+    // Package-private so tests can drive expiry with a fake clock
+    UserRecordCache(int maximumSize, long ttlMillis, LongSupplier nanoClock) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be at least 1");
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("ttlMillis must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.windowMax = Math.max(1, maximumSize / 100);
+        this.protectedMax = (int) ((maximumSize - windowMax) * 0.8);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.nanoClock = nanoClock;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * Returns the cached account for {@code email}, calling {@code loader} on a miss.
+     * Unknown emails ({@code null} from the loader) are not cached.
+     */
+    public CachedUser get(String email, Loader loader) throws SQLException {
+        long now = nanoClock.getAsLong();
+        Node node = data.get(email);
+        if (node != null && node.expiresAt - now > 0) {
+            stats.hits.increment();
+            if (lock.tryLock()) {
+                try {
+                    sketch.increment(email);
+                    if (node.queue >= 0) {
+                        onAccess(node);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return node.value;
+        }
+        stats.misses.increment();
+        if (node != null) {
+            stats.expirations.increment();
+            remove(node);
+        }
+
+        long generation = invalidations.get();
+        CachedUser loaded = loader.load();
+        lock.lock();
+        try {
+            sketch.increment(email);
+            if (loaded != null && invalidations.get() == generation) {
+                insert(email, loaded, nanoClock.getAsLong() + ttlNanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return loaded;
+    }
+
+    /** Drops the entry for {@code email}; call after changing its password or lock state. */
+    public void invalidate(String email) {
+        invalidations.incrementAndGet();
+        Node node = data.get(email);
+        if (node != null) {
+            remove(node);
+        }
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        lock.lock();
+        try {
+            for (Node node : data.values()) {
+                unlink(node);
+            }
+            data.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Number of entries currently held, including expired ones not yet dropped. */
+    public int size() {
+        return data.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    private void remove(Node node) {
+        lock.lock();
+        try {
+            if (data.remove(node.key, node)) {
+                unlink(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void unlink(Node node) {
+        if (node.queue >= 0) {
+            queues[node.queue].remove(node);
+            node.queue = -1;
+        }
+    }
+
+    // Caller holds lock
+    private void insert(String key, CachedUser value, long expiresAt) {
+        Node existing = data.get(key);
+        if (existing != null) {
+            existing.value = value;
+            existing.expiresAt = expiresAt;
+            onAccess(existing);
+            return;
+        }
+        Node node = new Node(key, value, expiresAt);
+        data.put(key, node);
+        queues[WINDOW].addFirst(node);
+        node.queue = WINDOW;
+        if (queues[WINDOW].size > windowMax) {
+            Node candidate = queues[WINDOW].removeLast();
+            queues[PROBATION].addFirst(candidate);
+            candidate.queue = PROBATION;
+            evictIfNeeded(candidate);
+        }
+    }
+
+    // TinyLFU admission: the window's outgoing candidate replaces the main segment's victim
+    // only if it has been seen more often
+    private void evictIfNeeded(Node candidate) {
+        while (data.size() > maximumSize) {
+            Node victim = queues[PROBATION].last;
+            if (victim == candidate) {
+                victim = queues[PROTECTED].last;
+            }
+            Node evicted;
+            if (victim == null) {
+                evicted = candidate;
+            } else {
+                evicted = sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+            }
+            data.remove(evicted.key, evicted);
+            unlink(evicted);
+            stats.evictions.increment();
+            if (evicted == candidate) {
+                return;
+            }
+        }
+    }
+
+    // Caller holds lock
+    private void onAccess(Node node) {
+        switch (node.queue) {
+            case WINDOW:
+                queues[WINDOW].moveToFront(node);
+                break;
+            case PROBATION:
+                queues[PROBATION].remove(node);
+                queues[PROTECTED].addFirst(node);
+                node.queue = PROTECTED;
+                if (queues[PROTECTED].size > protectedMax) {
+                    Node demoted = queues[PROTECTED].removeLast();
+                    queues[PROBATION].addFirst(demoted);
+                    demoted.queue = PROBATION;
+                }
+                break;
+            case PROTECTED:
+                queues[PROTECTED].moveToFront(node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static final class Node {
+        final String key;
+        volatile CachedUser value;
+        volatile long expiresAt;
+        int queue = -1;
+        Node prev;
+        Node next;
+
+        Node(String key, CachedUser value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Intrusive doubly linked list; first is most recently used
+    private static final class Deque {
+        Node first;
+        Node last;
+        int size;
+
+        void addFirst(Node node) {
+            node.prev = null;
+            node.next = first;
+            if (first != null) {
+                first.prev = node;
+            } else {
+                last = node;
+            }
+            first = node;
+            size++;
+        }
+
+        void remove(Node node) {
+            if (node.prev != null) {
+                node.prev.next = node.next;
+            } else {
+                first = node.next;
+            }
+            if (node.next != null) {
+                node.next.prev = node.prev;
+            } else {
+                last = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        Node removeLast() {
+            Node node = last;
+            remove(node);
+            return node;
+        }
+
+        void moveToFront(Node node) {
+            if (first != node) {
+                remove(node);
+                addFirst(node);
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, four per key. Counters are halved once the number
+     * of recorded accesses reaches ten times the cache size, so old popularity fades.
+     * Not thread-safe; used under the cache's lock.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int counterMask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            int words = Integer.highestOneBit(Math.max(16, maximumSize - 1) << 1);
+            this.table = new long[words];
+            this.counterMask = words * 16 - 1;
+            this.sampleSize = 10 * Math.max(16, maximumSize);
+        }
+
+        int frequency(String key) {
+            int h = key.hashCode();
+            int min = 15;
+            for (int i = 0; i < 4; i++) {
+                min = Math.min(min, counter(indexOf(h, i)));
+            }
+            return min;
+        }
+
+        void increment(String key) {
+            int h = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(h, i);
+                if (counter(index) < 15) {
+                    table[index >>> 4] += 1L << ((index & 15) << 2);
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int counter(int index) {
+            return (int) ((table[index >>> 4] >>> ((index & 15) << 2)) & 0xF);
+        }
+
+        private int indexOf(int h, int row) {
+            long z = (h + SEEDS[row]) * SEEDS[row];
+            z ^= z >>> 32;
+            return (int) z & counterMask;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.auth;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Runs each task on its own virtual thread, with at most {@code maxConcurrency} tasks
+ * running at once. Tasks over the cap wait on a semaphore, which parks only the virtual
+ * thread, so the cap can be tied to the number of database connections without holding
+ * platform threads while waiting.
+ */
+public class VirtualThreadExecutor implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    public VirtualThreadExecutor(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("auth-vt-", 0).factory());
+    }
+
+    /** Runs {@code task} on a virtual thread once a concurrency permit is available. */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return task.get();
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /** Tasks currently running (holding a permit). */
+    public int getRunning() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /** Tasks waiting for a permit. */
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+
+    /** Stops accepting tasks and waits for submitted ones to finish. */
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
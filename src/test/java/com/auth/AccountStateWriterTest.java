@@ -0,0 +1,114 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccountStateWriterTest {
+
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection("jdbc:h2:mem:elisiondb;DB_CLOSE_DELAY=-1");
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT AUTO_INCREMENT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios(email, clave_hash, intentos_fallidos, bloqueado) VALUES('clean@example.com','Abc!1',0,false)");
+            st.execute("INSERT INTO usuarios(email, clave_hash, intentos_fallidos, bloqueado) VALUES('dirty@example.com','Abc!1',2,false)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (conn != null && !conn.isClosed()) conn.close();
+    }
+
+    @Test
+    public void unchangedColumnsAreNotWritten() throws Exception {
+        Connection mockConn = mock(Connection.class);
+        AccountStateWriter writer = new AccountStateWriter();
+
+        AccountStateWriter.Update update = writer.update(mockConn, 1).set("intentos_fallidos", 0, 0).set("bloqueado", false, false);
+        assertTrue(update.isNoOp());
+        assertFalse(update.execute());
+
+        verify(mockConn, never()).prepareStatement(anyString());
+        assertEquals(1, writer.getWritesElided());
+        assertEquals(0, writer.getWritesIssued());
+        assertEquals(2, writer.getColumnsElided());
+    }
+
+    @Test
+    public void onlyChangedColumnsAreWritten() throws Exception {
+        PreparedStatement ps = mock(PreparedStatement.class);
+        Connection mockConn = mock(Connection.class);
+        when(mockConn.prepareStatement(anyString())).thenReturn(ps);
+        AccountStateWriter writer = new AccountStateWriter();
+
+        assertTrue(writer.update(mockConn, 7).set("intentos_fallidos", 1, 2).set("bloqueado", false, false).execute());
+
+        verify(mockConn).prepareStatement("UPDATE usuarios SET intentos_fallidos = ? WHERE id = ?");
+        verify(ps).setObject(1, 2);
+        verify(ps).setInt(2, 7);
+        verify(ps).executeUpdate();
+        assertEquals(1, writer.getWritesIssued());
+        assertEquals(1, writer.getColumnsElided());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsafeColumnNames() {
+        new AccountStateWriter().update(conn, 1).set("bloqueado = TRUE --", false, true);
+    }
+
+    @Test
+    public void successfulLoginOnCleanRowSkipsReset() throws Exception {
+        PreparedStatement selectPs = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(selectPs.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getInt("id")).thenReturn(3);
+        when(rs.getString("clave_hash")).thenReturn("Secret1!");
+        when(rs.getInt("intentos_fallidos")).thenReturn(0);
+        when(rs.getBoolean("bloqueado")).thenReturn(false);
+        Connection mockConn = mock(Connection.class);
+        when(mockConn.prepareStatement(startsWith("SELECT"))).thenReturn(selectPs);
+
+        AuthService svc = new AuthService();
+        assertEquals("Login exitoso 🎉", svc.loginWithConnection(mockConn, "u@example.com", "Secret1!"));
+        verify(mockConn, never()).prepareStatement(startsWith("UPDATE"));
+        assertEquals(1, svc.getAccountStateWriter().getWritesElided());
+    }
+
+    @Test
+    public void loginWritesOnlyWhenStateChanges() throws Exception {
+        AuthService svc = new AuthService();
+        assertEquals("Login exitoso 🎉", svc.loginWithConnection(conn, "clean@example.com", "Abc!1"));
+        assertEquals("Login exitoso 🎉", svc.loginWithConnection(conn, "dirty@example.com", "Abc!1"));
+        assertEquals("Login exitoso 🎉", svc.loginWithConnection(conn, "dirty@example.com", "Abc!1"));
+        assertEquals(1, svc.getAccountStateWriter().getWritesIssued());
+        assertEquals(2, svc.getAccountStateWriter().getWritesElided());
+
+        for (int i = 1; i <= 4; i++) {
+            assertEquals("Clave incorrecta. Intentos: " + i + "/5", svc.loginWithConnection(conn, "clean@example.com", "Xyz!2"));
+        }
+        assertEquals("Cuenta bloqueada. Excedió los 5 intentos.", svc.loginWithConnection(conn, "clean@example.com", "Xyz!2"));
+        try (ResultSet rs = conn.createStatement().executeQuery("SELECT intentos_fallidos, bloqueado FROM usuarios WHERE email='clean@example.com'")) {
+            assertTrue(rs.next());
+            assertEquals(5, rs.getInt(1));
+            assertTrue(rs.getBoolean(2));
+        }
+        assertEquals(6, svc.getAccountStateWriter().getWritesIssued());
+    }
+}
@@ -0,0 +1,128 @@
+package com.auth;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AuthServiceAsyncTest {
+
+    private static final String URL = "jdbc:h2:mem:asyncdb;DB_CLOSE_DELAY=-1";
+
+    private Connection keepAlive;
+
+    @Before
+    public void setUp() throws Exception {
+        keepAlive = DriverManager.getConnection(URL, "sa", "");
+        try (Statement st = keepAlive.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT AUTO_INCREMENT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios(email, clave_hash) VALUES('async@example.com','Abc!1')");
+        }
+        System.setProperty("DB_URL", URL);
+        System.setProperty("DB_USER", "sa");
+        System.setProperty("DB_PASSWORD", "");
+        System.setProperty("DB_DRIVER", "org.h2.Driver");
+        DbConnection.reload();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty("DB_URL");
+        System.clearProperty("DB_USER");
+        System.clearProperty("DB_PASSWORD");
+        System.clearProperty("DB_DRIVER");
+        DbConnection.shutdownPool();
+        keepAlive.close();
+    }
+
+    @Test
+    public void loginAndRecoverRunOnVirtualThreads() throws Exception {
+        AuthService svc = new AuthService();
+        LoginResult login = svc.loginAsync("async@example.com", "Abc!1").get(10, TimeUnit.SECONDS);
+        assertTrue(login.isSuccess());
+        RecoveryResult rec = svc.recoverPasswordAsync("async@example.com").get(10, TimeUnit.SECONDS);
+        assertTrue(rec.isEmailSent());
+
+        boolean virtual = svc.getAsyncExecutor().submit(() -> Thread.currentThread().isVirtual()).get();
+        assertTrue(virtual);
+    }
+
+    @Test
+    public void defaultCapFollowsPoolSize() {
+        AuthService svc = new AuthService();
+        assertEquals(ConnectionPool.Settings.DEFAULT.maxSize(), svc.getAsyncExecutor().getMaxConcurrency());
+    }
+
+    @Test
+    public void concurrencyIsCapped() throws Exception {
+        AuthService svc = new AuthService();
+        svc.setAsyncConcurrency(2);
+        VirtualThreadExecutor executor = svc.getAsyncExecutor();
+
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(executor.submit(() -> {
+                int now = running.incrementAndGet();
+                maxSeen.accumulateAndGet(now, Math::max);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return now;
+            }));
+        }
+        await().atMost(Duration.ofSeconds(5)).until(() -> executor.getWaiting() == 4);
+        assertEquals(2, executor.getRunning());
+        release.countDown();
+        for (CompletableFuture<Integer> f : futures) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(2, maxSeen.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeConcurrencyRejected() {
+        new AuthService().setAsyncConcurrency(-1);
+    }
+
+    @Test
+    public void pinningIsReported() throws Exception {
+        try (PinningMonitor monitor = new PinningMonitor(Duration.ofMillis(5));
+             VirtualThreadExecutor executor = new VirtualThreadExecutor(1)) {
+            Object lock = new Object();
+            executor.submit(() -> {
+                synchronized (lock) {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+
+            await().atMost(Duration.ofSeconds(10)).until(() -> monitor.getPinnedEvents() > 0);
+            assertTrue(monitor.getPinningSites().keySet().stream()
+                    .anyMatch(site -> site.startsWith(AuthServiceAsyncTest.class.getName())));
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AuthServiceBatchTest {
+
+    private Connection conn;
+    private AuthService svc;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection("jdbc:h2:mem:batchdb;DB_CLOSE_DELAY=-1");
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT AUTO_INCREMENT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios(id, email, clave_hash, intentos_fallidos, bloqueado) VALUES(1, 'a@example.com','Abc!1',0,false)");
+            st.execute("INSERT INTO usuarios(id, email, clave_hash, intentos_fallidos, bloqueado) VALUES(2, 'b@example.com','Abc!1',3,false)");
+            st.execute("INSERT INTO usuarios(id, email, clave_hash, intentos_fallidos, bloqueado) VALUES(3, 'c@example.com','Abc!1',5,true)");
+        }
+        svc = new AuthService();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (conn != null && !conn.isClosed()) conn.close();
+    }
+
+    private int[] state(int id) throws Exception {
+        try (ResultSet rs = conn.createStatement().executeQuery("SELECT intentos_fallidos, bloqueado FROM usuarios WHERE id=" + id)) {
+            assertTrue(rs.next());
+            return new int[] {rs.getInt(1), rs.getBoolean(2) ? 1 : 0};
+        }
+    }
+
+    @Test
+    public void resultsAreInInputOrder() throws Exception {
+        List<LoginResult> r = svc.authenticateBatchWithConnection(conn, List.of(
+                new Credentials("a@example.com", "Abc!1"),
+                new Credentials("bad", "Abc!1"),
+                new Credentials("b@example.com", "Xyz!2"),
+                new Credentials("nobody@example.com", "Abc!1"),
+                new Credentials("c@example.com", "Abc!1"),
+                new Credentials("a@example.com", "x")));
+
+        assertEquals(LoginResult.Outcome.SUCCESS, r.get(0).outcome());
+        assertEquals(1, r.get(0).userId());
+        assertSame(LoginResult.INVALID_EMAIL, r.get(1));
+        assertEquals(LoginResult.Outcome.WRONG_PASSWORD, r.get(2).outcome());
+        assertEquals(4, r.get(2).failedAttempts());
+        assertSame(LoginResult.USER_NOT_FOUND, r.get(3));
+        assertEquals(LoginResult.Outcome.ACCOUNT_BLOCKED, r.get(4).outcome());
+        assertSame(LoginResult.INVALID_PASSWORD_FORMAT, r.get(5));
+
+        assertArrayEquals(new int[] {4, 0}, state(2));
+        assertTrue(conn.getAutoCommit());
+    }
+
+    @Test
+    public void repeatedEmailsBehaveLikeSequentialLogins() throws Exception {
+        List<Credentials> batch = new ArrayList<>();
+        batch.add(new Credentials("b@example.com", "Xyz!2"));
+        batch.add(new Credentials("b@example.com", "Xyz!2"));
+        batch.add(new Credentials("b@example.com", "Abc!1"));
+        List<LoginResult> r = svc.authenticateBatchWithConnection(conn, batch);
+
+        assertEquals(LoginResult.Outcome.WRONG_PASSWORD, r.get(0).outcome());
+        assertEquals(LoginResult.Outcome.BLOCKED_NOW, r.get(1).outcome());
+        assertEquals(LoginResult.Outcome.ACCOUNT_BLOCKED, r.get(2).outcome());
+        assertArrayEquals(new int[] {5, 1}, state(2));
+    }
+
+    @Test
+    public void matchesOneByOneLogins() throws Exception {
+        List<Credentials> batch = List.of(
+                new Credentials("a@example.com", "Xyz!2"),
+                new Credentials("b@example.com", "Abc!1"),
+                new Credentials("a@example.com", "Xyz!3"));
+        List<LoginResult> batched = svc.authenticateBatchWithConnection(conn, batch);
+        int[] a = state(1);
+        int[] b = state(2);
+
+        setUp();
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(batched.get(i), svc.authenticateWithConnection(conn, batch.get(i).email(), batch.get(i).password()));
+        }
+        assertArrayEquals(a, state(1));
+        assertArrayEquals(b, state(2));
+    }
+
+    @Test
+    public void queriesAreChunkedAboveInListLimit() throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("INSERT INTO usuarios(id, email, clave_hash) SELECT 100 + X, 'bulk' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, 1200)");
+        }
+        List<Credentials> batch = new ArrayList<>();
+        for (int i = 1; i <= 1200; i++) {
+            batch.add(new Credentials("bulk" + i + "@example.com", i % 2 == 0 ? "Abc!1" : "Xyz!2"));
+        }
+        List<LoginResult> r = svc.authenticateBatchWithConnection(conn, batch);
+        assertEquals(1200, r.size());
+        for (int i = 0; i < r.size(); i++) {
+            assertEquals((i + 1) % 2 == 0 ? LoginResult.Outcome.SUCCESS : LoginResult.Outcome.WRONG_PASSWORD, r.get(i).outcome());
+        }
+        try (ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM usuarios WHERE intentos_fallidos = 1")) {
+            assertTrue(rs.next());
+            assertEquals(600, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void batchLargerThanTheVerifierQueueIsNotRejected() throws Exception {
+        PasswordHasher hasher = new PasswordHasher(10_000);
+        try (Statement st = conn.createStatement()) {
+            st.execute("INSERT INTO usuarios(id, email, clave_hash) SELECT 100 + X, 'hashed' || X || '@example.com', '"
+                    + hasher.hash("Abc!1") + "' FROM SYSTEM_RANGE(1, 40)");
+        }
+        PasswordVerifier verifier = new PasswordVerifier(hasher, 1, 4);
+        svc.setPasswordVerifier(verifier);
+        List<Credentials> batch = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            batch.add(new Credentials("hashed" + i + "@example.com", i % 2 == 0 ? "Abc!1" : "Xyz!2"));
+        }
+        try {
+            List<LoginResult> r = svc.authenticateBatchWithConnection(conn, batch);
+            for (int i = 0; i < r.size(); i++) {
+                assertEquals((i + 1) % 2 == 0 ? LoginResult.Outcome.SUCCESS : LoginResult.Outcome.WRONG_PASSWORD,
+                        r.get(i).outcome());
+            }
+            assertEquals(0, verifier.getRejectedCount());
+            assertTrue(verifier.getMaxQueueDepth() <= 2);
+        } finally {
+            verifier.close();
+        }
+    }
+
+    @Test
+    public void passwordChangedDuringHashingIsCheckedAgainUnderTheLock() throws Exception {
+        AtomicBoolean first = new AtomicBoolean(true);
+        List<LoginResult> r;
+        try (Connection other = DriverManager.getConnection("jdbc:h2:mem:batchdb;DB_CLOSE_DELAY=-1")) {
+            r = BatchAuthenticator.authenticate(conn, List.of(
+                    new Credentials("a@example.com", "Abc!1"),
+                    new Credentials("b@example.com", "Abc!1")), (password, stored) -> {
+                        if (first.getAndSet(false)) {
+                            // No row is locked while hashing, so this does not wait
+                            try (Statement st = other.createStatement()) {
+                                st.execute("UPDATE usuarios SET clave_hash = 'New!1' WHERE id = 1");
+                            } catch (SQLException e) {
+                                throw new IllegalStateException(e);
+                            }
+                        }
+                        return CompletableFuture.completedFuture(stored.equals(password));
+                    }, 8, null, null);
+        }
+        assertEquals(LoginResult.wrongPassword(1, 1), r.get(0));
+        assertEquals(LoginResult.success(2), r.get(1));
+        assertArrayEquals(new int[] {1, 0}, state(1));
+    }
+
+    @Test
+    public void databaseErrorRollsBackAndKeepsValidationResults() throws Exception {
+        Connection mockConn = mock(Connection.class);
+        when(mockConn.getAutoCommit()).thenReturn(true);
+        // The unlocked read finds nothing; the locked one fails inside the transaction
+        PreparedStatement read = mock(PreparedStatement.class);
+        when(read.executeQuery()).thenReturn(mock(ResultSet.class));
+        when(mockConn.prepareStatement(anyString())).thenReturn(read);
+        when(mockConn.prepareStatement(contains("FOR UPDATE"))).thenThrow(new SQLException("batch boom"));
+
+        List<LoginResult> r = svc.authenticateBatchWithConnection(mockConn, List.of(
+                new Credentials("a@example.com", "Abc!1"),
+                new Credentials("bad", "Abc!1")));
+        assertEquals(LoginResult.Outcome.DB_ERROR, r.get(0).outcome());
+        assertEquals("batch boom", r.get(0).errorDetail());
+        assertSame(LoginResult.INVALID_EMAIL, r.get(1));
+        verify(mockConn).rollback();
+        verify(mockConn).setAutoCommit(true);
+    }
+
+    @Test
+    public void onlyInvalidInputNeverTouchesDatabase() {
+        Connection mockConn = mock(Connection.class);
+        List<LoginResult> r = svc.authenticateBatchWithConnection(mockConn, List.of(new Credentials("bad", "x")));
+        assertSame(LoginResult.INVALID_EMAIL, r.get(0));
+        verifyNoInteractions(mockConn);
+    }
+}
@@ -10,6 +10,8 @@ public class AuthServiceLoginWrapperDbFailureTest {
     public void loginReturnsErrorWhenDbConnectionFails() {
         // Force DbConnection to use a missing driver
         System.setProperty("DB_DRIVER", "com.nonexistent.Driver");
+        // Drop any cached configuration so the next login resolves it again
+        DbConnection.shutdownPool();
 
         try {
             AuthService svc = new AuthService();
@@ -12,6 +12,8 @@ public class AuthServiceRecoverWrapperDbFailureTest {
         System.setProperty("DB_URL", "jdbc:h2:mem:tmp;DB_CLOSE_DELAY=-1");
         System.setProperty("DB_USER", "sa");
         System.setProperty("DB_PASSWORD", "");
+        // Drop any cached configuration so the next recovery resolves it again
+        DbConnection.shutdownPool();
         try {
             AuthService svc = new AuthService();
             String res = svc.recoverPassword("noone@example.com");
@@ -44,6 +44,7 @@ public class AuthServiceResilienceTest {
         System.setProperty("DB_USER", postgres.getUsername());
         System.setProperty("DB_PASSWORD", postgres.getPassword());
         System.setProperty("DB_DRIVER", "org.postgresql.Driver");
+        DbConnection.shutdownPool();
     }
 
     @BeforeEach
@@ -64,6 +65,7 @@ public class AuthServiceResilienceTest {
         System.setProperty("DB_URL", postgres.getJdbcUrl());
         System.setProperty("DB_USER", postgres.getUsername());
         System.setProperty("DB_PASSWORD", postgres.getPassword());
+        DbConnection.shutdownPool();
         
         // Initialize test data
         initializeTestData();
@@ -82,6 +84,7 @@ public class AuthServiceResilienceTest {
             System.setProperty("DB_URL", postgres.getJdbcUrl());
             System.setProperty("DB_USER", postgres.getUsername());
             System.setProperty("DB_PASSWORD", postgres.getPassword());
+            DbConnection.shutdownPool();
         }
     }
 
@@ -179,6 +182,7 @@ public class AuthServiceResilienceTest {
         System.setProperty("DB_URL", newJdbcUrl);
         System.setProperty("DB_USER", postgres.getUsername());
         System.setProperty("DB_PASSWORD", postgres.getPassword());
+        DbConnection.shutdownPool();
         System.out.println("✓ Database restarted on new port: " + newJdbcUrl);
         
         // Step 5: Wait for system to recover
@@ -0,0 +1,146 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mockStatic;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+public class AuthServiceResultApiTest {
+
+    private Connection conn;
+    private AuthService svc;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection("jdbc:h2:mem:resultdb;DB_CLOSE_DELAY=-1");
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT AUTO_INCREMENT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios(id, email, clave_hash, intentos_fallidos, bloqueado) VALUES(41, 'typed@example.com','Abc!1',3,false)");
+            st.execute("INSERT INTO usuarios(id, email, clave_hash, intentos_fallidos, bloqueado) VALUES(42, 'locked@example.com','Abc!1',5,true)");
+        }
+        svc = new AuthService();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (conn != null && !conn.isClosed()) conn.close();
+    }
+
+    @Test
+    public void validationFailuresAreSharedConstants() {
+        assertSame(LoginResult.INVALID_EMAIL, svc.authenticateWithConnection(conn, "bad", "Abc!1"));
+        assertSame(LoginResult.INVALID_PASSWORD_FORMAT, svc.authenticateWithConnection(conn, "typed@example.com", "x"));
+        assertSame(LoginResult.USER_NOT_FOUND, svc.authenticateWithConnection(conn, "nobody@example.com", "Abc!1"));
+        assertSame(RecoveryResult.INVALID_EMAIL, svc.requestRecoveryWithConnection(conn, "bad"));
+        assertSame(RecoveryResult.USER_NOT_FOUND, svc.requestRecoveryWithConnection(conn, "nobody@example.com"));
+    }
+
+    @Test
+    public void wrongPasswordCarriesAttemptsAndUserId() {
+        LoginResult r = svc.authenticateWithConnection(conn, "typed@example.com", "Xyz!2");
+        assertEquals(LoginResult.Outcome.WRONG_PASSWORD, r.outcome());
+        assertEquals(41, r.userId());
+        assertEquals(4, r.failedAttempts());
+        assertEquals(1, r.attemptsRemaining());
+        assertFalse(r.isBlocked());
+
+        LoginResult blocked = svc.authenticateWithConnection(conn, "typed@example.com", "Xyz!2");
+        assertEquals(LoginResult.Outcome.BLOCKED_NOW, blocked.outcome());
+        assertTrue(blocked.isBlocked());
+        assertEquals(0, blocked.attemptsRemaining());
+    }
+
+    @Test
+    public void successAndBlockedOutcomes() {
+        LoginResult ok = svc.authenticateWithConnection(conn, "typed@example.com", "Abc!1");
+        assertTrue(ok.isSuccess());
+        assertEquals(41, ok.userId());
+
+        LoginResult locked = svc.authenticateWithConnection(conn, "locked@example.com", "Abc!1");
+        assertEquals(LoginResult.Outcome.ACCOUNT_BLOCKED, locked.outcome());
+        assertEquals(42, locked.userId());
+    }
+
+    @Test
+    public void recoveryReturnsUserId() {
+        RecoveryResult r = svc.requestRecoveryWithConnection(conn, "typed@example.com");
+        assertTrue(r.isEmailSent());
+        assertEquals(41, r.userId());
+    }
+
+    @Test
+    public void singleRoundTripModeReturnsSameOutcomes() {
+        svc.setLoginMode(AuthService.LoginMode.SINGLE_ROUND_TRIP);
+        LoginResult r = svc.authenticateWithConnection(conn, "typed@example.com", "Xyz!2");
+        assertEquals(LoginResult.Outcome.WRONG_PASSWORD, r.outcome());
+        assertEquals(41, r.userId());
+        assertEquals(4, r.failedAttempts());
+
+        LoginResult locked = svc.authenticateWithConnection(conn, "locked@example.com", "Abc!1");
+        assertEquals(LoginResult.Outcome.ACCOUNT_BLOCKED, locked.outcome());
+        assertEquals(42, locked.userId());
+    }
+
+    @Test
+    public void connectionFailureIsDbErrorResult() {
+        try (MockedStatic<DbConnection> mocked = mockStatic(DbConnection.class)) {
+            mocked.when(DbConnection::getConnection).thenThrow(new SQLException("no db"));
+            LoginResult r = svc.authenticate("typed@example.com", "Abc!1");
+            assertEquals(LoginResult.Outcome.DB_ERROR, r.outcome());
+            assertEquals("no db", r.errorDetail());
+            assertEquals(RecoveryResult.Outcome.DB_ERROR, svc.requestRecovery("typed@example.com").outcome());
+            assertEquals("Error de BD: no db", svc.login("typed@example.com", "Abc!1"));
+        }
+    }
+
+    @Test
+    public void rejectedVerificationIsBusyNotADatabaseError() throws Exception {
+        PasswordHasher hasher = new PasswordHasher(PasswordHasher.MIN_ITERATIONS);
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE usuarios SET clave_hash = '" + hasher.hash("Abc!1") + "' WHERE id = 41");
+        }
+        PasswordVerifier verifier = new PasswordVerifier(hasher, 1, 1);
+        verifier.close();
+        svc.setPasswordVerifier(verifier);
+
+        LoginResult r = svc.authenticateWithConnection(conn, "typed@example.com", "Abc!1");
+        assertEquals(LoginResult.Outcome.BUSY, r.outcome());
+        assertEquals("Servicio ocupado. Intente de nuevo en unos segundos", AuthMessages.format(r));
+        assertEquals(LoginResult.Outcome.BUSY,
+                svc.authenticateBatchWithConnection(conn, List.of(new Credentials("typed@example.com", "Abc!1"))).get(0).outcome());
+        // Nothing was counted against the account
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT intentos_fallidos FROM usuarios WHERE id = 41")) {
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void formatterRendersExistingMessages() {
+        assertEquals("Login exitoso 🎉", AuthMessages.format(LoginResult.success(1)));
+        assertEquals("Email no válido", AuthMessages.format(LoginResult.INVALID_EMAIL));
+        assertEquals("Clave inválida: 5-10 chars, 1 mayúscula, 1 carácter especial", AuthMessages.format(LoginResult.INVALID_PASSWORD_FORMAT));
+        assertEquals("Usuario no encontrado", AuthMessages.format(LoginResult.USER_NOT_FOUND));
+        assertEquals("Clave incorrecta. Intentos: 2/5", AuthMessages.format(LoginResult.wrongPassword(1, 2)));
+        assertEquals("Cuenta bloqueada. Excedió los 5 intentos.", AuthMessages.format(LoginResult.blockedNow(1, 5)));
+        assertEquals("Cuenta bloqueada por intentos fallidos", AuthMessages.format(LoginResult.accountBlocked(1, 5)));
+        assertEquals("Error de BD: boom", AuthMessages.format(LoginResult.dbError("boom")));
+
+        assertEquals("Se ha enviado un email de recuperación (simulado).", AuthMessages.format(RecoveryResult.emailSent(1)));
+        assertEquals("Ingrese un email válido para recuperar clave", AuthMessages.format(RecoveryResult.INVALID_EMAIL));
+        assertEquals("No existe un usuario con ese email", AuthMessages.format(RecoveryResult.USER_NOT_FOUND));
+        assertEquals("Error de BD: boom", AuthMessages.format(RecoveryResult.dbError("boom")));
+    }
+}
@@ -36,7 +36,8 @@ public class AuthServiceSQLExceptionTest {
         when(rs.next()).thenReturn(true);
         when(rs.getInt("id")).thenReturn(1);
         when(rs.getString("clave_hash")).thenReturn("Abc!1");
-        when(rs.getInt("intentos_fallidos")).thenReturn(0);
+        // Non-zero so the successful login has attempts to reset (a no-op reset is skipped)
+        when(rs.getInt("intentos_fallidos")).thenReturn(1);
         when(rs.getBoolean("bloqueado")).thenReturn(false);
 
         // For updates, throw SQLException to exercise catch
@@ -0,0 +1,142 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AuthServiceSingleRoundTripTest {
+
+    private static final String URL = "jdbc:h2:mem:atomicdb;DB_CLOSE_DELAY=-1";
+
+    private Connection conn;
+    private AuthService svc;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT AUTO_INCREMENT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios(email, clave_hash, intentos_fallidos, bloqueado) VALUES('atom@example.com','Abc!1',3,false)");
+            st.execute("INSERT INTO usuarios(email, clave_hash, intentos_fallidos, bloqueado) VALUES('locked@example.com','Abc!1',5,true)");
+        }
+        svc = new AuthService();
+        svc.setLoginMode(AuthService.LoginMode.SINGLE_ROUND_TRIP);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (conn != null && !conn.isClosed()) conn.close();
+    }
+
+    private int intentos(String email) throws Exception {
+        try (var rs = conn.createStatement().executeQuery("SELECT intentos_fallidos FROM usuarios WHERE email='" + email + "'")) {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void defaultModeIsSelectThenUpdate() {
+        assertEquals(AuthService.LoginMode.SELECT_THEN_UPDATE, new AuthService().getLoginMode());
+    }
+
+    @Test
+    public void successResetsAttempts() throws Exception {
+        assertEquals("Login exitoso 🎉", svc.loginWithConnection(conn, "atom@example.com", "Abc!1"));
+        assertEquals(0, intentos("atom@example.com"));
+    }
+
+    @Test
+    public void wrongPasswordsCountUpAndBlockAtFive() throws Exception {
+        assertEquals("Clave incorrecta. Intentos: 4/5", svc.loginWithConnection(conn, "atom@example.com", "Xyz!2"));
+        assertEquals("Cuenta bloqueada. Excedió los 5 intentos.", svc.loginWithConnection(conn, "atom@example.com", "Xyz!2"));
+        assertEquals("Cuenta bloqueada por intentos fallidos", svc.loginWithConnection(conn, "atom@example.com", "Abc!1"));
+        assertEquals(5, intentos("atom@example.com"));
+    }
+
+    @Test
+    public void blockedAndUnknownAccounts() {
+        assertEquals("Cuenta bloqueada por intentos fallidos", svc.loginWithConnection(conn, "locked@example.com", "Abc!1"));
+        assertEquals("Usuario no encontrado", svc.loginWithConnection(conn, "nobody@example.com", "Abc!1"));
+    }
+
+    @Test
+    public void validationStillRunsFirst() {
+        assertEquals("Email no válido", svc.loginWithConnection(conn, "bad", "Abc!1"));
+        assertEquals("Clave inválida: 5-10 chars, 1 mayúscula, 1 carácter especial", svc.loginWithConnection(conn, "atom@example.com", "x"));
+    }
+
+    @Test
+    public void wrongPasswordWithCachedHashUsesOneStatement() throws Exception {
+        UserRecordCache cache = new UserRecordCache(10, 60_000);
+        cache.get("u@example.com", () -> new UserRecordCache.CachedUser(1, "u@example.com", "Abc!1"));
+        svc.setUserCache(cache);
+
+        DatabaseMetaData md = mock(DatabaseMetaData.class);
+        when(md.getDatabaseProductName()).thenReturn("PostgreSQL");
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getInt("intentos_fallidos")).thenReturn(2);
+        when(rs.getBoolean("bloqueado")).thenReturn(false);
+        Connection mockConn = mock(Connection.class);
+        when(mockConn.getMetaData()).thenReturn(md);
+        when(mockConn.prepareStatement(anyString())).thenReturn(ps);
+
+        assertEquals("Clave incorrecta. Intentos: 2/5", svc.loginWithConnection(mockConn, "u@example.com", "Xyz!2"));
+        verify(mockConn, times(1)).prepareStatement(org.mockito.ArgumentMatchers.endsWith("RETURNING id, intentos_fallidos, bloqueado"));
+        verify(ps, times(1)).executeQuery();
+    }
+
+    @Test
+    public void databaseErrorIsReported() throws Exception {
+        Connection mockConn = mock(Connection.class);
+        when(mockConn.getMetaData()).thenThrow(new java.sql.SQLException("meta fail"));
+        String r = svc.loginWithConnection(mockConn, "u@example.com", "Xyz!2");
+        assertTrue(r.startsWith("Error de BD:") && r.contains("meta fail"));
+    }
+
+    @Test
+    public void concurrentWrongAttemptsAreNotLost() throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE usuarios SET intentos_fallidos = 0 WHERE email='atom@example.com'");
+        }
+        int threads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                try (Connection c = DriverManager.getConnection(URL)) {
+                    start.await();
+                    return svc.loginWithConnection(c, "atom@example.com", "Xyz!2");
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<String> f : results) {
+            assertTrue(f.get().startsWith("Clave incorrecta."));
+        }
+        pool.shutdown();
+        assertEquals(threads, intentos("atom@example.com"));
+    }
+}
@@ -0,0 +1,191 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ClusterRateLimiterTest {
+
+    private static final long EPOCH = 1_700_000_000_000L;
+
+    // Simulated time in milliseconds, shared by every node's clocks
+    private final AtomicLong millis = new AtomicLong();
+
+    private ClusterRateLimiter node(RateLimitStore store, int capacity, double refillPerSecond) {
+        return new ClusterRateLimiter("login-email", capacity, refillPerSecond, 1_000, store, 0,
+                () -> millis.get() * 1_000_000L, () -> EPOCH + millis.get());
+    }
+
+    private static int drain(RateLimiter limiter, String key) {
+        int taken = 0;
+        while (limiter.tryAcquire(key)) {
+            taken++;
+        }
+        return taken;
+    }
+
+    @Test
+    public void syncSharesConsumptionBetweenNodes() throws Exception {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore();
+        ClusterRateLimiter a = node(store, 5, 1.0);
+        ClusterRateLimiter b = node(store, 5, 1.0);
+
+        assertEquals(5, drain(a, "x@example.com"));
+        a.sync();
+        b.sync();
+        assertFalse(b.tryAcquire("x@example.com"));
+        assertEquals(0, b.availableTokens("x@example.com"));
+
+        // Refills at the shared rate on every node
+        millis.addAndGet(2_000);
+        assertEquals(2, drain(b, "x@example.com"));
+        assertEquals(2, a.getSyncs() + b.getSyncs());
+    }
+
+    @Test
+    public void overshootBetweenSyncsIsPaidBack() throws Exception {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore();
+        ClusterRateLimiter a = node(store, 5, 1.0);
+        ClusterRateLimiter b = node(store, 5, 1.0);
+
+        // Both nodes spend a full burst before either syncs: 10 tokens against a limit of 5
+        assertEquals(5, drain(a, "x@example.com"));
+        assertEquals(5, drain(b, "x@example.com"));
+        a.sync();
+        b.sync();
+        a.sync();
+
+        // The shared bucket owes 10 s of refill, so after 5 s neither node has a token
+        millis.addAndGet(5_000);
+        assertFalse(a.tryAcquire("x@example.com"));
+        assertFalse(b.tryAcquire("x@example.com"));
+        millis.addAndGet(5_001);
+        assertTrue(a.tryAcquire("x@example.com"));
+    }
+
+    @Test
+    public void failedSyncKeepsChargesForTheNextOne() throws Exception {
+        InMemoryRateLimitStore real = new InMemoryRateLimitStore();
+        RateLimitStore flaky = mock(RateLimitStore.class);
+        when(flaky.reconcile(any(), any(), anyLong(), anyInt()))
+                .thenThrow(new java.sql.SQLException("store down"))
+                .thenAnswer(inv -> real.reconcile(inv.getArgument(0), inv.getArgument(1), inv.getArgument(2), inv.getArgument(3)));
+        ClusterRateLimiter a = node(flaky, 5, 1.0);
+        ClusterRateLimiter b = node(real, 5, 1.0);
+
+        drain(a, "x@example.com");
+        try {
+            a.sync();
+            fail("expected failure");
+        } catch (java.sql.SQLException e) {
+            assertEquals(1, a.getSyncFailures());
+        }
+        a.sync();
+        b.sync();
+        assertFalse(b.tryAcquire("x@example.com"));
+    }
+
+    @Test
+    public void jdbcStoreReconcilesThroughTable() throws Exception {
+        String url = "jdbc:h2:mem:ratelimitdb;DB_CLOSE_DELAY=-1";
+        try (Connection conn = DriverManager.getConnection(url); Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS rate_limits");
+            st.execute("CREATE TABLE rate_limits (limiter VARCHAR(64) NOT NULL, rate_key VARCHAR(255) NOT NULL, "
+                    + "full_at BIGINT NOT NULL, PRIMARY KEY (limiter, rate_key))");
+
+            JdbcRateLimitStore store = new JdbcRateLimitStore(() -> DriverManager.getConnection(url));
+            ClusterRateLimiter a = node(store, 5, 1.0);
+            ClusterRateLimiter b = node(store, 5, 1.0);
+
+            assertEquals(5, drain(a, "x@example.com"));
+            assertEquals(5, drain(a, "y@example.com"));
+            a.sync();
+            b.sync();
+            assertFalse(b.tryAcquire("x@example.com"));
+            assertFalse(b.tryAcquire("y@example.com"));
+
+            // Upsert path: a second charge on an existing row extends it
+            assertEquals(0, drain(b, "x@example.com"));
+            millis.addAndGet(1_000);
+            assertTrue(b.tryAcquire("x@example.com"));
+            b.sync();
+            Map<String, Long> state = store.reconcile("login-email", Map.of(), EPOCH + millis.get(), 10);
+            assertEquals(Long.valueOf(EPOCH + 6_000), state.get("x@example.com"));
+
+            // Refilled rows are deleted
+            millis.addAndGet(60_000);
+            assertTrue(store.reconcile("login-email", Map.of(), EPOCH + millis.get(), 10).isEmpty());
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM rate_limits")) {
+                rs.next();
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+    }
+
+    private record Attack(long admitted, long peakOvershoot) {
+    }
+
+    // Runs the given number of AuthService instances for 60 simulated seconds while an attacker
+    // sends 50 attempts per second for one email, round-robin across the nodes. Overshoot is
+    // how far admitted attempts ran ahead of what one limiter allows by then: burst plus refill
+    private Attack simulateAttack(int nodes, long syncIntervalMillis) throws Exception {
+        millis.set(0);
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore();
+        AuthService[] services = new AuthService[nodes];
+        ClusterRateLimiter[] limiters = new ClusterRateLimiter[nodes];
+        for (int i = 0; i < nodes; i++) {
+            limiters[i] = node(store, 5, 1.0);
+            services[i] = new AuthService();
+            services[i].setEmailRateLimiter(limiters[i]);
+        }
+        Connection conn = mock(Connection.class);
+        long admitted = 0;
+        long peak = 0;
+        for (int step = 0; step < 60 * 50; step++) {
+            millis.set(step * 20L);
+            for (int i = 0; i < nodes; i++) {
+                // Nodes sync on their own schedules, staggered across the interval
+                long offset = syncIntervalMillis * i / nodes;
+                if (millis.get() >= offset && (millis.get() - offset) % syncIntervalMillis < 20) {
+                    limiters[i].sync();
+                }
+            }
+            // An invalid password format keeps admitted attempts away from the database too
+            LoginResult r = services[step % nodes].authenticateWithConnection(conn, "victim@example.com", "x");
+            if (r != LoginResult.RATE_LIMITED) {
+                admitted++;
+                peak = Math.max(peak, admitted - (5 + millis.get() / 1_000));
+            }
+        }
+        verifyNoInteractions(conn);
+        return new Attack(admitted, peak);
+    }
+
+    @Test
+    public void multiNodeOvershootGrowsWithSyncInterval() throws Exception {
+        int nodes = 4;
+        long limit = 5 + 60;
+        long previous = -1;
+        for (long interval : new long[] {20, 250, 1_000, 5_000}) {
+            Attack attack = simulateAttack(nodes, interval);
+            System.out.printf("nodes=%d sync=%dms admitted=%d (limit %d) peak overshoot=%d%n",
+                    nodes, interval, attack.admitted(), limit, attack.peakOvershoot());
+            assertTrue("overshoot " + attack.peakOvershoot() + " at " + interval + " ms",
+                    attack.peakOvershoot() <= (nodes - 1) * (5 + interval / 1_000 + 1));
+            assertTrue(attack.peakOvershoot() >= previous);
+            previous = attack.peakOvershoot();
+            // Overshoot is paid back, so the total stays near the limit
+            assertTrue(attack.admitted() <= limit + attack.peakOvershoot());
+        }
+        // Syncing on every request makes the nodes behave like one limiter
+        assertTrue(simulateAttack(nodes, 20).peakOvershoot() <= 1);
+    }
+}
@@ -0,0 +1,207 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.h2.jdbc.JdbcConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionPoolTest {
+
+    private static final String URL = "jdbc:h2:mem:pooldb;DB_CLOSE_DELAY=-1";
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private ConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        opened.set(0);
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) pool.close();
+        DbConnection.shutdownPool();
+        System.clearProperty("DB_URL");
+        System.clearProperty("DB_USER");
+        System.clearProperty("DB_PASSWORD");
+        System.clearProperty("DB_DRIVER");
+    }
+
+    private ConnectionPool newPool(ConnectionPool.Settings settings) {
+        return new ConnectionPool(() -> {
+            opened.incrementAndGet();
+            return DriverManager.getConnection(URL, "sa", "");
+        }, settings);
+    }
+
+    @Test
+    public void closeReturnsConnectionToPoolForReuse() throws Exception {
+        pool = newPool(new ConnectionPool.Settings(0, 2, 1_000, 0, 0, 0, 0));
+
+        Connection c1 = pool.borrow();
+        Connection physical1 = c1.unwrap(JdbcConnection.class);
+        c1.close();
+        assertTrue(c1.isClosed());
+        assertEquals(1, pool.getIdleConnections());
+
+        Connection c2 = pool.borrow();
+        assertSame(physical1, c2.unwrap(JdbcConnection.class));
+        assertFalse(c2.isClosed());
+        c2.close();
+
+        assertEquals(1, opened.get());
+        assertEquals(1, pool.getTotalConnections());
+    }
+
+    @Test
+    public void closedLeaseRejectsFurtherUse() throws Exception {
+        pool = newPool(new ConnectionPool.Settings(0, 1, 1_000, 0, 0, 0, 0));
+        Connection c = pool.borrow();
+        c.close();
+        c.close(); // second close is a no-op
+        try {
+            c.createStatement();
+            fail("Expected SQLException on a returned connection");
+        } catch (SQLException expected) {
+            assertEquals("Connection is closed", expected.getMessage());
+        }
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @Test
+    public void borrowTimesOutWhenPoolExhausted() throws Exception {
+        pool = newPool(new ConnectionPool.Settings(0, 1, 50, 0, 0, 0, 0));
+        try (Connection held = pool.borrow()) {
+            assertEquals(1, pool.getActiveConnections());
+            try {
+                pool.borrow();
+                fail("Expected borrow timeout");
+            } catch (SQLException expected) {
+                assertTrue(expected.getMessage().startsWith("Timed out"));
+            }
+        }
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    public void physicalConnectionIsNeverHandedOut() throws Exception {
+        pool = newPool(new ConnectionPool.Settings(0, 1, 1_000, 0, 0, 0, 4));
+        Connection c = pool.borrow();
+        Connection physical = c.unwrap(JdbcConnection.class);
+        assertSame(c, c.unwrap(Connection.class));
+        assertSame(c, c.createStatement().getConnection());
+        assertSame(c, c.getMetaData().getConnection());
+        assertSame(c, c.prepareStatement("SELECT 1", Statement.RETURN_GENERATED_KEYS).getConnection());
+
+        // Closing what a cached statement reports returns the lease instead of the physical connection
+        try (Connection viaStatement = c.prepareStatement("SELECT 1").getConnection()) {
+            assertSame(c, viaStatement);
+        }
+        assertFalse(physical.isClosed());
+        assertEquals(1, pool.getIdleConnections());
+        try (Connection again = pool.borrow()) {
+            assertSame(physical, again.unwrap(JdbcConnection.class));
+        }
+    }
+
+    @Test
+    public void invalidConnectionIsReplacedOnBorrow() throws Exception {
+        pool = newPool(new ConnectionPool.Settings(0, 1, 1_000, 0, 0, 0, 0));
+        Connection c1 = pool.borrow();
+        Connection physical1 = c1.unwrap(JdbcConnection.class);
+        c1.close();
+        physical1.close(); // simulate a connection dropped by the server
+
+        try (Connection c2 = pool.borrow()) {
+            assertNotSame(physical1, c2.unwrap(JdbcConnection.class));
+        }
+        assertEquals(2, opened.get());
+        assertEquals(1, pool.getTotalConnections());
+    }
+
+    @Test
+    public void uncommittedWorkIsRolledBackOnReturn() throws Exception {
+        pool = newPool(new ConnectionPool.Settings(0, 1, 1_000, 0, 0, 0, 0));
+        try (Connection c = pool.borrow()) {
+            c.setAutoCommit(false);
+        }
+        try (Connection c = pool.borrow()) {
+            assertTrue(c.getAutoCommit());
+        }
+    }
+
+    @Test
+    public void idleConnectionsAboveMinimumAreEvicted() throws Exception {
+        pool = newPool(new ConnectionPool.Settings(1, 3, 1_000, 1, 0, 0, 0));
+        Connection a = pool.borrow();
+        Connection b = pool.borrow();
+        Connection c = pool.borrow();
+        a.close();
+        b.close();
+        c.close();
+        assertEquals(3, pool.getIdleConnections());
+
+        Thread.sleep(5);
+        pool.evictIdle();
+        assertEquals(1, pool.getIdleConnections());
+        assertEquals(1, pool.getTotalConnections());
+    }
+
+    @Test
+    public void connectionsPastMaxLifetimeAreRetired() throws Exception {
+        pool = newPool(new ConnectionPool.Settings(0, 1, 1_000, 0, 1, 0, 0));
+        Connection c1 = pool.borrow();
+        Connection physical1 = c1.unwrap(JdbcConnection.class);
+        Thread.sleep(5);
+        c1.close();
+        assertEquals(0, pool.getIdleConnections());
+        assertTrue(physical1.isClosed());
+    }
+
+    @Test
+    public void closedPoolRefusesBorrowAndClosesReturnedConnections() throws Exception {
+        pool = newPool(new ConnectionPool.Settings(0, 2, 1_000, 0, 0, 0, 0));
+        Connection c = pool.borrow();
+        Connection physical = c.unwrap(JdbcConnection.class);
+        pool.close();
+        c.close();
+        assertTrue(physical.isClosed());
+        try {
+            pool.borrow();
+            fail("Expected SQLException from closed pool");
+        } catch (SQLException expected) {
+            assertEquals("Connection pool is closed", expected.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void settingsRejectMinGreaterThanMax() {
+        new ConnectionPool.Settings(5, 2, 1_000, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void dbConnectionReusesPooledPhysicalConnection() throws Exception {
+        System.setProperty("DB_URL", URL);
+        System.setProperty("DB_USER", "sa");
+        System.setProperty("DB_PASSWORD", "");
+        System.setProperty("DB_DRIVER", "org.h2.Driver");
+        DbConnection.reload();
+
+        Connection physical1;
+        try (Connection c = DbConnection.getConnection()) {
+            physical1 = c.unwrap(JdbcConnection.class);
+        }
+        try (Connection c = DbConnection.getConnection()) {
+            assertSame(physical1, c.unwrap(JdbcConnection.class));
+        }
+        assertEquals(1, DbConnection.currentPool().getTotalConnections());
+    }
+}
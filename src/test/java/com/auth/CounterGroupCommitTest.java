@@ -0,0 +1,229 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CounterGroupCommitTest {
+
+    private static final String URL = "jdbc:h2:mem:groupcommitdb;DB_CLOSE_DELAY=-1";
+
+    private Connection conn;
+    private CounterGroupCommit group;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), "
+                    + "intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE, bloqueado_hasta TIMESTAMP)");
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'user' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, 100)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (group != null) {
+            group.close();
+        }
+        conn.close();
+    }
+
+    private int[] row(int id) throws Exception {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT intentos_fallidos, bloqueado FROM usuarios WHERE id = " + id)) {
+            assertTrue(rs.next());
+            return new int[] {rs.getInt(1), rs.getBoolean(2) ? 1 : 0};
+        }
+    }
+
+    // Runs each task on its own thread, all released at once; returns what they threw
+    private static List<Throwable> runConcurrently(List<ThrowingRunnable> tasks) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Throwable> errors = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (ThrowingRunnable task : tasks) {
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run();
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        return errors;
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    @Test
+    public void concurrentWritesShareTransactions() throws Exception {
+        group = new CounterGroupCommit(() -> DriverManager.getConnection(URL), 20_000, 64);
+        List<ThrowingRunnable> tasks = new ArrayList<>();
+        for (int id = 1; id <= 32; id++) {
+            int userId = id;
+            tasks.add(() -> group.write(userId, userId % 5, userId % 5 == 0));
+        }
+        assertTrue(runConcurrently(tasks).isEmpty());
+
+        for (int id = 1; id <= 32; id++) {
+            assertArrayEquals(new int[] {id % 5, id % 5 == 0 ? 1 : 0}, row(id));
+        }
+        long[] sizes = group.getBatchSizeCounts();
+        long transitions = 0;
+        long batches = 0;
+        for (int n = 1; n < sizes.length; n++) {
+            transitions += n * sizes[n];
+            batches += sizes[n];
+        }
+        assertEquals(32, transitions);
+        assertTrue("batches " + batches, batches < 32);
+        assertEquals(32, group.getWaitTimes().getCount());
+        assertEquals(batches, group.getCommitTimes().getCount());
+    }
+
+    @Test
+    public void transitionsForOneAccountCollapseToOneRow() throws Exception {
+        group = new CounterGroupCommit(() -> DriverManager.getConnection(URL), 200_000, 64);
+        assertTrue(runConcurrently(List.of(
+                () -> group.write(7, 1, false),
+                () -> group.write(7, 2, false))).isEmpty());
+        assertEquals(1, group.getBatchSizeCounts()[2]);
+        assertEquals(1, group.getRowsWritten());
+        int written = row(7)[0];
+        assertTrue(written == 1 || written == 2);
+    }
+
+    @Test
+    public void failedTransactionFailsEveryCaller() throws Exception {
+        AtomicInteger opens = new AtomicInteger();
+        group = new CounterGroupCommit(() -> {
+            opens.incrementAndGet();
+            throw new SQLException("db down");
+        }, 50_000, 64);
+        List<Throwable> errors = runConcurrently(List.of(
+                () -> group.write(1, 1, false),
+                () -> group.write(2, 1, false),
+                () -> group.write(3, 1, false)));
+        assertEquals(3, errors.size());
+        for (Throwable e : errors) {
+            assertTrue(e instanceof SQLException);
+            assertEquals("db down", e.getMessage());
+        }
+        assertEquals(opens.get(), group.getBatchFailures());
+        assertArrayEquals(new int[] {0, 0}, row(1));
+    }
+
+    @Test
+    public void loginCounterWritesGoThroughTheGroup() throws Exception {
+        group = new CounterGroupCommit(() -> DriverManager.getConnection(URL), 0, 64);
+        AuthService svc = new AuthService();
+        svc.setGroupCommit(group);
+
+        Connection spy = spy(conn);
+        assertEquals(LoginResult.wrongPassword(5, 1), svc.authenticateWithConnection(spy, "user5@example.com", "Xyz!2"));
+        assertArrayEquals(new int[] {1, 0}, row(5));
+        assertEquals(LoginResult.success(5), svc.authenticateWithConnection(spy, "user5@example.com", "Abc!1"));
+        assertArrayEquals(new int[] {0, 0}, row(5));
+        // No-op reset: nothing queued
+        assertEquals(LoginResult.success(5), svc.authenticateWithConnection(spy, "user5@example.com", "Abc!1"));
+        // Only the SELECTs ran on the login's connection
+        verify(spy, times(3)).prepareStatement(anyString());
+        assertEquals(2, group.getRowsWritten());
+
+        svc.setLockDuration(Duration.ofMinutes(15));
+        for (int i = 1; i < 5; i++) {
+            svc.authenticateWithConnection(conn, "user6@example.com", "Xyz!2");
+        }
+        assertEquals(LoginResult.blockedNow(6, 5), svc.authenticateWithConnection(conn, "user6@example.com", "Xyz!2"));
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT bloqueado_hasta FROM usuarios WHERE id = 6")) {
+            assertTrue(rs.next());
+            assertNotNull(rs.getTimestamp(1));
+        }
+    }
+
+    @Test
+    public void moreCallersThanPooledConnectionsStillCommit() throws Exception {
+        System.setProperty("DB_URL", URL);
+        System.setProperty("DB_USER", "");
+        System.setProperty("DB_PASSWORD", "");
+        System.setProperty("DB_DRIVER", "org.h2.Driver");
+        System.setProperty("DB_POOL_MAX_SIZE", "2");
+        System.setProperty("DB_POOL_BORROW_TIMEOUT_MS", "10000");
+        try {
+            DbConnection.reload();
+            AtomicInteger opens = new AtomicInteger();
+            group = new CounterGroupCommit(() -> {
+                opens.incrementAndGet();
+                return DbConnection.openDedicated();
+            }, 200_000, 64);
+            // Both pooled connections are held by callers waiting on the writer
+            List<ThrowingRunnable> tasks = new ArrayList<>();
+            for (int id = 1; id <= 8; id++) {
+                int userId = id;
+                tasks.add(() -> {
+                    try (Connection c = DbConnection.getConnection()) {
+                        group.write(userId, 2, false);
+                    }
+                });
+            }
+            List<Throwable> errors = runConcurrently(tasks);
+            assertTrue(errors.toString(), errors.isEmpty());
+            for (int id = 1; id <= 8; id++) {
+                assertArrayEquals(new int[] {2, 0}, row(id));
+            }
+            assertEquals(0, group.getBatchFailures());
+            // One connection for every batch, none of them from the pool
+            assertEquals(1, opens.get());
+            assertEquals(2, DbConnection.currentPool().getSettings().maxSize());
+        } finally {
+            DbConnection.shutdownPool();
+            for (String name : new String[] {"DB_URL", "DB_USER", "DB_PASSWORD", "DB_DRIVER",
+                    "DB_POOL_MAX_SIZE", "DB_POOL_BORROW_TIMEOUT_MS"}) {
+                System.clearProperty(name);
+            }
+        }
+    }
+
+    @Test
+    public void closedGroupRejectsWrites() throws Exception {
+        group = new CounterGroupCommit(() -> DriverManager.getConnection(URL), 0, 64);
+        group.write(1, 3, false);
+        group.close();
+        try {
+            group.write(1, 4, false);
+            fail("expected SQLException");
+        } catch (SQLException e) {
+            assertEquals("Group commit is closed", e.getMessage());
+        }
+        assertArrayEquals(new int[] {3, 0}, row(1));
+    }
+}
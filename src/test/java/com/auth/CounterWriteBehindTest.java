@@ -0,0 +1,194 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CounterWriteBehindTest {
+
+    private static final String URL = "jdbc:h2:mem:writebehinddb;DB_CLOSE_DELAY=-1";
+
+    private Connection conn;
+    private CounterWriteBehind writeBehind;
+    private AuthService svc;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), "
+                    + "intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'user' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, 100)");
+        }
+        svc = new AuthService();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+        conn.close();
+    }
+
+    private int[] row(int id) throws Exception {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT intentos_fallidos, bloqueado FROM usuarios WHERE id = " + id)) {
+            assertTrue(rs.next());
+            return new int[] {rs.getInt(1), rs.getBoolean(2) ? 1 : 0};
+        }
+    }
+
+    private LoginResult login(int id, String password) {
+        return svc.authenticateWithConnection(conn, "user" + id + "@example.com", password);
+    }
+
+    @Test
+    public void repeatedFailuresCoalesceIntoOneWrite() throws Exception {
+        writeBehind = new CounterWriteBehind(() -> DriverManager.getConnection(URL), 0);
+        svc.setCounterWriteBehind(writeBehind);
+
+        assertEquals(LoginResult.wrongPassword(1, 1), login(1, "Xyz!2"));
+        assertEquals(LoginResult.wrongPassword(1, 2), login(1, "Xyz!2"));
+        assertEquals(LoginResult.wrongPassword(1, 3), login(1, "Xyz!2"));
+        assertEquals(LoginResult.wrongPassword(2, 1), login(2, "Xyz!2"));
+        assertArrayEquals(new int[] {0, 0}, row(1));
+        assertEquals(2, writeBehind.getPendingCount());
+        assertEquals(2, writeBehind.getCoalesced());
+
+        assertEquals(2, writeBehind.flush());
+        assertArrayEquals(new int[] {3, 0}, row(1));
+        assertArrayEquals(new int[] {1, 0}, row(2));
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    public void bufferedResetIsSeenByTheNextLogin() throws Exception {
+        writeBehind = new CounterWriteBehind(() -> DriverManager.getConnection(URL), 0);
+        svc.setCounterWriteBehind(writeBehind);
+        login(3, "Xyz!2");
+        login(3, "Xyz!2");
+        writeBehind.flush();
+
+        assertEquals(LoginResult.success(3), login(3, "Abc!1"));
+        assertArrayEquals(new int[] {2, 0}, row(3));
+        assertEquals(LoginResult.wrongPassword(3, 1), login(3, "Xyz!2"));
+        writeBehind.flush();
+        assertArrayEquals(new int[] {1, 0}, row(3));
+    }
+
+    @Test
+    public void lockIsWrittenBeforeLoginReturns() throws Exception {
+        writeBehind = new CounterWriteBehind(() -> DriverManager.getConnection(URL), 0);
+        svc.setCounterWriteBehind(writeBehind);
+        login(5, "Xyz!2");
+        for (int i = 1; i < 5; i++) {
+            login(4, "Xyz!2");
+        }
+        assertArrayEquals(new int[] {0, 0}, row(4));
+        assertEquals(LoginResult.blockedNow(4, 5), login(4, "Xyz!2"));
+
+        assertArrayEquals(new int[] {5, 1}, row(4));
+        // Only the lock is written; other accounts wait for the flush
+        assertArrayEquals(new int[] {0, 0}, row(5));
+        assertEquals(1, writeBehind.getLockWrites());
+        assertEquals(1, writeBehind.getPendingCount());
+        assertEquals(LoginResult.accountBlocked(4, 5), login(4, "Abc!1"));
+    }
+
+    @Test
+    public void lockingLoginNeedsNoSecondPooledConnection() throws Exception {
+        System.setProperty("DB_URL", URL);
+        System.setProperty("DB_USER", "");
+        System.setProperty("DB_PASSWORD", "");
+        System.setProperty("DB_DRIVER", "org.h2.Driver");
+        System.setProperty("DB_POOL_MAX_SIZE", "1");
+        System.setProperty("DB_POOL_BORROW_TIMEOUT_MS", "200");
+        try {
+            DbConnection.reload();
+            AtomicInteger opens = new AtomicInteger();
+            writeBehind = new CounterWriteBehind(() -> {
+                opens.incrementAndGet();
+                return DbConnection.openDedicated();
+            }, 0);
+            svc.setCounterWriteBehind(writeBehind);
+            // The login holds the pool's only connection throughout
+            try (Connection pooled = DbConnection.getConnection()) {
+                for (int i = 1; i < 5; i++) {
+                    svc.authenticateWithConnection(pooled, "user9@example.com", "Xyz!2");
+                }
+                svc.authenticateWithConnection(pooled, "user10@example.com", "Xyz!2");
+                assertEquals(LoginResult.blockedNow(9, 5),
+                        svc.authenticateWithConnection(pooled, "user9@example.com", "Xyz!2"));
+            }
+            assertArrayEquals(new int[] {5, 1}, row(9));
+            assertEquals(0, opens.get());
+
+            // Flushes reuse one connection of their own
+            svc.authenticateWithConnection(conn, "user10@example.com", "Xyz!2");
+            assertEquals(1, writeBehind.flush());
+            svc.authenticateWithConnection(conn, "user11@example.com", "Xyz!2");
+            assertEquals(1, writeBehind.flush());
+            assertArrayEquals(new int[] {2, 0}, row(10));
+            assertEquals(1, opens.get());
+        } finally {
+            DbConnection.shutdownPool();
+            for (String name : new String[] {"DB_URL", "DB_USER", "DB_PASSWORD", "DB_DRIVER",
+                    "DB_POOL_MAX_SIZE", "DB_POOL_BORROW_TIMEOUT_MS"}) {
+                System.clearProperty(name);
+            }
+        }
+    }
+
+    @Test
+    public void failedFlushKeepsEntriesPending() throws Exception {
+        AtomicInteger opens = new AtomicInteger();
+        writeBehind = new CounterWriteBehind(() -> {
+            if (opens.incrementAndGet() == 1) {
+                throw new SQLException("db down");
+            }
+            return DriverManager.getConnection(URL);
+        }, 0);
+        svc.setCounterWriteBehind(writeBehind);
+        login(6, "Xyz!2");
+        try {
+            writeBehind.flush();
+            fail("expected SQLException");
+        } catch (SQLException e) {
+            assertEquals(1, writeBehind.getFlushFailures());
+        }
+        assertEquals(1, writeBehind.getPendingCount());
+        assertEquals(LoginResult.wrongPassword(6, 2), login(6, "Xyz!2"));
+        assertEquals(1, writeBehind.flush());
+        assertArrayEquals(new int[] {2, 0}, row(6));
+    }
+
+    @Test
+    public void backgroundFlushAndCloseWriteEverything() throws Exception {
+        writeBehind = new CounterWriteBehind(() -> DriverManager.getConnection(URL), 20);
+        svc.setCounterWriteBehind(writeBehind);
+        login(7, "Xyz!2");
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (writeBehind.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertArrayEquals(new int[] {1, 0}, row(7));
+
+        CounterWriteBehind manual = new CounterWriteBehind(() -> DriverManager.getConnection(URL), 0);
+        svc.setCounterWriteBehind(manual);
+        login(8, "Xyz!2");
+        manual.close();
+        assertArrayEquals(new int[] {1, 0}, row(8));
+    }
+}
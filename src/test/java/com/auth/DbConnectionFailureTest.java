@@ -13,7 +13,7 @@ public class DbConnectionFailureTest {
         System.setProperty("DB_USER", "sa");
         System.setProperty("DB_PASSWORD", "");
         try {
-            DbConnection.getConnection();
+            DbConnection.reload();
             fail("Expected SQLException due to missing driver class");
         } catch (Exception ex) {
             assertTrue(ex instanceof java.sql.SQLException);
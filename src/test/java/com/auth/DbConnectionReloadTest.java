@@ -0,0 +1,136 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.h2.jdbc.JdbcConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DbConnectionReloadTest {
+
+    private Path configFile;
+
+    @Before
+    public void setUp() throws Exception {
+        configFile = Files.createTempFile("dbconfig", ".properties");
+        DbConnection.shutdownPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty("DB_URL");
+        System.clearProperty("DB_USER");
+        System.clearProperty("DB_PASSWORD");
+        System.clearProperty("DB_DRIVER");
+        System.clearProperty("DB_CONFIG_FILE");
+        System.clearProperty("DB_POOL_MAX_SIZE");
+        DbConnection.shutdownPool();
+        Files.deleteIfExists(configFile);
+    }
+
+    private void writeConfig(String url) throws Exception {
+        try (Writer w = Files.newBufferedWriter(configFile)) {
+            w.write("DB_URL=" + url + "\n");
+            w.write("DB_USER=sa\n");
+            w.write("DB_PASSWORD=\n");
+            w.write("DB_DRIVER=org.h2.Driver\n");
+            w.write("DB_POOL_MAX_SIZE=3\n");
+        }
+    }
+
+    @Test
+    public void configurationIsReadFromPropertiesFile() throws Exception {
+        writeConfig("jdbc:h2:mem:filecfg;DB_CLOSE_DELAY=-1");
+        System.setProperty("DB_CONFIG_FILE", configFile.toString());
+
+        DbConfig cfg = DbConnection.currentConfig();
+        assertEquals("jdbc:h2:mem:filecfg;DB_CLOSE_DELAY=-1", cfg.url());
+        assertEquals("org.h2.Driver", cfg.driverClass());
+        assertEquals(3, cfg.poolSettings().maxSize());
+        assertFalse(cfg.toString().contains("password="));
+        try (Connection c = DbConnection.getConnection()) {
+            assertFalse(c.isClosed());
+        }
+    }
+
+    @Test
+    public void systemPropertiesOverrideFileValues() throws Exception {
+        writeConfig("jdbc:h2:mem:filecfg;DB_CLOSE_DELAY=-1");
+        System.setProperty("DB_CONFIG_FILE", configFile.toString());
+        System.setProperty("DB_POOL_MAX_SIZE", "7");
+
+        DbConfig cfg = DbConnection.reload();
+        assertEquals(7, cfg.poolSettings().maxSize());
+    }
+
+    @Test
+    public void snapshotIsNotReResolvedUntilReload() throws Exception {
+        writeConfig("jdbc:h2:mem:first;DB_CLOSE_DELAY=-1");
+        System.setProperty("DB_CONFIG_FILE", configFile.toString());
+        DbConfig first = DbConnection.currentConfig();
+
+        writeConfig("jdbc:h2:mem:second;DB_CLOSE_DELAY=-1");
+        assertSame(first, DbConnection.currentConfig());
+
+        DbConfig second = DbConnection.reload();
+        assertEquals("jdbc:h2:mem:second;DB_CLOSE_DELAY=-1", second.url());
+        assertSame(second, DbConnection.currentConfig());
+    }
+
+    @Test
+    public void reloadDrainsOldPool() throws Exception {
+        writeConfig("jdbc:h2:mem:drain;DB_CLOSE_DELAY=-1");
+        System.setProperty("DB_CONFIG_FILE", configFile.toString());
+
+        Connection borrowed = DbConnection.getConnection();
+        Connection physical = borrowed.unwrap(JdbcConnection.class);
+        ConnectionPool oldPool = DbConnection.currentPool();
+
+        DbConnection.reload();
+        assertTrue(oldPool.isClosed());
+        assertNotSame(oldPool, DbConnection.currentPool());
+
+        // still usable until handed back, then physically closed
+        assertFalse(physical.isClosed());
+        borrowed.close();
+        assertTrue(physical.isClosed());
+
+        try (Connection c = DbConnection.getConnection()) {
+            assertNotSame(physical, c.unwrap(JdbcConnection.class));
+        }
+    }
+
+    @Test
+    public void failedReloadKeepsCurrentConfiguration() throws Exception {
+        writeConfig("jdbc:h2:mem:keep;DB_CLOSE_DELAY=-1");
+        System.setProperty("DB_CONFIG_FILE", configFile.toString());
+        DbConfig before = DbConnection.currentConfig();
+
+        System.setProperty("DB_DRIVER", "com.nonexistent.Driver");
+        try {
+            DbConnection.reload();
+            fail("Expected SQLException for missing driver");
+        } catch (SQLException expected) {
+            assertTrue(expected.getMessage().contains("com.nonexistent.Driver"));
+        }
+        assertSame(before, DbConnection.currentConfig());
+    }
+
+    @Test
+    public void missingConfigFileIsReported() {
+        System.setProperty("DB_CONFIG_FILE", configFile.resolveSibling("does-not-exist.properties").toString());
+        try {
+            DbConnection.reload();
+            fail("Expected SQLException for unreadable config file");
+        } catch (SQLException expected) {
+            assertTrue(expected.getMessage().startsWith("Could not read database configuration file"));
+        }
+    }
+}
@@ -15,6 +15,12 @@ public class DbConnectionTest {
         System.setProperty("DB_PASSWORD", "");
         System.setProperty("DB_DRIVER", "org.h2.Driver");
 
+        try {
+            // Settings are resolved once; pick up the properties set above
+            DbConnection.reload();
+        } catch (Exception ex) {
+            fail("Expected configuration to load: " + ex.getMessage());
+        }
         try (Connection c = DbConnection.getConnection()) {
             assertNotNull(c);
             assertFalse(c.isClosed());
@@ -25,6 +31,7 @@ public class DbConnectionTest {
             System.clearProperty("DB_USER");
             System.clearProperty("DB_PASSWORD");
             System.clearProperty("DB_DRIVER");
+            DbConnection.shutdownPool();
         }
     }
 }
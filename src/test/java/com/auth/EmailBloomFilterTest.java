@@ -0,0 +1,110 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.Test;
+
+public class EmailBloomFilterTest {
+
+    @Test
+    public void addedEmailsAreAlwaysFound() {
+        EmailBloomFilter filter = new EmailBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("user" + i + "@example.com");
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("user" + i + "@example.com"));
+        }
+        assertEquals(10_000, filter.getInsertions());
+        assertEquals(filter.getBitSize() / 8, filter.getMemoryBytes());
+    }
+
+    @Test
+    public void falsePositiveRateStaysNearTarget() {
+        EmailBloomFilter filter = new EmailBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("user" + i + "@example.com");
+        }
+        int positives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other" + i + "@example.com")) positives++;
+        }
+        double measured = positives / 100_000.0;
+        assertTrue("measured " + measured, measured < 0.02);
+        assertEquals(0.01, filter.getExpectedFalsePositiveRate(), 0.005);
+        assertEquals(100_000 - positives, filter.getRejectedLookups());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidFalsePositiveRate() {
+        new EmailBloomFilter(100, 1.0);
+    }
+
+    @Test
+    public void buildsFromDatabaseWithHeadroom() throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:bloomdb")) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE TABLE usuarios (id INT AUTO_INCREMENT PRIMARY KEY, email VARCHAR(255) UNIQUE)");
+                st.execute("INSERT INTO usuarios(email) SELECT 'u' || X || '@example.com' FROM SYSTEM_RANGE(1, 5000)");
+            }
+            EmailBloomFilter filter = EmailBloomFilter.fromDatabase(conn, 0.01);
+            assertEquals(5000, filter.getInsertions());
+            assertTrue(filter.mightContain("u1@example.com"));
+            assertTrue(filter.mightContain("u5000@example.com"));
+            // Sized for twice the current rows, so the fill is well below target
+            assertTrue(filter.getExpectedFalsePositiveRate() < 0.01);
+            assertTrue(conn.getAutoCommit());
+        }
+    }
+
+    @Test
+    public void unknownEmailSkipsDatabaseOnLoginAndRecovery() {
+        AuthService svc = new AuthService();
+        svc.setEmailFilter(new EmailBloomFilter(1_000, 0.001));
+        Connection conn = mock(Connection.class);
+
+        assertEquals("Usuario no encontrado", svc.loginWithConnection(conn, "ghost@example.com", "Abc!1"));
+        assertEquals("No existe un usuario con ese email", svc.recoverPasswordWithConnection(conn, "ghost@example.com"));
+        verifyNoInteractions(conn);
+        assertEquals(2, svc.getEmailFilter().getRejectedLookups());
+    }
+
+    @Test
+    public void knownEmailStillQueriesAndFalsePositivesAreCounted() throws Exception {
+        AuthService svc = new AuthService();
+        EmailBloomFilter filter = new EmailBloomFilter(1_000, 0.001);
+        filter.add("gone@example.com");
+        svc.setEmailFilter(filter);
+
+        Connection conn = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(false);
+
+        // In the filter but no longer in the table: the query decides
+        assertEquals("Usuario no encontrado", svc.loginWithConnection(conn, "gone@example.com", "Abc!1"));
+        verify(ps).setString(1, "gone@example.com");
+        assertEquals(1, filter.getFalsePositives());
+        assertEquals(1.0, filter.getObservedFalsePositiveRate(), 0.0);
+    }
+
+    @Test
+    public void singleRoundTripModeConsultsFilter() {
+        AuthService svc = new AuthService();
+        svc.setLoginMode(AuthService.LoginMode.SINGLE_ROUND_TRIP);
+        svc.setEmailFilter(new EmailBloomFilter(1_000, 0.001));
+        Connection conn = mock(Connection.class);
+
+        assertSame(LoginResult.USER_NOT_FOUND, svc.authenticateWithConnection(conn, "ghost@example.com", "Abc!1"));
+        verifyNoInteractions(conn);
+    }
+}
@@ -0,0 +1,89 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class HashCostCalibratorTest {
+
+    // Simulated hardware: fixed nanoseconds per PBKDF2 iteration
+    private static long linear(long iterations, double nanosPerIteration) {
+        return (long) (iterations * nanosPerIteration);
+    }
+
+    @Test
+    public void picksCostThatFitsTarget() {
+        // 100 ns/iteration: 50 ms allows 500k iterations; calibration aims below that
+        HashCostCalibrator.Calibration c = HashCostCalibrator.calibrate(50, 100_000, it -> linear(it, 100));
+        assertTrue("iterations " + c.iterations(), c.iterations() >= 350_000 && c.iterations() <= 500_000);
+        assertTrue(c.measuredP99Millis() <= 50);
+        assertEquals(0, c.iterations() % 1_000);
+        assertFalse(c.limitedByFloor());
+    }
+
+    @Test
+    public void fasterHardwareGetsHigherCost() {
+        int slow = HashCostCalibrator.calibrate(50, 100_000, it -> linear(it, 100)).iterations();
+        int fast = HashCostCalibrator.calibrate(50, 100_000, it -> linear(it, 25)).iterations();
+        assertTrue(fast > 3 * slow);
+    }
+
+    @Test
+    public void neverGoesBelowFloor() {
+        // 1 us/iteration: the floor alone takes 100 ms, over the 50 ms target
+        HashCostCalibrator.Calibration c = HashCostCalibrator.calibrate(50, 100_000, it -> linear(it, 1_000));
+        assertEquals(100_000, c.iterations());
+        assertTrue(c.limitedByFloor());
+        assertEquals(100.0, c.measuredP99Millis(), 0.01);
+    }
+
+    @Test
+    public void scalesDownWhenFullCostIsSlowerThanProbeSuggests() {
+        // Cost grows faster than linearly past 200k iterations (e.g. thermal throttling)
+        HashCostCalibrator.Calibration c = HashCostCalibrator.calibrate(50, 100_000,
+                it -> it <= 200_000 ? linear(it, 100) : linear(it, 200));
+        assertTrue(c.measuredP99Millis() <= 50);
+        assertTrue(c.iterations() >= 100_000);
+    }
+
+    @Test
+    public void calibrationIsCappedForVeryFastHardware() {
+        HashCostCalibrator.Calibration c = HashCostCalibrator.calibrate(50, 100_000, it -> linear(it, 0.001));
+        assertEquals(HashCostCalibrator.MAX_ITERATIONS, c.iterations());
+    }
+
+    @Test
+    public void concurrentFirstCallsShareOneCalibration() throws Exception {
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<HashCostCalibrator.Calibration>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(HashCostCalibrator::startupCalibration));
+            }
+            for (Future<HashCostCalibrator.Calibration> f : results) {
+                assertSame(results.get(0).get(), f.get());
+            }
+        }
+        assertSame(HashCostCalibrator.startupCalibration(), HashCostCalibrator.startupCalibration());
+    }
+
+    @Test
+    public void malformedSettingsFallBackToDefaults() {
+        assertEquals(50, HashCostCalibrator.parseSetting("AUTH_HASH_TARGET_MS", "50ms", 50, 1, 1_000));
+        assertEquals(50, HashCostCalibrator.parseSetting("AUTH_HASH_TARGET_MS", "0", 50, 1, 1_000));
+        assertEquals(50, HashCostCalibrator.parseSetting("AUTH_HASH_TARGET_MS", null, 50, 1, 1_000));
+        assertEquals(80, HashCostCalibrator.parseSetting("AUTH_HASH_TARGET_MS", " 80 ", 50, 1, 1_000));
+        assertEquals(100_000, HashCostCalibrator.parseSetting("AUTH_HASH_MIN_ITERATIONS", "1000", 100_000,
+                PasswordHasher.MIN_ITERATIONS, HashCostCalibrator.MAX_ITERATIONS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void floorMustBeAtLeastHasherMinimum() {
+        HashCostCalibrator.calibrate(50, 1_000, it -> 1);
+    }
+}
@@ -0,0 +1,147 @@
+package com.auth;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SMTP stand-in for tests: accepts connections on a free local port, answers the commands
+ * {@link SmtpMailer} uses, and keeps the recipient and content of every accepted message.
+ * Recipients can be made to fail a number of times with a 451 reply, and the reply to a
+ * message's data can be held back to make the client time out.
+ */
+final class LocalSmtpServer implements AutoCloseable {
+
+    /** An accepted message. */
+    record Message(String to, String data) {
+    }
+
+    private final ServerSocket server;
+    private final Thread acceptor;
+    private final List<Message> messages = new ArrayList<>();
+    private final Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong dataReplyDelay = new AtomicLong();
+
+    LocalSmtpServer() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(this::acceptLoop, "local-smtp");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    /** Rejects the next {@code times} messages to {@code to}. */
+    void failNext(String to, int times) {
+        failures.put(to, new AtomicInteger(times));
+    }
+
+    /** Holds back the reply to the next message's data for {@code millis}. */
+    void delayNextDataReply(long millis) {
+        dataReplyDelay.set(millis);
+    }
+
+    List<Message> getMessages() {
+        synchronized (messages) {
+            return new ArrayList<>(messages);
+        }
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                connections.incrementAndGet();
+                Thread t = new Thread(() -> serve(socket), "local-smtp-session");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            OutputStream out = socket.getOutputStream();
+            reply(out, "220 localhost ESMTP stand-in");
+            String to = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase();
+                if (command.startsWith("HELO") || command.startsWith("EHLO")) {
+                    reply(out, "250 localhost");
+                } else if (command.startsWith("MAIL FROM:")) {
+                    reply(out, "250 OK");
+                } else if (command.startsWith("RCPT TO:")) {
+                    String address = line.substring(line.indexOf('<') + 1, line.lastIndexOf('>'));
+                    AtomicInteger left = failures.get(address);
+                    if (left != null && left.getAndDecrement() > 0) {
+                        reply(out, "451 Try again later");
+                    } else {
+                        to = address;
+                        reply(out, "250 OK");
+                    }
+                } else if (command.equals("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    StringBuilder data = new StringBuilder();
+                    while (!(line = in.readLine()).equals(".")) {
+                        data.append(line.startsWith("..") ? line.substring(1) : line).append("\r\n");
+                    }
+                    synchronized (messages) {
+                        messages.add(new Message(to, data.toString()));
+                    }
+                    to = null;
+                    long delay = dataReplyDelay.getAndSet(0);
+                    if (delay > 0) {
+                        try {
+                            Thread.sleep(delay);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    reply(out, "250 OK queued");
+                } else if (command.equals("RSET")) {
+                    to = null;
+                    reply(out, "250 OK");
+                } else if (command.equals("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    reply(out, "502 Command not implemented");
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        }
+    }
+
+    private static void reply(OutputStream out, String line) throws IOException {
+        out.write((line + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+}
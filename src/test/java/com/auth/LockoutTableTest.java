@@ -0,0 +1,233 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LockoutTableTest {
+
+    private static final String URL = "jdbc:h2:mem:lockoutdb;DB_CLOSE_DELAY=-1";
+
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), "
+                    + "intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'user' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, 1000)");
+            st.execute("UPDATE usuarios SET intentos_fallidos = 2 WHERE id = 10");
+            st.execute("UPDATE usuarios SET intentos_fallidos = 5, bloqueado = TRUE WHERE id = 20");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    private int[] row(int id) throws Exception {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT intentos_fallidos, bloqueado FROM usuarios WHERE id = " + id)) {
+            assertTrue(rs.next());
+            return new int[] {rs.getInt(1), rs.getBoolean(2) ? 1 : 0};
+        }
+    }
+
+    @Test
+    public void loadsOnlyAccountsWithState() throws Exception {
+        LockoutTable table = LockoutTable.fromDatabase(conn);
+        assertEquals(2, table.size());
+        assertEquals(2, table.failures(10));
+        assertFalse(table.isBlocked(10));
+        assertTrue(table.isBlocked(20));
+        assertEquals(0, table.failures(30));
+        assertEquals(0, table.getDirtyCount());
+    }
+
+    @Test
+    public void countsFailuresAndBlocksAtLimit() throws Exception {
+        LockoutTable table = LockoutTable.fromDatabase(conn);
+        assertEquals(LoginResult.wrongPassword(10, 3), table.recordFailure(10));
+        assertEquals(LoginResult.wrongPassword(10, 4), table.recordFailure(10));
+        assertEquals(LoginResult.blockedNow(10, 5), table.recordFailure(10));
+        assertEquals(LoginResult.accountBlocked(10, 5), table.recordFailure(10));
+        assertEquals(LoginResult.accountBlocked(10, 5), table.recordSuccess(10));
+
+        assertEquals(LoginResult.wrongPassword(30, 1), table.recordFailure(30));
+        assertEquals(LoginResult.success(30), table.recordSuccess(30));
+        assertEquals(0, table.failures(30));
+    }
+
+    @Test
+    public void checkpointWritesChangedRowsAndDropsClearedOnes() throws Exception {
+        LockoutTable table = LockoutTable.fromDatabase(conn);
+        table.recordFailure(30);
+        table.recordSuccess(10);
+        table.unblock(20);
+        assertEquals(3, table.getDirtyCount());
+
+        assertEquals(3, table.checkpoint(conn));
+        assertArrayEquals(new int[] {1, 0}, row(30));
+        assertArrayEquals(new int[] {0, 0}, row(10));
+        assertArrayEquals(new int[] {0, 0}, row(20));
+        assertEquals(0, table.checkpoint(conn));
+        // 10 and 20 are back at their defaults and were written, so they are no longer held
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void crashLosesAtMostTheChangesSinceTheLastCheckpoint() throws Exception {
+        LockoutTable table = LockoutTable.fromDatabase(conn);
+        for (int i = 0; i < 5; i++) {
+            table.recordFailure(30);
+        }
+        table.recordFailure(40);
+        table.checkpoint(conn);
+
+        // Inside the durability window: not yet checkpointed when the process dies
+        table.recordFailure(40);
+        table.recordFailure(50);
+        // No close(): simulates a crash
+
+        LockoutTable recovered = LockoutTable.fromDatabase(conn);
+        assertTrue(recovered.isBlocked(30));
+        assertEquals(5, recovered.failures(30));
+        assertEquals(1, recovered.failures(40));
+        assertEquals(0, recovered.failures(50));
+        assertEquals(2, recovered.failures(10));
+        assertTrue(recovered.isBlocked(20));
+    }
+
+    @Test
+    public void closeWritesFinalCheckpoint() throws Exception {
+        LockoutTable table = LockoutTable.fromDatabase(conn);
+        table.startCheckpoints(() -> DriverManager.getConnection(URL), 60_000);
+        table.recordFailure(60);
+        table.close();
+        assertArrayEquals(new int[] {1, 0}, row(60));
+        assertEquals(1, table.getCheckpoints());
+    }
+
+    @Test
+    public void failedCheckpointKeepsEntriesDirty() throws Exception {
+        LockoutTable table = LockoutTable.fromDatabase(conn);
+        table.recordFailure(30);
+        Connection broken = spy(conn);
+        doThrow(new SQLException("write failed")).when(broken).prepareStatement(anyString());
+        try {
+            table.checkpoint(broken);
+            fail("expected SQLException");
+        } catch (SQLException e) {
+            assertEquals(1, table.getCheckpointFailures());
+        }
+        assertEquals(1, table.getDirtyCount());
+        assertEquals(1, table.checkpoint(conn));
+        assertArrayEquals(new int[] {1, 0}, row(30));
+    }
+
+    @Test
+    public void concurrentFailuresBlockExactlyOnce() throws Exception {
+        LockoutTable table = new LockoutTable();
+        List<LoginResult> results = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 100; i++) {
+                    results.add(table.recordFailure(7));
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(1, results.stream().filter(r -> r.outcome() == LoginResult.Outcome.BLOCKED_NOW).count());
+        assertEquals(4, results.stream().filter(r -> r.outcome() == LoginResult.Outcome.WRONG_PASSWORD).count());
+        assertEquals(5, table.failures(7));
+    }
+
+    @Test
+    public void manyAccountsSurviveGrowthAndRemoval() throws Exception {
+        LockoutTable table = new LockoutTable();
+        for (int id = 1; id <= 10_000; id++) {
+            table.recordFailure(id);
+        }
+        assertEquals(10_000, table.size());
+        for (int id = 1; id <= 10_000; id += 2) {
+            table.recordSuccess(id);
+        }
+        try (Statement st = conn.createStatement()) {
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'more' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1001, 10000)");
+        }
+        table.checkpoint(conn);
+        table.checkpoint(conn);
+        assertEquals(5_000, table.size());
+        for (int id = 1; id <= 10_000; id++) {
+            assertEquals(id % 2 == 0 ? 1 : 0, table.failures(id));
+        }
+    }
+
+    @Test
+    public void blockedAccountIsRefusedWithoutQuery() throws Exception {
+        AuthService svc = new AuthService();
+        svc.setUserCache(new UserRecordCache(100, 60_000));
+        svc.setLockoutTable(LockoutTable.fromDatabase(conn));
+
+        Connection spy = spy(conn);
+        for (int i = 1; i < 5; i++) {
+            assertEquals(LoginResult.wrongPassword(30, i), svc.authenticateWithConnection(spy, "user30@example.com", "Xyz!2"));
+        }
+        assertEquals(LoginResult.blockedNow(30, 5), svc.authenticateWithConnection(spy, "user30@example.com", "Xyz!2"));
+        // One SELECT to fill the cache; the counters were never read or written
+        verify(spy, times(1)).prepareStatement(anyString());
+
+        Connection none = mock(Connection.class);
+        assertEquals(LoginResult.accountBlocked(30, 5), svc.authenticateWithConnection(none, "user30@example.com", "Abc!1"));
+        verifyNoInteractions(none);
+        assertArrayEquals(new int[] {0, 0}, row(30));
+
+        assertEquals(LoginResult.success(31), svc.authenticateWithConnection(conn, "user31@example.com", "Abc!1"));
+        svc.getLockoutTable().checkpoint(conn);
+        assertArrayEquals(new int[] {5, 1}, row(30));
+    }
+
+    @Test
+    public void passwordChangedBehindTheCacheIsNotAccepted() throws Exception {
+        AuthService svc = new AuthService();
+        svc.setUserCache(new UserRecordCache(100, 60_000));
+        svc.setLockoutTable(LockoutTable.fromDatabase(conn));
+        assertEquals(LoginResult.success(40), svc.authenticateWithConnection(conn, "user40@example.com", "Abc!1"));
+
+        // Reset on another node: this service's cache still holds the old value
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE usuarios SET clave_hash = 'New!1' WHERE id = 40");
+        }
+        assertEquals(LoginResult.wrongPassword(40, 1), svc.authenticateWithConnection(conn, "user40@example.com", "Abc!1"));
+        assertEquals(LoginResult.success(40), svc.authenticateWithConnection(conn, "user40@example.com", "New!1"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PasswordHasherTest {
+
+    private final PasswordHasher hasher = new PasswordHasher(PasswordHasher.MIN_ITERATIONS);
+
+    @Test
+    public void hashIsSelfDescribingAndVerifies() {
+        String stored = hasher.hash("Abc!1");
+        assertTrue(stored.startsWith("$pbkdf2-sha256$v=1$i=10000$"));
+        assertTrue(stored.length() <= 255);
+        assertTrue(PasswordHasher.isHashed(stored));
+        assertTrue(PasswordHasher.verify("Abc!1", stored));
+        assertFalse(PasswordHasher.verify("Abc!2", stored));
+        assertEquals(10_000, PasswordHasher.iterationsOf(stored));
+    }
+
+    @Test
+    public void saltMakesEachHashUnique() {
+        assertNotEquals(hasher.hash("Abc!1"), hasher.hash("Abc!1"));
+    }
+
+    @Test
+    public void legacyPlaintextIsComparedDirectly() {
+        assertFalse(PasswordHasher.isHashed("Abc!1"));
+        assertTrue(PasswordHasher.verify("Abc!1", "Abc!1"));
+        assertFalse(PasswordHasher.verify("Abc!2", "Abc!1"));
+        assertEquals(0, PasswordHasher.iterationsOf("Abc!1"));
+    }
+
+    @Test
+    public void malformedHashesNeverMatch() {
+        assertFalse(PasswordHasher.verify("Abc!1", "$pbkdf2-sha256$v=1$i=10000$notbase64!$x"));
+        assertFalse(PasswordHasher.verify("Abc!1", "$pbkdf2-sha256$v=9$i=10000$AAAA$AAAA"));
+        assertFalse(PasswordHasher.verify("Abc!1", "$pbkdf2-sha256$v=1$i=abc$AAAA$AAAA"));
+        assertFalse(PasswordHasher.verify("Abc!1", "$pbkdf2-sha256$"));
+    }
+
+    @Test
+    public void needsRehashBelowConfiguredCost() {
+        PasswordHasher stronger = new PasswordHasher(20_000);
+        assertTrue(stronger.needsRehash(hasher.hash("Abc!1")));
+        assertTrue(stronger.needsRehash("Abc!1"));
+        assertFalse(hasher.needsRehash(stronger.hash("Abc!1")));
+    }
+
+    @Test
+    public void calibratedHasherRehashesOnlyBelowItsFloor() {
+        PasswordHasher calibrated = new PasswordHasher(31_000, 20_000);
+        assertEquals(20_000, calibrated.getRehashBelow());
+        // Another node calibrated a little lower: its hashes are kept
+        assertFalse(calibrated.needsRehash(new PasswordHasher(29_000).hash("Abc!1")));
+        assertFalse(calibrated.needsRehash(new PasswordHasher(20_000).hash("Abc!1")));
+        assertTrue(calibrated.needsRehash(hasher.hash("Abc!1")));
+        assertTrue(calibrated.needsRehash("Abc!1"));
+        try {
+            new PasswordHasher(20_000, 30_000);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCostBelowFloor() {
+        new PasswordHasher(1_000);
+    }
+}
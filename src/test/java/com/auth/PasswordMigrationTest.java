@@ -0,0 +1,139 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PasswordMigrationTest {
+
+    private static final String URL = "jdbc:h2:mem:migrationdb;DB_CLOSE_DELAY=-1";
+    private static final int ROWS = 600;
+
+    private Connection conn;
+    private Path checkpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+        }
+        PasswordMigration.generate(conn, ROWS);
+        checkpoint = Files.createTempFile("migration", ".checkpoint");
+        Files.delete(checkpoint);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        conn.close();
+        Files.deleteIfExists(checkpoint);
+    }
+
+    private PasswordMigration migration(PasswordHasher hasher) {
+        return new PasswordMigration(() -> DriverManager.getConnection(URL), hasher, 100, 2, checkpoint);
+    }
+
+    private long count(String where) throws Exception {
+        try (ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM usuarios WHERE " + where)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private String claveHash(int id) throws Exception {
+        try (ResultSet rs = conn.createStatement().executeQuery("SELECT clave_hash FROM usuarios WHERE id=" + id)) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+
+    @Test
+    public void migratesEveryPlaintextRowAndLoginStillWorks() throws Exception {
+        String alreadyHashed = new PasswordHasher(PasswordHasher.MIN_ITERATIONS * 2).hash("Abc!1");
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE usuarios SET clave_hash = '" + alreadyHashed + "' WHERE id = 7");
+        }
+
+        PasswordMigration.Report report = migration(new PasswordHasher(PasswordHasher.MIN_ITERATIONS)).run();
+
+        assertEquals(ROWS, report.scanned());
+        assertEquals(ROWS - 1, report.migrated());
+        assertEquals(1, report.alreadyHashed());
+        assertEquals(0, report.changedConcurrently());
+        assertEquals(ROWS, report.lastId());
+        assertTrue(report.rowsPerSecond() > 0);
+        assertEquals(0, count("clave_hash NOT LIKE '$pbkdf2-sha256$%'"));
+        assertEquals(alreadyHashed, claveHash(7));
+        assertEquals(String.valueOf(ROWS), Files.readString(checkpoint));
+
+        // Generated users have password Clave!<id % 10000>
+        AuthService svc = new AuthService();
+        try (PasswordVerifier verifier = new PasswordVerifier(new PasswordHasher(PasswordHasher.MIN_ITERATIONS), 1, 4)) {
+            svc.setPasswordVerifier(verifier);
+            assertEquals("Login exitoso 🎉", svc.loginWithConnection(conn, "migracion42@ejemplo.com", "Clave!42"));
+            assertEquals("Clave incorrecta. Intentos: 1/5", svc.loginWithConnection(conn, "migracion42@ejemplo.com", "Clave!43"));
+        }
+    }
+
+    @Test
+    public void resumesFromCheckpointAfterFailure() throws Exception {
+        AtomicInteger hashes = new AtomicInteger();
+        PasswordHasher failing = new PasswordHasher(PasswordHasher.MIN_ITERATIONS) {
+            @Override
+            public String hash(String password) {
+                if (hashes.incrementAndGet() > 250) {
+                    throw new IllegalStateException("worker crashed");
+                }
+                return super.hash(password);
+            }
+        };
+        try {
+            migration(failing).run();
+            fail("expected failure");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("worker crashed"));
+        }
+        long resumeFrom = Long.parseLong(Files.readString(checkpoint));
+        assertTrue(resumeFrom > 0 && resumeFrom < ROWS);
+        // Committed pages stay migrated; nothing past the checkpoint was written
+        assertEquals(resumeFrom, count("clave_hash LIKE '$pbkdf2-sha256$%'"));
+
+        PasswordMigration.Report report = migration(new PasswordHasher(PasswordHasher.MIN_ITERATIONS)).run();
+        assertEquals(ROWS - resumeFrom, report.scanned());
+        assertEquals(ROWS - resumeFrom, report.migrated());
+        assertEquals(0, count("clave_hash NOT LIKE '$pbkdf2-sha256$%'"));
+    }
+
+    @Test
+    public void rowChangedDuringMigrationIsLeftAlone() throws Exception {
+        PasswordHasher racing = new PasswordHasher(PasswordHasher.MIN_ITERATIONS) {
+            @Override
+            public String hash(String password) {
+                if (password.equals("Clave!5")) {
+                    try (Connection other = DriverManager.getConnection(URL);
+                         Statement st = other.createStatement()) {
+                        st.execute("UPDATE usuarios SET clave_hash = 'Nueva!1' WHERE id = 5");
+                    } catch (java.sql.SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return super.hash(password);
+            }
+        };
+        PasswordMigration.Report report = new PasswordMigration(() -> DriverManager.getConnection(URL), racing, 100, 1, null).run();
+
+        assertEquals(1, report.changedConcurrently());
+        assertEquals(ROWS - 1, report.migrated());
+        assertEquals("Nueva!1", claveHash(5));
+    }
+}
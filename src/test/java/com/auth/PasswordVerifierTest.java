@@ -0,0 +1,138 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PasswordVerifierTest {
+
+    private static final PasswordHasher HASHER = new PasswordHasher(PasswordHasher.MIN_ITERATIONS);
+
+    @Test
+    public void verifiesOnWorkerThreadsAndRecordsTimes() throws Exception {
+        try (PasswordVerifier verifier = new PasswordVerifier(HASHER, 2, 8)) {
+            String stored = HASHER.hash("Abc!1");
+            assertTrue(verifier.verifyAsync("Abc!1", stored).get(5, TimeUnit.SECONDS));
+            assertFalse(verifier.verify("Abc!2", stored));
+
+            assertEquals(2, verifier.getVerifyTimes().getCount());
+            assertEquals(2, verifier.getQueueWaitTimes().getCount());
+            assertTrue(verifier.getVerifyTimes().percentileMicros(0.5) > 0);
+            assertEquals(2, verifier.getThreads());
+            assertEquals(8, verifier.getQueueCapacity());
+        }
+    }
+
+    @Test
+    public void plaintextIsCheckedInline() {
+        try (PasswordVerifier verifier = new PasswordVerifier(HASHER, 1, 1)) {
+            assertTrue(verifier.verifyAsync("Abc!1", "Abc!1").isDone());
+            assertEquals(0, verifier.getVerifyTimes().getCount());
+        }
+    }
+
+    @Test
+    public void fullQueueRejects() throws Exception {
+        try (PasswordVerifier verifier = new PasswordVerifier(HASHER, 1, 1)) {
+            // Occupy the single worker with a slow hash, then fill the one queue slot
+            String slow = new PasswordHasher(2_000_000).hash("Abc!1");
+            CompletableFuture<Boolean> running = verifier.verifyAsync("Abc!1", slow);
+            while (verifier.getActiveVerifications() == 0) {
+                Thread.sleep(1);
+            }
+            CompletableFuture<Boolean> queued = verifier.verifyAsync("Abc!1", slow);
+            assertEquals(1, verifier.getQueueDepth());
+            try {
+                verifier.verifyAsync("Abc!1", slow);
+                fail("expected rejection");
+            } catch (RejectedExecutionException e) {
+                assertTrue(e.getMessage().contains("queue is full"));
+            }
+            assertEquals(1, verifier.getRejectedCount());
+            assertEquals(1, verifier.getMaxQueueDepth());
+            assertTrue(running.get(30, TimeUnit.SECONDS));
+            assertTrue(queued.get(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void rejectedLoginIsReportedAsBusy() throws Exception {
+        try (PasswordVerifier verifier = new PasswordVerifier(HASHER, 1, 1)) {
+            verifier.close();
+            AuthService svc = new AuthService();
+            svc.setPasswordVerifier(verifier);
+            try (Connection conn = newDb("verifyclosed")) {
+                LoginResult r = svc.authenticateWithConnection(conn, "h@example.com", "Abc!1");
+                assertEquals(LoginResult.Outcome.BUSY, r.outcome());
+                assertEquals("Password verifier is closed", r.errorDetail());
+                assertEquals(0, intentos(conn));
+            }
+        }
+    }
+
+    @Test
+    public void hashedCredentialsWorkInEveryLoginPath() throws Exception {
+        try (PasswordVerifier verifier = new PasswordVerifier(HASHER, 2, 16);
+             Connection conn = newDb("verifypaths")) {
+            for (AuthService.LoginMode mode : AuthService.LoginMode.values()) {
+                AuthService svc = new AuthService();
+                svc.setLoginMode(mode);
+                svc.setPasswordVerifier(verifier);
+                assertEquals(mode.name(), "Clave incorrecta. Intentos: 1/5", svc.loginWithConnection(conn, "h@example.com", "Abc!2"));
+                assertEquals(mode.name(), "Login exitoso 🎉", svc.loginWithConnection(conn, "h@example.com", "Abc!1"));
+                assertEquals(0, intentos(conn));
+            }
+
+            AuthService svc = new AuthService();
+            svc.setPasswordVerifier(verifier);
+            List<LoginResult> r = svc.authenticateBatchWithConnection(conn, List.of(
+                    new Credentials("h@example.com", "Abc!2"),
+                    new Credentials("h@example.com", "Abc!1")));
+            assertEquals(LoginResult.Outcome.WRONG_PASSWORD, r.get(0).outcome());
+            assertEquals(LoginResult.Outcome.SUCCESS, r.get(1).outcome());
+        }
+    }
+
+    @Test
+    public void concurrentCallersShareTheBoundedPool() throws Exception {
+        try (PasswordVerifier verifier = new PasswordVerifier(HASHER, 2, 64)) {
+            String stored = HASHER.hash("Abc!1");
+            int callers = 16;
+            CountDownLatch done = new CountDownLatch(callers);
+            for (int i = 0; i < callers; i++) {
+                Thread.ofVirtual().start(() -> {
+                    assertTrue(verifier.verify("Abc!1", stored));
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertEquals(callers, verifier.getVerifyTimes().getCount());
+        }
+    }
+
+    private static Connection newDb(String name) throws Exception {
+        Connection conn = DriverManager.getConnection("jdbc:h2:mem:" + name);
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE usuarios (id INT AUTO_INCREMENT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios(email, clave_hash) VALUES('h@example.com', '" + HASHER.hash("Abc!1") + "')");
+        }
+        return conn;
+    }
+
+    private static int intentos(Connection conn) throws Exception {
+        try (ResultSet rs = conn.createStatement().executeQuery("SELECT intentos_fallidos FROM usuarios")) {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+}
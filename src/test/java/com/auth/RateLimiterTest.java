@@ -0,0 +1,131 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+public class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    public void allowsBurstThenRefillsAtRate() {
+        RateLimiter limiter = new RateLimiter(3, 2.0, 100, now::get);
+        assertTrue(limiter.tryAcquire("a@example.com"));
+        assertTrue(limiter.tryAcquire("a@example.com"));
+        assertTrue(limiter.tryAcquire("a@example.com"));
+        assertFalse(limiter.tryAcquire("a@example.com"));
+        assertEquals(0, limiter.availableTokens("a@example.com"));
+
+        // Two tokens per second: one every 500 ms
+        now.addAndGet(499_000_000L);
+        assertFalse(limiter.tryAcquire("a@example.com"));
+        now.addAndGet(1_000_000L);
+        assertTrue(limiter.tryAcquire("a@example.com"));
+        assertFalse(limiter.tryAcquire("a@example.com"));
+
+        // A long pause refills only up to capacity
+        now.addAndGet(60_000_000_000L);
+        assertEquals(3, limiter.availableTokens("a@example.com"));
+        assertEquals(4, limiter.getAllowed());
+        assertEquals(3, limiter.getRejected());
+    }
+
+    @Test
+    public void keysHaveIndependentBuckets() {
+        RateLimiter limiter = new RateLimiter(1, 1.0, 100, now::get);
+        assertTrue(limiter.tryAcquire("a@example.com"));
+        assertFalse(limiter.tryAcquire("a@example.com"));
+        assertTrue(limiter.tryAcquire("b@example.com"));
+    }
+
+    @Test
+    public void keyCountStaysBoundedUnderSpray() {
+        RateLimiter limiter = new RateLimiter(2, 1.0, 100, now::get);
+        for (int i = 0; i < 10_000; i++) {
+            limiter.tryAcquire("spray" + i);
+            assertTrue(limiter.size() <= 100);
+        }
+        assertTrue(limiter.getEvictions() > 0);
+    }
+
+    @Test
+    public void fullBucketsAreDroppedBeforeActiveOnes() {
+        RateLimiter limiter = new RateLimiter(2, 1.0, 100, now::get);
+        for (int i = 0; i < 99; i++) {
+            limiter.tryAcquire("idle" + i);
+        }
+        now.addAndGet(10_000_000_000L);
+        limiter.tryAcquire("victim@example.com");
+        limiter.tryAcquire("victim@example.com");
+
+        // Reaching the bound sweeps the 99 refilled buckets but keeps the drained one
+        limiter.tryAcquire("new@example.com");
+        assertEquals(2, limiter.size());
+        assertEquals(0, limiter.getEvictions());
+        assertFalse(limiter.tryAcquire("victim@example.com"));
+    }
+
+    @Test
+    public void concurrentCallersNeverExceedCapacity() throws Exception {
+        RateLimiter limiter = new RateLimiter(1_000, 0.001, 100, now::get);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (limiter.tryAcquire("hot@example.com")) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(1_000, granted.get());
+        assertEquals(3_000, limiter.getRejected());
+    }
+
+    @Test
+    public void limitedRequestsNeverTouchTheDatabase() {
+        AuthService svc = new AuthService();
+        svc.setEmailRateLimiter(new RateLimiter(1, 0.001, 100, now::get));
+        svc.setClientRateLimiter(new RateLimiter(2, 0.001, 100, now::get));
+        Connection conn = mock(Connection.class);
+
+        try (MockedStatic<DbConnection> db = mockStatic(DbConnection.class)) {
+            db.when(DbConnection::getConnection).thenThrow(new IllegalStateException("database reached"));
+
+            // Charged before validation, so these bad requests use up tokens without a query
+            assertEquals(LoginResult.INVALID_PASSWORD_FORMAT, svc.authenticateWithConnection(conn, "a@example.com", "x", "10.0.0.1"));
+            assertEquals(LoginResult.RATE_LIMITED, svc.authenticate("a@example.com", "Xyz!2", "10.0.0.2"));
+            assertEquals(RecoveryResult.RATE_LIMITED, svc.requestRecovery("a@example.com"));
+            assertEquals(LoginResult.RATE_LIMITED, svc.authenticateWithConnection(conn, "a@example.com", "Xyz!2"));
+
+            // The client bucket is charged first, so its refusal leaves the email bucket alone
+            assertEquals(RecoveryResult.INVALID_EMAIL, svc.requestRecoveryWithConnection(conn, "no-valido", "10.0.0.1"));
+            assertEquals(LoginResult.RATE_LIMITED, svc.authenticate("c@example.com", "Xyz!2", "10.0.0.1"));
+            assertEquals(1, svc.getEmailRateLimiter().availableTokens("c@example.com"));
+
+            assertEquals("Demasiados intentos. Intente de nuevo más tarde", svc.login("a@example.com", "Xyz!2"));
+            db.verify(DbConnection::getConnection, never());
+            verifyNoInteractions(conn);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecoveryOutboxTest {
+
+    private static final String URL = "jdbc:h2:mem:outboxdb;DB_CLOSE_DELAY=-1";
+
+    private Connection conn;
+    private LocalSmtpServer smtp;
+    private RecoveryOutbox outbox;
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS recovery_outbox");
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), "
+                    + "intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'user' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, 10)");
+            st.execute("CREATE TABLE recovery_outbox (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "user_id INT NOT NULL REFERENCES usuarios (id), email VARCHAR(255) NOT NULL, "
+                    + "created_at TIMESTAMP NOT NULL, attempts INT NOT NULL DEFAULT 0, next_attempt_at TIMESTAMP, "
+                    + "sent_at TIMESTAMP, last_error VARCHAR(255))");
+        }
+        smtp = new LocalSmtpServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (outbox != null) {
+            outbox.close();
+        }
+        smtp.close();
+        conn.close();
+    }
+
+    private RecoveryOutbox outbox(RecoveryMailer mailer, int maxAttempts) {
+        outbox = new RecoveryOutbox(() -> DriverManager.getConnection(URL), mailer, null, 100, maxAttempts, clock::get);
+        return outbox;
+    }
+
+    private SmtpMailer mailer() {
+        return mailer(2_000);
+    }
+
+    private SmtpMailer mailer(int timeoutMillis) {
+        return new SmtpMailer("127.0.0.1", smtp.getPort(), "no-reply@example.com", timeoutMillis);
+    }
+
+    private AuthService service() {
+        AuthService svc = new AuthService();
+        svc.setRecoveryOutbox(outbox);
+        return svc;
+    }
+
+    private int count(String where) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM recovery_outbox WHERE " + where)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void recoveryQueuesWithoutSending() throws Exception {
+        outbox(mailer(), RecoveryOutbox.DEFAULT_MAX_ATTEMPTS);
+        AuthService svc = service();
+
+        assertEquals(RecoveryResult.emailSent(1), svc.requestRecoveryWithConnection(conn, "user1@example.com"));
+        assertEquals(RecoveryResult.USER_NOT_FOUND, svc.requestRecoveryWithConnection(conn, "nobody@example.com"));
+
+        assertEquals(1, count("next_attempt_at IS NOT NULL AND user_id = 1 AND email = 'user1@example.com'"));
+        assertEquals(1, outbox.getEnqueued());
+        assertTrue(smtp.getMessages().isEmpty());
+        clock.addAndGet(5_000);
+        assertEquals(5_000, outbox.oldestPendingAgeMillis(conn));
+    }
+
+    @Test
+    public void dispatchSendsABatchOverOneConnection() throws Exception {
+        outbox(mailer(), RecoveryOutbox.DEFAULT_MAX_ATTEMPTS);
+        AuthService svc = service();
+        for (int id = 1; id <= 3; id++) {
+            svc.requestRecoveryWithConnection(conn, "user" + id + "@example.com");
+        }
+        clock.addAndGet(250);
+
+        assertEquals(3, outbox.dispatch());
+        assertEquals(0, outbox.dispatch());
+
+        List<LocalSmtpServer.Message> messages = smtp.getMessages();
+        assertEquals(List.of("user1@example.com", "user2@example.com", "user3@example.com"),
+                messages.stream().map(LocalSmtpServer.Message::to).toList());
+        assertTrue(messages.get(0).data().contains("To: <user1@example.com>"));
+        assertEquals(1, smtp.getConnections());
+        assertEquals(3, count("sent_at IS NOT NULL AND next_attempt_at IS NULL AND attempts = 1"));
+        assertEquals(3, outbox.getSent());
+        assertEquals(3, outbox.getLag().getCount());
+        assertEquals(250_000, outbox.getLag().getMeanMicros(), 250_000 * 0.25);
+        assertEquals(1, outbox.getDispatchTimes().getCount());
+        assertEquals(0, outbox.oldestPendingAgeMillis(conn));
+    }
+
+    @Test
+    public void rejectedMessageIsRetriedWithBackoff() throws Exception {
+        outbox(mailer(), RecoveryOutbox.DEFAULT_MAX_ATTEMPTS);
+        AuthService svc = service();
+        smtp.failNext("user1@example.com", 2);
+        svc.requestRecoveryWithConnection(conn, "user1@example.com");
+        svc.requestRecoveryWithConnection(conn, "user2@example.com");
+
+        assertEquals(2, outbox.dispatch());
+        // The rejection did not end the session for the message after it
+        assertEquals(List.of("user2@example.com"), smtp.getMessages().stream().map(LocalSmtpServer.Message::to).toList());
+        assertEquals(1, count("email = 'user1@example.com' AND attempts = 1 AND last_error LIKE '%451%'"));
+
+        assertEquals(0, outbox.dispatch());
+        clock.addAndGet(RecoveryOutbox.backoffMillis(1));
+        assertEquals(1, outbox.dispatch());
+        // Second failure doubles the wait
+        clock.addAndGet(RecoveryOutbox.backoffMillis(1));
+        assertEquals(0, outbox.dispatch());
+        clock.addAndGet(RecoveryOutbox.backoffMillis(2) - RecoveryOutbox.backoffMillis(1));
+        assertEquals(1, outbox.dispatch());
+
+        assertEquals(1, count("email = 'user1@example.com' AND sent_at IS NOT NULL AND attempts = 3"));
+        assertEquals(2, outbox.getSent());
+        assertEquals(2, outbox.getFailedAttempts());
+    }
+
+    @Test
+    public void unreachableServerBacksOffEveryRowThenAbandons() throws Exception {
+        RecoveryMailer down = () -> {
+            throw new IOException("Connection refused");
+        };
+        outbox(down, 2);
+        AuthService svc = service();
+        svc.requestRecoveryWithConnection(conn, "user1@example.com");
+        svc.requestRecoveryWithConnection(conn, "user2@example.com");
+
+        assertEquals(2, outbox.dispatch());
+        assertEquals(2, count("attempts = 1 AND next_attempt_at IS NOT NULL AND last_error LIKE '%Connection refused%'"));
+        clock.addAndGet(RecoveryOutbox.backoffMillis(1));
+        assertEquals(2, outbox.dispatch());
+
+        assertEquals(2, count("attempts = 2 AND next_attempt_at IS NULL AND sent_at IS NULL"));
+        assertEquals(2, outbox.getAbandoned());
+        clock.addAndGet(RecoveryOutbox.MAX_BACKOFF_MS);
+        assertEquals(0, outbox.dispatch());
+    }
+
+    @Test
+    public void claimedRowsAreLeasedUntilRecorded() throws Exception {
+        outbox(mailer(), RecoveryOutbox.DEFAULT_MAX_ATTEMPTS);
+        AuthService svc = service();
+        svc.requestRecoveryWithConnection(conn, "user1@example.com");
+        // A dispatcher that claimed the row and died before recording it
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE recovery_outbox SET next_attempt_at = DATEADD(MILLISECOND, "
+                    + RecoveryOutbox.LEASE_MS + ", next_attempt_at)");
+        }
+        assertEquals(0, outbox.dispatch());
+        clock.addAndGet(RecoveryOutbox.LEASE_MS);
+        assertEquals(1, outbox.dispatch());
+        assertEquals(1, smtp.getMessages().size());
+    }
+
+    @Test
+    public void timeoutEndsTheSessionForTheRestOfTheBatch() throws Exception {
+        outbox(mailer(200), RecoveryOutbox.DEFAULT_MAX_ATTEMPTS);
+        AuthService svc = service();
+        for (int id = 1; id <= 3; id++) {
+            svc.requestRecoveryWithConnection(conn, "user" + id + "@example.com");
+        }
+        smtp.delayNextDataReply(1_000);
+
+        long start = System.nanoTime();
+        assertEquals(3, outbox.dispatch());
+        // The late reply is never read as the answer to a later command, and nothing waits on it
+        assertTrue(System.nanoTime() - start < 900_000_000L);
+        assertEquals(1, count("email = 'user1@example.com' AND last_error LIKE '%SocketTimeoutException%'"));
+        assertEquals(2, count("attempts = 1 AND last_error LIKE '%earlier failure%'"));
+
+        clock.addAndGet(RecoveryOutbox.backoffMillis(1));
+        assertEquals(3, outbox.dispatch());
+        assertEquals(3, count("sent_at IS NOT NULL AND attempts = 2"));
+        assertEquals(2, smtp.getConnections());
+    }
+
+    @Test
+    public void batchStopsBeforeItsLeaseRunsOut() throws Exception {
+        // Each message takes a minute and a half of a slow server's time
+        RecoveryMailer slow = () -> new RecoveryMailer.Session() {
+            @Override
+            public void send(String to, String token) {
+                clock.addAndGet(90_000);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        outbox(slow, RecoveryOutbox.DEFAULT_MAX_ATTEMPTS);
+        AuthService svc = service();
+        for (int id = 1; id <= 5; id++) {
+            svc.requestRecoveryWithConnection(conn, "user" + id + "@example.com");
+        }
+
+        assertEquals(5, outbox.dispatch());
+        assertEquals(3, outbox.getSent());
+        assertEquals(2, outbox.getReleased());
+        assertEquals(0, outbox.getFailedAttempts());
+        // Handed back untried before the lease ran out, and due again at once
+        assertTrue(clock.get() < 1_000_000 + RecoveryOutbox.LEASE_MS);
+        assertEquals(2, count("sent_at IS NULL AND attempts = 0"));
+        assertEquals(2, outbox.dispatch());
+        assertEquals(5, outbox.getSent());
+    }
+
+    @Test
+    public void backgroundDispatcherDelivers() throws Exception {
+        outbox = new RecoveryOutbox(() -> DriverManager.getConnection(URL), mailer());
+        service().requestRecoveryWithConnection(conn, "user4@example.com");
+        outbox.start(10);
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (outbox.getSent() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, outbox.getSent());
+        assertEquals("user4@example.com", smtp.getMessages().get(0).to());
+    }
+}
@@ -0,0 +1,203 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecoveryTokenStoreTest {
+
+    private static final String URL = "jdbc:h2:mem:recoverytokendb;DB_CLOSE_DELAY=-1";
+
+    private Connection conn;
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private RecoveryTokenStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS recovery_outbox");
+            st.execute("DROP TABLE IF EXISTS recovery_tokens");
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), "
+                    + "intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'user' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, 10)");
+            st.execute("CREATE TABLE recovery_tokens (token_hash BINARY(32) PRIMARY KEY, "
+                    + "user_id INT NOT NULL REFERENCES usuarios (id), expires_at TIMESTAMP NOT NULL)");
+            st.execute("CREATE INDEX recovery_tokens_expires_at_idx ON recovery_tokens (expires_at)");
+        }
+        store = new RecoveryTokenStore(Duration.ofMinutes(30), clock::get);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void tokenIsStoredOnlyAsItsHashAndWorksOnce() throws Exception {
+        String token = store.issue(conn, 3);
+        assertEquals(43, token.length());
+        assertNotEquals(token, store.issue(conn, 3));
+
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT token_hash FROM recovery_tokens WHERE user_id = 3")) {
+            List<byte[]> hashes = new ArrayList<>();
+            while (rs.next()) {
+                hashes.add(rs.getBytes(1));
+            }
+            assertEquals(2, hashes.size());
+            assertTrue(hashes.stream().anyMatch(h -> Arrays.equals(h, RecoveryTokenStore.hash(token))));
+        }
+
+        assertEquals(Integer.valueOf(3), store.peek(conn, token));
+        assertEquals(Integer.valueOf(3), store.consume(conn, token));
+        assertNull(store.consume(conn, token));
+        assertNull(store.peek(conn, token));
+        assertNull(store.consume(conn, "not-a-token"));
+        assertNull(store.consume(conn, null));
+    }
+
+    @Test
+    public void expiredTokenIsRejected() throws Exception {
+        String token = store.issue(conn, 4);
+        clock.addAndGet(Duration.ofMinutes(30).toMillis());
+        assertNull(store.peek(conn, token));
+        assertNull(store.consume(conn, token));
+    }
+
+    @Test
+    public void concurrentRedemptionsSucceedOnce() throws Exception {
+        String token = store.issue(conn, 5);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> {
+                    try (Connection c = DriverManager.getConnection(URL)) {
+                        return store.consume(c, token);
+                    }
+                }));
+            }
+            int winners = 0;
+            for (Future<Integer> f : results) {
+                if (f.get() != null) {
+                    winners++;
+                }
+            }
+            assertEquals(1, winners);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sweeperDeletesOnlyExpiredTokensInBoundedBatches() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            store.issue(conn, 1 + i % 10);
+        }
+        clock.addAndGet(Duration.ofMinutes(31).toMillis());
+        String fresh = store.issue(conn, 6);
+
+        RecoveryTokenSweeper sweeper = new RecoveryTokenSweeper(() -> DriverManager.getConnection(URL), 10, 2, clock::get);
+        assertEquals(20, sweeper.sweep());
+        assertEquals(2, sweeper.getBatchTimes().getCount());
+        assertEquals(5, sweeper.sweep());
+        assertEquals(0, sweeper.sweep());
+
+        assertEquals(1, count("SELECT COUNT(*) FROM recovery_tokens"));
+        assertEquals(Integer.valueOf(6), store.peek(conn, fresh));
+        assertEquals(25, sweeper.getRowsDeleted());
+        assertEquals(3, sweeper.getSweeps());
+    }
+
+    private void createOutboxTable() throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE recovery_outbox (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "user_id INT NOT NULL REFERENCES usuarios (id), email VARCHAR(255) NOT NULL, "
+                    + "created_at TIMESTAMP NOT NULL, attempts INT NOT NULL DEFAULT 0, next_attempt_at TIMESTAMP, "
+                    + "sent_at TIMESTAMP, last_error VARCHAR(255))");
+        }
+    }
+
+    private static String tokenIn(LocalSmtpServer.Message message) {
+        String data = message.data();
+        return data.substring(data.indexOf("Código de recuperación: ") + 24).trim();
+    }
+
+    @Test
+    public void dispatcherIssuesTheTokenAsItSends() throws Exception {
+        createOutboxTable();
+        try (LocalSmtpServer smtp = new LocalSmtpServer()) {
+            RecoveryOutbox outbox = new RecoveryOutbox(() -> DriverManager.getConnection(URL),
+                    new SmtpMailer("127.0.0.1", smtp.getPort(), "no-reply@example.com", 2_000), store, 100, 3, clock::get);
+            AuthService svc = new AuthService();
+            svc.setRecoveryTokens(store);
+            svc.setRecoveryOutbox(outbox);
+
+            assertEquals(RecoveryResult.emailSent(7), svc.requestRecoveryWithConnection(conn, "user7@example.com"));
+            // Queued with nothing but the account; no token exists until the send
+            assertEquals(0, count("SELECT COUNT(*) FROM recovery_tokens"));
+            assertEquals(1, outbox.dispatch());
+            assertEquals(1, count("SELECT COUNT(*) FROM recovery_tokens WHERE user_id = 7"));
+
+            String token = tokenIn(smtp.getMessages().get(0));
+            assertEquals(Integer.valueOf(7), svc.redeemRecoveryTokenWithConnection(conn, token));
+            assertNull(svc.redeemRecoveryTokenWithConnection(conn, token));
+        }
+    }
+
+    @Test
+    public void failedSendDiscardsItsToken() throws Exception {
+        createOutboxTable();
+        try (LocalSmtpServer smtp = new LocalSmtpServer()) {
+            RecoveryOutbox outbox = new RecoveryOutbox(() -> DriverManager.getConnection(URL),
+                    new SmtpMailer("127.0.0.1", smtp.getPort(), "no-reply@example.com", 2_000), store, 100, 3, clock::get);
+            AuthService svc = new AuthService();
+            svc.setRecoveryTokens(store);
+            svc.setRecoveryOutbox(outbox);
+            smtp.failNext("user8@example.com", 1);
+
+            svc.requestRecoveryWithConnection(conn, "user8@example.com");
+            assertEquals(1, outbox.dispatch());
+            assertEquals(0, count("SELECT COUNT(*) FROM recovery_tokens"));
+
+            clock.addAndGet(RecoveryOutbox.backoffMillis(1));
+            assertEquals(1, outbox.dispatch());
+            assertEquals(1, count("SELECT COUNT(*) FROM recovery_tokens"));
+            assertEquals(Integer.valueOf(8), svc.redeemRecoveryTokenWithConnection(conn, tokenIn(smtp.getMessages().get(0))));
+        }
+    }
+
+    @Test
+    public void withoutAnOutboxNoTokenIsIssued() throws Exception {
+        AuthService svc = new AuthService();
+        svc.setRecoveryTokens(store);
+        assertEquals(RecoveryResult.emailSent(9), svc.requestRecoveryWithConnection(conn, "user9@example.com"));
+        assertEquals(0, count("SELECT COUNT(*) FROM recovery_tokens"));
+    }
+}
@@ -0,0 +1,169 @@
+package com.auth;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RehashQueueTest {
+
+    private static final String URL = "jdbc:h2:mem:rehashdb;DB_CLOSE_DELAY=-1";
+    private static final PasswordHasher WEAK = new PasswordHasher(PasswordHasher.MIN_ITERATIONS);
+    private static final PasswordHasher TARGET = new PasswordHasher(PasswordHasher.MIN_ITERATIONS * 2);
+
+    private Connection conn;
+    private final List<RehashQueue> queues = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios(id, email, clave_hash) VALUES (1, 'plain@example.com', 'Abc!1')");
+            st.execute("INSERT INTO usuarios(id, email, clave_hash) VALUES (2, 'weak@example.com', '" + WEAK.hash("Abc!1") + "')");
+            st.execute("INSERT INTO usuarios(id, email, clave_hash) VALUES (3, 'strong@example.com', '" + TARGET.hash("Abc!1") + "')");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (RehashQueue q : queues) q.close();
+        conn.close();
+    }
+
+    private RehashQueue queue(int capacity, Consumer<String> onRehashed) {
+        RehashQueue q = new RehashQueue(TARGET, () -> DriverManager.getConnection(URL), capacity, onRehashed);
+        queues.add(q);
+        return q;
+    }
+
+    private String claveHash(int id) throws Exception {
+        try (ResultSet rs = conn.createStatement().executeQuery("SELECT clave_hash FROM usuarios WHERE id=" + id)) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+
+    @Test
+    public void successfulLoginUpgradesPlaintextAndWeakHashes() throws Exception {
+        List<String> notified = new ArrayList<>();
+        RehashQueue q = queue(10, email -> {
+            synchronized (notified) {
+                notified.add(email);
+            }
+        });
+        try (PasswordVerifier verifier = new PasswordVerifier(TARGET, 1, 10)) {
+            AuthService svc = new AuthService();
+            svc.setPasswordVerifier(verifier);
+            svc.setRehashQueue(q);
+            String strongBefore = claveHash(3);
+
+            for (String email : List.of("plain@example.com", "weak@example.com", "strong@example.com")) {
+                assertEquals("Login exitoso 🎉", svc.loginWithConnection(conn, email, "Abc!1"));
+            }
+            // Wrong passwords never queue an upgrade
+            svc.loginWithConnection(conn, "plain@example.com", "Xyz!2");
+
+            await().atMost(Duration.ofSeconds(10)).until(() -> q.getRehashed() == 2);
+            assertEquals(2, q.getSubmitted());
+            assertEquals(TARGET.getIterations(), PasswordHasher.iterationsOf(claveHash(1)));
+            assertEquals(TARGET.getIterations(), PasswordHasher.iterationsOf(claveHash(2)));
+            assertEquals(strongBefore, claveHash(3));
+            synchronized (notified) {
+                assertTrue(notified.containsAll(List.of("plain@example.com", "weak@example.com")));
+            }
+
+            // Upgraded credentials keep working, in both login modes
+            svc.setLoginMode(AuthService.LoginMode.SINGLE_ROUND_TRIP);
+            assertEquals("Login exitoso 🎉", svc.loginWithConnection(conn, "plain@example.com", "Abc!1"));
+            assertEquals(2, q.getSubmitted());
+        }
+    }
+
+    @Test
+    public void rehashDropsTheAccountFromTheServiceCache() throws Exception {
+        // The two-argument queue has no callback of its own
+        RehashQueue q = new RehashQueue(TARGET, () -> DriverManager.getConnection(URL));
+        queues.add(q);
+        UserRecordCache cache = new UserRecordCache(100, 60_000);
+        try (PasswordVerifier verifier = new PasswordVerifier(TARGET, 1, 10)) {
+            AuthService svc = new AuthService();
+            svc.setPasswordVerifier(verifier);
+            svc.setUserCache(cache);
+            svc.setRehashQueue(q);
+            svc.setLoginMode(AuthService.LoginMode.SINGLE_ROUND_TRIP);
+
+            assertEquals("Login exitoso 🎉", svc.loginWithConnection(conn, "weak@example.com", "Abc!1"));
+            await().atMost(Duration.ofSeconds(10)).until(() -> q.getRehashed() == 1);
+
+            // The next login reads the upgraded hash and queues nothing more
+            assertEquals("Login exitoso 🎉", svc.loginWithConnection(conn, "weak@example.com", "Abc!1"));
+            assertEquals(1, q.getSubmitted());
+            assertEquals(claveHash(2), cache.get("weak@example.com", () -> null).claveHash());
+        }
+    }
+
+    @Test
+    public void changedPasswordIsNotOverwritten() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RehashQueue q = new RehashQueue(TARGET, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return DriverManager.getConnection(URL);
+        }, 10, email -> { });
+        queues.add(q);
+
+        assertTrue(q.submit(1, "plain@example.com", "Abc!1", "Abc!1"));
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE usuarios SET clave_hash = 'New!1' WHERE id = 1");
+        }
+        release.countDown();
+        await().atMost(Duration.ofSeconds(10)).until(() -> q.getStale() == 1);
+        assertEquals("New!1", claveHash(1));
+    }
+
+    @Test
+    public void duplicatesAndOverflowAreDropped() throws Exception {
+        CountDownLatch working = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RehashQueue q = new RehashQueue(TARGET, () -> {
+            working.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return DriverManager.getConnection(URL);
+        }, 1, email -> { });
+        queues.add(q);
+
+        assertTrue(q.submit(1, "plain@example.com", "Abc!1", "Abc!1"));
+        // The worker takes the first task and blocks; one more fits in the queue
+        assertTrue(working.await(10, TimeUnit.SECONDS));
+        assertTrue(q.submit(2, "weak@example.com", "Abc!1", claveHash(2)));
+        assertFalse("same account already pending", q.submit(2, "weak@example.com", "Abc!1", claveHash(2)));
+        assertFalse("queue full", q.submit(3, "strong@example.com", "Abc!1", claveHash(3)));
+        assertEquals(1, q.getDropped());
+
+        release.countDown();
+        await().atMost(Duration.ofSeconds(10)).until(() -> q.getRehashed() == 2);
+        assertEquals(0, q.getPending());
+    }
+}
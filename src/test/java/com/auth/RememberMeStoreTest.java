@@ -0,0 +1,206 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RememberMeStoreTest {
+
+    private static final String URL = "jdbc:h2:mem:remembermedb;DB_CLOSE_DELAY=-1";
+
+    private Connection conn;
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private RememberMeStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS remember_me_tokens");
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), "
+                    + "intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'user' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, 10)");
+            st.execute("CREATE TABLE remember_me_tokens (selector BINARY(12) PRIMARY KEY, "
+                    + "validator_hash BINARY(32) NOT NULL, rotation_salt BINARY(32), rotated_at TIMESTAMP, "
+                    + "user_id INT NOT NULL REFERENCES usuarios (id), "
+                    + "expires_at TIMESTAMP NOT NULL)");
+            st.execute("CREATE INDEX remember_me_tokens_user_id_idx ON remember_me_tokens (user_id)");
+            st.execute("CREATE INDEX remember_me_tokens_expires_at_idx ON remember_me_tokens (expires_at)");
+        }
+        store = new RememberMeStore(Duration.ofDays(30), Duration.ofSeconds(30), clock::get);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void redeemingRotatesTheValidatorAndExtendsExpiry() throws Exception {
+        String token = store.issue(conn, 3);
+        assertEquals(RememberMeStore.TOKEN_LENGTH, token.length());
+
+        clock.addAndGet(Duration.ofDays(20).toMillis());
+        RememberMeStore.Redeemed redeemed = store.redeem(conn, token);
+        assertEquals(3, redeemed.userId());
+        assertEquals(token.substring(0, RememberMeStore.SELECTOR_LENGTH),
+                redeemed.token().substring(0, RememberMeStore.SELECTOR_LENGTH));
+        assertNotEquals(token, redeemed.token());
+
+        // Thirty days from the redemption, not from the issue
+        clock.addAndGet(Duration.ofDays(20).toMillis());
+        assertEquals(3, store.redeem(conn, redeemed.token()).userId());
+        assertEquals(1, count("SELECT COUNT(*) FROM remember_me_tokens"));
+    }
+
+    @Test
+    public void retryWithinGraceGetsTheSameReplacement() throws Exception {
+        String token = store.issue(conn, 4);
+        String replacement = store.redeem(conn, token).token();
+
+        clock.addAndGet(Duration.ofSeconds(29).toMillis());
+        RememberMeStore.Redeemed retried = store.redeem(conn, token);
+        assertEquals(4, retried.userId());
+        assertEquals(replacement, retried.token());
+        assertEquals(1, store.getGraceReplays());
+        assertEquals(0, store.getMismatches());
+
+        // Only the latest rotation has a grace window
+        String next = store.redeem(conn, replacement).token();
+        assertNull(store.redeem(conn, token));
+        assertEquals(1, store.getMismatches());
+        assertNull(store.redeem(conn, next));
+    }
+
+    @Test
+    public void replayingAReplacedTokenEndsTheSeries() throws Exception {
+        String stolen = store.issue(conn, 4);
+        String current = store.redeem(conn, stolen).token();
+
+        clock.addAndGet(Duration.ofSeconds(30).toMillis());
+        assertNull(store.redeem(conn, stolen));
+        assertEquals(1, store.getMismatches());
+        assertNull(store.redeem(conn, current));
+        assertEquals(0, count("SELECT COUNT(*) FROM remember_me_tokens"));
+
+        assertNull(store.redeem(conn, null));
+        assertNull(store.redeem(conn, current.substring(1)));
+        assertNull(store.redeem(conn, "*" + current.substring(1)));
+    }
+
+    @Test
+    public void expiredTokenIsRejectedAndDeleted() throws Exception {
+        String token = store.issue(conn, 5);
+        store.issue(conn, 6);
+        clock.addAndGet(Duration.ofDays(30).toMillis());
+        assertNull(store.redeem(conn, token));
+        assertEquals(1, count("SELECT COUNT(*) FROM remember_me_tokens"));
+        assertEquals(1, store.deleteExpired(conn, 100));
+        assertEquals(0, count("SELECT COUNT(*) FROM remember_me_tokens"));
+    }
+
+    @Test
+    public void concurrentRedemptionsShareOneReplacement() throws Exception {
+        String token = store.issue(conn, 7);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<RememberMeStore.Redeemed>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> {
+                    try (Connection c = DriverManager.getConnection(URL)) {
+                        return store.redeem(c, token);
+                    }
+                }));
+            }
+            // One rotates; the others are answered with its replacement
+            String replacement = results.get(0).get().token();
+            for (Future<RememberMeStore.Redeemed> f : results) {
+                assertEquals(replacement, f.get().token());
+            }
+            assertEquals(0, store.getMismatches());
+            assertEquals(7, store.getGraceReplays());
+            assertEquals(7, store.redeem(conn, replacement).userId());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void rememberedLoginSkipsThePassword() throws Exception {
+        AuthService svc = new AuthService();
+        assertNull(svc.authenticateAndRememberWithConnection(conn, "user1@example.com", "Abc!1").rememberMeToken());
+        svc.setRememberMe(store);
+        svc.setSessionStore(new SessionStore());
+
+        assertNull(svc.authenticateAndRememberWithConnection(conn, "user1@example.com", "Xyz!2").rememberMeToken());
+        String token = svc.authenticateAndRememberWithConnection(conn, "user1@example.com", "Abc!1").rememberMeToken();
+        // A plain login is not remembered
+        assertNull(svc.authenticateWithConnection(conn, "user2@example.com", "Abc!1").rememberMeToken());
+
+        LoginResult again = svc.authenticateRememberedWithConnection(conn, token);
+        assertTrue(again.isSuccess());
+        assertEquals(1, again.userId());
+        assertEquals(1, svc.lookupSession(again.sessionId()));
+        assertEquals(LoginResult.INVALID_TOKEN, svc.authenticateRememberedWithConnection(conn, "garbage"));
+        assertEquals("Sesión expirada. Ingrese su clave de nuevo", AuthMessages.format(LoginResult.INVALID_TOKEN));
+        assertTrue(svc.authenticateRememberedWithConnection(conn, again.rememberMeToken()).isSuccess());
+    }
+
+    @Test
+    public void rememberedLoginIsChargedToTheClient() throws Exception {
+        AuthService svc = new AuthService();
+        svc.setRememberMe(store);
+        svc.setClientRateLimiter(new RateLimiter(1, 0.001));
+        String token = store.issue(conn, 2);
+
+        LoginResult first = svc.authenticateRememberedWithConnection(conn, token, "10.0.0.1");
+        assertTrue(first.isSuccess());
+        assertEquals(LoginResult.RATE_LIMITED, svc.authenticateRememberedWithConnection(conn, first.rememberMeToken(), "10.0.0.1"));
+        assertTrue(svc.authenticateRememberedWithConnection(conn, first.rememberMeToken(), "10.0.0.2").isSuccess());
+    }
+
+    @Test
+    public void blockedAccountCannotUseItsTokens() throws Exception {
+        AuthService svc = new AuthService();
+        svc.setRememberMe(store);
+        String token = svc.authenticateAndRememberWithConnection(conn, "user8@example.com", "Abc!1").rememberMeToken();
+        String other = svc.authenticateAndRememberWithConnection(conn, "user9@example.com", "Abc!1").rememberMeToken();
+
+        for (int i = 0; i < LoginResult.MAX_FAILED_ATTEMPTS; i++) {
+            svc.authenticateWithConnection(conn, "user8@example.com", "Xyz!2");
+        }
+        assertEquals(0, count("SELECT COUNT(*) FROM remember_me_tokens WHERE user_id = 8"));
+        assertEquals(LoginResult.INVALID_TOKEN, svc.authenticateRememberedWithConnection(conn, token));
+
+        // Blocked some other way: the lookup sees the lock and leaves the row
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE usuarios SET bloqueado = TRUE WHERE id = 9");
+        }
+        assertEquals(LoginResult.INVALID_TOKEN, svc.authenticateRememberedWithConnection(conn, other));
+        assertEquals(1, count("SELECT COUNT(*) FROM remember_me_tokens WHERE user_id = 9"));
+    }
+}
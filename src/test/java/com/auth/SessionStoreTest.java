@@ -0,0 +1,223 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessionStoreTest {
+
+    private static final String URL = "jdbc:h2:mem:sessionstoredb;DB_CLOSE_DELAY=-1";
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private SessionStore store;
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new SessionStore(Duration.ofMinutes(10), 1_000_000, 100, clock::get);
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), "
+                    + "intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'user' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, 3)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+        conn.close();
+    }
+
+    @Test
+    public void sessionsLookUpUntilRevoked() {
+        String a = store.create(1);
+        String b = store.create(1);
+        assertTrue(a.matches("[0-9a-f]{32}"));
+        assertNotEquals(a, b);
+        assertEquals(1, store.lookup(a));
+        assertEquals(1, store.lookup(b));
+
+        assertTrue(store.revoke(a));
+        assertFalse(store.revoke(a));
+        assertEquals(LoginResult.NO_USER, store.lookup(a));
+        assertEquals(1, store.lookup(b));
+        assertEquals(1, store.size());
+
+        assertEquals(LoginResult.NO_USER, store.lookup(null));
+        assertEquals(LoginResult.NO_USER, store.lookup(b.substring(1)));
+        assertEquals(LoginResult.NO_USER, store.lookup(b.toUpperCase()));
+        assertEquals(LoginResult.NO_USER, store.lookup("ffffffffffffffffffffffffffffffff"));
+    }
+
+    @Test
+    public void expiredSessionsAreRejectedAndReclaimed() {
+        String early = store.create(1);
+        clock.addAndGet(Duration.ofMinutes(5).toMillis());
+        String late = store.create(2);
+
+        clock.addAndGet(Duration.ofMinutes(5).toMillis());
+        assertEquals(LoginResult.NO_USER, store.lookup(early));
+        assertEquals(2, store.lookup(late));
+        // The wheel fires at the end of the expiry's tick
+        clock.addAndGet(100);
+        assertEquals(1, store.expire());
+        assertEquals(1, store.size());
+        assertEquals(0, store.expire());
+
+        clock.addAndGet(Duration.ofMinutes(5).toMillis());
+        assertEquals(1, store.expire());
+        assertEquals(0, store.size());
+        assertEquals(2, store.getExpired());
+    }
+
+    @Test
+    public void revokeUserEndsEverySessionOfThatUserOnly() {
+        String[] mine = {store.create(7), store.create(7), store.create(7)};
+        String other = store.create(8);
+        store.revoke(mine[2]);
+
+        store.revokeUser(7);
+        for (String id : mine) {
+            assertEquals(LoginResult.NO_USER, store.lookup(id));
+        }
+        assertEquals(8, store.lookup(other));
+        // Logging in again after the revocation works
+        String again = store.create(7);
+        assertEquals(7, store.lookup(again));
+
+        // Revoked slots are held until they expire, then freed with the rest
+        assertEquals(4, store.size());
+        clock.addAndGet(Duration.ofMinutes(10).toMillis() + 100);
+        assertEquals(4, store.expire());
+        assertEquals(0, store.size());
+        String fresh = store.create(7);
+        assertEquals(7, store.lookup(fresh));
+    }
+
+    @Test
+    public void storeIsBoundedByMaxSessions() {
+        SessionStore small = new SessionStore(Duration.ofMinutes(10), 2, 100, clock::get);
+        String a = small.create(1);
+        assertNotNull(small.create(2));
+        assertNull(small.create(3));
+        assertEquals(1, small.getRejected());
+        small.revoke(a);
+        assertNotNull(small.create(3));
+    }
+
+    @Test
+    public void footprintStaysBoundedPerSession() {
+        int sessions = 200_000;
+        for (int i = 0; i < sessions; i++) {
+            store.create(i);
+        }
+        assertEquals(sessions, store.size());
+        long perSession = store.footprintBytes() / sessions;
+        assertTrue("bytes per session: " + perSession, perSession <= 128);
+
+        clock.addAndGet(Duration.ofMinutes(10).toMillis() + 100);
+        assertEquals(sessions, store.expire());
+        assertEquals(0, store.size());
+        // Slots are reused rather than grown
+        long before = store.footprintBytes();
+        for (int i = 0; i < sessions; i++) {
+            store.create(i);
+        }
+        assertTrue(store.footprintBytes() <= before + sessions * 12L);
+    }
+
+    @Test
+    public void loginLogoutChurnDoesNotGrowTheStore() {
+        SessionStore small = new SessionStore(Duration.ofHours(12), 10, 1_000, clock::get);
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(small.revoke(small.create(i % 10)));
+        }
+        long settled = small.footprintBytes();
+        for (int i = 0; i < 1_000_000; i++) {
+            assertTrue(small.revoke(small.create(i % 10)));
+            if (i % 1_000 == 0) {
+                clock.incrementAndGet();
+            }
+        }
+        assertEquals(0, small.size());
+        assertEquals(settled, small.footprintBytes());
+
+        // A slot reused before its old entry fires lives out its own TTL
+        clock.addAndGet(Duration.ofHours(6).toMillis());
+        String id = small.create(3);
+        clock.addAndGet(Duration.ofHours(6).toMillis() + 1_000);
+        assertEquals(0, small.expire());
+        assertEquals(3, small.lookup(id));
+        clock.addAndGet(Duration.ofHours(6).toMillis());
+        assertEquals(1, small.expire());
+        assertEquals(LoginResult.NO_USER, small.lookup(id));
+        assertEquals(0, small.size());
+    }
+
+    @Test
+    public void concurrentCreatesAndLookupsStayConsistent() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int base = t * 100_000;
+                results.add(pool.submit(() -> {
+                    List<String> ids = new ArrayList<>();
+                    for (int i = 0; i < 5_000; i++) {
+                        ids.add(store.create(base + i % 500));
+                    }
+                    int wrong = 0;
+                    for (int i = 0; i < ids.size(); i++) {
+                        if (store.lookup(ids.get(i)) != base + i % 500) {
+                            wrong++;
+                        }
+                        if (i % 2 == 0) {
+                            store.revoke(ids.get(i));
+                        }
+                    }
+                    return wrong;
+                }));
+            }
+            for (Future<Integer> f : results) {
+                assertEquals(Integer.valueOf(0), f.get());
+            }
+            assertEquals(8 * 2_500, store.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void blockingAnAccountRevokesItsSessions() {
+        AuthService svc = new AuthService();
+        svc.setSessionStore(store);
+        LoginResult ok = svc.authenticateWithConnection(conn, "user2@example.com", "Abc!1");
+        assertEquals(2, svc.lookupSession(ok.sessionId()));
+        String other = svc.authenticateWithConnection(conn, "user3@example.com", "Abc!1").sessionId();
+
+        LoginResult last = null;
+        for (int i = 0; i < LoginResult.MAX_FAILED_ATTEMPTS; i++) {
+            last = svc.authenticateWithConnection(conn, "user2@example.com", "Xyz!2");
+            assertNull(last.sessionId());
+        }
+        assertEquals(LoginResult.Outcome.BLOCKED_NOW, last.outcome());
+        assertEquals(LoginResult.NO_USER, svc.lookupSession(ok.sessionId()));
+        assertEquals(3, svc.lookupSession(other));
+    }
+}
@@ -0,0 +1,196 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessionTokensTest {
+
+    private static final String URL = "jdbc:h2:mem:sessiontokensdb;DB_CLOSE_DELAY=-1";
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEXT_SECRET = "fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.US_ASCII);
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+    private SessionTokens tokens;
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        tokens = new SessionTokens(1, SECRET, Duration.ofHours(1), clock::get);
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), "
+                    + "intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'user' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, 3)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    @Test
+    public void tokenCarriesClaimsAndAStandardHmac() throws Exception {
+        String token = tokens.issue(42);
+        assertEquals(SessionTokens.TOKEN_LENGTH, token.length());
+        assertEquals(new SessionTokens.Claims(42, 1_700_000_000L, 1_700_003_600L, 1), tokens.verify(token));
+
+        byte[] raw = Base64.getUrlDecoder().decode(token);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET, "HmacSHA256"));
+        mac.update(raw, 0, SessionTokens.PAYLOAD_BYTES);
+        byte[] expected = Arrays.copyOf(mac.doFinal(), SessionTokens.TAG_BYTES);
+        assertArrayEquals(expected, Arrays.copyOfRange(raw, SessionTokens.PAYLOAD_BYTES, SessionTokens.TOKEN_BYTES));
+    }
+
+    @Test
+    public void tamperedOrMalformedTokensAreRejected() {
+        String token = tokens.issue(7);
+        byte[] raw = Base64.getUrlDecoder().decode(token);
+        for (int i = 0; i < raw.length; i++) {
+            byte[] bad = raw.clone();
+            bad[i] ^= 1;
+            assertNull("byte " + i, tokens.verify(Base64.getUrlEncoder().withoutPadding().encodeToString(bad)));
+        }
+        assertNull(tokens.verify(null));
+        assertNull(tokens.verify(token.substring(1)));
+        assertNull(tokens.verify(token + "A"));
+        assertNull(tokens.verify("*" + token.substring(1)));
+        assertNull(tokens.verify("é" + token.substring(1)));
+        assertNull(new SessionTokens(1, NEXT_SECRET, Duration.ofHours(1), clock::get).verify(token));
+    }
+
+    @Test
+    public void oneShotVirtualThreadsShareTheBuffersSafely() throws Exception {
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                int userId = i;
+                results.add(pool.submit(() -> {
+                    String token = tokens.issue(userId);
+                    SessionTokens.Claims claims = tokens.verify(token);
+                    return claims != null && claims.userId() == userId
+                            && tokens.verify(token.substring(0, 39) + (token.charAt(39) == 'A' ? 'B' : 'A')) == null;
+                }));
+            }
+            for (Future<Boolean> f : results) {
+                assertTrue(f.get());
+            }
+        }
+    }
+
+    @Test
+    public void issuingDuringKeyRotationAlwaysSigns() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            AtomicBoolean rotating = new AtomicBoolean(true);
+            List<Future<Integer>> issuers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                issuers.add(pool.submit(() -> {
+                    int issued = 0;
+                    while (rotating.get()) {
+                        String token = tokens.issue(5);
+                        // Either still verifiable or signed under a key removed since
+                        SessionTokens.Claims claims = tokens.verify(token);
+                        assertTrue(claims == null || claims.userId() == 5);
+                        issued++;
+                    }
+                    return issued;
+                }));
+            }
+            int current = 1;
+            for (int i = 0; i < 20_000; i++) {
+                int next = current == 1 ? 2 : 1;
+                tokens.addKey(next, next == 1 ? SECRET : NEXT_SECRET);
+                tokens.setSigningKey(next);
+                tokens.removeKey(current);
+                current = next;
+            }
+            rotating.set(false);
+            for (Future<Integer> f : issuers) {
+                assertTrue(f.get() > 0);
+            }
+            assertEquals(5, tokens.verify(tokens.issue(5)).userId());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void tokenExpiresAfterTtl() {
+        String token = tokens.issue(7);
+        clock.addAndGet(Duration.ofHours(1).toMillis() - 1);
+        assertNotNull(tokens.verify(token));
+        clock.addAndGet(1);
+        assertNull(tokens.verify(token));
+    }
+
+    @Test
+    public void rotatedKeysVerifyUntilRemoved() {
+        String old = tokens.issue(7);
+        tokens.addKey(2, NEXT_SECRET);
+        tokens.setSigningKey(2);
+        String current = tokens.issue(8);
+
+        assertEquals(1, tokens.verify(old).keyId());
+        assertEquals(2, tokens.verify(current).keyId());
+        try {
+            tokens.removeKey(2);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        tokens.removeKey(1);
+        assertNull(tokens.verify(old));
+        assertEquals(8, tokens.verify(current).userId());
+
+        for (Runnable invalid : List.<Runnable>of(() -> tokens.setSigningKey(1),
+                () -> tokens.addKey(3, new byte[16]), () -> tokens.addKey(256, SECRET))) {
+            try {
+                invalid.run();
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void successfulLoginReturnsAVerifiableToken() {
+        AuthService svc = new AuthService();
+        assertNull(svc.authenticateWithConnection(conn, "user1@example.com", "Abc!1").sessionToken());
+        assertNull(svc.verifySessionToken(tokens.issue(1)));
+
+        svc.setSessionTokens(tokens);
+        LoginResult ok = svc.authenticateWithConnection(conn, "user2@example.com", "Abc!1");
+        assertTrue(ok.isSuccess());
+        assertEquals(2, svc.verifySessionToken(ok.sessionToken()).userId());
+        assertNull(svc.authenticateWithConnection(conn, "user2@example.com", "Xyz!2").sessionToken());
+
+        List<LoginResult> batch = svc.authenticateBatchWithConnection(conn, List.of(
+                new Credentials("user1@example.com", "Abc!1"), new Credentials("user3@example.com", "Xyz!2")));
+        assertEquals(1, svc.verifySessionToken(batch.get(0).sessionToken()).userId());
+        assertNull(batch.get(1).sessionToken());
+    }
+}
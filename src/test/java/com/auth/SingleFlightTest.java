@@ -0,0 +1,243 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+    private static final String URL = "jdbc:h2:mem:singleflightdb;DB_CLOSE_DELAY=-1";
+
+    private Connection conn;
+    private ExecutorService pool;
+    private final AtomicInteger queries = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), "
+                    + "intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'user' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, 10)");
+        }
+        pool = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdownNow();
+        conn.close();
+    }
+
+    private int[] row(int id) throws Exception {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT intentos_fallidos, bloqueado FROM usuarios WHERE id = " + id)) {
+            assertTrue(rs.next());
+            return new int[] {rs.getInt(1), rs.getBoolean(2) ? 1 : 0};
+        }
+    }
+
+    // Counts queries, and holds each one until `joiners` other callers wait on it, so the
+    // callers deterministically share it
+    private Connection gated(SingleFlight<String, ?> flights, int joiners) throws SQLException {
+        Connection target = DriverManager.getConnection(URL);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    if (!method.getName().equals("prepareStatement")) {
+                        return result;
+                    }
+                    PreparedStatement ps = (PreparedStatement) result;
+                    return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                            new Class<?>[] {PreparedStatement.class}, (p, m, a) -> {
+                                if (m.getName().equals("executeQuery")) {
+                                    queries.incrementAndGet();
+                                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                                    while (flights.getShared() < joiners && System.nanoTime() < deadline) {
+                                        Thread.sleep(1);
+                                    }
+                                }
+                                return invoke(ps, m, a);
+                            });
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void hold(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Runs `callers` requests at once, each on its own connection, and returns their results
+    private <T> List<T> concurrently(int callers, SingleFlight<String, ?> flights,
+                                     Function<Connection, T> request) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            futures.add(pool.submit(() -> {
+                try (Connection c = gated(flights, callers - 1)) {
+                    start.await();
+                    return request.apply(c);
+                }
+            }));
+        }
+        start.countDown();
+        List<T> results = new ArrayList<>();
+        for (Future<T> f : futures) {
+            results.add(f.get(10, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    @Test
+    public void concurrentCallsShareOneExecution() throws Exception {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(pool.submit(() -> flights.execute("a", () -> {
+                calls.incrementAndGet();
+                hold(release);
+                return 42;
+            })));
+        }
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (flights.getShared() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Future<Integer> f : futures) {
+            assertEquals(Integer.valueOf(42), f.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, flights.getExecutions());
+        assertEquals(2, flights.getShared());
+        assertEquals(0, flights.getInFlight());
+
+        // Nothing is kept once the call returns
+        assertEquals(Integer.valueOf(7), flights.execute("a", () -> 7));
+        assertEquals(2, flights.getExecutions());
+    }
+
+    @Test
+    public void failureReachesEveryWaiterAndForgetStartsAFreshCall() throws Exception {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Integer> leader = pool.submit(() -> flights.execute("a", () -> {
+            hold(release);
+            throw new SQLException("db down");
+        }));
+        while (flights.getInFlight() == 0) {
+            Thread.sleep(1);
+        }
+        Future<Integer> waiter = pool.submit(() -> flights.execute("a", () -> 1));
+        while (flights.getShared() == 0) {
+            Thread.sleep(1);
+        }
+        flights.forget("a");
+        assertEquals(Integer.valueOf(2), flights.execute("a", () -> 2));
+        release.countDown();
+        for (Future<Integer> f : List.of(leader, waiter)) {
+            try {
+                f.get(5, TimeUnit.SECONDS);
+                fail("expected SQLException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof SQLException);
+                assertEquals("db down", e.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void duplicateLoginsShareOneQueryAndCountEveryFailure() throws Exception {
+        AuthService svc = new AuthService();
+        svc.setLookupCoalescing(true);
+        List<LoginResult> results = concurrently(4, svc.getLoginFlights(),
+                c -> svc.authenticateWithConnection(c, "user1@example.com", "Xyz!2"));
+
+        assertEquals(1, queries.get());
+        assertEquals(3, svc.getLoginFlights().getShared());
+        assertTrue(results.containsAll(List.of(LoginResult.wrongPassword(1, 1), LoginResult.wrongPassword(1, 2),
+                LoginResult.wrongPassword(1, 3), LoginResult.wrongPassword(1, 4))));
+        assertArrayEquals(new int[] {4, 0}, row(1));
+    }
+
+    @Test
+    public void lockTakenByOneSharerIsSeenByTheRest() throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE usuarios SET intentos_fallidos = 4 WHERE id = 2");
+        }
+        AuthService svc = new AuthService();
+        svc.setLookupCoalescing(true);
+        List<LoginResult> results = concurrently(3, svc.getLoginFlights(),
+                c -> svc.authenticateWithConnection(c, "user2@example.com", "Xyz!2"));
+
+        assertEquals(1, queries.get());
+        assertTrue(results.contains(LoginResult.blockedNow(2, 5)));
+        assertEquals(2, results.stream().filter(r -> r.equals(LoginResult.accountBlocked(2, 5))).count());
+        assertArrayEquals(new int[] {5, 1}, row(2));
+    }
+
+    @Test
+    public void duplicateRecoveriesShareOneQuery() throws Exception {
+        AuthService svc = new AuthService();
+        svc.setLookupCoalescing(true);
+        List<RecoveryResult> results = concurrently(3, svc.getRecoveryFlights(),
+                c -> svc.requestRecoveryWithConnection(c, "user3@example.com"));
+
+        assertEquals(1, queries.get());
+        assertEquals(List.of(RecoveryResult.emailSent(3), RecoveryResult.emailSent(3), RecoveryResult.emailSent(3)),
+                results);
+        assertEquals(RecoveryResult.USER_NOT_FOUND, svc.requestRecoveryWithConnection(conn, "nobody@example.com"));
+    }
+
+    @Test
+    public void sequentialLoginsDoNotShare() throws Exception {
+        AuthService svc = new AuthService();
+        svc.setLookupCoalescing(true);
+        assertEquals(LoginResult.wrongPassword(4, 1), svc.authenticateWithConnection(conn, "user4@example.com", "Xyz!2"));
+        assertEquals(LoginResult.success(4), svc.authenticateWithConnection(conn, "user4@example.com", "Abc!1"));
+        assertEquals(2, svc.getLoginFlights().getExecutions());
+        assertEquals(0, svc.getLoginFlights().getShared());
+        assertArrayEquals(new int[] {0, 0}, row(4));
+
+        svc.setLookupCoalescing(false);
+        assertNull(svc.getLoginFlights());
+        assertFalse(svc.isLookupCoalescing());
+    }
+}
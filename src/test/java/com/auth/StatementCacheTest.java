@@ -0,0 +1,187 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatementCacheTest {
+
+    private static final String URL = "jdbc:h2:mem:stmtcache;DB_CLOSE_DELAY=-1";
+    private static final String SELECT = "SELECT id FROM usuarios WHERE email = ?";
+
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection(URL, "sa", "");
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT AUTO_INCREMENT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios(email, clave_hash) VALUES('cache@example.com','Abc!1')");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (conn != null && !conn.isClosed()) conn.close();
+    }
+
+    @Test
+    public void closedStatementIsReusedWithClearedParameters() throws Exception {
+        StatementCache cache = new StatementCache(conn, 4);
+
+        PreparedStatement first = cache.prepare(SELECT);
+        PreparedStatement physical = first.unwrap(PreparedStatement.class);
+        first.setString(1, "cache@example.com");
+        try (ResultSet rs = first.executeQuery()) {
+            assertTrue(rs.next());
+        }
+        first.close();
+        assertTrue(first.isClosed());
+        assertFalse(physical.isClosed());
+        assertEquals(1, cache.size());
+
+        PreparedStatement second = cache.prepare(SELECT);
+        assertSame(physical, second.unwrap(PreparedStatement.class));
+        try {
+            second.executeQuery();
+            fail("Expected parameters to be cleared on reuse");
+        } catch (SQLException expected) {
+            // parameter 1 not set
+        }
+        second.close();
+
+        assertEquals(1, cache.getStats().getHits());
+        assertEquals(1, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void unexecutedBatchIsNotReplayedByTheNextBorrower() throws Exception {
+        StatementCache cache = new StatementCache(conn, 4);
+        String update = "UPDATE usuarios SET intentos_fallidos = intentos_fallidos + 1 WHERE email = ?";
+
+        PreparedStatement abandoned = cache.prepare(update);
+        abandoned.setString(1, "cache@example.com");
+        abandoned.addBatch();
+        abandoned.close();
+
+        try (PreparedStatement reused = cache.prepare(update)) {
+            assertEquals(1, cache.getStats().getHits());
+            assertEquals(0, reused.executeBatch().length);
+        }
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT intentos_fallidos FROM usuarios")) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void statementWithChangedSettingsIsNotCached() throws Exception {
+        StatementCache cache = new StatementCache(conn, 4);
+        PreparedStatement limited = cache.prepare(SELECT);
+        PreparedStatement physical = limited.unwrap(PreparedStatement.class);
+        limited.setMaxRows(1);
+        limited.close();
+        assertTrue(physical.isClosed());
+        assertEquals(0, cache.size());
+
+        try (PreparedStatement fresh = cache.prepare(SELECT)) {
+            assertEquals(0, fresh.getMaxRows());
+        }
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void concurrentUseOfSameSqlGetsDistinctStatements() throws Exception {
+        StatementCache cache = new StatementCache(conn, 4);
+        PreparedStatement a = cache.prepare(SELECT);
+        PreparedStatement b = cache.prepare(SELECT);
+        assertNotSame(a.unwrap(PreparedStatement.class), b.unwrap(PreparedStatement.class));
+        PreparedStatement physicalB = b.unwrap(PreparedStatement.class);
+        a.close();
+        b.close(); // an idle copy is already cached, so this one is really closed
+        assertEquals(1, cache.size());
+        assertTrue(physicalB.isClosed());
+    }
+
+    @Test
+    public void leastRecentlyUsedStatementIsEvicted() throws Exception {
+        StatementCache cache = new StatementCache(conn, 2);
+        PreparedStatement s1 = cache.prepare("SELECT 1");
+        PreparedStatement physical1 = s1.unwrap(PreparedStatement.class);
+        s1.close();
+        cache.prepare("SELECT 2").close();
+        cache.prepare("SELECT 3").close();
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getStats().getEvictions());
+        assertTrue(physical1.isClosed());
+    }
+
+    @Test
+    public void closingCacheClosesIdleStatements() throws Exception {
+        StatementCache cache = new StatementCache(conn, 2);
+        PreparedStatement s = cache.prepare(SELECT);
+        PreparedStatement physical = s.unwrap(PreparedStatement.class);
+        s.close();
+        cache.close();
+        assertTrue(physical.isClosed());
+        try {
+            cache.prepare(SELECT);
+            fail("Expected closed cache to reject prepare");
+        } catch (SQLException expected) {
+            assertEquals("Statement cache is closed", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void closedCachedStatementRejectsUse() throws Exception {
+        StatementCache cache = new StatementCache(conn, 2);
+        PreparedStatement s = cache.prepare(SELECT);
+        s.close();
+        s.close(); // idempotent
+        try {
+            s.setString(1, "x");
+            fail("Expected SQLException on closed statement");
+        } catch (SQLException expected) {
+            assertEquals("Statement is closed", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void wrappedConnectionCachesAuthServiceStatements() throws Exception {
+        Connection wrapped = StatementCache.wrap(DriverManager.getConnection(URL, "sa", ""), 8);
+        AuthService svc = new AuthService();
+        assertEquals("Login exitoso 🎉", svc.loginWithConnection(wrapped, "cache@example.com", "Abc!1"));
+        assertEquals("Login exitoso 🎉", svc.loginWithConnection(wrapped, "cache@example.com", "Abc!1"));
+        assertEquals("Clave incorrecta. Intentos: 1/5", svc.loginWithConnection(wrapped, "cache@example.com", "Xyz!2"));
+        wrapped.close();
+        assertTrue(wrapped.isClosed());
+    }
+
+    @Test
+    public void pooledConnectionsShareStatementsAcrossBorrows() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(() -> DriverManager.getConnection(URL, "sa", ""),
+                new ConnectionPool.Settings(0, 1, 1_000, 0, 0, 0, 4))) {
+            PreparedStatement physical;
+            try (Connection c = pool.borrow(); PreparedStatement ps = c.prepareStatement(SELECT)) {
+                physical = ps.unwrap(PreparedStatement.class);
+            }
+            try (Connection c = pool.borrow(); PreparedStatement ps = c.prepareStatement(SELECT)) {
+                assertSame(physical, ps.unwrap(PreparedStatement.class));
+            }
+            assertEquals(1, pool.getStatementCacheStats().getHits());
+            assertEquals(1, pool.getStatementCacheStats().getMisses());
+        }
+    }
+}
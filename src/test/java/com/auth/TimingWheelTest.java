@@ -0,0 +1,73 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    @Test
+    public void firesAfterTheDeadlineTickEnds() {
+        TimingWheel wheel = new TimingWheel(100, 1_000);
+        wheel.schedule(1, 1_250);
+        wheel.schedule(2, 1_300);
+        assertEquals(0, wheel.advance(1_299).length);
+        assertArrayEquals(new int[] {1}, wheel.advance(1_300));
+        assertArrayEquals(new int[] {2}, wheel.advance(1_400));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void pastDeadlinesFireOnNextAdvance() {
+        TimingWheel wheel = new TimingWheel(100, 5_000);
+        wheel.schedule(7, 10);
+        wheel.schedule(8, 4_999);
+        assertEquals(0, wheel.advance(5_000).length);
+        int[] fired = wheel.advance(5_100);
+        Arrays.sort(fired);
+        assertArrayEquals(new int[] {7, 8}, fired);
+    }
+
+    @Test
+    public void sameIdScheduledTwiceFiresTwice() {
+        TimingWheel wheel = new TimingWheel(10, 0);
+        wheel.schedule(3, 50);
+        wheel.schedule(3, 5_000);
+        assertArrayEquals(new int[] {3}, wheel.advance(100));
+        assertEquals(1, wheel.size());
+        assertArrayEquals(new int[] {3}, wheel.advance(10_000));
+    }
+
+    @Test
+    public void entriesAcrossLevelsFireNeverEarlyAndAtMostOneTickLate() {
+        long tick = 10;
+        long start = 123_456_789;
+        TimingWheel wheel = new TimingWheel(tick, start);
+        Random random = new Random(42);
+        Map<Integer, Long> deadlines = new HashMap<>();
+        for (int id = 1; id <= 20_000; id++) {
+            // Up to 64^3 ticks out, so entries start on levels 0 to 3
+            long deadline = start + (long) (random.nextDouble() * tick * 262_144);
+            deadlines.put(id, deadline);
+            wheel.schedule(id, deadline);
+        }
+        int fired = 0;
+        // Uneven steps, some spanning many ticks
+        for (long now = start; fired < deadlines.size(); now += 1 + random.nextInt(5_000)) {
+            for (int id : wheel.advance(now)) {
+                long deadline = deadlines.get(id);
+                assertTrue("early: " + id, deadline <= now);
+                fired++;
+            }
+            // Everything whose tick has ended fired, so nothing is more than a tick late
+            long ended = now / tick;
+            assertEquals(deadlines.values().stream().filter(d -> d / tick < ended).count(), fired);
+        }
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,228 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UnlockSweeperTest {
+
+    private static final String URL = "jdbc:h2:mem:unlockdb;DB_CLOSE_DELAY=-1";
+
+    private Connection conn;
+    private final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+
+    @Before
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), "
+                    + "intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE, bloqueado_hasta TIMESTAMP)");
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'user' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, 100)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    private AuthService timedService(AuthService.LoginMode mode) {
+        AuthService svc = new AuthService();
+        svc.setLoginMode(mode);
+        svc.setLockDuration(Duration.ofMinutes(15));
+        return svc;
+    }
+
+    private void block(AuthService svc, int id) {
+        for (int i = 1; i < 5; i++) {
+            svc.authenticateWithConnection(conn, "user" + id + "@example.com", "Xyz!2");
+        }
+        assertEquals(LoginResult.blockedNow(id, 5), svc.authenticateWithConnection(conn, "user" + id + "@example.com", "Xyz!2"));
+    }
+
+    private void expire(int id) throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE usuarios SET bloqueado_hasta = DATEADD('SECOND', -1, CURRENT_TIMESTAMP) WHERE id = " + id);
+        }
+    }
+
+    private Object[] row(int id) throws Exception {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT intentos_fallidos, bloqueado, bloqueado_hasta FROM usuarios WHERE id = " + id)) {
+            assertTrue(rs.next());
+            return new Object[] {rs.getInt(1), rs.getBoolean(2), rs.getTimestamp(3)};
+        }
+    }
+
+    @Test
+    public void lockStoresExpiryAndHoldsUntilThen() throws Exception {
+        AuthService svc = timedService(AuthService.LoginMode.SELECT_THEN_UPDATE);
+        long before = System.currentTimeMillis();
+        block(svc, 1);
+        Object[] r = row(1);
+        assertEquals(true, r[1]);
+        long hasta = ((Timestamp) r[2]).getTime();
+        assertTrue(hasta >= before + Duration.ofMinutes(15).toMillis());
+        assertEquals(LoginResult.accountBlocked(1, 5), svc.authenticateWithConnection(conn, "user1@example.com", "Abc!1"));
+    }
+
+    @Test
+    public void expiredLockIsLiftedByTheLoginWriteAlone() throws Exception {
+        AuthService svc = timedService(AuthService.LoginMode.SELECT_THEN_UPDATE);
+        block(svc, 2);
+        expire(2);
+
+        Connection spy = spy(conn);
+        assertEquals(LoginResult.success(2), svc.authenticateWithConnection(spy, "user2@example.com", "Abc!1"));
+        // The SELECT and the UPDATE a successful login after failures makes anyway
+        verify(spy, times(2)).prepareStatement(anyString());
+        assertArrayEquals(new Object[] {0, false, null}, row(2));
+
+        block(svc, 3);
+        expire(3);
+        // The count starts over rather than re-locking on the next failure
+        assertEquals(LoginResult.wrongPassword(3, 1), svc.authenticateWithConnection(conn, "user3@example.com", "Xyz!2"));
+        assertArrayEquals(new Object[] {1, false, null}, row(3));
+    }
+
+    @Test
+    public void singleRoundTripHonoursExpiry() throws Exception {
+        AuthService svc = timedService(AuthService.LoginMode.SINGLE_ROUND_TRIP);
+        block(svc, 4);
+        assertNotNull(row(4)[2]);
+        assertEquals(LoginResult.accountBlocked(4, 5), svc.authenticateWithConnection(conn, "user4@example.com", "Abc!1"));
+
+        expire(4);
+        assertEquals(LoginResult.wrongPassword(4, 1), svc.authenticateWithConnection(conn, "user4@example.com", "Xyz!2"));
+        assertArrayEquals(new Object[] {1, false, null}, row(4));
+        assertEquals(LoginResult.success(4), svc.authenticateWithConnection(conn, "user4@example.com", "Abc!1"));
+
+        // With the cache the UPDATE itself decides, including for an expired lock
+        svc.setUserCache(new UserRecordCache(100, 60_000));
+        block(svc, 5);
+        expire(5);
+        assertEquals(LoginResult.success(5), svc.authenticateWithConnection(conn, "user5@example.com", "Abc!1"));
+        assertArrayEquals(new Object[] {0, false, null}, row(5));
+    }
+
+    @Test
+    public void batchHonoursExpiry() throws Exception {
+        AuthService svc = timedService(AuthService.LoginMode.SELECT_THEN_UPDATE);
+        block(svc, 6);
+        block(svc, 7);
+        expire(6);
+        List<LoginResult> r = svc.authenticateBatchWithConnection(conn, List.of(
+                new Credentials("user6@example.com", "Abc!1"),
+                new Credentials("user7@example.com", "Abc!1"),
+                new Credentials("user8@example.com", "Xyz!2"),
+                new Credentials("user8@example.com", "Xyz!2"),
+                new Credentials("user8@example.com", "Xyz!2"),
+                new Credentials("user8@example.com", "Xyz!2"),
+                new Credentials("user8@example.com", "Xyz!2")));
+        assertEquals(LoginResult.success(6), r.get(0));
+        assertEquals(LoginResult.accountBlocked(7, 5), r.get(1));
+        assertEquals(LoginResult.blockedNow(8, 5), r.get(6));
+        assertArrayEquals(new Object[] {0, false, null}, row(6));
+        assertNotNull(row(8)[2]);
+    }
+
+    @Test
+    public void locksWithoutExpiryStayPermanent() throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE usuarios SET intentos_fallidos = 5, bloqueado = TRUE WHERE id = 9");
+        }
+        for (AuthService.LoginMode mode : AuthService.LoginMode.values()) {
+            AuthService svc = timedService(mode);
+            assertEquals(LoginResult.accountBlocked(9, 5), svc.authenticateWithConnection(conn, "user9@example.com", "Abc!1"));
+        }
+    }
+
+    @Test
+    public void sweeperUnlocksDueAccountsInBatches() throws Exception {
+        UnlockSweeper sweeper = new UnlockSweeper(() -> DriverManager.getConnection(URL), 1_000, clock::get);
+        AuthService svc = timedService(AuthService.LoginMode.SELECT_THEN_UPDATE);
+        svc.setUnlockSweeper(sweeper);
+        for (int id = 10; id < 13; id++) {
+            block(svc, id);
+        }
+        assertEquals(3, sweeper.getPending());
+        assertEquals(0, sweeper.sweep());
+
+        clock.addAndGet(Duration.ofMinutes(15).toMillis() + 2_000);
+        assertEquals(3, sweeper.sweep());
+        for (int id = 10; id < 13; id++) {
+            assertArrayEquals(new Object[] {0, false, null}, row(id));
+        }
+        assertEquals(0, sweeper.getPending());
+        assertEquals(3, sweeper.getRowsUnlocked());
+    }
+
+    @Test
+    public void loadPendingSchedulesExistingLocksAndGuardSkipsRelocked() throws Exception {
+        long now = clock.get();
+        try (Statement st = conn.createStatement()) {
+            for (int id = 20; id < 30; id++) {
+                st.execute("UPDATE usuarios SET intentos_fallidos = 5, bloqueado = TRUE, bloqueado_hasta = '"
+                        + new Timestamp(now + 60_000L * (id - 19)) + "' WHERE id = " + id);
+            }
+            // Permanent lock: not scheduled
+            st.execute("UPDATE usuarios SET intentos_fallidos = 5, bloqueado = TRUE WHERE id = 30");
+        }
+        UnlockSweeper sweeper = new UnlockSweeper(() -> DriverManager.getConnection(URL), 1_000, clock::get);
+        assertEquals(10, sweeper.loadPending(conn));
+
+        // Account 20 was unlocked and locked again with a later expiry in the meantime
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE usuarios SET bloqueado_hasta = '" + new Timestamp(now + 3_600_000L) + "' WHERE id = 20");
+        }
+        clock.addAndGet(5 * 60_000L + 1_000);
+        assertEquals(4, sweeper.sweep());
+        assertEquals(true, row(20)[1]);
+        assertEquals(false, row(21)[1]);
+        assertEquals(true, row(25)[1]);
+        assertEquals(true, row(30)[1]);
+        assertEquals(5, sweeper.getPending());
+    }
+
+    @Test
+    public void failedSweepIsRetried() throws Exception {
+        AtomicLong opens = new AtomicLong();
+        UnlockSweeper sweeper = new UnlockSweeper(() -> {
+            if (opens.incrementAndGet() == 1) {
+                throw new SQLException("db down");
+            }
+            return DriverManager.getConnection(URL);
+        }, 1_000, clock::get);
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE usuarios SET intentos_fallidos = 5, bloqueado = TRUE, bloqueado_hasta = '"
+                    + new Timestamp(clock.get()) + "' WHERE id = 40");
+        }
+        sweeper.schedule(40, clock.get());
+        clock.addAndGet(2_000);
+        try {
+            sweeper.sweep();
+            fail("expected SQLException");
+        } catch (SQLException e) {
+            assertEquals(1, sweeper.getSweepFailures());
+        }
+        assertEquals(1, sweeper.getPending());
+        clock.addAndGet(1_000);
+        assertEquals(1, sweeper.sweep());
+        assertEquals(false, row(40)[1]);
+    }
+}
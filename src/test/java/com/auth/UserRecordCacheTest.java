@@ -0,0 +1,144 @@
+package com.auth;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class UserRecordCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private UserRecordCache.Loader loader(String email) {
+        return () -> {
+            loads.incrementAndGet();
+            return new UserRecordCache.CachedUser(email.hashCode(), email, "Abc!1");
+        };
+    }
+
+    @Test
+    public void readThroughHitsAfterFirstLoad() throws Exception {
+        UserRecordCache cache = new UserRecordCache(100, 60_000, now::get);
+        UserRecordCache.CachedUser first = cache.get("a@example.com", loader("a@example.com"));
+        UserRecordCache.CachedUser second = cache.get("a@example.com", loader("a@example.com"));
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getStats().getHits());
+        assertEquals(1, cache.getStats().getMisses());
+        assertEquals(0.5, cache.getStats().getHitRate(), 0.0);
+    }
+
+    @Test
+    public void entriesExpireAfterTtl() throws Exception {
+        UserRecordCache cache = new UserRecordCache(100, 1_000, now::get);
+        cache.get("a@example.com", loader("a@example.com"));
+        now.addAndGet(999_000_000L);
+        cache.get("a@example.com", loader("a@example.com"));
+        assertEquals(1, loads.get());
+
+        now.addAndGet(2_000_000L);
+        cache.get("a@example.com", loader("a@example.com"));
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getStats().getExpirations());
+    }
+
+    @Test
+    public void unknownEmailsAreNotCached() throws Exception {
+        UserRecordCache cache = new UserRecordCache(100, 60_000, now::get);
+        assertNull(cache.get("x@example.com", () -> null));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void sizeIsBoundedAndHotEntriesSurviveScan() throws Exception {
+        UserRecordCache cache = new UserRecordCache(100, 60_000, now::get);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get("hot" + i + "@example.com", loader("hot" + i + "@example.com"));
+            }
+        }
+        int hotLoads = loads.get();
+
+        // A scan of one-off emails larger than the cache
+        for (int i = 0; i < 1_000; i++) {
+            cache.get("scan" + i + "@example.com", loader("scan" + i + "@example.com"));
+        }
+        assertTrue(cache.size() <= 100);
+        assertTrue(cache.getStats().getEvictions() >= 900);
+
+        loads.set(0);
+        for (int i = 0; i < 50; i++) {
+            cache.get("hot" + i + "@example.com", loader("hot" + i + "@example.com"));
+        }
+        assertEquals(50, hotLoads);
+        assertTrue("hot entries reloaded: " + loads.get(), loads.get() <= 5);
+    }
+
+    @Test
+    public void invalidateDropsEntry() throws Exception {
+        UserRecordCache cache = new UserRecordCache(100, 60_000, now::get);
+        cache.get("a@example.com", loader("a@example.com"));
+        cache.invalidate("a@example.com");
+        cache.get("a@example.com", loader("a@example.com"));
+        assertEquals(2, loads.get());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void loadRacingInvalidationIsNotStored() throws Exception {
+        UserRecordCache cache = new UserRecordCache(100, 60_000, now::get);
+        cache.get("a@example.com", () -> {
+            cache.invalidate("a@example.com");
+            return new UserRecordCache.CachedUser(1, "a@example.com", "old");
+        });
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void loaderErrorsPropagate() {
+        UserRecordCache cache = new UserRecordCache(100, 60_000, now::get);
+        try {
+            cache.get("a@example.com", () -> {
+                throw new SQLException("load failed");
+            });
+            fail("expected SQLException");
+        } catch (SQLException e) {
+            assertEquals("load failed", e.getMessage());
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void recoveryIsServedFromCacheAndLockInvalidates() throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:usercachedb")) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+                st.execute("INSERT INTO usuarios VALUES (7, 'a@example.com', 'Abc!1', 4, FALSE)");
+            }
+            AuthService svc = new AuthService();
+            UserRecordCache cache = new UserRecordCache(100, 60_000);
+            svc.setUserCache(cache);
+            Connection spy = spy(conn);
+
+            assertEquals(RecoveryResult.emailSent(7), svc.requestRecoveryWithConnection(spy, "a@example.com"));
+            assertEquals(RecoveryResult.emailSent(7), svc.requestRecoveryWithConnection(spy, "a@example.com"));
+            verify(spy, times(1)).prepareStatement(anyString());
+            assertSame(RecoveryResult.USER_NOT_FOUND, svc.requestRecoveryWithConnection(spy, "b@example.com"));
+
+            // Fifth failure locks the account and drops its cached record
+            assertEquals(LoginResult.Outcome.BLOCKED_NOW, svc.authenticateWithConnection(conn, "a@example.com", "Xyz!2").outcome());
+            assertEquals(0, cache.size());
+        }
+    }
+}
@@ -27,7 +27,13 @@ import java.util.concurrent.TimeUnit;
 public class AuthServiceBenchmark {
 
     private AuthService authService;
+    private AuthService singleRoundTripService;
+    private AuthService lockoutTableService;
+    private LockoutTable lockoutTable;
+    private AuthService writeBehindService;
+    private CounterWriteBehind writeBehind;
     private Connection connection;
+    private Connection cachedConnection;
     private String validEmail;
     private String validPassword;
     private String invalidEmail;
@@ -58,7 +64,25 @@ public class AuthServiceBenchmark {
             );
         }
 
+        // Same database through a per-connection prepared statement cache
+        cachedConnection = StatementCache.wrap(
+            DriverManager.getConnection("jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1", "sa", ""), 16);
+
         authService = new AuthService();
+        singleRoundTripService = new AuthService();
+        singleRoundTripService.setLoginMode(AuthService.LoginMode.SINGLE_ROUND_TRIP);
+        // Counters in memory, checkpointed every second as a deployment would
+        lockoutTable = LockoutTable.fromDatabase(connection);
+        lockoutTable.startCheckpoints(
+            () -> DriverManager.getConnection("jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1", "sa", ""), 1_000);
+        lockoutTableService = new AuthService();
+        lockoutTableService.setUserCache(new UserRecordCache(1_000, 60_000));
+        lockoutTableService.setLockoutTable(lockoutTable);
+        // Counter writes buffered and flushed every second; locks are written at once
+        writeBehind = new CounterWriteBehind(
+            () -> DriverManager.getConnection("jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1", "sa", ""), 1_000);
+        writeBehindService = new AuthService();
+        writeBehindService.setCounterWriteBehind(writeBehind);
         validEmail = "usuario@ejemplo.com";
         validPassword = "Abc!1";
         invalidEmail = "noexiste@ejemplo.com";
@@ -67,6 +91,15 @@ public class AuthServiceBenchmark {
 
     @TearDown(Level.Trial)
     public void tearDown() throws Exception {
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+        if (lockoutTable != null) {
+            lockoutTable.close();
+        }
+        if (cachedConnection != null && !cachedConnection.isClosed()) {
+            cachedConnection.close();
+        }
         if (connection != null && !connection.isClosed()) {
             connection.close();
         }
@@ -107,6 +140,58 @@ public class AuthServiceBenchmark {
         return authService.loginWithConnection(connection, validEmail, invalidPassword);
     }
 
+    /**
+     * Successful login as one atomic UPDATE (no separate reset statement).
+     */
+    @Benchmark
+    public String testSuccessfulLoginSingleRoundTrip() {
+        return singleRoundTripService.loginWithConnection(connection, validEmail, validPassword);
+    }
+
+    /**
+     * Wrong password as one atomic UPDATE instead of SELECT + UPDATE.
+     * Alternates with a successful login so the account never blocks.
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public String testWrongPasswordSingleRoundTrip() {
+        // "WrongPass1!" fails PasswordValidator, so use a well-formed wrong password
+        singleRoundTripService.loginWithConnection(connection, validEmail, "Wrong!1");
+        return singleRoundTripService.loginWithConnection(connection, validEmail, validPassword);
+    }
+
+    /**
+     * Successful login with statements served from the per-connection cache.
+     */
+    @Benchmark
+    public String testSuccessfulLoginCachedStatements() {
+        return authService.loginWithConnection(cachedConnection, validEmail, validPassword);
+    }
+
+    /**
+     * Wrong password (SELECT + UPDATE) with statements served from the per-connection cache.
+     */
+    @Benchmark
+    public String testWrongPasswordCachedStatements() {
+        return authService.loginWithConnection(cachedConnection, validEmail, invalidPassword);
+    }
+
+    /**
+     * Password recovery with statements served from the per-connection cache.
+     */
+    @Benchmark
+    public String testPasswordRecoveryCachedStatements() {
+        return authService.recoverPasswordWithConnection(cachedConnection, validEmail);
+    }
+
+    /**
+     * Successful login through the typed API, without rendering a message.
+     */
+    @Benchmark
+    public LoginResult testSuccessfulLoginTypedResult() {
+        return authService.authenticateWithConnection(connection, validEmail, validPassword);
+    }
+
     /**
      * Benchmark password recovery operation.
      */
@@ -181,8 +266,8 @@ public class AuthServiceBenchmark {
         }
         
         // Verify subsequent login attempts are rejected quickly
-        String result = authService.loginWithConnection(connection, validEmail, validPassword);
-        boolean isBlocked = result.contains("bloqueada");
+        LoginResult result = authService.authenticateWithConnection(connection, validEmail, validPassword);
+        boolean isBlocked = result.isBlocked();
         
         // Reset for next iteration
         try (Statement stmt = connection.createStatement()) {
@@ -226,8 +311,8 @@ public class AuthServiceBenchmark {
     public int testHighConcurrencyLogin() {
         int successCount = 0;
         for (int i = 0; i < 50; i++) {
-            String result = authService.loginWithConnection(connection, validEmail, validPassword);
-            if (result.contains("exitoso")) {
+            LoginResult result = authService.authenticateWithConnection(connection, validEmail, validPassword);
+            if (result.isSuccess()) {
                 successCount++;
             }
         }
@@ -240,16 +325,18 @@ public class AuthServiceBenchmark {
      */
     @Benchmark
     @OperationsPerInvocation(20)
-    public int testBruteForceAttackSimulation() throws Exception {
+    public int testBruteForceAttackSimulation(CounterRows rows) throws Exception {
         int blockedCount = 0;
+        long written = authService.getAccountStateWriter().getWritesIssued();
         
-        // Simulate attacker trying 20 wrong passwords
+        // Simulate attacker trying 20 wrong passwords; they must pass PasswordValidator to reach the account
         for (int i = 0; i < 20; i++) {
-            String result = authService.loginWithConnection(connection, validEmail, "WrongPass" + i + "!");
-            if (result.contains("bloqueada")) {
+            LoginResult result = authService.authenticateWithConnection(connection, validEmail, "Wrong!" + i);
+            if (result.isBlocked()) {
                 blockedCount++;
             }
         }
+        rows.counterRows += authService.getAccountStateWriter().getWritesIssued() - written;
         
         // Reset for next iteration
         try (Statement stmt = connection.createStatement()) {
@@ -258,4 +345,60 @@ public class AuthServiceBenchmark {
         
         return blockedCount;
     }
+
+    /**
+     * Same attack with counters and the lock flag in {@link LockoutTable}: the first five
+     * attempts update memory only and the remaining fifteen are refused without a query.
+     */
+    @Benchmark
+    @OperationsPerInvocation(20)
+    public int testBruteForceAttackSimulationLockoutTable() {
+        int blockedCount = 0;
+        for (int i = 0; i < 20; i++) {
+            LoginResult result = lockoutTableService.authenticateWithConnection(connection, validEmail, "Wrong!" + i);
+            if (result.isBlocked()) {
+                blockedCount++;
+            }
+        }
+        lockoutTable.unblock(1);
+        return blockedCount;
+    }
+
+    /**
+     * Same attack with counter writes behind a {@link CounterWriteBehind}: the four increments
+     * before the lock coalesce, and the lock flushes them as one row.
+     */
+    @Benchmark
+    @OperationsPerInvocation(20)
+    public int testBruteForceAttackSimulationWriteBehind(CounterRows rows) throws Exception {
+        int blockedCount = 0;
+        long written = writeBehind.getRowsWritten();
+        for (int i = 0; i < 20; i++) {
+            LoginResult result = writeBehindService.authenticateWithConnection(connection, validEmail, "Wrong!" + i);
+            if (result.isBlocked()) {
+                blockedCount++;
+            }
+        }
+        // Includes rows the background flush wrote while this invocation ran
+        rows.counterRows += writeBehind.getRowsWritten() - written;
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("UPDATE usuarios SET intentos_fallidos = 0, bloqueado = FALSE");
+        }
+        return blockedCount;
+    }
+
+    /**
+     * Counter rows written to usuarios during measured iterations, reported next to the
+     * brute-force throughput so the direct and write-behind paths can be compared.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class CounterRows {
+        public long counterRows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            counterRows = 0;
+        }
+    }
 }
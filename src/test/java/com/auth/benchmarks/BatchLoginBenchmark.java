@@ -0,0 +1,99 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * authenticateBatchWithConnection vs. one authenticateWithConnection call per item.
+ * Each operation authenticates {@code batchSize} credentials; about 10% of the items are a
+ * wrong password immediately followed by the right one for the same account, so repeated
+ * emails inside a batch are exercised. Results are reported per credential.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class BatchLoginBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:batchbenchdb;DB_CLOSE_DELAY=-1";
+    private static final int USERS = 1000;
+
+    @Param({"1", "10", "100", "1000"})
+    public int batchSize;
+
+    private Connection connection;
+    private AuthService authService;
+    private List<Credentials> batch;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Class.forName("org.h2.Driver");
+        connection = DriverManager.getConnection(URL, "sa", "");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS usuarios");
+            stmt.execute(
+                "CREATE TABLE usuarios (" +
+                "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "email VARCHAR(255) UNIQUE NOT NULL, " +
+                "clave_hash VARCHAR(255) NOT NULL, " +
+                "intentos_fallidos INT NOT NULL DEFAULT 0, " +
+                "bloqueado BOOLEAN NOT NULL DEFAULT FALSE)"
+            );
+            stmt.execute("INSERT INTO usuarios (email, clave_hash) " +
+                "SELECT 'user' || X || '@test.com', 'Pass1!' FROM SYSTEM_RANGE(0, " + (USERS - 1) + ")");
+        }
+        authService = new AuthService();
+
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; batch.size() < batchSize; i++) {
+            String email = "user" + (i % USERS) + "@test.com";
+            if (i % 10 == 9 && batch.size() + 2 <= batchSize) {
+                // Wrong then right: the right password resets the counter, so state never drifts
+                batch.add(new Credentials(email, "Wrong!1"));
+            }
+            batch.add(new Credentials(email, "Pass1!"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS usuarios");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public void testBatch(Blackhole bh, BatchCounter counter) {
+        bh.consume(authService.authenticateBatchWithConnection(connection, batch));
+        counter.credentials += batch.size();
+    }
+
+    @Benchmark
+    public void testOneByOne(Blackhole bh, BatchCounter counter) {
+        for (Credentials c : batch) {
+            bh.consume(authService.authenticateWithConnection(connection, c.email(), c.password()));
+        }
+        counter.credentials += batch.size();
+    }
+
+    /** Counts credentials processed so throughput can be compared across batch sizes. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class BatchCounter {
+        public long credentials;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            credentials = 0;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Platform threads vs. virtual threads for loginWithConnection under 1..N concurrent callers.
+ * Each benchmark operation is one batch: {@code callers} logins submitted at once, each
+ * borrowing a connection from a pool of {@code poolSize}, and waiting for all to finish.
+ * Platform mode uses a fixed pool of {@code callers} threads; virtual mode uses
+ * {@link VirtualThreadExecutor} capped at the connection pool size, as AuthService.loginAsync does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class ConcurrentLoginBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:concurrentdb;DB_CLOSE_DELAY=-1";
+
+    @Param({"1", "4", "16", "64"})
+    public int callers;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public String threads;
+
+    private final int poolSize = 8;
+
+    private Connection keepAlive;
+    private ConnectionPool pool;
+    private AuthService authService;
+    private ExecutorService platformExecutor;
+    private VirtualThreadExecutor virtualExecutor;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Class.forName("org.h2.Driver");
+        keepAlive = DriverManager.getConnection(URL, "sa", "");
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS usuarios");
+            stmt.execute(
+                "CREATE TABLE usuarios (" +
+                "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "email VARCHAR(255) UNIQUE NOT NULL, " +
+                "clave_hash VARCHAR(255) NOT NULL, " +
+                "intentos_fallidos INT NOT NULL DEFAULT 0, " +
+                "bloqueado BOOLEAN NOT NULL DEFAULT FALSE)"
+            );
+            for (int i = 0; i < 64; i++) {
+                stmt.execute("INSERT INTO usuarios (email, clave_hash) VALUES ('user" + i + "@test.com', 'Pass1!')");
+            }
+        }
+        pool = new ConnectionPool(() -> DriverManager.getConnection(URL, "sa", ""),
+            new ConnectionPool.Settings(poolSize, poolSize, 30_000, 0, 0, 500, 16));
+        authService = new AuthService();
+        if ("PLATFORM".equals(threads)) {
+            platformExecutor = Executors.newFixedThreadPool(callers);
+        } else {
+            virtualExecutor = new VirtualThreadExecutor(poolSize);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (platformExecutor != null) {
+            platformExecutor.shutdownNow();
+        }
+        if (virtualExecutor != null) {
+            virtualExecutor.close();
+        }
+        pool.close();
+        keepAlive.close();
+    }
+
+    private LoginResult login(int caller) {
+        try (Connection conn = pool.borrow()) {
+            return authService.authenticateWithConnection(conn, "user" + caller + "@test.com", "Pass1!");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * One batch of {@code callers} concurrent logins.
+     */
+    @Benchmark
+    public int testConcurrentLoginBatch() throws Exception {
+        @SuppressWarnings("unchecked")
+        Future<LoginResult>[] results = new Future[callers];
+        for (int i = 0; i < callers; i++) {
+            final int caller = i;
+            if (platformExecutor != null) {
+                results[i] = platformExecutor.submit((Callable<LoginResult>) () -> login(caller));
+            } else {
+                results[i] = virtualExecutor.submit(() -> login(caller));
+            }
+        }
+        int ok = 0;
+        for (Future<LoginResult> f : results) {
+            if (f.get().isSuccess()) {
+                ok++;
+            }
+        }
+        return ok;
+    }
+}
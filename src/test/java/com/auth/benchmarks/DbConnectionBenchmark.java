@@ -19,6 +19,7 @@ import java.util.concurrent.TimeUnit;
 public class DbConnectionBenchmark {
 
     private Connection persistentConnection;
+    private ConnectionPool pool;
 
     @Setup(Level.Trial)
     public void setupDatabase() throws Exception {
@@ -44,10 +45,30 @@ public class DbConnectionBenchmark {
                 ));
             }
         }
+
+        pool = new ConnectionPool(
+            () -> DriverManager.getConnection("jdbc:h2:mem:perfdb;DB_CLOSE_DELAY=-1", "sa", ""),
+            new ConnectionPool.Settings(1, 10, 30_000, 0, 0, 500, 0)
+        );
+
+        // Configuration for the DbConnection.getConnection() benchmarks
+        System.setProperty("DB_URL", "jdbc:h2:mem:perfdb;DB_CLOSE_DELAY=-1");
+        System.setProperty("DB_USER", "sa");
+        System.setProperty("DB_PASSWORD", "");
+        System.setProperty("DB_DRIVER", "org.h2.Driver");
+        DbConnection.reload();
     }
 
     @TearDown(Level.Trial)
     public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.close();
+        }
+        DbConnection.shutdownPool();
+        System.clearProperty("DB_URL");
+        System.clearProperty("DB_USER");
+        System.clearProperty("DB_PASSWORD");
+        System.clearProperty("DB_DRIVER");
         if (persistentConnection != null && !persistentConnection.isClosed()) {
             persistentConnection.close();
         }
@@ -66,6 +87,65 @@ public class DbConnectionBenchmark {
         return conn;
     }
 
+    /**
+     * Benchmark unpooled acquisition: open a physical connection, run the login
+     * lookup and close it (what every login paid before pooling).
+     */
+    @Benchmark
+    public String testUnpooledAcquisition() throws Exception {
+        try (Connection conn = DriverManager.getConnection(
+                "jdbc:h2:mem:perfdb;DB_CLOSE_DELAY=-1", "sa", "")) {
+            return lookupPassword(conn);
+        }
+    }
+
+    /**
+     * Benchmark pooled acquisition: borrow from the pool, run the login
+     * lookup and return the connection via close().
+     */
+    @Benchmark
+    public String testPooledAcquisition() throws Exception {
+        try (Connection conn = pool.borrow()) {
+            return lookupPassword(conn);
+        }
+    }
+
+    /**
+     * Config resolution as every getConnection() call used to do it:
+     * system properties/environment lookups plus Class.forName.
+     */
+    @Benchmark
+    public DbConfig testConfigResolutionPerCall() throws Exception {
+        return DbConnection.resolveConfig();
+    }
+
+    /**
+     * Config access now that getConnection() reads the resolved snapshot.
+     */
+    @Benchmark
+    public DbConfig testConfigSnapshotRead() throws Exception {
+        return DbConnection.currentConfig();
+    }
+
+    /**
+     * Full DbConnection.getConnection() + close() on the resolved snapshot and pool.
+     */
+    @Benchmark
+    public boolean testGetConnection() throws Exception {
+        try (Connection conn = DbConnection.getConnection()) {
+            return conn.getAutoCommit();
+        }
+    }
+
+    private static String lookupPassword(Connection conn) throws Exception {
+        try (var ps = conn.prepareStatement("SELECT clave_hash FROM usuarios WHERE email = ?")) {
+            ps.setString(1, "user50@test.com");
+            try (var rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
     /**
      * Benchmark simple SELECT query on existing connection.
      */
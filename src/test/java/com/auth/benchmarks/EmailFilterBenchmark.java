@@ -0,0 +1,88 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Login for an email that does not exist, with and without an {@link EmailBloomFilter}
+ * built from the table. Without the filter every call is an index lookup; with it, all but
+ * the filter's false positives are answered in memory.
+ *
+ * <p>The 10M-user case needs a large heap for the in-memory H2 table (the fork runs with
+ * -Xmx6g); pass {@code -p users=10000,1000000} to skip it.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class EmailFilterBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:filterdb;DB_CLOSE_DELAY=-1";
+
+    @Param({"10000", "1000000", "10000000"})
+    public int users;
+
+    private Connection connection;
+    private AuthService withoutFilter;
+    private AuthService withFilter;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Class.forName("org.h2.Driver");
+        connection = DriverManager.getConnection(URL, "sa", "");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS usuarios");
+            stmt.execute(
+                "CREATE TABLE usuarios (" +
+                "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "email VARCHAR(255) UNIQUE NOT NULL, " +
+                "clave_hash VARCHAR(255) NOT NULL, " +
+                "intentos_fallidos INT NOT NULL DEFAULT 0, " +
+                "bloqueado BOOLEAN NOT NULL DEFAULT FALSE)"
+            );
+            stmt.execute("INSERT INTO usuarios (email, clave_hash) " +
+                "SELECT 'user' || X || '@test.com', 'Pass1!' FROM SYSTEM_RANGE(1, " + users + ")");
+        }
+        withoutFilter = new AuthService();
+        withFilter = new AuthService();
+        withFilter.setEmailFilter(EmailBloomFilter.fromDatabase(connection, 0.01));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        EmailBloomFilter filter = withFilter.getEmailFilter();
+        System.out.printf("%nfilter: %d bytes, k=%d, expected fpp %.4f, observed fpp %.4f%n",
+            filter.getMemoryBytes(), filter.getHashFunctions(),
+            filter.getExpectedFalsePositiveRate(), filter.getObservedFalsePositiveRate());
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS usuarios");
+        }
+        connection.close();
+    }
+
+    // Credential-stuffing style traffic: a different unknown email on every call
+    private String nextUnknownEmail() {
+        return "ghost" + (counter++) + "@test.com";
+    }
+
+    @Benchmark
+    public String testUnknownEmailWithoutFilter() {
+        return withoutFilter.loginWithConnection(connection, nextUnknownEmail(), "Pass1!");
+    }
+
+    @Benchmark
+    public String testUnknownEmailWithFilter() {
+        return withFilter.loginWithConnection(connection, nextUnknownEmail(), "Pass1!");
+    }
+
+    @Benchmark
+    public String testKnownEmailWithFilter() {
+        return withFilter.loginWithConnection(connection, "user" + (counter++ % users + 1) + "@test.com", "Pass1!");
+    }
+}
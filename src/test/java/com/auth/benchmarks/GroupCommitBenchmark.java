@@ -0,0 +1,139 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Login counter writes from 64 concurrent callers, each on its own account, written directly
+ * (one autocommit UPDATE per login, {@code windowMicros = -1}) vs. through
+ * {@link CounterGroupCommit} with increasing windows.
+ *
+ * <p>H2 in memory does not flush on commit, so every commit here waits for a simulated log
+ * device that performs one {@value #FLUSH_MICROS} us flush at a time, as a PostgreSQL WAL
+ * fsync would. Each invocation is a wrong password then a correct one: two counter writes.</p>
+ *
+ * <p>As in production, each login borrows one of {@value #POOL_SIZE} pooled connections,
+ * fewer than the callers, and holds it until its write commits; the group-commit writer
+ * keeps a connection of its own.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(64)
+public class GroupCommitBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:groupcommitbench;DB_CLOSE_DELAY=-1";
+    private static final long FLUSH_MICROS = 200;
+    private static final Object LOG_DEVICE = new Object();
+    private static final int POOL_SIZE = 16;
+
+    @Param({"-1", "0", "250", "1000", "5000"})
+    public long windowMicros;
+
+    private Connection setupConnection;
+    private ConnectionPool pool;
+    private AuthService authService;
+    private CounterGroupCommit group;
+
+    @State(Scope.Thread)
+    public static class Caller {
+        private static final AtomicInteger SEQ = new AtomicInteger();
+
+        String email;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            email = "user" + SEQ.incrementAndGet() + "@example.com";
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        setupConnection = DriverManager.getConnection(URL);
+        try (Statement st = setupConnection.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE NOT NULL, "
+                    + "clave_hash VARCHAR(255) NOT NULL, intentos_fallidos INT NOT NULL DEFAULT 0, "
+                    + "bloqueado BOOLEAN NOT NULL DEFAULT FALSE)");
+            st.execute("MERGE INTO usuarios (id, email, clave_hash) KEY (id) "
+                    + "SELECT X, 'user' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, 1000)");
+        }
+        pool = new ConnectionPool(() -> withSimulatedFlush(DriverManager.getConnection(URL)),
+                new ConnectionPool.Settings(0, POOL_SIZE, 30_000, 0, 0, 0, 16));
+        authService = new AuthService();
+        if (windowMicros >= 0) {
+            group = new CounterGroupCommit(() -> withSimulatedFlush(DriverManager.getConnection(URL)),
+                    windowMicros, CounterGroupCommit.DEFAULT_MAX_BATCH_SIZE);
+            authService.setGroupCommit(group);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (group != null) {
+            System.out.printf("%nmean batch %.1f, wait %s%n", group.getMeanBatchSize(), group.getWaitTimes());
+            group.close();
+        }
+        pool.close();
+        setupConnection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public LoginResult testWrongThenCorrectPassword(Caller caller) throws SQLException {
+        try (Connection conn = pool.borrow()) {
+            authService.authenticateWithConnection(conn, caller.email, "Wrong!1");
+        }
+        try (Connection conn = pool.borrow()) {
+            return authService.authenticateWithConnection(conn, caller.email, "Abc!1");
+        }
+    }
+
+    private static void flush() {
+        synchronized (LOG_DEVICE) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(FLUSH_MICROS));
+        }
+    }
+
+    // Every commit, explicit or autocommit, waits for one flush of the shared log device
+    static Connection withSimulatedFlush(Connection target) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    if (method.getName().equals("commit")) {
+                        flush();
+                    } else if (method.getName().equals("prepareStatement")) {
+                        PreparedStatement ps = (PreparedStatement) result;
+                        return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                new Class<?>[] {PreparedStatement.class}, (p, m, a) -> {
+                                    Object r = invoke(ps, m, a);
+                                    if (m.getName().equals("executeUpdate") && target.getAutoCommit()) {
+                                        flush();
+                                    }
+                                    return r;
+                                });
+                    }
+                    return result;
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
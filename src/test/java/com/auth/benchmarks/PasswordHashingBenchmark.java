@@ -0,0 +1,49 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verify latency per PBKDF2 cost. {@code testVerifyInline} is the raw hash cost on the
+ * calling thread; {@code testVerifyOnPool} adds the hand-off to {@link PasswordVerifier}'s
+ * worker pool that AuthService uses. Sample mode reports the percentiles needed to pick a
+ * cost for a per-login latency budget.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class PasswordHashingBenchmark {
+
+    @Param({"10000", "100000", "310000", "600000"})
+    public int iterations;
+
+    private String stored;
+    private PasswordVerifier verifier;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        PasswordHasher hasher = new PasswordHasher(iterations);
+        stored = hasher.hash("Pass1!");
+        verifier = new PasswordVerifier(hasher);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nverify times: %s%nqueue wait: %s%n",
+            verifier.getVerifyTimes(), verifier.getQueueWaitTimes());
+        verifier.close();
+    }
+
+    @Benchmark
+    public boolean testVerifyInline() {
+        return PasswordHasher.verify("Pass1!", stored);
+    }
+
+    @Benchmark
+    public boolean testVerifyOnPool() {
+        return verifier.verify("Pass1!", stored);
+    }
+}
@@ -0,0 +1,71 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contention on {@link RateLimiter} with 8 threads: all threads on one key, each thread on
+ * its own key, and a spray of random keys over ten times the key bound so sweeps and
+ * evictions run during the measurement. Buckets refill at one token per second, so nearly
+ * every call is a refusal, as under attack.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(8)
+public class RateLimiterBenchmark {
+
+    private static final int MAXIMUM_KEYS = 10_000;
+
+    private RateLimiter limiter;
+
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+        private static final AtomicInteger SEQ = new AtomicInteger();
+
+        String ownKey;
+        SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            int id = SEQ.getAndIncrement();
+            ownKey = "client" + id + "@test.com";
+            random = new SplittableRandom(id);
+        }
+
+        String sprayKey() {
+            return "spray" + random.nextInt(MAXIMUM_KEYS * 10) + "@test.com";
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        limiter = new RateLimiter(5, 1.0, MAXIMUM_KEYS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nallowed %d, rejected %d, keys %d, evictions %d%n",
+                limiter.getAllowed(), limiter.getRejected(), limiter.size(), limiter.getEvictions());
+    }
+
+    @Benchmark
+    public boolean testSameKey() {
+        return limiter.tryAcquire("victim@test.com");
+    }
+
+    @Benchmark
+    public boolean testKeyPerThread(ThreadKeys keys) {
+        return limiter.tryAcquire(keys.ownKey);
+    }
+
+    @Benchmark
+    public boolean testSprayedKeys(ThreadKeys keys) {
+        return limiter.tryAcquire(keys.sprayKey());
+    }
+}
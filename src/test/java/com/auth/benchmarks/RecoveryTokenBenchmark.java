@@ -0,0 +1,122 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RecoveryTokenStore} and {@link RecoveryTokenSweeper} with {@value #TOKENS}
+ * outstanding tokens in a file-backed H2 database (10M rows do not fit an in-memory one
+ * alongside the JVM here). The first {@value #EXPIRED} are expired. Rows are created once
+ * and reused by later runs while enough expired rows are left to sweep.
+ *
+ * <p>Seeded tokens are {@code "t" + n}, hashed the way the store hashes real ones, so
+ * {@code peek} can verify known tokens. Each sweep is bounded at 10 batches of 1,000.</p>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class RecoveryTokenBenchmark {
+
+    private static final int TOKENS = 10_000_000;
+    private static final int EXPIRED = 1_000_000;
+    private static final int SEED_CHUNK = 250_000;
+    private static final String URL = "jdbc:h2:file:"
+            + new File(System.getProperty("java.io.tmpdir"), "recoverytokenbench").getAbsolutePath()
+            + ";CACHE_SIZE=524288";
+
+    private Connection conn;
+    private RecoveryTokenStore store;
+    private RecoveryTokenSweeper sweeper;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        if (!seeded()) {
+            seed();
+        }
+        store = new RecoveryTokenStore(Duration.ofDays(36_500));
+        sweeper = new RecoveryTokenSweeper(() -> DriverManager.getConnection(URL), 1_000, 10,
+                System::currentTimeMillis);
+    }
+
+    private boolean seeded() throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*), COUNT(CASE WHEN expires_at < CURRENT_TIMESTAMP THEN 1 END) "
+                     + "FROM recovery_tokens")) {
+            rs.next();
+            return rs.getLong(1) >= TOKENS - EXPIRED / 2 && rs.getLong(2) >= EXPIRED / 2;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void seed() throws SQLException {
+        long start = System.nanoTime();
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS recovery_tokens");
+            st.execute("CREATE TABLE recovery_tokens (token_hash BINARY(32) PRIMARY KEY, user_id INT NOT NULL, "
+                    + "expires_at TIMESTAMP NOT NULL)");
+            // In committed chunks: one 10M-row statement exhausts H2's undo log
+            for (int from = 1; from <= TOKENS; from += SEED_CHUNK) {
+                st.execute("INSERT INTO recovery_tokens SELECT HASH('SHA-256', STRINGTOUTF8('t' || X)), "
+                        + "MOD(X, 100000) + 1, CASE WHEN X <= " + EXPIRED + " THEN TIMESTAMP '2000-01-01 00:00:00' "
+                        + "ELSE TIMESTAMP '2100-01-01 00:00:00' END "
+                        + "FROM SYSTEM_RANGE(" + from + ", " + (from + SEED_CHUNK - 1) + ")");
+            }
+            st.execute("CREATE INDEX recovery_tokens_expires_at_idx ON recovery_tokens (expires_at)");
+        }
+        System.out.printf("%nseeded %,d tokens in %d s%n", TOKENS, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (sweeper.getSweeps() > 0) {
+            System.out.printf("%nsweeper: %,d rows, batch %s%n", sweeper.getRowsDeleted(), sweeper.getBatchTimes());
+        }
+        conn.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 3, time = 3)
+    public String testIssue() throws SQLException {
+        return store.issue(conn, ThreadLocalRandom.current().nextInt(1, 100_001));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 3, time = 3)
+    public Integer testVerifyValid() throws SQLException {
+        return store.peek(conn, "t" + ThreadLocalRandom.current().nextInt(EXPIRED + 1, TOKENS + 1));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 3, time = 3)
+    public Integer testVerifyUnknown() throws SQLException {
+        return store.peek(conn, "u" + ThreadLocalRandom.current().nextInt());
+    }
+
+    // One bounded sweep: 10,000 expired rows out of the 10M
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 10)
+    public int testSweep() throws SQLException {
+        return sweeper.sweep();
+    }
+}
@@ -0,0 +1,78 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging back in with a {@link RememberMeStore} token vs. the full
+ * {@code loginWithConnection} path, in-memory H2 with {@value #USERS} accounts and one
+ * outstanding token each. {@code clave} picks how the password is stored: legacy plaintext,
+ * so the login cost is the SQL alone, or a PBKDF2 hash at the default 600,000 iterations.
+ * Every remembered login rotates its token, so each op carries the one the last returned.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class RememberMeBenchmark {
+
+    private static final int USERS = 10_000;
+    private static final String URL = "jdbc:h2:mem:remembermebench;DB_CLOSE_DELAY=-1";
+
+    @Param({"plaintext", "pbkdf2"})
+    public String clave;
+
+    private Connection conn;
+    private AuthService service;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        conn = DriverManager.getConnection(URL);
+        String hash = "pbkdf2".equals(clave) ? new PasswordHasher().hash("Abc!1") : "Abc!1";
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS remember_me_tokens");
+            st.execute("DROP TABLE IF EXISTS usuarios");
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE, clave_hash VARCHAR(255), "
+                    + "intentos_fallidos INT DEFAULT 0, bloqueado BOOLEAN DEFAULT FALSE)");
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'user' || X || '@example.com', '" + hash + "' FROM SYSTEM_RANGE(1, " + USERS + ")");
+            st.execute("CREATE TABLE remember_me_tokens (selector BINARY(12) PRIMARY KEY, "
+                    + "validator_hash BINARY(32) NOT NULL, rotation_salt BINARY(32), rotated_at TIMESTAMP, "
+                    + "user_id INT NOT NULL REFERENCES usuarios (id), "
+                    + "expires_at TIMESTAMP NOT NULL)");
+            st.execute("CREATE INDEX remember_me_tokens_user_id_idx ON remember_me_tokens (user_id)");
+        }
+        RememberMeStore store = new RememberMeStore();
+        for (int id = 1; id <= USERS; id++) {
+            String issued = store.issue(conn, id);
+            if (id == USERS / 2) {
+                token = issued;
+            }
+        }
+        service = new AuthService();
+        service.setRememberMe(store);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    @Benchmark
+    public String testPasswordLogin() {
+        return service.loginWithConnection(conn, "user5000@example.com", "Abc!1");
+    }
+
+    @Benchmark
+    public LoginResult testRememberedLogin() {
+        LoginResult result = service.authenticateRememberedWithConnection(conn, token);
+        token = result.rememberMeToken();
+        return result;
+    }
+}
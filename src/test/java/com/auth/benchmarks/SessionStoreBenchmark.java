@@ -0,0 +1,98 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link SessionStore} holding {@value #LIVE} live sessions in steady state. In the
+ * {@code mixed} group three threads look up random recent sessions while a fourth opens new
+ * ones and expires the oldest: each churn op moves a simulated clock on by one millisecond
+ * with a TTL of {@value #LIVE} ms, so sessions expire as fast as they are opened.
+ *
+ * <p>Setup prints the store's own {@link SessionStore#footprintBytes} and the heap growth
+ * measured across seeding, both per session.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class SessionStoreBenchmark {
+
+    private static final int LIVE = 1_000_000;
+    private static final int USERS = 250_000;
+    private static final int EXPIRE_EVERY = 100;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private SessionStore store;
+    // Ids of the last LIVE sessions opened, overwritten in a ring by the churn thread
+    private String[] recent;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        store = new SessionStore(Duration.ofMillis(LIVE), LIVE + LIVE / 10, 100, clock::get);
+        for (int i = 0; i < LIVE; i++) {
+            store.create(i % USERS);
+            clock.incrementAndGet();
+        }
+        System.gc();
+        long heap = memory.getHeapMemoryUsage().getUsed() - heapBefore;
+        System.out.printf("%n%,d sessions: footprint %d B/session, heap %d B/session%n",
+                store.size(), store.footprintBytes() / store.size(), heap / store.size());
+        // The ids themselves are the caller's; keep them only now that the store is measured
+        recent = new String[LIVE];
+        for (int i = 0; i < LIVE; i++) {
+            recent[i] = store.create(i % USERS);
+            clock.incrementAndGet();
+            if (i % EXPIRE_EVERY == 0) {
+                store.expire();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nsize %,d, expired %,d, rejected %,d, expire() %s%n",
+                store.size(), store.getExpired(), store.getRejected(), store.getSweepTimes());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public int lookup() {
+        return store.lookup(recent[ThreadLocalRandom.current().nextInt(LIVE)]);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public String churn() {
+        String id = store.create(ThreadLocalRandom.current().nextInt(USERS));
+        recent[next] = id;
+        next = (next + 1) % LIVE;
+        if (clock.incrementAndGet() % EXPIRE_EVERY == 0) {
+            store.expire();
+        }
+        return id;
+    }
+
+    @Benchmark
+    public int testLookup() {
+        return store.lookup(recent[ThreadLocalRandom.current().nextInt(LIVE)]);
+    }
+
+    @Benchmark
+    public void testRevokeUser() {
+        store.revokeUser(ThreadLocalRandom.current().nextInt(USERS));
+    }
+}
@@ -0,0 +1,75 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SessionTokens} issue and verify throughput per thread; add {@code -t N} for more
+ * cores. Verifying is pure CPU (two SHA-256 passes), so it should scale linearly. Run with
+ * {@code -prof gc}: a valid verify should allocate only the returned claims and a forged
+ * one nothing.
+ *
+ * <p>The {@code VirtualThread} variants verify on a fresh virtual thread per op, the way
+ * {@code loginAsync} runs; {@link #testEmptyVirtualThread} is the cost of the thread alone,
+ * so the difference is what the token adds there.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionTokenBenchmark {
+
+    private SessionTokens tokens;
+    private String current;
+    private String previousKey;
+    private String forged;
+
+    @Setup
+    public void setup() {
+        tokens = new SessionTokens(1, "benchmark-key-one-0123456789abcdef".getBytes(StandardCharsets.US_ASCII));
+        previousKey = tokens.issue(7);
+        tokens.addKey(2, "benchmark-key-two-0123456789abcdef".getBytes(StandardCharsets.US_ASCII));
+        tokens.setSigningKey(2);
+        current = tokens.issue(7);
+        char last = current.charAt(current.length() - 1);
+        forged = current.substring(0, current.length() - 1) + (last == 'A' ? 'B' : 'A');
+    }
+
+    @Benchmark
+    public String testIssue() {
+        return tokens.issue(7);
+    }
+
+    @Benchmark
+    public SessionTokens.Claims testVerify() {
+        return tokens.verify(current);
+    }
+
+    @Benchmark
+    public SessionTokens.Claims testVerifyPreviousKey() {
+        return tokens.verify(previousKey);
+    }
+
+    @Benchmark
+    public SessionTokens.Claims testVerifyForged() {
+        return tokens.verify(forged);
+    }
+
+    @Benchmark
+    public void testEmptyVirtualThread() throws InterruptedException {
+        Thread.ofVirtual().start(() -> { }).join();
+    }
+
+    @Benchmark
+    public void testVerifyOnVirtualThread() throws InterruptedException {
+        Thread.ofVirtual().start(() -> tokens.verify(current)).join();
+    }
+
+    @Benchmark
+    public void testVerifyForgedOnVirtualThread() throws InterruptedException {
+        Thread.ofVirtual().start(() -> tokens.verify(forged)).join();
+    }
+}
@@ -0,0 +1,120 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A burst of {@code duplicates} concurrent logins for the same email (a double submit, a
+ * retrying client) with and without {@link AuthService#setLookupCoalescing}. Each query waits
+ * {@value #QUERY_MICROS} us, as a round trip to PostgreSQL would; H2 in memory answers
+ * almost at once. One invocation is one burst; queries per login are printed at teardown.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class SingleFlightBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:singleflightbench;DB_CLOSE_DELAY=-1";
+    private static final long QUERY_MICROS = 200;
+
+    @Param({"1", "4", "16", "64"})
+    public int duplicates;
+
+    @Param({"false", "true"})
+    public boolean coalescing;
+
+    private Connection setupConnection;
+    private AuthService authService;
+    private ExecutorService pool;
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<Callable<LoginResult>> burst = new ArrayList<>();
+    private final AtomicLong queries = new AtomicLong();
+    private long logins;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        setupConnection = DriverManager.getConnection(URL);
+        try (Statement st = setupConnection.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE NOT NULL, "
+                    + "clave_hash VARCHAR(255) NOT NULL, intentos_fallidos INT NOT NULL DEFAULT 0, "
+                    + "bloqueado BOOLEAN NOT NULL DEFAULT FALSE)");
+            st.execute("MERGE INTO usuarios (id, email, clave_hash) KEY (id) VALUES (1, 'dup@example.com', 'Abc!1')");
+        }
+        authService = new AuthService();
+        authService.setLookupCoalescing(coalescing);
+        pool = Executors.newFixedThreadPool(duplicates);
+        for (int i = 0; i < duplicates; i++) {
+            Connection c = withQueryLatency(DriverManager.getConnection(URL));
+            connections.add(c);
+            // A correct password on an account with no failures: the login makes no write
+            burst.add(() -> authService.authenticateWithConnection(c, "dup@example.com", "Abc!1"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        System.out.printf("%nqueries per login: %.2f%n", (double) queries.get() / logins);
+        pool.shutdown();
+        for (Connection c : connections) {
+            c.close();
+        }
+        setupConnection.close();
+    }
+
+    @Benchmark
+    public int testDuplicateBurst() throws Exception {
+        int ok = 0;
+        for (Future<LoginResult> f : pool.invokeAll(burst)) {
+            if (f.get().outcome() == LoginResult.Outcome.SUCCESS) {
+                ok++;
+            }
+        }
+        logins += duplicates;
+        return ok;
+    }
+
+    private Connection withQueryLatency(Connection target) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    if (!method.getName().equals("prepareStatement")) {
+                        return result;
+                    }
+                    PreparedStatement ps = (PreparedStatement) result;
+                    return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                            new Class<?>[] {PreparedStatement.class}, (p, m, a) -> {
+                                if (m.getName().equals("executeQuery")) {
+                                    queries.incrementAndGet();
+                                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(QUERY_MICROS));
+                                }
+                                return invoke(ps, m, a);
+                            });
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
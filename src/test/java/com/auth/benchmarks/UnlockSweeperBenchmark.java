@@ -0,0 +1,106 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link UnlockSweeper} against 1M locked accounts in H2, with expiries spread evenly over
+ * 1000 s (1000 per second):
+ * - Startup load of every timed lock into the wheel
+ * - One sweep of one second's expiries, vs. the same unlock as an UPDATE that scans the table
+ * - One sweep of all 1M expiries, in batches of {@value UnlockSweeper#BATCH_SIZE}
+ * Every iteration starts from the fully locked table; the reset is not measured.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class UnlockSweeperBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:unlockbench;DB_CLOSE_DELAY=-1";
+    private static final int ACCOUNTS = 1_000_000;
+    private static final int EXPIRY_SECONDS = 1_000;
+    private static final long T0 = 1_700_000_000_000L;
+
+    private Connection connection;
+    private final AtomicLong clock = new AtomicLong();
+    private UnlockSweeper sweeper;
+
+    @Setup(Level.Trial)
+    public void setupDatabase() throws Exception {
+        connection = DriverManager.getConnection(URL);
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE usuarios (id INT PRIMARY KEY, email VARCHAR(255) UNIQUE NOT NULL, "
+                    + "clave_hash VARCHAR(255) NOT NULL, intentos_fallidos INT NOT NULL DEFAULT 0, "
+                    + "bloqueado BOOLEAN NOT NULL DEFAULT FALSE, bloqueado_hasta TIMESTAMP)");
+            st.execute("INSERT INTO usuarios (id, email, clave_hash) "
+                    + "SELECT X, 'user' || X || '@example.com', 'Abc!1' FROM SYSTEM_RANGE(1, " + ACCOUNTS + ")");
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void lockEveryAccount() throws Exception {
+        // Account id expires (id % 1000) + 1 seconds after T0
+        try (PreparedStatement ps = connection.prepareStatement(
+                "UPDATE usuarios SET intentos_fallidos = 5, bloqueado = TRUE, "
+                + "bloqueado_hasta = DATEADD('SECOND', MOD(id, " + EXPIRY_SECONDS + ") + 1, CAST(? AS TIMESTAMP))")) {
+            ps.setTimestamp(1, new Timestamp(T0));
+            ps.executeUpdate();
+        }
+        clock.set(T0);
+        sweeper = new UnlockSweeper(() -> DriverManager.getConnection(URL), UnlockSweeper.DEFAULT_TICK_MS, clock::get);
+        sweeper.loadPending(connection);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Benchmark
+    public int testLoadPending() throws Exception {
+        return new UnlockSweeper(() -> DriverManager.getConnection(URL), UnlockSweeper.DEFAULT_TICK_MS, clock::get)
+                .loadPending(connection);
+    }
+
+    /**
+     * First second of expiries (1000 accounts) through the wheel: only the due ids are touched.
+     */
+    @Benchmark
+    public int testSweepOneSecond() throws Exception {
+        // A deadline fires once its one-second tick has ended
+        clock.set(T0 + 2_000);
+        return sweeper.sweep();
+    }
+
+    /**
+     * The same 1000 unlocks found by a predicate over the whole table, as a periodic job
+     * without the wheel would.
+     */
+    @Benchmark
+    public int testScanOneSecond() throws Exception {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "UPDATE usuarios SET bloqueado = FALSE, intentos_fallidos = 0, bloqueado_hasta = NULL "
+                + "WHERE bloqueado = TRUE AND bloqueado_hasta <= ?")) {
+            ps.setTimestamp(1, new Timestamp(T0 + 1_000));
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Every lock expired at once, e.g. after a long outage of the sweeper.
+     */
+    @Benchmark
+    public int testSweepAll() throws Exception {
+        clock.set(T0 + (EXPIRY_SECONDS + 1) * 1_000L);
+        return sweeper.sweep();
+    }
+}
@@ -0,0 +1,86 @@
+package com.auth;
+
+import org.openjdk.jmh.annotations.*;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Password recovery with and without {@link UserRecordCache}, over 10k accounts where 80% of
+ * requests hit 100 hot accounts and the rest are spread over all of them. The cache holds
+ * 1,000 entries, so the cold tail keeps pushing one-off entries through admission.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class UserRecordCacheBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:usercachebenchdb;DB_CLOSE_DELAY=-1";
+    private static final int USERS = 10_000;
+    private static final int HOT = 100;
+
+    private Connection connection;
+    private AuthService uncached;
+    private AuthService cached;
+    private SplittableRandom random;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Class.forName("org.h2.Driver");
+        connection = DriverManager.getConnection(URL, "sa", "");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS usuarios");
+            stmt.execute(
+                "CREATE TABLE usuarios (" +
+                "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "email VARCHAR(255) UNIQUE NOT NULL, " +
+                "clave_hash VARCHAR(255) NOT NULL, " +
+                "intentos_fallidos INT NOT NULL DEFAULT 0, " +
+                "bloqueado BOOLEAN NOT NULL DEFAULT FALSE)"
+            );
+            stmt.execute("INSERT INTO usuarios (email, clave_hash) " +
+                "SELECT 'user' || X || '@test.com', 'Pass1!' FROM SYSTEM_RANGE(0, " + (USERS - 1) + ")");
+        }
+        uncached = new AuthService();
+        cached = new AuthService();
+        cached.setUserCache(new UserRecordCache(1_000, 60_000));
+        random = new SplittableRandom(42);
+        // Recovery prints a line per call; keep it out of the measurement
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        System.setOut(originalOut);
+        UserRecordCache.Stats stats = cached.getUserCache().getStats();
+        System.out.printf("%ncache hit rate %.3f, evictions %d%n", stats.getHitRate(), stats.getEvictions());
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS usuarios");
+        }
+        connection.close();
+    }
+
+    private String nextEmail() {
+        int user = random.nextInt(10) < 8 ? random.nextInt(HOT) : random.nextInt(USERS);
+        return "user" + user + "@test.com";
+    }
+
+    @Benchmark
+    public RecoveryResult testRecoveryWithoutCache() {
+        return uncached.requestRecoveryWithConnection(connection, nextEmail());
+    }
+
+    @Benchmark
+    public RecoveryResult testRecoveryWithCache() {
+        return cached.requestRecoveryWithConnection(connection, nextEmail());
+    }
+}
@@ -7,6 +7,19 @@
  *   <li>Password validation</li>
  *   <li>Authentication service operations</li>
  *   <li>Database connection and query performance</li>
+ *   <li>Concurrent logins on platform vs. virtual threads</li>
+ *   <li>Batch authentication vs. one login per credential</li>
+ *   <li>Unknown-email lookups with and without the email Bloom filter</li>
+ *   <li>Password recovery with and without the user-record cache</li>
+ *   <li>PBKDF2 verify latency per cost setting</li>
+ *   <li>Rate-limiter contention on shared, per-thread and sprayed keys</li>
+ *   <li>Timed-lock unlock sweeps over 1M locked accounts vs. a table scan</li>
+ *   <li>Group commit of login counter writes vs. window size, 64 callers</li>
+ *   <li>Bursts of duplicate logins for one email with and without lookup coalescing</li>
+ *   <li>Recovery-token issue, verify and expiry sweeps at 10M outstanding tokens</li>
+ *   <li>Signed session-token issue and verify throughput per core</li>
+ *   <li>Session-store lookups and expiry churn at 1M live sessions, with memory per session</li>
+ *   <li>"Remember me" token logins vs. full password logins, plaintext and PBKDF2</li>
  * </ul>
  * 
  * <h2>Running Benchmarks</h2>